@@ -42,7 +42,7 @@ public class SSHUtilPasswordCredentialDockerTest {
         // Create a certificate credential that matches the (hard-coded) setup of the docker container.
         Credential credential = new DefaultCredential();
 
-        SSHConnection session = SSHUtil.connect("SSHTEST", client, location, credential, 0, 10 * 1000);
+        SSHConnection session = SSHUtil.connect("SSHTEST", client, location, credential, 10 * 1000);
         session.close();
     }
 
@@ -56,7 +56,7 @@ public class SSHUtilPasswordCredentialDockerTest {
         // Create a certificate credential that matches the (hard-coded) setup of the docker container.
         Credential credential = new DefaultCredential("xenon");
 
-        SSHConnection session = SSHUtil.connect("SSHTEST", client, location, credential, 0, 10 * 1000);
+        SSHConnection session = SSHUtil.connect("SSHTEST", client, location, credential, 10 * 1000);
         session.close();
     }
 
@@ -70,7 +70,7 @@ public class SSHUtilPasswordCredentialDockerTest {
         // Create a certificate credential that matches the (hard-coded) setup of the docker container.
         Credential credential = new CertificateCredential("xenon", "/home/xenon/.ssh/id_rsa", null);
 
-        SSHConnection session = SSHUtil.connect("SSHTEST", client, location, credential, 0, 10 * 1000);
+        SSHConnection session = SSHUtil.connect("SSHTEST", client, location, credential, 10 * 1000);
         session.close();
     }
 
@@ -84,7 +84,7 @@ public class SSHUtilPasswordCredentialDockerTest {
         // Create a certificate credential that matches the (hard-coded) setup of the docker container.
         Credential credential = new CertificateCredential("xenon2", "/home/xenon/.ssh/id_rsa_pw", "javagat2".toCharArray());
 
-        SSHConnection session = SSHUtil.connect("SSHTEST", client, location, credential, 0, 10 * 1000);
+        SSHConnection session = SSHUtil.connect("SSHTEST", client, location, credential, 10 * 1000);
         session.close();
     }
 
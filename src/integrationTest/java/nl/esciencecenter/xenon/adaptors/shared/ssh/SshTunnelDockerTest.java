@@ -39,7 +39,7 @@ public class SshTunnelDockerTest {
     public void test_no_tunnel() throws Exception {
         SshClient client = SSHUtil.createSSHClient(false, false, false, false, false);
 
-        SSHConnection session = SSHUtil.connect("test", client, getLocation(), new PasswordCredential("xenon", "javagat".toCharArray()), 0, 10 * 1000);
+        SSHConnection session = SSHUtil.connect("test", client, getLocation(), new PasswordCredential("xenon", "javagat".toCharArray()), 10 * 1000);
         session.close();
     }
 
@@ -53,7 +53,7 @@ public class SshTunnelDockerTest {
         map.put("ssh2", new PasswordCredential("xenon2", "javagat2".toCharArray()));
         map.put(getLocation(), new PasswordCredential("xenon", "javagat".toCharArray()));
 
-        SSHConnection session = SSHUtil.connect("test", client, location, map, 0, 10 * 1000);
+        SSHConnection session = SSHUtil.connect("test", client, location, map, 10 * 1000);
         session.close();
     }
 
@@ -68,7 +68,7 @@ public class SshTunnelDockerTest {
         map.put("ssh2", new PasswordCredential("xenon2", "javagat2".toCharArray()));
         map.put(getLocation(), new PasswordCredential("xenon", "javagat".toCharArray()));
 
-        SSHConnection session = SSHUtil.connect("test", client, location, map, 0, 10 * 1000);
+        SSHConnection session = SSHUtil.connect("test", client, location, map, 10 * 1000);
         session.close();
     }
 
@@ -32,7 +32,7 @@ public abstract class SshUtilTest {
     @Test
     public void test_connect_no_config_no_host_check() throws Exception {
         SshClient client = SSHUtil.createSSHClient(false, false, false, false, false);
-        SSHConnection session = SSHUtil.connect("test", client, getLocation(), getCorrectCredential(), 0, 10 * 1000);
+        SSHConnection session = SSHUtil.connect("test", client, getLocation(), getCorrectCredential(), 10 * 1000);
         session.close();
     }
 
@@ -53,19 +53,19 @@ public abstract class SshUtilTest {
     @Test(expected = IllegalArgumentException.class)
     public void test_connect_FailsNullCredential() throws Exception {
         SshClient client = SSHUtil.createSSHClient(false, false, false, false, false);
-        SSHUtil.connect("test", client, getLocation(), null, 0, 10 * 1000);
+        SSHUtil.connect("test", client, getLocation(), null, 10 * 1000);
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void test_connect_FailsInvalidTimeout() throws Exception {
         SshClient client = SSHUtil.createSSHClient(false, false, false, false, false);
-        SSHUtil.connect("test", client, getLocation(), getCorrectCredential(), 0, -1);
+        SSHUtil.connect("test", client, getLocation(), getCorrectCredential(), -1);
     }
 
     @Test(expected = XenonException.class)
     public void test_connect_FailsUsernameNull() throws Exception {
         SshClient client = SSHUtil.createSSHClient(false, false, false, false, false);
-        SSHUtil.connect("test", client, getLocation(), new PasswordCredential(null, "foobar".toCharArray()), 0, 10 * 1000);
+        SSHUtil.connect("test", client, getLocation(), new PasswordCredential(null, "foobar".toCharArray()), 10 * 1000);
     }
 
 }
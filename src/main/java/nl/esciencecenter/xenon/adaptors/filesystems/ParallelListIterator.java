@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
+
+/**
+ * Walks a directory tree breadth first, with up to <code>maxPending</code> directory listings in flight at the same time. Use this to implement recursive
+ * listing for file systems where listing a directory takes a round trip to the server, so the latency of sibling directories overlaps.
+ *
+ * Listings are returned in the order in which the directories were found, so a directory is always returned before its content. New listings are only
+ * started while the iterator is consumed, so at most <code>maxPending</code> listings are buffered.
+ */
+public class ParallelListIterator implements Iterator<PathAttributes> {
+
+    @FunctionalInterface
+    public interface DirectoryLister {
+        List<PathAttributes> list(Path dir) throws XenonException;
+    }
+
+    private final String adaptorName;
+    private final ExecutorService pool;
+    private final int maxPending;
+    private final DirectoryLister lister;
+
+    private final ArrayDeque<Path> toList = new ArrayDeque<>();
+    private final ArrayDeque<Future<List<PathAttributes>>> pending = new ArrayDeque<>();
+    private Iterator<PathAttributes> current = Collections.emptyIterator();
+
+    public ParallelListIterator(String adaptorName, ExecutorService pool, int maxPending, DirectoryLister lister, Path dir) {
+        this.adaptorName = adaptorName;
+        this.pool = pool;
+        this.maxPending = maxPending;
+        this.lister = lister;
+        toList.add(dir);
+        submit();
+    }
+
+    private void submit() {
+        while (!toList.isEmpty() && pending.size() < maxPending) {
+            Path dir = toList.poll();
+            pending.add(pool.submit(() -> lister.list(dir)));
+        }
+    }
+
+    private List<PathAttributes> await(Future<List<PathAttributes>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            cancel();
+            throw new XenonRuntimeException(adaptorName, "Failed to list directory", e.getCause());
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new XenonRuntimeException(adaptorName, "Interrupted while listing directory", e);
+        }
+    }
+
+    private void cancel() {
+        for (Future<?> f : pending) {
+            f.cancel(true);
+        }
+        pending.clear();
+        toList.clear();
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        while (!current.hasNext()) {
+
+            if (pending.isEmpty()) {
+                return false;
+            }
+
+            List<PathAttributes> entries = await(pending.poll());
+
+            for (PathAttributes p : entries) {
+                if (p.isDirectory()) {
+                    toList.add(p.getPath());
+                }
+            }
+
+            submit();
+            current = entries.iterator();
+        }
+
+        return true;
+    }
+
+    @Override
+    public PathAttributes next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more entries");
+        }
+        return current.next();
+    }
+}
@@ -19,6 +19,7 @@ import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Stack;
 import java.util.function.Function;
 
@@ -55,6 +56,10 @@ public class RecursiveListIterator implements Iterator<PathAttributes> {
 
     @Override
     public PathAttributes next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more entries in listing");
+        }
+
         PathAttributes nxt = stack.peek().next();
         if (nxt.isDirectory()) {
             stack.push(list.apply(nxt.getPath()));
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.ftp;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.XenonException;
+
+/**
+ * A pool of authenticated FTPClients used for the data transfers of a single FtpFileSystem.
+ *
+ * Since an FTP connection can only do a single transfer at a time, each stream needs a connection of its own. Instead of a new connection (and login) per
+ * stream, clients are returned to this pool when their stream is closed, and reused by the next stream. At most <code>maxIdle</code> clients are kept, and
+ * clients that have been idle for longer than <code>idleTimeout</code> milliseconds are disconnected. A client is checked with a NOOP before it is reused.
+ *
+ * Only idle clients are limited. A stream never waits for a client, so the number of clients in use (and connections to the server) grows with the number of
+ * open streams. Waiting here could deadlock a copy within a single FtpFileSystem, which holds a stream for reading and one for writing at the same time.
+ */
+class FtpClientPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FtpClientPool.class);
+
+    @FunctionalInterface
+    interface ClientFactory {
+        FTPClient connect() throws XenonException;
+    }
+
+    private static class IdleClient {
+        private final FTPClient client;
+        private final long since;
+
+        IdleClient(FTPClient client, long since) {
+            this.client = client;
+            this.since = since;
+        }
+    }
+
+    private final ClientFactory factory;
+    private final int maxIdle;
+    private final long idleTimeout;
+
+    // Most recently used clients are at the head, so the tail holds the clients that have been idle longest.
+    private final ArrayDeque<IdleClient> idle = new ArrayDeque<>();
+
+    private boolean closed = false;
+
+    FtpClientPool(ClientFactory factory, int maxIdle, long idleTimeout) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Get a connected client from the pool, or connect a new one if no healthy idle client is available.
+     *
+     * @return a connected and authenticated client in passive mode.
+     * @throws XenonException
+     *             if a new client could not be connected.
+     */
+    FTPClient acquire() throws XenonException {
+
+        while (true) {
+            IdleClient candidate;
+
+            synchronized (this) {
+                evictExpired();
+                candidate = idle.pollFirst();
+            }
+
+            if (candidate == null) {
+                break;
+            }
+
+            if (isHealthy(candidate.client)) {
+                LOGGER.debug("Reusing pooled ftp client");
+                candidate.client.enterLocalPassiveMode();
+                return candidate.client;
+            }
+
+            disconnect(candidate.client);
+        }
+
+        FTPClient client = factory.connect();
+        client.enterLocalPassiveMode();
+        return client;
+    }
+
+    /**
+     * Return a client to the pool once its transfer has completed. The client is disconnected if the pool is full or closed.
+     *
+     * @param client
+     *            the client to return.
+     */
+    void release(FTPClient client) {
+
+        synchronized (this) {
+            evictExpired();
+
+            if (!closed && idle.size() < maxIdle && client.isConnected()) {
+                idle.addFirst(new IdleClient(client, System.currentTimeMillis()));
+                return;
+            }
+        }
+
+        disconnect(client);
+    }
+
+    /**
+     * Disconnect a client that is in an unknown state, for example after a failed transfer, instead of returning it to the pool.
+     *
+     * @param client
+     *            the client to discard.
+     */
+    void discard(FTPClient client) {
+        disconnect(client);
+    }
+
+    /**
+     * Disconnect all idle clients. Clients that are still in use are disconnected when they are released.
+     */
+    void close() {
+
+        ArrayDeque<IdleClient> tmp;
+
+        synchronized (this) {
+            closed = true;
+            tmp = new ArrayDeque<>(idle);
+            idle.clear();
+        }
+
+        for (IdleClient c : tmp) {
+            disconnect(c.client);
+        }
+    }
+
+    synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    // Must be called while holding the lock.
+    private void evictExpired() {
+
+        long now = System.currentTimeMillis();
+
+        Iterator<IdleClient> it = idle.descendingIterator();
+
+        while (it.hasNext()) {
+            IdleClient c = it.next();
+
+            if (now - c.since < idleTimeout) {
+                // The remaining clients have been idle for a shorter time.
+                break;
+            }
+
+            it.remove();
+            disconnect(c.client);
+        }
+    }
+
+    private static boolean isHealthy(FTPClient client) {
+        try {
+            return client.isConnected() && client.sendNoOp();
+        } catch (IOException e) {
+            LOGGER.debug("Pooled ftp client failed health check", e);
+            return false;
+        }
+    }
+
+    private static void disconnect(FTPClient client) {
+        try {
+            client.disconnect();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to disconnect ftp client", e);
+        }
+    }
+}
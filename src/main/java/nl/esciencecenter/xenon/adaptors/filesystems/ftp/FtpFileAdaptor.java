@@ -60,12 +60,27 @@ public class FtpFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The maximum number of idle connections kept for reuse by file transfers. This does not limit the number of connections in use. */
+    public static final String MAX_IDLE_CONNECTIONS = PREFIX + "maxIdleConnections";
+
+    /** The time after which an idle pooled connection is closed. */
+    public static final String POOL_IDLE_TIMEOUT = PREFIX + "poolIdleTimeout";
+
+    /** The time a directory listing is cached for attribute lookups. */
+    public static final String LISTING_CACHE_TIMEOUT = PREFIX + "listingCacheTimeout";
+
     /** The locations supported by this adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "host[:port][/workdir]" };
 
     /** List of properties supported by this FTP adaptor */
     private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes)."),
+            new XenonPropertyDescription(MAX_IDLE_CONNECTIONS, Type.NATURAL, "4",
+                    "The maximum number of idle connections kept for reuse by file transfers (0 disables reuse). Each open stream uses a "
+                            + "connection of its own, so this does not limit the number of connections in use."),
+            new XenonPropertyDescription(POOL_IDLE_TIMEOUT, Type.NATURAL, "30000", "The time after which an idle pooled connection is closed (in milliseconds)."),
+            new XenonPropertyDescription(LISTING_CACHE_TIMEOUT, Type.NATURAL, "2000",
+                    "The time a directory listing is cached to answer attribute lookups (in milliseconds, 0 disables caching).") };
 
     public FtpFileAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -131,6 +146,26 @@ public class FtpFileAdaptor extends FileAdaptor {
                     "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
         }
 
+        long maxIdleConnections = xp.getNaturalProperty(MAX_IDLE_CONNECTIONS);
+
+        if (maxIdleConnections < 0 || maxIdleConnections >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + MAX_IDLE_CONNECTIONS + ": " + maxIdleConnections + " (must be between 0 and " + Integer.MAX_VALUE + ")");
+        }
+
+        long poolIdleTimeout = xp.getNaturalProperty(POOL_IDLE_TIMEOUT);
+
+        if (poolIdleTimeout < 0) {
+            throw new InvalidPropertyException(ADAPTOR_NAME, "Invalid value for " + POOL_IDLE_TIMEOUT + ": " + poolIdleTimeout + " (must be 0 or larger)");
+        }
+
+        long listingCacheTimeout = xp.getNaturalProperty(LISTING_CACHE_TIMEOUT);
+
+        if (listingCacheTimeout < 0) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + LISTING_CACHE_TIMEOUT + ": " + listingCacheTimeout + " (must be 0 or larger)");
+        }
+
         FTPClient ftpClient = connect(location, credential);
 
         String cwd = null;
@@ -148,7 +183,8 @@ public class FtpFileAdaptor extends FileAdaptor {
 
         LOGGER.debug("CWD is {}", cwd);
 
-        return new FtpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, new Path(cwd), (int) bufferSize, ftpClient, credential, this, xp);
+        return new FtpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, new Path(cwd), (int) bufferSize, (int) maxIdleConnections, poolIdleTimeout,
+                listingCacheTimeout, ftpClient, credential, this, xp);
     }
 
     private String getCurrentWorkingDirectory(FTPClient ftpClient, String location) throws XenonException {
@@ -25,7 +25,10 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.net.ftp.FTPClient;
@@ -58,16 +61,46 @@ public class FtpFileSystem extends FileSystem {
     private static final int[] USER_TYPES = { FTPFile.USER_ACCESS, FTPFile.GROUP_ACCESS, FTPFile.WORLD_ACCESS };
 
     private final FTPClient ftpClient;
-    private final Credential credential;
-    private final FtpFileAdaptor adaptor;
+    private final FtpClientPool pool;
 
+    // Maximum number of directory listings kept in the listing cache.
+    private static final int MAX_CACHED_LISTINGS = 1000;
+
+    // Listings of parent directories used to answer attribute lookups, so successive lookups of siblings cost a single LIST.
+    // Kept in least-recently-used order and capped at MAX_CACHED_LISTINGS; all access is synchronized on the map itself.
+    private final Map<String, CachedListing> listingCache = new LinkedHashMap<String, CachedListing>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedListing> eldest) {
+            return size() > MAX_CACHED_LISTINGS;
+        }
+    };
+    private final long listingCacheTimeout;
+
+    private static class CachedListing {
+
+        private final FTPFile[] files;
+        private final long time;
+
+        CachedListing(FTPFile[] files, long time) {
+            this.files = files;
+            this.time = time;
+        }
+    }
+
+    // Returns the client of a stream to the pool when the stream is closed, or disconnects it if the transfer failed.
     private static class CloseableClient implements Closeable {
 
         private final FTPClient client;
+        private final FtpClientPool pool;
+        private final Runnable onClose;
         private boolean closed = false;
 
-        CloseableClient(FTPClient client) {
+        CloseableClient(FTPClient client, FtpClientPool pool, Runnable onClose) {
             this.client = client;
+            this.pool = pool;
+            this.onClose = onClose;
         }
 
         @Override
@@ -75,18 +108,35 @@ public class FtpFileSystem extends FileSystem {
             // Added functionality:
             if (!closed) {
                 closed = true;
-                client.completePendingCommand();
-                client.disconnect();
+
+                boolean completed = false;
+
+                try {
+                    completed = client.completePendingCommand();
+                } finally {
+                    onClose.run();
+
+                    if (completed) {
+                        pool.release(client);
+                    } else {
+                        pool.discard(client);
+                    }
+                }
             }
         }
     }
 
     protected FtpFileSystem(String uniqueID, String name, String location, Path entryPath, int bufferSize, FTPClient ftpClient, Credential credential,
             FtpFileAdaptor adaptor, XenonProperties properties) {
+        this(uniqueID, name, location, entryPath, bufferSize, 0, 0, 0, ftpClient, credential, adaptor, properties);
+    }
+
+    protected FtpFileSystem(String uniqueID, String name, String location, Path entryPath, int bufferSize, int maxIdleConnections, long poolIdleTimeout,
+            long listingCacheTimeout, FTPClient ftpClient, Credential credential, FtpFileAdaptor adaptor, XenonProperties properties) {
         super(uniqueID, name, location, credential, entryPath, bufferSize, properties);
         this.ftpClient = ftpClient;
-        this.credential = credential;
-        this.adaptor = adaptor;
+        this.pool = new FtpClientPool(() -> adaptor.connect(location, credential), maxIdleConnections, poolIdleTimeout);
+        this.listingCacheTimeout = listingCacheTimeout;
     }
 
     @Override
@@ -97,6 +147,9 @@ public class FtpFileSystem extends FileSystem {
             throw new NotConnectedException(ADAPTOR_NAME, "File system is already closed");
         }
 
+        pool.close();
+        clearListings();
+
         try {
             ftpClient.disconnect();
         } catch (IOException e) {
@@ -209,6 +262,72 @@ public class FtpFileSystem extends FileSystem {
         checkClientReply(ftpClient, message);
     }
 
+    private static String parentKey(Path path) {
+        Path parent = path.getParent();
+        return parent == null ? "/" : parent.toString();
+    }
+
+    private FTPFile[] getCachedListing(String dir) {
+
+        if (listingCacheTimeout <= 0) {
+            return null;
+        }
+
+        synchronized (listingCache) {
+            CachedListing c = listingCache.get(dir);
+
+            if (c == null) {
+                return null;
+            }
+
+            if (System.currentTimeMillis() - c.time >= listingCacheTimeout) {
+                listingCache.remove(dir);
+                return null;
+            }
+
+            return c.files;
+        }
+    }
+
+    private void cacheListing(String dir, FTPFile[] files) {
+
+        if (listingCacheTimeout <= 0 || files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        synchronized (listingCache) {
+            // Expired listings are otherwise only dropped when looked up again, so purge them here.
+            Iterator<CachedListing> it = listingCache.values().iterator();
+
+            while (it.hasNext()) {
+                if (now - it.next().time >= listingCacheTimeout) {
+                    it.remove();
+                }
+            }
+
+            listingCache.put(dir, new CachedListing(files, now));
+        }
+    }
+
+    private void removeListing(String dir) {
+        synchronized (listingCache) {
+            listingCache.remove(dir);
+        }
+    }
+
+    private void clearListings() {
+        synchronized (listingCache) {
+            listingCache.clear();
+        }
+    }
+
+    // Called whenever this file system changes path, so the cached listing of its parent is no longer valid.
+    private void invalidateListing(Path path) {
+        removeListing(parentKey(path));
+    }
+
     @Override
     public void rename(Path source, Path target) throws XenonException {
 
@@ -228,6 +347,9 @@ public class FtpFileSystem extends FileSystem {
         assertPathNotExists(absTarget);
         assertParentDirectoryExists(absTarget);
 
+        // A renamed directory moves all paths below it, so drop all cached listings.
+        clearListings();
+
         try {
             ftpClient.rename(absSource.toString(), absTarget.toString());
         } catch (Exception e) {
@@ -247,6 +369,8 @@ public class FtpFileSystem extends FileSystem {
         assertPathNotExists(absPath);
         assertParentDirectoryExists(absPath);
 
+        invalidateListing(absPath);
+
         try {
             ftpClient.makeDirectory(absPath.toString());
         } catch (Exception e) {
@@ -265,6 +389,8 @@ public class FtpFileSystem extends FileSystem {
         assertPathNotExists(absPath);
         assertParentDirectoryExists(absPath);
 
+        invalidateListing(absPath);
+
         try {
             ByteArrayInputStream dummy = new ByteArrayInputStream(new byte[0]);
             ftpClient.storeFile(absPath.toString(), dummy);
@@ -285,6 +411,9 @@ public class FtpFileSystem extends FileSystem {
 
         assertIsOpen();
 
+        invalidateListing(path);
+        removeListing(path.toString());
+
         try {
             ftpClient.removeDirectory(path.toString());
         } catch (Exception e) {
@@ -299,6 +428,8 @@ public class FtpFileSystem extends FileSystem {
 
         assertIsOpen();
 
+        invalidateListing(path);
+
         try {
             ftpClient.deleteFile(path.toString());
         } catch (Exception e) {
@@ -370,6 +501,14 @@ public class FtpFileSystem extends FileSystem {
         // FTP servers seems to vary. Instead,
         // we get the listing of the parent directory and extract the
         // information we need from there.
+        String key = parentKey(path);
+
+        FTPFile[] cached = getCachedListing(key);
+
+        if (cached != null) {
+            return findFTPFile(cached, path);
+        }
+
         try {
             Path p = path.getParent();
 
@@ -391,6 +530,8 @@ public class FtpFileSystem extends FileSystem {
 
             ftpClient.changeWorkingDirectory(originalWorkingDirectory);
 
+            cacheListing(key, files);
+
             return findFTPFile(files, path);
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to get attributes for path: " + path, e);
@@ -412,7 +553,12 @@ public class FtpFileSystem extends FileSystem {
         try {
             ArrayList<PathAttributes> result = new ArrayList<>();
 
-            for (FTPFile f : ftpClient.listFiles(path.toString(), FTPFileFilters.NON_NULL)) {
+            FTPFile[] files = ftpClient.listFiles(path.toString(), FTPFileFilters.NON_NULL);
+
+            // The attributes of the entries are often looked up right after listing (e.g. when copying a directory), so keep the listing.
+            cacheListing(path.toString(), files);
+
+            for (FTPFile f : files) {
                 result.add(convertAttributes(path.resolve(f.getName()), f));
             }
 
@@ -432,18 +578,22 @@ public class FtpFileSystem extends FileSystem {
         assertPathIsFile(absPath);
 
         // Since FTP connections can only do a single thing a time, we need a
-        // new FTPClient to handle the stream.
-        FTPClient newClient = adaptor.connect(getLocation(), credential);
-        newClient.enterLocalPassiveMode();
+        // separate FTPClient to handle the stream.
+        FTPClient newClient = pool.acquire();
 
         try {
             InputStream in = newClient.retrieveFileStream(absPath.toString());
 
             checkClientReply(newClient, "Failed to read from path: " + absPath.toString());
 
-            return new TransferClientInputStream(in, new CloseableClient(newClient));
+            return new TransferClientInputStream(in, new CloseableClient(newClient, pool, () -> {
+            }));
         } catch (IOException e) {
+            pool.discard(newClient);
             throw new XenonException(ADAPTOR_NAME, "Failed to read from path: " + absPath);
+        } catch (XenonException e) {
+            pool.discard(newClient);
+            throw e;
         }
     }
 
@@ -457,17 +607,22 @@ public class FtpFileSystem extends FileSystem {
         assertParentDirectoryExists(absPath);
 
         // Since FTP connections can only do a single thing a time, we need a
-        // new FTPClient to handle the stream.
-        FTPClient newClient = adaptor.connect(getLocation(), credential);
-        newClient.enterLocalPassiveMode();
+        // separate FTPClient to handle the stream.
+        FTPClient newClient = pool.acquire();
+
+        invalidateListing(absPath);
 
         try {
             newClient.setFileType(FTPClient.BINARY_FILE_TYPE);
             OutputStream out = newClient.storeFileStream(absPath.toString());
             checkClientReply(newClient, "Failed to write to path: " + absPath.toString());
-            return new TransferClientOutputStream(out, new CloseableClient(newClient));
+            return new TransferClientOutputStream(out, new CloseableClient(newClient, pool, () -> invalidateListing(absPath)));
         } catch (IOException e) {
+            pool.discard(newClient);
             throw new XenonException(ADAPTOR_NAME, "Failed to write to path: " + absPath);
+        } catch (XenonException e) {
+            pool.discard(newClient);
+            throw e;
         }
     }
 
@@ -485,20 +640,26 @@ public class FtpFileSystem extends FileSystem {
         assertPathExists(absPath);
         assertPathIsNotDirectory(absPath);
 
+        // Since FTP connections can only do a single thing a time, we need
+        // a separate FTPClient to handle the stream.
+        FTPClient newClient = pool.acquire();
+
+        invalidateListing(absPath);
+
         try {
-            // Since FTP connections can only do a single thing a time, we need
-            // a new FTPClient to handle the stream.
-            FTPClient newClient = adaptor.connect(getLocation(), credential);
-            newClient.enterLocalPassiveMode();
             OutputStream out = newClient.appendFileStream(absPath.toString());
 
             if (out == null) {
-                checkClientReply("Failed to append to path: " + absPath.toString());
+                checkClientReply(newClient, "Failed to append to path: " + absPath.toString());
             }
 
-            return new TransferClientOutputStream(out, new CloseableClient(newClient));
+            return new TransferClientOutputStream(out, new CloseableClient(newClient, pool, () -> invalidateListing(absPath)));
         } catch (IOException e) {
+            pool.discard(newClient);
             throw new XenonException(ADAPTOR_NAME, "Failed to append to path: " + absPath);
+        } catch (XenonException e) {
+            pool.discard(newClient);
+            throw e;
         }
     }
 
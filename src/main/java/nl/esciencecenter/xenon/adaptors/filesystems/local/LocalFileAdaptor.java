@@ -57,12 +57,16 @@ public class LocalFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently during a recursive copy. */
+    public static final String COPY_THREADS = PREFIX + "copyThreads";
+
     /** The locations supported by the adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "(null)", "(empty string)", "[/workdir]", "driveletter:[/workdir]" };
 
     /** List of properties supported by this FTP adaptor */
     private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes)."),
+            new XenonPropertyDescription(COPY_THREADS, Type.NATURAL, "1", "The number of files to transfer concurrently during a recursive copy.") };
 
     public LocalFileAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -119,9 +123,16 @@ public class LocalFileAdaptor extends FileAdaptor {
                     "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
         }
 
+        long copyThreads = xp.getNaturalProperty(COPY_THREADS);
+
+        if (copyThreads <= 0 || copyThreads >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + COPY_THREADS + ": " + copyThreads + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+        }
+
         Path entry = new Path(LocalFileSystemUtils.getLocalSeparator(), path);
         // for Windows remove the drive letter from entry?
 
-        return new LocalFileSystem(getNewUniqueID(), location, new DefaultCredential(), root, entry, (int) bufferSize, xp);
+        return new LocalFileSystem(getNewUniqueID(), location, new DefaultCredential(), root, entry, (int) bufferSize, (int) copyThreads, xp);
     }
 }
@@ -21,10 +21,12 @@ import static nl.esciencecenter.xenon.utils.LocalFileSystemUtils.getLocalRootles
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFileAttributeView;
@@ -37,6 +39,7 @@ import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.filesystems.CopyCancelledException;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
@@ -47,11 +50,19 @@ import nl.esciencecenter.xenon.utils.LocalFileSystemUtils;
 
 public class LocalFileSystem extends FileSystem {
 
+    /** Number of bytes the kernel copies per transferTo call, independent of the buffer size used for streamed copies. */
+    private static final long TRANSFER_CHUNK_SIZE = 32L * 1024 * 1024;
+
     private final String root;
 
     protected LocalFileSystem(String uniqueID, String location, Credential credential, String root, Path entryPath, int bufferSize,
             XenonProperties properties) {
-        super(uniqueID, ADAPTOR_NAME, location, credential, entryPath, bufferSize, properties);
+        this(uniqueID, location, credential, root, entryPath, bufferSize, 1, properties);
+    }
+
+    protected LocalFileSystem(String uniqueID, String location, Credential credential, String root, Path entryPath, int bufferSize, int copyThreads,
+            XenonProperties properties) {
+        super(uniqueID, ADAPTOR_NAME, location, credential, entryPath, bufferSize, copyThreads, properties);
         this.root = root;
     }
 
@@ -161,6 +172,8 @@ public class LocalFileSystem extends FileSystem {
             }
 
             return result;
+        } catch (NoSuchFileException e) {
+            throw new NoSuchPathException(ADAPTOR_NAME, "Path does not exist: " + p, e);
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Cannot read attributes.", e);
         }
@@ -309,11 +322,61 @@ public class LocalFileSystem extends FileSystem {
         }
     }
 
+    /*
+     * When both sides are local, the data is copied by the kernel using FileChannel.transferTo (sendfile on Linux), instead of through a buffer on the
+     * heap. The transfer is done in large fixed chunks, so the number of system calls stays small while progress is still reported and cancellation is
+     * checked between chunks.
+     */
+    @Override
+    protected void transferFile(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
+        if (!(destinationFS instanceof LocalFileSystem)) {
+            super.transferFile(source, attributes, destinationFS, destination, callback);
+            return;
+        }
+
+        LocalFileSystem target = (LocalFileSystem) destinationFS;
+        target.assertPathNotExists(destination);
+
+        try (FileChannel in = FileChannel.open(javaPath(source), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target.javaPath(destination), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+
+            long size = in.size();
+            long position = 0;
+
+            while (position < size) {
+                long n = in.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), out);
+
+                if (n <= 0) {
+                    // The source shrunk while copying.
+                    break;
+                }
+
+                position += n;
+                callback.addBytesCopied(n);
+
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(ADAPTOR_NAME, "Copy cancelled by user");
+                }
+            }
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to copy " + source + " to " + destination, e);
+        }
+    }
+
     @Override
     public PathAttributes getAttributes(Path path) throws XenonException {
-        Path absPath = toAbsolutePath(path);
-        assertPathExists(absPath);
-        return getLocalFileAttributes(absPath);
+        return getLocalFileAttributes(toAbsolutePath(path));
+    }
+
+    @Override
+    protected PathAttributes statOrNull(Path path) throws XenonException {
+        try {
+            return getLocalFileAttributes(toAbsolutePath(path));
+        } catch (NoSuchPathException e) {
+            return null;
+        }
     }
 
     @Override
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of SFTP channels on the SSH session of a single SftpFileSystem.
+ *
+ * Requests on a single SFTP channel are handled one after the other by the server, so concurrent operations are spread over up to <code>maxClients</code>
+ * channels. Each operation or open stream leases a client, preferring an idle one. A new channel is opened when all clients are in use and the pool is not
+ * full. Once the pool is full, leases share the least used client instead of waiting, as an SftpClient can handle concurrent requests. This also means
+ * that an operation that holds two leases at once, like a copy within the same file system, can never deadlock. If the server refuses to open another
+ * channel, the pool shrinks to the channels it already has. Broken clients do not count against <code>maxClients</code>, even while they are still leased.
+ */
+class SftpClientPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SftpClientPool.class);
+
+    /** The maximum time (in ms.) to wait for a client that is being created by another thread. */
+    static final long PENDING_TIMEOUT = 60000L;
+
+    @FunctionalInterface
+    interface ClientFactory {
+        SftpClient create() throws IOException;
+    }
+
+    private static class Entry {
+        private final SftpClient client;
+        private int leases = 0;
+
+        Entry(SftpClient client) {
+            this.client = client;
+        }
+    }
+
+    private final ClientFactory factory;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private int maxClients;
+    private int pending = 0;
+    private boolean closed = false;
+
+    SftpClientPool(ClientFactory factory, SftpClient initial, int maxClients) {
+        this.factory = factory;
+        this.maxClients = maxClients;
+        entries.add(new Entry(initial));
+    }
+
+    /**
+     * Lease a client from the pool. The lease must be returned with {@link #release(SftpClient)}.
+     *
+     * @return a client to use.
+     * @throws IOException
+     *             if the pool is closed, or no client is available and a new one could not be created in time.
+     */
+    SftpClient acquire() throws IOException {
+
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + PENDING_TIMEOUT;
+
+            while (true) {
+                if (closed) {
+                    throw new IOException("sftp client is closed");
+                }
+
+                Entry best = leastUsed();
+                int live = liveCount();
+
+                if (best != null && (best.leases == 0 || live + pending >= maxClients)) {
+                    best.leases++;
+                    return best.client;
+                }
+
+                if (live + pending < maxClients) {
+                    pending++;
+                    break;
+                }
+
+                // There are no live clients, and all free slots are taken by clients that are being created, so wait for one of them.
+                long left = deadline - System.currentTimeMillis();
+
+                if (left <= 0) {
+                    throw new IOException("Timeout while waiting for sftp client");
+                }
+
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for sftp client");
+                }
+            }
+        }
+
+        SftpClient client = null;
+        IOException error = null;
+        boolean shrunk = false;
+
+        try {
+            client = factory.create();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        synchronized (this) {
+            pending--;
+            notifyAll();
+
+            if (client != null && !closed) {
+                Entry e = new Entry(client);
+                e.leases++;
+                entries.add(e);
+                LOGGER.debug("Opened sftp channel {} of {}", entries.size(), maxClients);
+                return client;
+            }
+
+            int live = liveCount();
+
+            if (client == null && live > 0) {
+                // The server may limit the number of channels per connection, so make do with the clients we have.
+                LOGGER.debug("Failed to open extra sftp channel, limiting pool to {} channels", live, error);
+                maxClients = live;
+                shrunk = true;
+            }
+        }
+
+        if (client != null) {
+            // The pool was closed while the client was being created.
+            closeQuietly(client);
+            throw new IOException("sftp client is closed");
+        }
+
+        if (!shrunk) {
+            throw error;
+        }
+
+        return acquire();
+    }
+
+    /**
+     * Return a leased client to the pool.
+     *
+     * @param client
+     *            the client to return.
+     */
+    void release(SftpClient client) {
+
+        synchronized (this) {
+            Iterator<Entry> it = entries.iterator();
+
+            while (it.hasNext()) {
+                Entry e = it.next();
+
+                if (e.client == client) {
+                    e.leases--;
+
+                    // Someone may be waiting for a client, or for the slot of a broken one.
+                    notifyAll();
+
+                    if (e.leases > 0 || client.isOpen()) {
+                        return;
+                    }
+
+                    it.remove();
+                    break;
+                }
+            }
+        }
+
+        // The client was broken or the pool is closed.
+        closeQuietly(client);
+    }
+
+    /**
+     * Close all clients, including the clients that are still leased.
+     *
+     * @throws IOException
+     *             if a client failed to close.
+     */
+    void close() throws IOException {
+
+        List<Entry> tmp;
+
+        synchronized (this) {
+            closed = true;
+            tmp = new ArrayList<>(entries);
+            entries.clear();
+            notifyAll();
+        }
+
+        IOException ex = null;
+
+        for (Entry e : tmp) {
+            try {
+                e.client.close();
+            } catch (IOException e1) {
+                if (ex == null) {
+                    ex = e1;
+                }
+            }
+        }
+
+        if (ex != null) {
+            throw ex;
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    synchronized int getClientCount() {
+        return entries.size();
+    }
+
+    // Must be called while holding the lock. Drops broken clients that are no longer used.
+    private Entry leastUsed() {
+
+        Entry best = null;
+
+        Iterator<Entry> it = entries.iterator();
+
+        while (it.hasNext()) {
+            Entry e = it.next();
+
+            if (!e.client.isOpen()) {
+                if (e.leases == 0) {
+                    it.remove();
+                    notifyAll();
+                }
+                continue;
+            }
+
+            if (best == null || e.leases < best.leases) {
+                best = e;
+            }
+        }
+
+        return best;
+    }
+
+    // Must be called while holding the lock.
+    private int liveCount() {
+
+        int count = 0;
+
+        for (Entry e : entries) {
+            if (e.client.isOpen()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static void closeQuietly(SftpClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close sftp client", e);
+        }
+    }
+}
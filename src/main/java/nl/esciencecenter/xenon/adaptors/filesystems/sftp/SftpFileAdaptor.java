@@ -20,7 +20,6 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
 
-import org.apache.sshd.client.SshClient;
 import org.apache.sshd.client.subsystem.sftp.SftpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +33,7 @@ import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
-import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHUtil;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnectionPool;
 import nl.esciencecenter.xenon.credentials.CertificateCredential;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.CredentialMap;
@@ -90,6 +89,21 @@ public class SftpFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently during a recursive copy. */
+    public static final String COPY_THREADS = PREFIX + "copyThreads";
+
+    /** The size of the byte ranges in which a large file is transferred. */
+    public static final String CHUNK_SIZE = PREFIX + "chunkSize";
+
+    /** The number of byte ranges of a single file to transfer concurrently. */
+    public static final String CHUNK_REQUESTS = PREFIX + "chunkRequests";
+
+    /** The maximum number of SFTP channels used concurrently by a file system. */
+    public static final String CHANNELS = PREFIX + "channels";
+
+    /** The number of directories to list concurrently during a recursive listing. */
+    public static final String LIST_THREADS = PREFIX + "listThreads";
+
     /** The locations supported by this adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "host[:port][/workdir]" };
 
@@ -103,7 +117,17 @@ public class SftpFileAdaptor extends FileAdaptor {
             new XenonPropertyDescription(AGENT_FORWARDING, Type.BOOLEAN, "false", "Use ssh-agent forwarding when setting up a connection."),
             new XenonPropertyDescription(CONNECTION_TIMEOUT, Type.NATURAL, "10000",
                     "The timeout for creating and authenticating connections (in milliseconds)."),
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes)."),
+            new XenonPropertyDescription(COPY_THREADS, Type.NATURAL, "1", "The number of files to transfer concurrently during a recursive copy."),
+            new XenonPropertyDescription(CHUNK_SIZE, Type.SIZE, "1M", "The size of the byte ranges in which a large file is transferred (in bytes)."),
+            new XenonPropertyDescription(CHUNK_REQUESTS, Type.NATURAL, "1",
+                    "The number of byte ranges of a single file to transfer concurrently. Files smaller than two byte ranges, or a value of 1, "
+                            + "use a single sequential stream."),
+            new XenonPropertyDescription(CHANNELS, Type.NATURAL, "4",
+                    "The maximum number of SFTP channels a file system uses for concurrent operations and open streams. Extra channels are only opened "
+                            + "when needed."),
+            new XenonPropertyDescription(LIST_THREADS, Type.NATURAL, "4",
+                    "The number of directories to list concurrently during a recursive listing. A value of 1 lists one directory at a time.") };
 
     public SftpFileAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -136,17 +160,52 @@ public class SftpFileAdaptor extends FileAdaptor {
                     "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
         }
 
+        long copyThreads = xp.getNaturalProperty(COPY_THREADS);
+
+        if (copyThreads <= 0 || copyThreads >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + COPY_THREADS + ": " + copyThreads + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+        }
+
+        long chunkSize = xp.getSizeProperty(CHUNK_SIZE);
+
+        if (chunkSize <= 0 || chunkSize >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + CHUNK_SIZE + ": " + chunkSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+        }
+
+        long chunkRequests = xp.getNaturalProperty(CHUNK_REQUESTS);
+
+        if (chunkRequests <= 0 || chunkRequests >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + CHUNK_REQUESTS + ": " + chunkRequests + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+        }
+
+        long channels = xp.getNaturalProperty(CHANNELS);
+
+        if (channels <= 0 || channels >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + CHANNELS + ": " + channels + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+        }
+
+        long listThreads = xp.getNaturalProperty(LIST_THREADS);
+
+        if (listThreads <= 0 || listThreads >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + LIST_THREADS + ": " + listThreads + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+        }
+
         boolean loadKnownHosts = xp.getBooleanProperty(LOAD_STANDARD_KNOWN_HOSTS);
         boolean loadSSHConfig = xp.getBooleanProperty(LOAD_SSH_CONFIG);
         boolean strictHostCheck = xp.getBooleanProperty(STRICT_HOST_KEY_CHECKING);
         boolean useSSHAgent = xp.getBooleanProperty(AGENT);
         boolean useAgentForwarding = xp.getBooleanProperty(AGENT_FORWARDING);
 
-        SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
-
         long timeout = xp.getNaturalProperty(CONNECTION_TIMEOUT);
 
-        SSHConnection session = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, (int) bufferSize, timeout);
+        // The connection is shared with other file systems and schedulers that connect to the same location.
+        SSHConnection session = SSHConnectionPool.getDefault().connect(ADAPTOR_NAME, location, credential, loadKnownHosts, loadSSHConfig, strictHostCheck,
+                useSSHAgent, useAgentForwarding, timeout);
 
         SftpClient sftpClient = null;
 
@@ -154,7 +213,6 @@ public class SftpFileAdaptor extends FileAdaptor {
             sftpClient = session.createSftpClient();
         } catch (IOException e) {
             session.close();
-            client.close(true);
             throw new XenonException(ADAPTOR_NAME, "Failed to create SFTP session", e);
         }
 
@@ -164,11 +222,12 @@ public class SftpFileAdaptor extends FileAdaptor {
             cwd = getCurrentWorkingDirectory(sftpClient, location);
         } catch (Exception e) {
             session.close();
-            client.close(true);
             throw e;
         }
 
-        return new SftpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, new Path(cwd), (int) bufferSize, session, sftpClient, xp);
+        return new SftpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, new Path(cwd), (int) bufferSize, (int) copyThreads, (int) chunkSize,
+                (int) chunkRequests, (int) channels, (int) listThreads, session,
+                sftpClient, xp);
     }
 
     private String getCurrentWorkingDirectory(SftpClient sftpClient, String location) throws XenonException {
@@ -17,16 +17,31 @@ package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
 
 import static nl.esciencecenter.xenon.adaptors.filesystems.sftp.SftpFileAdaptor.ADAPTOR_NAME;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
 import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.common.PropertyResolverUtils;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
 import org.slf4j.Logger;
@@ -37,11 +52,13 @@ import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.EndOfFileException;
 import nl.esciencecenter.xenon.adaptors.filesystems.NoSpaceException;
+import nl.esciencecenter.xenon.adaptors.filesystems.ParallelListIterator;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.adaptors.filesystems.PermissionDeniedException;
 import nl.esciencecenter.xenon.adaptors.filesystems.PosixFileUtils;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.filesystems.CopyCancelledException;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.InvalidPathException;
@@ -50,19 +67,156 @@ import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+import nl.esciencecenter.xenon.utils.ShellUtils;
 
 public class SftpFileSystem extends FileSystem {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SftpFileSystem.class);
 
-    private final SftpClient client;
+    // Interval (in ms.) at which the progress of a copy on the server is reported, and cancellation is checked.
+    private static final long REMOTE_COPY_POLL_INTERVAL = 1000;
+
+    // Time (in ms.) to wait for a command on the server to start, and for the probe that checks if cp can be run on the server.
+    private static final long REMOTE_COPY_PROBE_TIMEOUT = 10000;
+
+    // Time (in ms.) after which a copy on the server that makes no progress is abandoned in favour of a streamed copy.
+    static final long REMOTE_COPY_STALL_TIMEOUT = 60000;
+
+    // The command used to check if cp can be run on the server. It prints the path of cp.
+    private static final String REMOTE_COPY_PROBE = "command -v cp";
+
+    // Returned by copyOnServer when the file was copied on the server.
+    private static final long COPIED_ON_SERVER = -1;
+
+    // Exit codes of a shell for a command that could not be executed or was not found.
+    private static final int EXIT_NOT_EXECUTABLE = 126;
+    private static final int EXIT_NOT_FOUND = 127;
+
+    // The SFTP channels used by this file system. Each operation or open stream leases one.
+    private final SftpClientPool clients;
     private final SSHConnection connection;
 
+    // Size of the byte ranges and the number of ranges in flight when transferring large files.
+    private final int chunkSize;
+    private final int chunkRequests;
+    private final ExecutorService chunkPool;
+
+    // The number of directories listed concurrently during a recursive listing.
+    private final int listThreads;
+    private final ExecutorService listPool;
+
+    // Whether files copied within the server may be copied by running cp on the server. Null until the server has been probed, and cleared when a copy on
+    // the server fails in a way that means it will not work for other files either.
+    private Boolean remoteCopy = null;
+    private final Object remoteCopyLock = new Object();
+
+    private long remoteCopyStallTimeout = REMOTE_COPY_STALL_TIMEOUT;
+
     protected SftpFileSystem(String uniqueID, String name, String location, Credential credential, Path entryPath, int bufferSize, SSHConnection connection,
             SftpClient client, XenonProperties properties) {
-        super(uniqueID, name, location, credential, entryPath, bufferSize, properties);
-        this.client = client;
+        this(uniqueID, name, location, credential, entryPath, bufferSize, 1, bufferSize, 1, connection, client, properties);
+    }
+
+    protected SftpFileSystem(String uniqueID, String name, String location, Credential credential, Path entryPath, int bufferSize, int copyThreads,
+            int chunkSize, int chunkRequests, SSHConnection connection, SftpClient client, XenonProperties properties) {
+        this(uniqueID, name, location, credential, entryPath, bufferSize, copyThreads, chunkSize, chunkRequests, 1, 1, connection, client, properties);
+    }
+
+    protected SftpFileSystem(String uniqueID, String name, String location, Credential credential, Path entryPath, int bufferSize, int copyThreads,
+            int chunkSize, int chunkRequests, int channels, int listThreads, SSHConnection connection, SftpClient client, XenonProperties properties) {
+        super(uniqueID, name, location, credential, entryPath, bufferSize, copyThreads, properties);
+        this.clients = new SftpClientPool(connection::createSftpClient, client, channels);
         this.connection = connection;
+        this.chunkSize = chunkSize;
+        this.chunkRequests = chunkRequests;
+
+        if (chunkRequests > 1) {
+            this.chunkPool = Executors.newFixedThreadPool(chunkRequests, new DaemonThreadFactory("ChunkThread." + uniqueID));
+        } else {
+            this.chunkPool = null;
+        }
+
+        this.listThreads = listThreads;
+
+        if (listThreads > 1) {
+            this.listPool = Executors.newFixedThreadPool(listThreads, new DaemonThreadFactory("ListThread." + uniqueID));
+        } else {
+            this.listPool = null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SftpOperation<T> {
+        T run(SftpClient client) throws IOException;
+    }
+
+    // Runs an operation on a client leased from the pool, so concurrent operations can use separate channels.
+    private <T> T withClient(SftpOperation<T> operation) throws IOException {
+
+        SftpClient client = clients.acquire();
+
+        try {
+            return operation.run(client);
+        } finally {
+            clients.release(client);
+        }
+    }
+
+    // Returns the client of a stream to the pool when the stream is closed.
+    private class ClientInputStream extends FilterInputStream {
+
+        private final SftpClient client;
+        private boolean closed = false;
+
+        ClientInputStream(InputStream in, SftpClient client) {
+            super(in);
+            this.client = client;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+
+                try {
+                    super.close();
+                } finally {
+                    clients.release(client);
+                }
+            }
+        }
+    }
+
+    // Returns the client of a stream to the pool when the stream is closed.
+    private class ClientOutputStream extends FilterOutputStream {
+
+        private final SftpClient client;
+        private boolean closed = false;
+
+        ClientOutputStream(OutputStream out, SftpClient client) {
+            super(out);
+            this.client = client;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream writes byte by byte.
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+
+                try {
+                    out.close();
+                } finally {
+                    clients.release(client);
+                }
+            }
+        }
     }
 
     @Override
@@ -73,11 +227,19 @@ public class SftpFileSystem extends FileSystem {
         IOException ex = null;
 
         try {
-            client.close();
+            clients.close();
         } catch (IOException e) {
             ex = e;
         }
 
+        if (chunkPool != null) {
+            chunkPool.shutdownNow();
+        }
+
+        if (listPool != null) {
+            listPool.shutdownNow();
+        }
+
         connection.close();
         super.close();
 
@@ -90,7 +252,7 @@ public class SftpFileSystem extends FileSystem {
 
     @Override
     public boolean isOpen() throws XenonException {
-        return client.isOpen();
+        return clients.isOpen() && connection.isOpen();
     }
 
     @Override
@@ -111,7 +273,10 @@ public class SftpFileSystem extends FileSystem {
         assertParentDirectoryExists(absTarget);
 
         try {
-            client.rename(absSource.toString(), absTarget.toString());
+            withClient(c -> {
+                c.rename(absSource.toString(), absTarget.toString());
+                return null;
+            });
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Failed to rename path");
         }
@@ -129,7 +294,10 @@ public class SftpFileSystem extends FileSystem {
         assertParentDirectoryExists(absDir);
 
         try {
-            client.mkdir(absDir.toString());
+            withClient(c -> {
+                c.mkdir(absDir.toString());
+                return null;
+            });
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Failed to mkdir");
         }
@@ -170,7 +338,10 @@ public class SftpFileSystem extends FileSystem {
         assertParentDirectoryExists(absLink);
 
         try {
-            client.symLink(absLink.toString(), path.toString());
+            withClient(c -> {
+                c.symLink(absLink.toString(), path.toString());
+                return null;
+            });
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Cannot create link: " + absLink + " -> " + path);
         }
@@ -179,7 +350,10 @@ public class SftpFileSystem extends FileSystem {
     @Override
     protected void deleteFile(Path file) throws XenonException {
         try {
-            client.remove(file.toString());
+            withClient(c -> {
+                c.remove(file.toString());
+                return null;
+            });
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Cannot delete file: " + file);
         }
@@ -188,7 +362,10 @@ public class SftpFileSystem extends FileSystem {
     @Override
     protected void deleteDirectory(Path dir) throws XenonException {
         try {
-            client.rmdir(dir.toString());
+            withClient(c -> {
+                c.rmdir(dir.toString());
+                return null;
+            });
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Cannot delete directory: " + dir);
         }
@@ -201,7 +378,7 @@ public class SftpFileSystem extends FileSystem {
         SftpClient.Attributes result;
 
         try {
-            result = client.lstat(path.toString());
+            result = withClient(c -> c.lstat(path.toString()));
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Failed to retrieve attributes from: " + path);
         }
@@ -215,32 +392,52 @@ public class SftpFileSystem extends FileSystem {
     public boolean exists(Path path) throws XenonException {
 
         LOGGER.debug("exists path = {}", path);
-        try {
-            stat(toAbsolutePath(path));
-            return true;
-        } catch (NoSuchPathException e) {
-            return false;
-        }
+        return statOrNull(path) != null;
     }
 
     @Override
     protected List<PathAttributes> listDirectory(Path path) throws XenonException {
 
+        assertDirectoryExists(path);
+
+        return readDirectory(path);
+    }
+
+    // Lists a directory that is known to exist, without the "." and ".." entries.
+    private List<PathAttributes> readDirectory(Path path) throws XenonException {
         try {
-            assertDirectoryExists(path);
+            return withClient(c -> {
+                ArrayList<PathAttributes> result = new ArrayList<>();
 
-            ArrayList<PathAttributes> result = new ArrayList<>();
+                for (SftpClient.DirEntry f : c.readDir(path.toString())) {
+                    String name = f.getFilename();
 
-            for (SftpClient.DirEntry f : client.readDir(path.toString())) {
-                result.add(convertAttributes(path.resolve(f.getFilename()), f.getAttributes()));
-            }
+                    if (!".".equals(name) && !"..".equals(name)) {
+                        result.add(convertAttributes(path.resolve(name), f.getAttributes()));
+                    }
+                }
 
-            return result;
+                return result;
+            });
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Failed to list directory " + path);
         }
     }
 
+    /*
+     * A recursive listing lists up to listThreads sibling directories at the same time, each on a client of its own if the pool has enough channels, so the
+     * round trips of their OPENDIR and READDIR requests overlap.
+     */
+    @Override
+    protected Iterator<PathAttributes> listIterator(Path dir, boolean recursive) {
+
+        if (!recursive || listPool == null) {
+            return super.listIterator(dir, recursive);
+        }
+
+        return new ParallelListIterator(ADAPTOR_NAME, listPool, listThreads, this::readDirectory, dir);
+    }
+
     @Override
     public InputStream readFromFile(Path path) throws XenonException {
         LOGGER.debug("newInputStream path = {}", path);
@@ -250,10 +447,15 @@ public class SftpFileSystem extends FileSystem {
         assertFileExists(absPath);
 
         InputStream in;
+        SftpClient client = null;
 
         try {
-            in = client.read(absPath.toString());
+            client = clients.acquire();
+            in = new ClientInputStream(client.read(absPath.toString()), client);
         } catch (IOException e) {
+            if (client != null) {
+                clients.release(client);
+            }
             throw new XenonException(ADAPTOR_NAME, "Failed to open stream to read from " + absPath, e);
         }
 
@@ -269,9 +471,21 @@ public class SftpFileSystem extends FileSystem {
         assertPathNotExists(absPath);
         assertParentDirectoryExists(absPath);
 
+        SftpClient client = null;
+
         try {
-            return client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate);
+            client = clients.acquire();
+
+            if (useChunks(size)) {
+                return new ChunkedOutputStream(client, openForWrite(client, absPath));
+            }
+
+            return new ClientOutputStream(
+                    client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate), client);
         } catch (IOException e) {
+            if (client != null) {
+                clients.release(client);
+            }
             throw new XenonException(ADAPTOR_NAME, "Failed open stream to write to: " + absPath, e);
         }
     }
@@ -287,9 +501,15 @@ public class SftpFileSystem extends FileSystem {
         Path absPath = toAbsolutePath(path);
         assertFileExists(absPath);
 
+        SftpClient client = null;
+
         try {
-            return client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Append);
+            client = clients.acquire();
+            return new ClientOutputStream(client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Append), client);
         } catch (IOException e) {
+            if (client != null) {
+                clients.release(client);
+            }
             throw new XenonException(ADAPTOR_NAME, "Failed open stream to write to: " + absPath, e);
         }
     }
@@ -300,6 +520,24 @@ public class SftpFileSystem extends FileSystem {
         return convertAttributes(absPath, stat(absPath));
     }
 
+    // A single lstat, where a missing path is an expected answer rather than an error.
+    @Override
+    protected PathAttributes statOrNull(Path path) throws XenonException {
+
+        Path absPath = toAbsolutePath(path);
+
+        try {
+            return convertAttributes(absPath, withClient(c -> c.lstat(absPath.toString())));
+        } catch (SftpException e) {
+            if (e.getStatus() == SftpConstants.SSH_FX_NO_SUCH_FILE || e.getStatus() == SftpConstants.SSH_FX_NO_SUCH_PATH) {
+                return null;
+            }
+            throw sftpExceptionToXenonException(e, "Failed to retrieve attributes from: " + absPath);
+        } catch (IOException e) {
+            throw sftpExceptionToXenonException(e, "Failed to retrieve attributes from: " + absPath);
+        }
+    }
+
     @Override
     public Path readSymbolicLink(Path link) throws XenonException {
         LOGGER.debug("readSymbolicLink path = {}", link);
@@ -309,7 +547,7 @@ public class SftpFileSystem extends FileSystem {
         Path result;
         assertFileIsSymbolicLink(absLink);
         try {
-            String target = client.readLink(absLink.toString());
+            String target = withClient(c -> c.readLink(absLink.toString()));
 
             if (!target.startsWith(File.separator)) {
                 Path parent = absLink.getParent();
@@ -346,13 +584,574 @@ public class SftpFileSystem extends FileSystem {
             // be changed (learned this the hard way).
             SftpClient.Attributes a = new SftpClient.Attributes();
             a.setPermissions(PosixFileUtils.permissionsToBits(permissions));
-            client.setStat(absPath.toString(), a);
+            withClient(c -> {
+                c.setStat(absPath.toString(), a);
+                return null;
+            });
         } catch (IOException e) {
             throw sftpExceptionToXenonException(e, "Failed to set permissions on: " + absPath);
         }
         LOGGER.debug("setPosixFilePermissions OK");
     }
 
+    @Override
+    protected void transferFile(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
+        CopyCallback progress = callback;
+
+        if (isSameEndpoint(destinationFS) && canCopyOnServer()) {
+
+            long reported = copyOnServer(source, attributes, (SftpFileSystem) destinationFS, destination, callback);
+
+            if (reported == COPIED_ON_SERVER) {
+                return;
+            }
+
+            if (reported > 0) {
+                // The streamed copy starts from scratch, but the progress reported so far is not taken back.
+                progress = new CreditedCallback(callback, reported);
+            }
+        }
+
+        if (!useChunks(attributes.getSize())) {
+            super.transferFile(source, attributes, destinationFS, destination, progress);
+            return;
+        }
+
+        LOGGER.debug("transferFile in chunks source = {} destination = {} size = {}", source, destination, attributes.getSize());
+
+        if (destinationFS instanceof SftpFileSystem) {
+            copyChunks(source, (SftpFileSystem) destinationFS, destination, attributes.getSize(), progress);
+        } else {
+            readChunks(source, destinationFS, destination, attributes.getSize(), progress);
+        }
+
+        LOGGER.debug("transferFile OK");
+    }
+
+    @Override
+    protected boolean isSameEndpoint(FileSystem other) {
+        // Two file systems sharing an SSH session are on the same server, even if their locations are written differently.
+        return super.isSameEndpoint(other) || (other instanceof SftpFileSystem && ((SftpFileSystem) other).connection.getSession() == connection.getSession());
+    }
+
+    void setRemoteCopyStallTimeout(long timeout) {
+        remoteCopyStallTimeout = timeout;
+    }
+
+    // Checks if cp can be run on the server. The server is probed once per file system.
+    private boolean canCopyOnServer() {
+        synchronized (remoteCopyLock) {
+            if (remoteCopy == null) {
+                remoteCopy = probeRemoteCopy();
+                LOGGER.debug("Copy on server {}", remoteCopy ? "enabled" : "disabled");
+            }
+
+            return remoteCopy;
+        }
+    }
+
+    private void disableRemoteCopy() {
+        synchronized (remoteCopyLock) {
+            remoteCopy = false;
+        }
+    }
+
+    /*
+     * Runs a command that prints the path of cp. A server that only allows SFTP may refuse the command, or run an SFTP server instead (for example with
+     * ForceCommand internal-sftp). Such an SFTP server waits for requests on its input, so the input is closed right away, and the command is given a limited
+     * time to finish.
+     */
+    private boolean probeRemoteCopy() {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (ChannelExec channel = connection.createExecChannel(REMOTE_COPY_PROBE)) {
+            PropertyResolverUtils.updateProperty(channel, ChannelExec.REQUEST_EXEC_REPLY, true);
+            channel.setOut(output);
+            channel.setErr(new ByteArrayOutputStream());
+            channel.open().verify(REMOTE_COPY_PROBE_TIMEOUT);
+            channel.getInvertedIn().close();
+
+            if (!channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), REMOTE_COPY_PROBE_TIMEOUT).contains(ClientChannelEvent.CLOSED)) {
+                LOGGER.debug("Probe for cp on server did not finish within {} ms", REMOTE_COPY_PROBE_TIMEOUT);
+                return false;
+            }
+
+            Integer status = channel.getExitStatus();
+            String result = output.toString().trim();
+
+            LOGGER.debug("Probe for cp on server returned {}: {}", status, result);
+
+            return status != null && status == 0 && result.endsWith("cp");
+        } catch (IOException e) {
+            LOGGER.debug("Server does not allow commands", e);
+            return false;
+        }
+    }
+
+    /*
+     * Copies a file within the server by running cp over the SSH session, so the data does not travel to this client and back. Returns COPIED_ON_SERVER if
+     * the copy succeeded. Otherwise, anything cp left behind is removed, and the number of bytes reported as copied so far is returned, so the caller can
+     * fall back to a streamed copy. A copy that makes no progress for remoteCopyStallTimeout ms is abandoned.
+     *
+     * The command runs on a pty, so it is hung up when the channel is closed. The progress is reported using the size of the destination. A zero exit
+     * status only counts if the destination has the size of the source. When the copy is cancelled, the partial destination is removed.
+     */
+    private long copyOnServer(Path source, PathAttributes attributes, SftpFileSystem target, Path destination, CopyCallback callback) throws XenonException {
+
+        String command = "cp -- " + ShellUtils.protectAgainstShellMetas(source.toString()) + " "
+                + ShellUtils.protectAgainstShellMetas(destination.toString());
+
+        LOGGER.debug("copyOnServer command = {}", command);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Integer status = null;
+        boolean stalled = false;
+        long copied = 0;
+
+        try (ChannelExec channel = connection.createExecChannel(command)) {
+            channel.setUsePty(true);
+            // Without a reply, a server that refuses the command would leave the channel open without ever running it.
+            PropertyResolverUtils.updateProperty(channel, ChannelExec.REQUEST_EXEC_REPLY, true);
+            channel.setOut(output);
+            channel.setErr(output);
+
+            try {
+                channel.open().verify(REMOTE_COPY_PROBE_TIMEOUT);
+            } catch (IOException e) {
+                LOGGER.debug("Server does not allow commands, falling back to streamed copy", e);
+                disableRemoteCopy();
+                return 0;
+            }
+
+            // cp does not read its input, so make sure nothing that runs instead waits for it.
+            channel.getInvertedIn().close();
+
+            long lastProgress = System.currentTimeMillis();
+
+            while (!channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), REMOTE_COPY_POLL_INTERVAL).contains(ClientChannelEvent.CLOSED)) {
+
+                if (callback.isCancelled()) {
+                    channel.close(true);
+                    throw new CopyCancelledException(ADAPTOR_NAME, "Copy cancelled by user");
+                }
+
+                PathAttributes current = target.statOrNull(destination);
+                long now = System.currentTimeMillis();
+
+                if (current != null && current.getSize() > copied) {
+                    callback.addBytesCopied(current.getSize() - copied);
+                    copied = current.getSize();
+                    lastProgress = now;
+                } else if (now - lastProgress >= remoteCopyStallTimeout) {
+                    LOGGER.debug("copyOnServer made no progress for {} ms", remoteCopyStallTimeout);
+                    channel.close(true);
+                    stalled = true;
+                    break;
+                }
+            }
+
+            if (!stalled) {
+                status = channel.getExitStatus();
+            }
+        } catch (IOException e) {
+            if (callback.isCancelled()) {
+                throw cancelCopy(target, destination);
+            }
+            throw new XenonException(ADAPTOR_NAME, "Failed to copy " + source + " to " + destination + " on server", e);
+        } catch (XenonException e) {
+            if (callback.isCancelled()) {
+                throw cancelCopy(target, destination);
+            }
+            throw e;
+        }
+
+        if (status != null && status == 0) {
+            // Something other than cp may have run, so check that the file was really copied.
+            PathAttributes result = target.statOrNull(destination);
+
+            if (result != null && result.getSize() == attributes.getSize()) {
+                callback.addBytesCopied(attributes.getSize() - copied);
+                return COPIED_ON_SERVER;
+            }
+
+            disableRemoteCopy();
+        }
+
+        LOGGER.debug("copyOnServer failed with status {}, falling back to streamed copy: {}", status, output);
+
+        if (stalled || status == null || status == EXIT_NOT_EXECUTABLE || status == EXIT_NOT_FOUND) {
+            disableRemoteCopy();
+        }
+
+        // Remove anything cp left behind, so the streamed copy starts from a clean destination.
+        deletePartial(target, destination);
+        return copied;
+    }
+
+    private static void deletePartial(SftpFileSystem target, Path destination) throws XenonException {
+        if (target.statOrNull(destination) != null) {
+            target.deleteFile(destination);
+        }
+    }
+
+    // Removes the partial destination of a cancelled copy. The thread may have been interrupted by the cancellation, which would make the removal fail, so the
+    // interrupt is cleared during the removal and restored afterwards.
+    private static CopyCancelledException cancelCopy(SftpFileSystem target, Path destination) {
+
+        boolean interrupted = Thread.interrupted();
+
+        try {
+            deletePartial(target, destination);
+        } catch (XenonException e) {
+            LOGGER.debug("Failed to remove partial copy {}", destination, e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return new CopyCancelledException(ADAPTOR_NAME, "Copy cancelled by user");
+    }
+
+    // Passes the progress on to another callback, except for the first bytes, which have already been reported by an abandoned copy on the server.
+    private class CreditedCallback extends CopyCallback {
+
+        private final CopyCallback callback;
+        private long credit;
+
+        CreditedCallback(CopyCallback callback, long credit) {
+            this.callback = callback;
+            this.credit = credit;
+        }
+
+        @Override
+        public void addBytesCopied(long bytes) {
+
+            long passed;
+
+            synchronized (this) {
+                long absorbed = Math.min(credit, bytes);
+                credit -= absorbed;
+                passed = bytes - absorbed;
+            }
+
+            if (passed > 0) {
+                callback.addBytesCopied(passed);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return callback.isCancelled();
+        }
+    }
+
+    private boolean useChunks(long size) {
+        return chunkPool != null && size >= 2L * chunkSize;
+    }
+
+    private static CloseableHandle openForWrite(SftpClient client, Path path) throws IOException {
+        return client.open(path.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate);
+    }
+
+    // Reads a byte range from an open file, using as many read requests as needed. Returns the number of bytes read, which is only less than length at EOF.
+    private int readChunk(SftpClient client, CloseableHandle handle, long offset, byte[] data, int length) throws IOException {
+
+        int done = 0;
+
+        while (done < length) {
+            int n = client.read(handle, offset + done, data, done, Math.min(getBufferSize(), length - done));
+
+            if (n < 0) {
+                break;
+            }
+
+            done += n;
+        }
+
+        return done;
+    }
+
+    // Writes a byte range to an open file. Each write request is limited to the buffer size, as servers limit the size of a single request.
+    private void writeChunk(SftpClient client, CloseableHandle handle, long offset, byte[] data, int length) throws IOException {
+
+        int done = 0;
+
+        while (done < length) {
+            int n = Math.min(getBufferSize(), length - done);
+            client.write(handle, offset + done, data, done, n);
+            done += n;
+        }
+    }
+
+    private byte[] readFullChunk(SftpClient client, CloseableHandle handle, long offset, int length, CopyCallback callback)
+            throws IOException, XenonException {
+
+        if (callback.isCancelled()) {
+            throw new CopyCancelledException(ADAPTOR_NAME, "Copy cancelled by user");
+        }
+
+        byte[] data = new byte[length];
+
+        if (readChunk(client, handle, offset, data, length) != length) {
+            throw new EndOfFileException(ADAPTOR_NAME, "Source file shrunk during copy");
+        }
+
+        return data;
+    }
+
+    private static <T> T awaitChunk(Future<T> future) throws IOException, XenonException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof XenonException) {
+                throw (XenonException) cause;
+            }
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            throw new XenonException(ADAPTOR_NAME, "Chunk transfer failed", cause);
+        }
+    }
+
+    private static void cancelChunks(ArrayDeque<? extends Future<?>> window) {
+        for (Future<?> f : window) {
+            f.cancel(true);
+        }
+        window.clear();
+    }
+
+    /*
+     * Copy a file between two SFTP servers. Each byte range is read from the source and written to the same offset in the destination independently, with up
+     * to chunkRequests ranges in flight.
+     */
+    private void copyChunks(Path source, SftpFileSystem destinationFS, Path destination, long size, CopyCallback callback) throws XenonException {
+
+        destinationFS.assertPathNotExists(destination);
+
+        // A handle can only be used on the channel that opened it, so each side of the copy uses a single client.
+        SftpClient sourceClient = acquireClient();
+        SftpClient destinationClient;
+
+        try {
+            destinationClient = destinationFS.acquireClient();
+        } catch (XenonException e) {
+            clients.release(sourceClient);
+            throw e;
+        }
+
+        ArrayDeque<Future<Void>> window = new ArrayDeque<>();
+
+        try (CloseableHandle in = sourceClient.open(source.toString(), SftpClient.OpenMode.Read);
+                CloseableHandle out = openForWrite(destinationClient, destination)) {
+
+            for (long offset = 0; offset < size; offset += chunkSize) {
+
+                if (window.size() >= chunkRequests) {
+                    awaitChunk(window.poll());
+                }
+
+                final long start = offset;
+                final int length = (int) Math.min(chunkSize, size - offset);
+
+                window.add(chunkPool.submit(() -> {
+                    byte[] data = readFullChunk(sourceClient, in, start, length, callback);
+                    destinationFS.writeChunk(destinationClient, out, start, data, length);
+                    callback.addBytesCopied(length);
+                    return null;
+                }));
+            }
+
+            while (!window.isEmpty()) {
+                awaitChunk(window.poll());
+            }
+        } catch (IOException e) {
+            throw sftpExceptionToXenonException(e, "Failed to copy " + source + " to " + destination);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CopyCancelledException(ADAPTOR_NAME, "Copy interrupted by user");
+        } finally {
+            cancelChunks(window);
+            clients.release(sourceClient);
+            destinationFS.clients.release(destinationClient);
+        }
+    }
+
+    /*
+     * Copy a file from this SFTP server to another type of file system. The byte ranges are read concurrently, but are written to the destination stream in
+     * order, so at most chunkRequests ranges are buffered.
+     */
+    private void readChunks(Path source, FileSystem destinationFS, Path destination, long size, CopyCallback callback) throws XenonException {
+
+        SftpClient client = acquireClient();
+
+        ArrayDeque<Future<byte[]>> window = new ArrayDeque<>();
+
+        try (CloseableHandle in = client.open(source.toString(), SftpClient.OpenMode.Read); OutputStream out = destinationFS.writeToFile(destination, size)) {
+
+            long offset = 0;
+
+            while (offset < size || !window.isEmpty()) {
+
+                while (offset < size && window.size() < chunkRequests) {
+                    final long start = offset;
+                    final int length = (int) Math.min(chunkSize, size - offset);
+                    window.add(chunkPool.submit(() -> readFullChunk(client, in, start, length, callback)));
+                    offset += length;
+                }
+
+                byte[] data = awaitChunk(window.poll());
+                out.write(data);
+                callback.addBytesCopied(data.length);
+
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(ADAPTOR_NAME, "Copy cancelled by user");
+                }
+            }
+
+            out.flush();
+        } catch (IOException e) {
+            throw sftpExceptionToXenonException(e, "Failed to copy " + source + " to " + destination);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CopyCancelledException(ADAPTOR_NAME, "Copy interrupted by user");
+        } finally {
+            cancelChunks(window);
+            clients.release(client);
+        }
+    }
+
+    private SftpClient acquireClient() throws XenonException {
+        try {
+            return clients.acquire();
+        } catch (IOException e) {
+            throw sftpExceptionToXenonException(e, "Failed to get sftp client");
+        }
+    }
+
+    /**
+     * An OutputStream that writes a file of known size to this SFTP server in byte ranges, with up to chunkRequests write requests in flight. Write failures
+     * are reported by a later write, flush or close.
+     */
+    private class ChunkedOutputStream extends OutputStream {
+
+        private final SftpClient client;
+        private final CloseableHandle handle;
+        private final ArrayDeque<Future<Void>> window = new ArrayDeque<>();
+
+        private byte[] chunk = new byte[chunkSize];
+        private int used = 0;
+        private long offset = 0;
+        private boolean closed = false;
+
+        ChunkedOutputStream(SftpClient client, CloseableHandle handle) {
+            this.client = client;
+            this.handle = handle;
+        }
+
+        private void await(Future<Void> future) throws IOException {
+            try {
+                awaitChunk(future);
+            } catch (XenonException e) {
+                throw new IOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing to " + handle);
+            }
+        }
+
+        private void submitChunk() throws IOException {
+
+            if (used == 0) {
+                return;
+            }
+
+            if (window.size() >= chunkRequests) {
+                await(window.poll());
+            }
+
+            final byte[] data = chunk;
+            final int length = used;
+            final long start = offset;
+
+            window.add(chunkPool.submit(() -> {
+                writeChunk(client, handle, start, data, length);
+                return null;
+            }));
+
+            offset += used;
+            chunk = new byte[chunkSize];
+            used = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+
+            while (len > 0) {
+                int n = Math.min(len, chunk.length - used);
+                System.arraycopy(b, off, chunk, used, n);
+                used += n;
+                off += n;
+                len -= n;
+
+                if (used == chunk.length) {
+                    submitChunk();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+
+            if (closed) {
+                return;
+            }
+
+            submitChunk();
+
+            while (!window.isEmpty()) {
+                await(window.poll());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            if (closed) {
+                return;
+            }
+
+            try {
+                flush();
+            } finally {
+                closed = true;
+                cancelChunks(window);
+
+                try {
+                    handle.close();
+                } finally {
+                    clients.release(client);
+                }
+            }
+        }
+    }
+
     private static long convertTime(FileTime time) {
         return time.toMillis();
     }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.webdav;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sardine.DavResource;
+import com.github.sardine.impl.SardineImpl;
+import com.github.sardine.impl.handler.ValidatingResponseHandler;
+import com.github.sardine.impl.methods.HttpPropFind;
+import com.github.sardine.model.Allprop;
+import com.github.sardine.model.ObjectFactory;
+import com.github.sardine.model.Propfind;
+import com.github.sardine.model.Response;
+import com.github.sardine.util.SardineUtil;
+
+/**
+ * A Sardine client that does not limit the number of connections to the server, and that can return a depth infinity listing while it is being received.
+ *
+ * The default connection manager allows only two connections per server. Each open upload stream holds a connection until it is closed, so opening a third
+ * stream would block forever if the caller still holds the other two. The number of concurrent uploads is limited by the file system instead.
+ */
+class WebdavClient extends SardineImpl {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebdavClient.class);
+
+    private static final String DAV_NAMESPACE = "DAV:";
+
+    private static final String RESPONSE_ELEMENT = "response";
+
+    // Creating a JAXB context is expensive, while a context is thread safe, so it is shared by all listings.
+    private static JAXBContext context;
+
+    /**
+     * Receives the resources of a PROPFIND response while the response is being read.
+     */
+    @FunctionalInterface
+    interface ResourceHandler {
+        void handle(DavResource resource) throws IOException;
+    }
+
+    // Parses a multistatus response one response element at a time, instead of unmarshalling the complete document as Sardine does.
+    private static class StreamingHandler extends ValidatingResponseHandler<Void> {
+
+        private final HttpPropFind request;
+        private final ResourceHandler handler;
+
+        StreamingHandler(HttpPropFind request, ResourceHandler handler) {
+            this.request = request;
+            this.handler = handler;
+        }
+
+        @Override
+        public Void handleResponse(HttpResponse response) throws IOException {
+
+            validateResponse(response);
+
+            HttpEntity entity = response.getEntity();
+
+            if (entity == null) {
+                throw new IOException("No entity found in response");
+            }
+
+            try (InputStream in = entity.getContent()) {
+                parse(in);
+            } catch (IOException | RuntimeException e) {
+                // Otherwise the rest of the response is read before the exception is passed on.
+                request.abort();
+                throw e;
+            }
+
+            return null;
+        }
+
+        private void parse(InputStream in) throws IOException {
+
+            XMLStreamReader reader = null;
+
+            try {
+                Unmarshaller unmarshaller = getContext().createUnmarshaller();
+                reader = createInputFactory().createXMLStreamReader(in);
+
+                while (reader.hasNext()) {
+                    if (reader.getEventType() == XMLStreamConstants.START_ELEMENT && RESPONSE_ELEMENT.equals(reader.getLocalName())
+                            && DAV_NAMESPACE.equals(reader.getNamespaceURI())) {
+                        // Leaves the reader on the event following the end of the element.
+                        handle(unmarshaller.unmarshal(reader, Response.class).getValue());
+                    } else {
+                        reader.next();
+                    }
+                }
+            } catch (JAXBException | XMLStreamException e) {
+                throw new IOException("Failed to parse PROPFIND response", e);
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (XMLStreamException e) {
+                        LOGGER.debug("Failed to close XML reader", e);
+                    }
+                }
+            }
+        }
+
+        private void handle(Response response) throws IOException {
+            try {
+                handler.handle(new DavResource(response));
+            } catch (URISyntaxException e) {
+                LOGGER.warn("Ignoring resource with invalid URI {}", response.getHref());
+            }
+        }
+    }
+
+    WebdavClient() {
+        super();
+    }
+
+    WebdavClient(String username, String password) {
+        super(username, password);
+    }
+
+    private static synchronized JAXBContext getContext() throws JAXBException {
+        if (context == null) {
+            context = JAXBContext.newInstance(ObjectFactory.class);
+        }
+        return context;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Lists a directory tree with a single PROPFIND of depth infinity, passing each resource to <code>handler</code> as soon as it has been read from the
+     * response. Any exception thrown by <code>handler</code> aborts the request.
+     *
+     * @param url
+     *            the URL of the directory to list
+     * @param handler
+     *            receives the directory itself and every resource below it
+     * @throws IOException
+     *             if the request failed, the server refused it, or <code>handler</code> threw an exception
+     */
+    void listTree(String url, ResourceHandler handler) throws IOException {
+
+        Propfind body = new Propfind();
+        body.setAllprop(new Allprop());
+
+        HttpPropFind request = new HttpPropFind(url);
+        request.setDepth("infinity");
+        request.setEntity(new StringEntity(SardineUtil.toXml(body), "UTF-8"));
+
+        execute(request, new StreamingHandler(request, handler));
+    }
+
+    @Override
+    protected HttpClientConnectionManager createDefaultConnectionManager(Registry<ConnectionSocketFactory> schemeRegistry) {
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(schemeRegistry);
+        cm.setMaxTotal(Integer.MAX_VALUE);
+        cm.setDefaultMaxPerRoute(Integer.MAX_VALUE);
+        return cm;
+    }
+}
@@ -23,9 +23,6 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.sardine.Sardine;
-import com.github.sardine.SardineFactory;
-
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
 import nl.esciencecenter.xenon.InvalidPropertyException;
@@ -56,12 +53,26 @@ public class WebdavFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently during a recursive copy. */
+    public static final String COPY_THREADS = PREFIX + "copyThreads";
+
+    /** The maximum number of uploads in progress at once, or 0 for no limit. */
+    public static final String UPLOAD_THREADS = PREFIX + "uploadThreads";
+
+    /** The number of directories listed concurrently during a recursive listing. */
+    public static final String LIST_THREADS = PREFIX + "listThreads";
+
     /** The locations supported by this adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "http://host[:port][/workdir]", "https://host[:port][/workdir]" };
 
     /** List of properties supported by this FTP adaptor */
     private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes)."),
+            new XenonPropertyDescription(COPY_THREADS, Type.NATURAL, "1", "The number of files to transfer concurrently during a recursive copy."),
+            new XenonPropertyDescription(UPLOAD_THREADS, Type.NATURAL, "0",
+                    "The maximum number of uploads in progress at once, or 0 for no limit. Additional uploads wait up to a minute for one to finish."),
+            new XenonPropertyDescription(LIST_THREADS, Type.NATURAL, "4",
+                    "The number of directories listed concurrently during a recursive listing, if the server does not support depth infinity.") };
 
     public static final int OK_CODE = 200;
 
@@ -120,6 +131,27 @@ public class WebdavFileAdaptor extends FileAdaptor {
                     "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
         }
 
+        long copyThreads = xp.getNaturalProperty(COPY_THREADS);
+
+        if (copyThreads <= 0 || copyThreads >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + COPY_THREADS + ": " + copyThreads + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+        }
+
+        long uploadThreads = xp.getNaturalProperty(UPLOAD_THREADS);
+
+        if (uploadThreads < 0 || uploadThreads >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + UPLOAD_THREADS + ": " + uploadThreads + " (must be between 0 and " + Integer.MAX_VALUE + ")");
+        }
+
+        long listThreads = xp.getNaturalProperty(LIST_THREADS);
+
+        if (listThreads <= 0 || listThreads >= Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(ADAPTOR_NAME,
+                    "Invalid value for " + LIST_THREADS + ": " + listThreads + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+        }
+
         URI uri;
 
         try {
@@ -128,13 +160,13 @@ public class WebdavFileAdaptor extends FileAdaptor {
             throw new InvalidLocationException(ADAPTOR_NAME, "Failed to parse location: " + location, e);
         }
 
-        Sardine sardine = null;
+        WebdavClient sardine = null;
 
         if (credential instanceof DefaultCredential) {
-            sardine = SardineFactory.begin();
+            sardine = new WebdavClient();
         } else if (credential instanceof PasswordCredential) {
             PasswordCredential tmp = (PasswordCredential) credential;
-            sardine = SardineFactory.begin(tmp.getUsername(), new String(tmp.getPassword()));
+            sardine = new WebdavClient(tmp.getUsername(), new String(tmp.getPassword()));
 
             try {
                 sardine.enablePreemptiveAuthentication(new URL(location));
@@ -152,6 +184,7 @@ public class WebdavFileAdaptor extends FileAdaptor {
         }
 
         String cwd = uri.getPath();
-        return new WebdavFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, server, new Path(cwd), (int) bufferSize, sardine, xp);
+        return new WebdavFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, server, new Path(cwd), (int) bufferSize, (int) copyThreads,
+                (int) uploadThreads, (int) listThreads, sardine, xp);
     }
 }
@@ -17,67 +17,388 @@ package nl.esciencecenter.xenon.adaptors.filesystems.webdav;
 
 import static nl.esciencecenter.xenon.adaptors.filesystems.webdav.WebdavFileAdaptor.ADAPTOR_NAME;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpStatus;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.InputStreamEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.sardine.DavResource;
-import com.github.sardine.Sardine;
 import com.github.sardine.impl.SardineException;
 
 import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
+import nl.esciencecenter.xenon.adaptors.filesystems.ParallelListIterator;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.filesystems.CopyCancelledException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
+import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
 
 public class WebdavFileSystem extends FileSystem {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WebdavFileAdaptor.class);
 
-    class StreamToFileWriter extends Thread {
+    /*
+     * A request body that lends the output stream of the HTTP connection to the thread that called writeToFile, so the data is written directly into the
+     * request instead of through a pipe. The upload thread blocks in writeTo until the caller has closed its stream.
+     */
+    private static class StreamingEntity extends AbstractHttpEntity {
 
-        private final String url;
-        private final InputStream in;
+        private final long length;
+        private final CompletableFuture<OutputStream> target = new CompletableFuture<>();
+        private final CountDownLatch done = new CountDownLatch(1);
 
-        StreamToFileWriter(String url, InputStream in) {
-            this.url = url;
-            this.in = in;
-            setName("WebdavStreamToFileWriter");
-            setDaemon(true);
+        StreamingEntity(long length) {
+            this.length = length;
+            setChunked(length < 0);
         }
 
         @Override
-        public void run() {
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new java.lang.UnsupportedOperationException("Streaming entity has no content stream");
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            target.complete(out);
+
             try {
-                client.put(url, in);
-            } catch (Exception e) {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for upload data");
+            }
+        }
+    }
+
+    /*
+     * The stream returned by writeToFile. The first write waits until the request is ready to receive its body. Closing the stream completes the request, and
+     * any error returned by the server is thrown by close.
+     */
+    private static class UploadOutputStream extends OutputStream {
+
+        private final StreamingEntity entity;
+        private final Future<Void> request;
+        private OutputStream out;
+        private boolean closed = false;
+
+        UploadOutputStream(StreamingEntity entity, Future<Void> request) {
+            this.entity = entity;
+            this.request = request;
+        }
 
+        private static IOException unwrap(ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                return (IOException) e.getCause();
             }
+            return new IOException("Upload failed", e.getCause());
+        }
+
+        private OutputStream getTarget() throws IOException {
+
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+
+            if (out == null) {
+                try {
+                    out = entity.target.get();
+                } catch (ExecutionException e) {
+                    throw unwrap(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for upload to start");
+                }
+            }
+
+            return out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            getTarget().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            getTarget().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null && !closed) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            if (closed) {
+                return;
+            }
+
+            try {
+                // Also waits for the request to start, so empty files are written as well. Failures are reported by the request below.
+                getTarget().flush();
+            } catch (IOException e) {
+                LOGGER.debug("Upload failed before completion", e);
+            } finally {
+                closed = true;
+                entity.done.countDown();
+            }
+
+            try {
+                request.get();
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for upload to complete");
+            }
+        }
+    }
+
+    /*
+     * The source of an upload done by transferFile. Reports the progress of the copy as the request reads the data, and ends the request when the copy is
+     * cancelled.
+     */
+    private class ProgressInputStream extends FilterInputStream {
+
+        private final CopyCallback callback;
+
+        ProgressInputStream(InputStream in, CopyCallback callback) {
+            super(in);
+            this.callback = callback;
+        }
+
+        private int progress(int n) throws IOException {
+
+            if (n > 0) {
+                callback.addBytesCopied(n);
+            }
+
+            if (callback.isCancelled()) {
+                throw new IOException("Copy cancelled by user");
+            }
+
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            progress(b < 0 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return progress(super.read(b, off, len));
         }
     }
 
-    private final Sardine client;
+    // How long an upload waits for another upload to finish, if the maximum number of uploads is in progress.
+    private static final long UPLOAD_WAIT_TIMEOUT = 60000L;
+
+    // Size of the buffer between the thread reading a depth infinity listing and the iterator returning it.
+    private static final int TREE_BUFFER_SIZE = 1024;
+
+    // How long the thread reading a depth infinity listing waits for room in the buffer, before it assumes the iterator was abandoned and aborts the request.
+    private static final long TREE_ABANDON_TIMEOUT = 5 * 60 * 1000L;
+
+    // Marks the end of a depth infinity listing in the buffer.
+    private static final PathAttributes END_OF_TREE = new PathAttributesImplementation();
+
+    /*
+     * Returns the result of a depth infinity PROPFIND while it is being received, so the first entries of a large tree are available long before the complete
+     * response is. The response is read by a separate thread, which runs at most TREE_BUFFER_SIZE entries ahead of the iterator.
+     */
+    private class TreeListIterator implements Iterator<PathAttributes> {
+
+        private final Path dir;
+        private final BlockingQueue<PathAttributes> buffer = new ArrayBlockingQueue<>(TREE_BUFFER_SIZE);
+
+        // Completes when the first entry has been received, or exceptionally if the request failed before that.
+        private final CompletableFuture<Void> started = new CompletableFuture<>();
+
+        private volatile IOException failure;
+        private PathAttributes next;
+
+        TreeListIterator(Path dir) {
+            this.dir = dir;
+            requestPool.submit(this::read);
+        }
+
+        private void read() {
+            try {
+                client.listTree(getDirectoryPath(dir), this::add);
+            } catch (IOException e) {
+                failure = e;
+                started.completeExceptionally(e);
+            } finally {
+                started.complete(null);
+
+                try {
+                    buffer.offer(END_OF_TREE, TREE_ABANDON_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void add(DavResource d) throws IOException {
+
+            started.complete(null);
+
+            // The path of each resource is relative to the server, which is the same as the absolute path in this file system.
+            Path path = new Path(d.getPath());
+
+            if (path.equals(dir)) {
+                return;
+            }
+
+            try {
+                if (!buffer.offer(getAttributes(path, d), TREE_ABANDON_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    throw new InterruptedIOException("Listing of " + dir + " was abandoned");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while listing " + dir);
+            }
+        }
+
+        // Waits until the server has accepted the request, so a refused depth infinity listing can still fall back to a depth 1 walk.
+        void awaitStart() throws IOException {
+            try {
+                started.get();
+            } catch (ExecutionException e) {
+                throw (IOException) e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while listing " + dir);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (next == null) {
+                try {
+                    next = buffer.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new XenonRuntimeException(ADAPTOR_NAME, "Interrupted while listing directory: " + dir, e);
+                }
+            }
+
+            if (next != END_OF_TREE) {
+                return true;
+            }
+
+            if (failure != null) {
+                throw new XenonRuntimeException(ADAPTOR_NAME, "Failed to list directory: " + dir,
+                        new XenonException(ADAPTOR_NAME, "Failed to list directory: " + dir, failure));
+            }
+
+            return false;
+        }
+
+        @Override
+        public PathAttributes next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more entries");
+            }
+
+            PathAttributes result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    private final WebdavClient client;
     private final String server;
 
+    // Runs requests whose body is written or whose response is read while the caller uses the result, i.e. the uploads of writeToFile and depth infinity
+    // listings. Each of these occupies a thread until the caller is done, so this pool must not be bounded. Copies to a webdav server upload on the thread
+    // of the copy instead.
+    private final ExecutorService requestPool;
+
+    // Limits the number of uploads in progress at once, or null if the number is unlimited.
+    private final int maxUploads;
+    private final Semaphore uploadPermits;
+
+    // Lists directories in parallel during a recursive listing, if the server does not allow a single depth infinity PROPFIND.
+    private final int listThreads;
+    private final ExecutorService listPool;
+
+    // Whether the server accepts a PROPFIND with depth infinity. Unknown (null) until the first recursive listing.
+    private volatile Boolean depthInfinity = null;
+
+    // Whether files copied within the server may be copied with a COPY request. Cleared when the server does not support COPY.
+    private volatile boolean serverCopy = true;
+
     protected WebdavFileSystem(String uniqueID, String name, String location, Credential credential, String server, Path entryPath, int bufferSize,
-            Sardine client, XenonProperties properties) {
-        super(uniqueID, name, location, credential, entryPath, bufferSize, properties);
+            int copyThreads, int uploadThreads, int listThreads, WebdavClient client, XenonProperties properties) {
+        super(uniqueID, name, location, credential, entryPath, bufferSize, copyThreads, properties);
         this.client = client;
         this.server = server;
+        this.requestPool = Executors.newCachedThreadPool(new DaemonThreadFactory("WebdavRequest." + uniqueID));
+        this.maxUploads = uploadThreads;
+        this.uploadPermits = uploadThreads > 0 ? new Semaphore(uploadThreads) : null;
+        this.listThreads = listThreads;
+        this.listPool = Executors.newFixedThreadPool(listThreads, new DaemonThreadFactory("WebdavList." + uniqueID));
+    }
+
+    @Override
+    public void close() throws XenonException {
+        requestPool.shutdownNow();
+        listPool.shutdownNow();
+        super.close();
     }
 
     private String getFilePath(Path path) {
@@ -144,6 +465,46 @@ public class WebdavFileSystem extends FileSystem {
         return result;
     }
 
+    /*
+     * A recursive listing is first attempted with a single PROPFIND of depth infinity. Many servers refuse such requests, in which case this (and any later)
+     * recursive listing walks the tree with depth 1 PROPFINDs, of which up to listThreads are in flight at the same time.
+     */
+    @Override
+    protected Iterator<PathAttributes> listIterator(Path dir, boolean recursive) {
+
+        if (!recursive) {
+            return super.listIterator(dir, false);
+        }
+
+        if (depthInfinity != Boolean.FALSE) {
+            try {
+                TreeListIterator result = new TreeListIterator(dir);
+                result.awaitStart();
+                depthInfinity = Boolean.TRUE;
+                return result;
+            } catch (SardineException e) {
+                if (!isDepthRefused(e)) {
+                    throw new XenonRuntimeException(ADAPTOR_NAME, "Failed to list directory: " + dir,
+                            new XenonException(ADAPTOR_NAME, "Failed to list directory: " + dir, e));
+                }
+
+                LOGGER.debug("Server refused PROPFIND with depth infinity, falling back to depth 1", e);
+                depthInfinity = Boolean.FALSE;
+            } catch (IOException e) {
+                throw new XenonRuntimeException(ADAPTOR_NAME, "Failed to list directory: " + dir,
+                        new XenonException(ADAPTOR_NAME, "Failed to list directory: " + dir, e));
+            }
+        }
+
+        return new ParallelListIterator(ADAPTOR_NAME, listPool, listThreads, this::listDirectory, dir);
+    }
+
+    private static boolean isDepthRefused(SardineException e) {
+        // RFC 4918 specifies 403 with a propfind-finite-depth condition, but some servers use 400 or 501 instead.
+        int status = e.getStatusCode();
+        return status == HttpStatus.SC_FORBIDDEN || status == HttpStatus.SC_BAD_REQUEST || status == HttpStatus.SC_NOT_IMPLEMENTED;
+    }
+
     @Override
     public boolean isOpen() throws XenonException {
         return true;
@@ -242,11 +603,7 @@ public class WebdavFileSystem extends FileSystem {
 
         Path absPath = toAbsolutePath(path);
 
-        try {
-            return client.exists(getDirectoryPath(absPath)) || client.exists(getFilePath(absPath));
-        } catch (IOException e) {
-            throw new XenonException(ADAPTOR_NAME, "Failed to check existence of directory: " + absPath, e);
-        }
+        return statOrNull(absPath) != null;
     }
 
     @Override
@@ -269,19 +626,61 @@ public class WebdavFileSystem extends FileSystem {
         assertPathNotExists(absFile);
         assertParentDirectoryExists(absFile);
 
-        try {
-            PipedInputStream in = new PipedInputStream(4096);
-            PipedOutputStream out = new PipedOutputStream(in);
+        return upload(getFilePath(absFile), size);
+    }
 
-            // Create a separate thread here to handle the writing
-            new StreamToFileWriter(getFilePath(absFile), in).start();
+    OutputStream upload(String url, long size) throws XenonException {
 
-            return out;
+        acquireUpload();
+
+        StreamingEntity entity = new StreamingEntity(size);
+
+        try {
+            Future<Void> request = requestPool.submit(() -> {
+                try {
+                    client.put(url, entity, null, true);
+                } finally {
+                    // Unblocks the writer if the request ended without asking for the body.
+                    entity.target.completeExceptionally(new IOException("Upload of " + url + " ended before the data was sent"));
+                    releaseUpload();
+                }
+                return null;
+            });
+
+            return new UploadOutputStream(entity, request);
         } catch (Exception e) {
+            releaseUpload();
             throw new XenonException(ADAPTOR_NAME, "Failed to open stream for writing", e);
         }
     }
 
+    /*
+     * Waits until fewer than the maximum number of uploads are in progress. The wait is limited, as the caller may hold the other upload streams open itself,
+     * in which case it would wait forever.
+     */
+    private void acquireUpload() throws XenonException {
+
+        if (uploadPermits == null) {
+            return;
+        }
+
+        try {
+            if (!uploadPermits.tryAcquire(UPLOAD_WAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new XenonException(ADAPTOR_NAME, "Timeout while waiting for one of the " + maxUploads + " uploads in progress to finish (see "
+                        + WebdavFileAdaptor.UPLOAD_THREADS + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XenonException(ADAPTOR_NAME, "Interrupted while waiting for an upload to finish", e);
+        }
+    }
+
+    private void releaseUpload() {
+        if (uploadPermits != null) {
+            uploadPermits.release();
+        }
+    }
+
     @Override
     public OutputStream appendToFile(Path file) throws XenonException {
         throw new XenonException(ADAPTOR_NAME, "Appending to file not supported");
@@ -292,15 +691,96 @@ public class WebdavFileSystem extends FileSystem {
         return writeToFile(file, -1);
     }
 
+    /*
+     * When both sides are on the same server, the file is copied by the server with a single COPY request, so the data does not travel to this client and
+     * back. If the server refuses the request, the file is copied using streams instead. When the destination is a webdav server, the source stream is used as
+     * the body of the upload, so the upload runs on the thread of the copy.
+     */
+    @Override
+    protected void transferFile(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
+        if (serverCopy && isSameEndpoint(destinationFS)) {
+            try {
+                client.copy(getFilePath(source), getFilePath(destination), false);
+                callback.addBytesCopied(attributes.getSize());
+                return;
+            } catch (SardineException e) {
+                if (isCopyUnsupported(e)) {
+                    serverCopy = false;
+                }
+                LOGGER.debug("COPY from {} to {} failed, falling back to streamed copy", source, destination, e);
+            } catch (IOException e) {
+                LOGGER.debug("COPY from {} to {} failed, falling back to streamed copy", source, destination, e);
+            }
+        }
+
+        if (!(destinationFS instanceof WebdavFileSystem)) {
+            super.transferFile(source, attributes, destinationFS, destination, callback);
+            return;
+        }
+
+        try (InputStream in = readFromFile(source)) {
+            ((WebdavFileSystem) destinationFS).writeFromStream(destination, new ProgressInputStream(in, callback), attributes.getSize());
+        } catch (IOException | XenonException e) {
+            if (callback.isCancelled()) {
+                throw new CopyCancelledException(ADAPTOR_NAME, "Copy cancelled by user");
+            }
+            throw new XenonException(ADAPTOR_NAME, "Stream copy failed", e);
+        }
+    }
+
+    // Uploads the data of a stream on the caller's thread, which is not possible through the stream returned by writeToFile.
+    private void writeFromStream(Path file, InputStream in, long size) throws XenonException {
+
+        Path absFile = toAbsolutePath(file);
+        assertPathNotExists(absFile);
+        assertParentDirectoryExists(absFile);
+
+        acquireUpload();
+
+        try {
+            client.put(getFilePath(absFile), new InputStreamEntity(in, size), null, true);
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to write file: " + absFile, e);
+        } finally {
+            releaseUpload();
+        }
+    }
+
+    private static boolean isCopyUnsupported(SardineException e) {
+        int status = e.getStatusCode();
+        return status == HttpStatus.SC_METHOD_NOT_ALLOWED || status == HttpStatus.SC_NOT_IMPLEMENTED;
+    }
+
     @Override
     public PathAttributes getAttributes(Path path) throws XenonException {
 
         Path absPath = toAbsolutePath(path);
-        assertPathExists(absPath);
+
+        PathAttributes result = statOrNull(absPath);
+
+        if (result == null) {
+            throw new NoSuchPathException(ADAPTOR_NAME, "Path does not exist: " + absPath);
+        }
+
+        return result;
+    }
+
+    // A single PROPFIND of depth 0 both tells if the path exists, and returns its attributes.
+    @Override
+    protected PathAttributes statOrNull(Path path) throws XenonException {
+
+        Path absPath = toAbsolutePath(path);
 
         try {
             List<DavResource> result = client.list(getFilePath(absPath), 0);
             return getAttributes(absPath, result.get(0));
+        } catch (SardineException e) {
+            if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            }
+            throw new XenonException(ADAPTOR_NAME, "Failed to get attributes for file: " + absPath, e);
         } catch (Exception e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to get attributes for file: " + absPath, e);
         }
@@ -25,7 +25,9 @@ import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 import nl.esciencecenter.xenon.schedulers.Streams;
 import nl.esciencecenter.xenon.utils.LocalFileSystemUtils;
-import nl.esciencecenter.xenon.utils.StreamForwarder;
+import nl.esciencecenter.xenon.utils.StreamPump;
+import nl.esciencecenter.xenon.utils.StreamPump.Forwarding;
+import nl.esciencecenter.xenon.utils.StreamPump.Source;
 
 /**
  * BatchProcess wraps an {@link InteractiveProcess} to emulate a batch process.
@@ -35,14 +37,14 @@ import nl.esciencecenter.xenon.utils.StreamForwarder;
  */
 class BatchProcess implements Process {
 
-    /** Time to wait for a StreamForwarder to terminate (in ms.) */
+    /** Time to wait for a stream forwarding to terminate (in ms.) */
     private static final long TERMINATION_DELAY = 1000L;
 
     private final InteractiveProcess process;
 
-    private StreamForwarder stdinForwarder;
-    private StreamForwarder stdoutForwarder;
-    private StreamForwarder stderrForwarder;
+    private Forwarding stdinForwarder;
+    private Forwarding stdoutForwarder;
+    private Forwarding stderrForwarder;
 
     public BatchProcess(FileSystem filesystem, Path workdir, JobDescription description, String jobIdentifier, InteractiveProcessFactory factory,
             long startupTimeout) throws XenonException, IOException {
@@ -64,14 +66,17 @@ class BatchProcess implements Process {
         process = factory.createInteractiveProcess(description, workdir.toString(), jobIdentifier, startupTimeout);
         Streams streams = process.getStreams();
 
-        stdoutForwarder = new StreamForwarder(streams.getStdout(), out);
-        stderrForwarder = new StreamForwarder(streams.getStderr(), err);
+        StreamPump pump = StreamPump.getDefault();
+
+        stdoutForwarder = pump.forward(jobIdentifier + " stdout", streams.getStdout(), out, Source.POLLED);
+        stderrForwarder = pump.forward(jobIdentifier + " stderr", streams.getStderr(), err, Source.POLLED);
 
         if (stdin == null) {
             stdinForwarder = null;
             streams.getStdin().close();
         } else {
-            stdinForwarder = new StreamForwarder(filesystem.readFromFile(stdin), streams.getStdin());
+            // The process may not read its input, so the forwarding may block once the pipe is full.
+            stdinForwarder = pump.forward(jobIdentifier + " stdin", filesystem.readFromFile(stdin), streams.getStdin(), Source.BLOCKING_OUTPUT);
         }
     }
 
@@ -151,4 +156,8 @@ class BatchProcess implements Process {
         process.destroy();
         closeStreams();
     }
+
+    public boolean onDone(Runnable callback) {
+        return process.onDone(callback);
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import nl.esciencecenter.xenon.XenonException;
+
+/**
+ * Caches the output of commands that only read the state of a scheduler, such as queue and job listings.
+ *
+ * The output of a command is reused for <code>cacheTime</code> milliseconds. Callers that ask for the output of a command that is still running wait for
+ * that command instead of running it again, even if the cache time is 0. Failed commands are not cached. The cache should be invalidated whenever the
+ * state of the scheduler is changed, for example when a job is submitted or cancelled.
+ */
+class CommandCache {
+
+    @FunctionalInterface
+    interface Command {
+        String run() throws XenonException;
+    }
+
+    private static class Entry {
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        // Only valid once the result is complete.
+        private volatile long expires;
+    }
+
+    private final String adaptorName;
+    private final long cacheTime;
+
+    private final Map<List<String>, Entry> entries = new ConcurrentHashMap<>();
+
+    CommandCache(String adaptorName, long cacheTime) {
+        this.adaptorName = adaptorName;
+        this.cacheTime = cacheTime;
+    }
+
+    /**
+     * Returns the output of a command, from the cache if possible.
+     *
+     * @param key
+     *            the command line, which identifies the command in the cache.
+     * @param command
+     *            runs the command if its output is not in the cache.
+     * @return the output of the command.
+     * @throws XenonException
+     *             if the command failed.
+     */
+    String get(List<String> key, Command command) throws XenonException {
+
+        while (true) {
+            Entry e = entries.get(key);
+
+            if (e != null && (!e.result.isDone() || System.currentTimeMillis() < e.expires)) {
+                return await(e);
+            }
+
+            Entry mine = new Entry();
+
+            boolean added = e == null ? entries.putIfAbsent(key, mine) == null : entries.replace(key, e, mine);
+
+            if (added) {
+                return run(key, mine, command);
+            }
+
+            // Another caller started the same command first, so wait for that one.
+        }
+    }
+
+    private String run(List<String> key, Entry e, Command command) throws XenonException {
+        try {
+            String output = command.run();
+
+            e.expires = System.currentTimeMillis() + cacheTime;
+            e.result.complete(output);
+
+            if (cacheTime <= 0) {
+                entries.remove(key, e);
+            }
+
+            return output;
+        } catch (XenonException | RuntimeException ex) {
+            entries.remove(key, e);
+            e.result.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private String await(Entry e) throws XenonException {
+        try {
+            return e.result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XenonException(adaptorName, "Interrupted while waiting for command", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof XenonException) {
+                throw (XenonException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new XenonException(adaptorName, "Command failed", cause);
+        }
+    }
+
+    /**
+     * Forget the output of all commands. Commands that are still running are not affected, but their output will not be reused by later callers.
+     */
+    void invalidate() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.concurrent.CompletableFuture;
+
+import nl.esciencecenter.xenon.XenonException;
+
+/**
+ * A CommandChannel runs short commands directly, without submitting them as an interactive job.
+ *
+ * Unlike an interactive job, a command run on a command channel does not occupy a queue slot, does not need threads to forward its streams, and does not
+ * create a job history entry. Its input is written when the command is started, and its output is collected in memory until the command finishes.
+ */
+public interface CommandChannel {
+
+    /**
+     * Start a command, and return a future that is completed with its exit code and output when it finishes.
+     *
+     * @param workdir
+     *            the working directory in which to run the command, or <code>null</code> for the default directory.
+     * @param stdin
+     *            the text to write to the input of the command, or <code>null</code> for no input.
+     * @param executable
+     *            the executable to run.
+     * @param arguments
+     *            the arguments of the executable.
+     * @return a future that is completed with the result of the command.
+     * @throws XenonException
+     *             if the command could not be started.
+     */
+    CompletableFuture<RemoteCommandRunner> execute(String workdir, String stdin, String executable, String... arguments) throws XenonException;
+}
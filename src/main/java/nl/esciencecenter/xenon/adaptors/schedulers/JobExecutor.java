@@ -16,31 +16,47 @@
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.schedulers.JobStateListener;
 import nl.esciencecenter.xenon.schedulers.JobStatus;
 import nl.esciencecenter.xenon.schedulers.Streams;
 import nl.esciencecenter.xenon.utils.LocalFileSystemUtils;
 
 /**
+ * Runs a single job of a {@link JobQueueScheduler}.
  *
+ * The job is started by running this executor on a thread of the scheduler. After startup no thread is held: the completion of the process is reported by a
+ * callback of the process (or found by a periodic check on the shared timer if the process does not support callbacks), and the maximum runtime is enforced
+ * by a task on the same timer.
  */
 public class JobExecutor implements Runnable {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobExecutor.class);
+
     private static final String PENDING_STATE = "PENDING";
     private static final String RUNNING_STATE = "RUNNING";
     private static final String DONE_STATE = "DONE";
     private static final String ERROR_STATE = "ERROR";
     private static final String KILLED_STATE = "KILLED";
 
-    /** Polling delay in ms. */
-    private static final long POLLING_DELAY = 1000L;
+    private static final String CANCELLED_MESSAGE = "Process cancelled by user.";
 
-    /** Number of ms. per min. */
-    private static final long MILLISECONDS_PER_MINUTE = 60L * 1000L;
+    static final String SCHEDULER_CLOSED_MESSAGE = "Process cancelled, as the scheduler was closed.";
 
     private final JobDescription description;
     private final String jobIdentifier;
@@ -51,6 +67,10 @@ public class JobExecutor implements Runnable {
     private final long pollingDelay;
     private final long startupTimeout;
 
+    private final ScheduledExecutorService timer;
+    private final Executor executor;
+    private final Consumer<JobExecutor> doneHandler;
+
     private final String adaptorName;
 
     private final FileSystem filesystem;
@@ -58,11 +78,15 @@ public class JobExecutor implements Runnable {
 
     private Streams streams;
 
+    private Process process;
+
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+
     private Integer exitStatus;
 
-    private boolean updateSignal = false;
     private boolean isRunning = false;
     private boolean killed = false;
+    private String killMessage = CANCELLED_MESSAGE;
     private boolean done = false;
     private boolean hasRun = false;
 
@@ -70,8 +94,14 @@ public class JobExecutor implements Runnable {
 
     private XenonException error;
 
+    private final List<JobStateListener> listeners = new ArrayList<>();
+
+    // Held while notifying listeners, so each listener sees the state changes in order.
+    private final Object notifyLock = new Object();
+
     public JobExecutor(String adaptorName, FileSystem filesystem, Path workingDirectory, InteractiveProcessFactory factory, JobDescription description,
-            String jobIdentifier, boolean interactive, long pollingDelay, long startupTimeout) {
+            String jobIdentifier, boolean interactive, long pollingDelay, long startupTimeout, ScheduledExecutorService timer, Executor executor,
+            Consumer<JobExecutor> doneHandler) {
 
         this.adaptorName = adaptorName;
         this.filesystem = filesystem;
@@ -82,25 +112,52 @@ public class JobExecutor implements Runnable {
         this.factory = factory;
         this.pollingDelay = pollingDelay;
         this.startupTimeout = startupTimeout;
+        this.timer = timer;
+        this.executor = executor;
+        this.doneHandler = doneHandler;
     }
 
     public synchronized boolean hasRun() {
         return hasRun;
     }
 
-    public synchronized boolean kill() {
-        if (done) {
-            return true;
-        }
+    public boolean kill() {
+        return kill(CANCELLED_MESSAGE);
+    }
+
+    /**
+     * Kill the job, and report the given message as the reason. If the process is still being started, it is killed by {@link #run()} once it is.
+     *
+     * @param message
+     *            the message of the {@link JobCanceledException} of the final status.
+     * @return <code>true</code> if the job is done, or <code>false</code> if it will be killed when its process has started.
+     */
+    public boolean kill(String message) {
+        Process p;
+
+        synchronized (this) {
+            if (done) {
+                return true;
+            }
 
-        killed = true;
+            killed = true;
+            killMessage = message;
 
-        if (!isRunning) {
-            updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
-            return true;
+            if (isRunning && process == null) {
+                // The process is still being started, run() will kill it once it is.
+                return false;
+            }
+
+            p = process;
+        }
+
+        if (p != null) {
+            // Destroy first, update state last, otherwise we have a race condition!
+            p.destroy();
         }
 
-        return false;
+        updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, message));
+        return true;
     }
 
     public synchronized boolean isDone() {
@@ -115,15 +172,46 @@ public class JobExecutor implements Runnable {
         return description;
     }
 
-    public synchronized JobStatus getStatus() {
-        if (!done && RUNNING_STATE.equals(state)) {
-            triggerStatusUpdate();
-            waitForStatusUpdate(pollingDelay);
-        }
+    public JobStatus getStatus() {
+        checkProcess();
+        return createStatus();
+    }
 
+    private synchronized JobStatus createStatus() {
         return new JobStatusImplementation(jobIdentifier, description.getName(), state, exitStatus, error, RUNNING_STATE.equals(state), done, null);
     }
 
+    /**
+     * Add a listener that is called with the current status of the job, and after that with the new status each time the state of the job changes, until it
+     * is done.
+     *
+     * @param listener
+     *            the listener to add.
+     */
+    public void addStateListener(JobStateListener listener) {
+        synchronized (notifyLock) {
+            JobStatus status;
+
+            synchronized (this) {
+                status = createStatus();
+
+                if (!done) {
+                    listeners.add(listener);
+                }
+            }
+
+            notifyListener(listener, status);
+        }
+    }
+
+    private void notifyListener(JobStateListener listener, JobStatus status) {
+        try {
+            listener.stateChanged(status);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Job state listener of job {} failed", jobIdentifier, e);
+        }
+    }
+
     public synchronized String getState() {
         return state;
     }
@@ -132,7 +220,57 @@ public class JobExecutor implements Runnable {
         return error;
     }
 
-    private synchronized void updateState(String state, int exitStatus, XenonException e) {
+    private void updateState(String state, int exitStatus, XenonException e) {
+
+        JobStatus status;
+
+        synchronized (notifyLock) {
+            List<JobStateListener> tmp;
+
+            synchronized (this) {
+                if (done) {
+                    // The job may be killed by the user and the executor at the same time.
+                    return;
+                }
+
+                setState(state, exitStatus, e);
+
+                status = createStatus();
+                tmp = new ArrayList<>(listeners);
+
+                if (done) {
+                    listeners.clear();
+                }
+            }
+
+            for (JobStateListener l : tmp) {
+                notifyListener(l, status);
+            }
+        }
+
+        if (status.isDone()) {
+            finish();
+        }
+    }
+
+    // Called exactly once, when the job is done.
+    private void finish() {
+
+        List<ScheduledFuture<?>> tmp;
+
+        synchronized (this) {
+            tmp = new ArrayList<>(tasks);
+            tasks.clear();
+        }
+
+        for (ScheduledFuture<?> task : tmp) {
+            task.cancel(false);
+        }
+
+        doneHandler.accept(this);
+    }
+
+    private synchronized void setState(String state, int exitStatus, XenonException e) {
 
         if (ERROR_STATE.equals(state) || KILLED_STATE.equals(state)) {
             error = e;
@@ -147,7 +285,7 @@ public class JobExecutor implements Runnable {
         }
 
         this.state = state;
-        clearUpdateRequest();
+        notifyAll();
     }
 
     private synchronized boolean getKilled() {
@@ -155,6 +293,10 @@ public class JobExecutor implements Runnable {
         return killed;
     }
 
+    private synchronized String getKillMessage() {
+        return killMessage;
+    }
+
     private synchronized void setStreams(Streams streams) {
         this.streams = streams;
     }
@@ -168,134 +310,122 @@ public class JobExecutor implements Runnable {
         return streams;
     }
 
-    public synchronized JobStatus waitUntilRunning(long timeout) {
+    public JobStatus waitUntilRunning(long timeout) {
 
         long deadline = Deadline.getDeadline(timeout);
 
-        triggerStatusUpdate();
+        synchronized (this) {
+            long leftover = deadline - System.currentTimeMillis();
 
-        long leftover = deadline - System.currentTimeMillis();
+            while (leftover > 0 && PENDING_STATE.equals(state)) {
+                try {
+                    wait(leftover);
+                } catch (InterruptedException e) {
+                    // We were interrupted
+                    Thread.currentThread().interrupt();
+                    break;
+                }
 
-        while (leftover > 0 && PENDING_STATE.equals(state)) {
-            try {
-                wait(leftover);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+                leftover = deadline - System.currentTimeMillis();
             }
-
-            leftover = deadline - System.currentTimeMillis();
         }
 
         return getStatus();
     }
 
-    public synchronized JobStatus waitUntilDone(long timeout) {
+    public JobStatus waitUntilDone(long timeout) {
 
         long deadline = Deadline.getDeadline(timeout);
 
-        triggerStatusUpdate();
+        synchronized (this) {
+            long leftover = deadline - System.currentTimeMillis();
 
-        long leftover = deadline - System.currentTimeMillis();
+            while (leftover > 0 && !done) {
+                try {
+                    wait(leftover);
+                } catch (InterruptedException e) {
+                    // We were interrupted
+                    Thread.currentThread().interrupt();
+                    break;
+                }
 
-        while (leftover > 0 && !done) {
-
-            try {
-                wait(leftover);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+                leftover = deadline - System.currentTimeMillis();
             }
-
-            leftover = deadline - System.currentTimeMillis();
-
         }
 
         return getStatus();
     }
 
     /**
-     * Signal the polling thread to produce a status update.
+     * Check if the process has terminated, and if so, update the state of the job. Does nothing if the job has not started yet, or is done or being killed.
      */
-    private synchronized void triggerStatusUpdate() {
-        if (done) {
-            return;
-        }
+    private void checkProcess() {
 
-        updateSignal = true;
-        notifyAll();
-    }
+        Process p;
 
-    /**
-     * Wait for a certain amount of time for an update.
-     *
-     * @param maxDelay
-     *            the maximum time to wait
-     */
-    private synchronized void waitForStatusUpdate(long maxDelay) {
+        synchronized (this) {
+            if (done || killed || !hasRun) {
+                return;
+            }
 
-        if (done || !updateSignal) {
-            return;
+            p = process;
         }
 
-        long deadline = Deadline.getDeadline(maxDelay);
+        if (p.isDone()) {
+            updateState(DONE_STATE, p.getExitStatus(), null);
+        }
+    }
 
-        long left = maxDelay > 0 ? maxDelay : POLLING_DELAY;
+    private void timeout() {
 
-        while (!done && updateSignal && left > 0) {
-            try {
-                wait(left);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
-            }
+        Process p;
 
-            if (maxDelay > 0) {
-                left = deadline - System.currentTimeMillis();
+        synchronized (this) {
+            if (done || killed) {
+                return;
             }
+
+            killed = true;
+            p = process;
         }
-    }
 
-    /**
-     * Clear the update signal and wake up any waiting threads
-     */
-    private synchronized void clearUpdateRequest() {
-        updateSignal = false;
-        notifyAll();
+        // Destroy first, update state last, otherwise we have a race condition!
+        p.destroy();
+        updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process timed out."));
     }
 
-    /**
-     * Sleep for a certain amount of time, provide the job is not done, and no one requested an update.
-     *
-     * @param maxDelay
-     *            the maximum amount of time to wait
-     */
-    private synchronized void sleep(long maxDelay) {
-
-        if (done || updateSignal || maxDelay <= 0) {
-            return;
+    // Runs the task on the executor, as callbacks and timer tasks should not block the thread they are run by.
+    private void dispatch(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Scheduler is closed, dropped update of job {}", jobIdentifier, e);
         }
+    }
+
+    private void addTask(ScheduledFuture<?> task) {
 
-        long deadline = Deadline.getDeadline(maxDelay);
+        boolean cancel;
 
-        long left = deadline - System.currentTimeMillis();
+        synchronized (this) {
+            cancel = done;
 
-        while (!done && !updateSignal && left > 0) {
-            try {
-                wait(left);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+            if (!done) {
+                tasks.add(task);
             }
+        }
 
-            left = deadline - System.currentTimeMillis();
+        if (cancel) {
+            task.cancel(false);
         }
     }
 
+    // Returns true if the job was killed while the process was being started.
+    private synchronized boolean setProcess(Process process) {
+        this.process = process;
+        return killed;
+    }
+
     private Path processPath(Path root, String path) {
         Path result;
 
@@ -312,20 +442,13 @@ public class JobExecutor implements Runnable {
 
     @Override
     public void run() {
-        Process process;
+        Process started;
 
         if (getKilled()) {
-            updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
+            updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, getKillMessage()));
             return;
         }
 
-        long endTime = 0;
-        int maxTime = description.getMaxRuntime();
-
-        if (maxTime > 0) {
-            endTime = System.currentTimeMillis() + maxTime * MILLISECONDS_PER_MINUTE;
-        }
-
         try {
             // Retrieve the filesystem that goes with the scheduler and resolve the workdir if needed.
             Path workdir = processPath(workingDirectory, description.getWorkingDirectory());
@@ -337,9 +460,9 @@ public class JobExecutor implements Runnable {
             if (interactive) {
                 InteractiveProcess p = factory.createInteractiveProcess(description, workdir.toString(), jobIdentifier, startupTimeout);
                 setStreams(p.getStreams());
-                process = p;
+                started = p;
             } else {
-                process = new BatchProcess(filesystem, workdir, description, jobIdentifier, factory, startupTimeout);
+                started = new BatchProcess(filesystem, workdir, description, jobIdentifier, factory, startupTimeout);
             }
         } catch (XenonException e) {
             updateState(ERROR_STATE, -1, e);
@@ -349,33 +472,29 @@ public class JobExecutor implements Runnable {
             return;
         }
 
-        updateState(RUNNING_STATE, -1, null);
+        if (setProcess(started)) {
+            started.destroy();
+            updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, getKillMessage()));
+            return;
+        }
 
-        while (true) {
+        updateState(RUNNING_STATE, -1, null);
 
-            if (process.isDone()) {
-                updateState(DONE_STATE, process.getExitStatus(), null);
-                return;
-            }
+        int maxTime = description.getMaxRuntime();
 
-            if (getKilled()) {
-                // Destroy first, update state last, otherwise we have a race condition!
-                process.destroy();
-                updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
-                return;
+        try {
+            if (maxTime > 0) {
+                addTask(timer.schedule(() -> dispatch(this::timeout), maxTime, TimeUnit.MINUTES));
             }
 
-            if (maxTime > 0 && System.currentTimeMillis() > endTime) {
-                // Destroy first, update state last, otherwise we have a race condition!
-                process.destroy();
-                updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process timed out."));
-                return;
+            if (!started.onDone(() -> dispatch(this::checkProcess))) {
+                addTask(timer.scheduleWithFixedDelay(() -> dispatch(this::checkProcess), pollingDelay, pollingDelay, TimeUnit.MILLISECONDS));
             }
-
-            clearUpdateRequest();
-
-            sleep(pollingDelay);
+        } catch (RejectedExecutionException e) {
+            // The scheduler was closed while the process was started, so nothing would ever check on it.
+            LOGGER.debug("Scheduler is closed, killing job {}", jobIdentifier, e);
+            checkProcess();
+            kill(SCHEDULER_CLOSED_MESSAGE);
         }
     }
-
 }
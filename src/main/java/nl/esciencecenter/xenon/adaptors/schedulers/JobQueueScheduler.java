@@ -15,12 +15,13 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -34,6 +35,7 @@ import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.IncompleteJobDescriptionException;
 import nl.esciencecenter.xenon.schedulers.InvalidJobDescriptionException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.schedulers.JobStateListener;
 import nl.esciencecenter.xenon.schedulers.JobStatus;
 import nl.esciencecenter.xenon.schedulers.NoSuchJobException;
 import nl.esciencecenter.xenon.schedulers.NoSuchQueueException;
@@ -58,23 +60,28 @@ public class JobQueueScheduler extends Scheduler {
     /** The maximum allowed value for the polling delay */
     public static final int MAX_POLLING_DELAY = 60000;
 
+    /** The default number of finished jobs to keep */
+    public static final int DEFAULT_HISTORY_SIZE = 1000;
+
     private final String adaptorName;
 
     private final FileSystem filesystem;
 
     private final Path workingDirectory;
 
-    private final List<JobExecutor> singleQ = new LinkedList<>();
+    private final JobRegistry jobs;
 
-    private final List<JobExecutor> multiQ = new LinkedList<>();
+    private final JobSlots singleSlots = new JobSlots(1);
 
-    private final List<JobExecutor> unlimitedQ = new LinkedList<>();
+    private final JobSlots multiSlots;
 
-    private final ExecutorService singleExecutor;
+    private final JobSlots unlimitedSlots = new JobSlots(Integer.MAX_VALUE);
 
-    private final ExecutorService multiExecutor;
+    /** Starts the jobs, and handles their completion. */
+    private final ExecutorService executor;
 
-    private final ExecutorService unlimitedExecutor;
+    /** Runs the polls and timeouts of all running jobs. */
+    private final ScheduledThreadPoolExecutor timer;
 
     private final long pollingDelay;
 
@@ -84,11 +91,16 @@ public class JobQueueScheduler extends Scheduler {
 
     private final AtomicLong jobID = new AtomicLong(0L);
 
-    private final ArrayList<List<JobExecutor>> queues = new ArrayList<>();
-
     public JobQueueScheduler(String uniqueID, String adaptorName, String location, Credential credential, InteractiveProcessFactory factory,
             FileSystem filesystem, Path workingDirectory, int multiQThreads, long pollingDelay, long startupTimeout, XenonProperties properties)
             throws BadParameterException {
+        this(uniqueID, adaptorName, location, credential, factory, filesystem, workingDirectory, multiQThreads, pollingDelay, startupTimeout,
+                DEFAULT_HISTORY_SIZE, properties);
+    }
+
+    public JobQueueScheduler(String uniqueID, String adaptorName, String location, Credential credential, InteractiveProcessFactory factory,
+            FileSystem filesystem, Path workingDirectory, int multiQThreads, long pollingDelay, long startupTimeout, int historySize,
+            XenonProperties properties) throws BadParameterException {
 
         super(uniqueID, adaptorName, location, credential, properties);
 
@@ -101,10 +113,6 @@ public class JobQueueScheduler extends Scheduler {
         this.pollingDelay = pollingDelay;
         this.startupTimeout = startupTimeout;
 
-        queues.add(singleQ);
-        queues.add(multiQ);
-        queues.add(unlimitedQ);
-
         if (multiQThreads < 1) {
             throw new BadParameterException(adaptorName, "Number of slots for the multi queue cannot be smaller than one!");
         }
@@ -113,21 +121,79 @@ public class JobQueueScheduler extends Scheduler {
             throw new BadParameterException(adaptorName, "Polling delay must be between " + MIN_POLLING_DELAY + " and " + MAX_POLLING_DELAY + "!");
         }
 
-        unlimitedExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("JobExecutorThread." + uniqueID + "." + UNLIMITED_QUEUE_NAME));
-        singleExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("JobExecutorThread." + uniqueID + "." + SINGLE_QUEUE_NAME));
-        multiExecutor = Executors.newFixedThreadPool(multiQThreads, new DaemonThreadFactory("JobExecutorThread." + uniqueID + "." + MULTI_QUEUE_NAME));
+        multiSlots = new JobSlots(multiQThreads);
+
+        jobs = new JobRegistry(historySize, SINGLE_QUEUE_NAME, MULTI_QUEUE_NAME, UNLIMITED_QUEUE_NAME);
+
+        executor = Executors.newCachedThreadPool(new DaemonThreadFactory("JobExecutorThread." + uniqueID));
+        timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("JobTimerThread." + uniqueID));
+        timer.setRemoveOnCancelPolicy(true);
     }
 
-    public long getCurrentJobID() {
-        return jobID.get();
+    /**
+     * Limits the number of jobs of a queue that run at the same time. A job that does not fit waits until a running job of the queue is done.
+     */
+    private static class JobSlots {
+
+        private final int maxRunning;
+        private final ArrayDeque<JobExecutor> waiting = new ArrayDeque<>();
+        private int running = 0;
+
+        JobSlots(int maxRunning) {
+            this.maxRunning = maxRunning;
+        }
+
+        // Returns true if the job may be started now, otherwise the job is queued.
+        synchronized boolean add(JobExecutor job) {
+            if (running < maxRunning) {
+                running++;
+                return true;
+            }
+
+            waiting.addLast(job);
+            return false;
+        }
+
+        // Returns the next job to start, if any.
+        synchronized JobExecutor done(JobExecutor job) {
+            if (waiting.remove(job)) {
+                // The job was killed before it was started.
+                return null;
+            }
+
+            JobExecutor next = waiting.pollFirst();
+
+            if (next == null) {
+                running--;
+            }
+
+            return next;
+        }
     }
 
-    private void getJobs(List<JobExecutor> list, List<String> out) {
-        for (JobExecutor e : list) {
-            out.add(e.getJobIdentifier());
+    private void start(JobExecutor job) {
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("{}: Scheduler is closed, cannot start job {}", adaptorName, job.getJobIdentifier(), e);
         }
     }
 
+    private void jobDone(JobSlots slots, JobExecutor job) {
+
+        JobExecutor next = slots.done(job);
+
+        jobs.finished(job.getJobIdentifier());
+
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    public long getCurrentJobID() {
+        return jobID.get();
+    }
+
     @Override
     public String getDefaultQueueName() throws XenonException {
         return SINGLE_QUEUE_NAME;
@@ -142,23 +208,19 @@ public class JobQueueScheduler extends Scheduler {
 
         LOGGER.debug("{}: getJobs for queues {}", adaptorName, queueNames);
 
-        LinkedList<String> out = new LinkedList<>();
+        List<String> out = new ArrayList<>();
 
         if (queueNames == null || queueNames.length == 0) {
-            getJobs(singleQ, out);
-            getJobs(multiQ, out);
-            getJobs(unlimitedQ, out);
+            out.addAll(jobs.getJobs(SINGLE_QUEUE_NAME));
+            out.addAll(jobs.getJobs(MULTI_QUEUE_NAME));
+            out.addAll(jobs.getJobs(UNLIMITED_QUEUE_NAME));
         } else {
             for (String name : queueNames) {
-                if (SINGLE_QUEUE_NAME.equals(name)) {
-                    getJobs(singleQ, out);
-                } else if (MULTI_QUEUE_NAME.equals(name)) {
-                    getJobs(multiQ, out);
-                } else if (UNLIMITED_QUEUE_NAME.equals(name)) {
-                    getJobs(unlimitedQ, out);
-                } else {
+                if (!jobs.hasQueue(name)) {
                     throw new NoSuchQueueException(adaptorName, "Queue \"" + name + "\" does not exist");
                 }
+
+                out.addAll(jobs.getJobs(name));
             }
         }
 
@@ -167,63 +229,26 @@ public class JobQueueScheduler extends Scheduler {
         return out.toArray(new String[out.size()]);
     }
 
-    private JobExecutor findJob(List<JobExecutor> queue, String jobIdentifier) throws XenonException {
-
-        LOGGER.debug("{}: findJob for job {}", adaptorName, jobIdentifier);
-
-        for (JobExecutor e : queue) {
-            if (jobIdentifier.equals(e.getJobIdentifier())) {
-                return e;
-            }
-        }
-
-        return null;
-    }
-
     private JobExecutor findJob(String jobIdentifier) throws XenonException {
 
         LOGGER.debug("{}: findJob for job {}", adaptorName, jobIdentifier);
 
         assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
 
-        JobExecutor e = null;
+        JobExecutor e = jobs.get(jobIdentifier);
 
-        for (List<JobExecutor> queue : queues) {
-            e = findJob(queue, jobIdentifier);
-
-            if (e != null) {
-                return e;
-            }
+        if (e == null) {
+            throw new NoSuchJobException(adaptorName, "Job " + jobIdentifier + " does not exist!");
         }
 
-        throw new NoSuchJobException(adaptorName, "Job " + jobIdentifier + " does not exist!");
+        return e;
     }
 
-    private boolean cleanupJob(List<JobExecutor> queue, String jobIdentifier) {
+    private void cleanupJob(String jobIdentifier) {
 
         LOGGER.debug("{}: cleanupJob for job {}", adaptorName, jobIdentifier);
 
-        Iterator<JobExecutor> itt = queue.iterator();
-
-        while (itt.hasNext()) {
-            JobExecutor e = itt.next();
-
-            if (e.getJobIdentifier().equals(jobIdentifier)) {
-                itt.remove();
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    private void cleanupJob(String jobIdentifier) {
-
-        for (List<JobExecutor> queue : queues) {
-            if (cleanupJob(queue, jobIdentifier)) {
-                return;
-            }
-        }
+        jobs.remove(jobIdentifier);
     }
 
     public JobStatus getJobStatus(String jobIdentifier) throws XenonException {
@@ -277,6 +302,31 @@ public class JobQueueScheduler extends Scheduler {
         return status;
     }
 
+    /**
+     * Returns the channel on which short commands can be run directly, without submitting them as a job.
+     *
+     * @return the command channel, or <code>null</code> if the process factory of this scheduler does not support one.
+     */
+    public CommandChannel getCommandChannel() {
+        if (factory instanceof CommandChannel) {
+            return (CommandChannel) factory;
+        }
+
+        return null;
+    }
+
+    @Override
+    public void onStateChange(String jobIdentifier, JobStateListener listener) throws XenonException {
+
+        LOGGER.debug("{}: Adding state listener to job {}", adaptorName, jobIdentifier);
+
+        JobExecutor ex = findJob(jobIdentifier);
+
+        assertNonNull(listener, "Listener cannot be null");
+
+        ex.addStateListener(listener);
+    }
+
     @SuppressWarnings("PMD.NPathComplexity")
     private void verifyJobDescription(JobDescription description, boolean interactive) throws XenonException {
 
@@ -337,30 +387,40 @@ public class JobQueueScheduler extends Scheduler {
 
         verifyJobDescription(description, interactive);
 
-        String jobIdentifier = adaptorName + "-" + jobID.getAndIncrement();
+        long sequence = jobID.getAndIncrement();
+        String jobIdentifier = adaptorName + "-" + sequence;
 
         LOGGER.debug("{}: Created Job {}", adaptorName, jobIdentifier);
 
-        JobExecutor executor = new JobExecutor(adaptorName, filesystem, workingDirectory, factory, new JobDescription(description), jobIdentifier, interactive,
-                pollingDelay, startupTimeout);
-
         String queueName = description.getQueueName();
 
         LOGGER.debug("{}: Submitting job to queue {}", adaptorName, queueName);
 
+        JobSlots slots;
+
         // NOTE: the verifyJobDescription ensures that the queueName has a valid value!
         if (UNLIMITED_QUEUE_NAME.equals(queueName)) {
-            unlimitedQ.add(executor);
-            unlimitedExecutor.execute(executor);
+            slots = unlimitedSlots;
         } else if (MULTI_QUEUE_NAME.equals(queueName)) {
-            multiQ.add(executor);
-            multiExecutor.execute(executor);
+            slots = multiSlots;
         } else { // queueName must be SINGLE_QUEUE_NAME
-            singleQ.add(executor);
-            singleExecutor.execute(executor);
+            slots = singleSlots;
+        }
+
+        if (executor.isShutdown()) {
+            throw new XenonException(adaptorName, "Scheduler is closed");
+        }
+
+        JobExecutor job = new JobExecutor(adaptorName, filesystem, workingDirectory, factory, new JobDescription(description), jobIdentifier, interactive,
+                pollingDelay, startupTimeout, timer, executor, done -> jobDone(slots, done));
+
+        jobs.add(queueName, sequence, job);
+
+        if (slots.add(job)) {
+            start(job);
         }
 
-        return executor;
+        return job;
     }
 
     public String submitBatchJob(JobDescription description) throws XenonException {
@@ -463,9 +523,14 @@ public class JobQueueScheduler extends Scheduler {
 
     @Override
     public void close() throws XenonException {
-        singleExecutor.shutdownNow();
-        multiExecutor.shutdownNow();
-        unlimitedExecutor.shutdownNow();
+        executor.shutdownNow();
+        timer.shutdownNow();
+
+        // Nothing checks on the jobs anymore, so give the jobs that are not done a final status, and stop their processes.
+        for (JobExecutor job : jobs.getAll()) {
+            job.kill(JobExecutor.SCHEDULER_CLOSED_MESSAGE);
+        }
+
         factory.close();
     }
 
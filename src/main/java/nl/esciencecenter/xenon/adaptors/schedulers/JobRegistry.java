@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The jobs of a {@link JobQueueScheduler}, indexed by job identifier and ordered by submission per queue.
+ *
+ * Jobs are found with a single map lookup without locking. Only the bookkeeping of finished jobs is synchronized. A job stays in the registry until its final
+ * status is retrieved, or until more than <code>historySize</code> jobs are done, in which case the job that finished first is evicted.
+ */
+class JobRegistry {
+
+    private static class Entry {
+        private final JobExecutor job;
+        private final long sequence;
+        private final ConcurrentSkipListMap<Long, JobExecutor> queue;
+
+        Entry(JobExecutor job, long sequence, ConcurrentSkipListMap<Long, JobExecutor> queue) {
+            this.job = job;
+            this.sequence = sequence;
+            this.queue = queue;
+        }
+    }
+
+    private final int historySize;
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    // Only filled in the constructor, so it can be read without synchronization.
+    private final Map<String, ConcurrentSkipListMap<Long, JobExecutor>> queues = new HashMap<>();
+
+    // The identifiers of the finished jobs that are still in the registry, in the order in which they finished.
+    private final LinkedHashSet<String> history = new LinkedHashSet<>();
+
+    /**
+     * @param historySize
+     *            the maximum number of finished jobs to keep, or a negative number to keep all finished jobs until their status is retrieved.
+     * @param queueNames
+     *            the names of the queues.
+     */
+    JobRegistry(int historySize, String... queueNames) {
+        this.historySize = historySize;
+
+        for (String name : queueNames) {
+            queues.put(name, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    boolean hasQueue(String queueName) {
+        return queues.containsKey(queueName);
+    }
+
+    /**
+     * Add a job to a queue.
+     *
+     * @param queueName
+     *            the queue of the job, which must exist.
+     * @param sequence
+     *            the sequence number of the job, which determines its position in the queue.
+     * @param job
+     *            the job to add.
+     */
+    void add(String queueName, long sequence, JobExecutor job) {
+        ConcurrentSkipListMap<Long, JobExecutor> queue = queues.get(queueName);
+        index.put(job.getJobIdentifier(), new Entry(job, sequence, queue));
+        queue.put(sequence, job);
+    }
+
+    /**
+     * @param jobIdentifier
+     *            the job to find.
+     * @return the job, or <code>null</code> if it is not in the registry.
+     */
+    JobExecutor get(String jobIdentifier) {
+        Entry e = index.get(jobIdentifier);
+        return e == null ? null : e.job;
+    }
+
+    /**
+     * Remove a job from the registry.
+     *
+     * @param jobIdentifier
+     *            the job to remove.
+     * @return <code>true</code> if the job was removed, or <code>false</code> if it was not in the registry.
+     */
+    boolean remove(String jobIdentifier) {
+        Entry e = index.remove(jobIdentifier);
+
+        if (e == null) {
+            return false;
+        }
+
+        e.queue.remove(e.sequence);
+
+        synchronized (history) {
+            history.remove(jobIdentifier);
+        }
+
+        return true;
+    }
+
+    /**
+     * Record that a job is done, and evict the jobs that finished first if more than <code>historySize</code> jobs are done.
+     *
+     * @param jobIdentifier
+     *            the job that is done.
+     */
+    void finished(String jobIdentifier) {
+
+        if (historySize < 0 || !index.containsKey(jobIdentifier)) {
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+
+        synchronized (history) {
+            history.add(jobIdentifier);
+
+            Iterator<String> it = history.iterator();
+
+            while (history.size() > historySize) {
+                evicted.add(it.next());
+                it.remove();
+            }
+        }
+
+        for (String id : evicted) {
+            remove(id);
+        }
+    }
+
+    /**
+     * @return all jobs in the registry.
+     */
+    List<JobExecutor> getAll() {
+        List<JobExecutor> result = new ArrayList<>();
+
+        for (Entry e : index.values()) {
+            result.add(e.job);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param queueName
+     *            the queue to list.
+     * @return the identifiers of the jobs in the queue, in the order in which they were submitted.
+     */
+    List<String> getJobs(String queueName) {
+        List<String> result = new ArrayList<>();
+
+        for (JobExecutor job : queues.get(queueName).values()) {
+            result.add(job.getJobIdentifier());
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.schedulers.JobStateListener;
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.schedulers.Scheduler;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * Polls the status of all jobs that are waited on or listened to in a {@link Scheduler} with a single background thread.
+ *
+ * Instead of each waiting thread polling the status of its own job, the status of all jobs being waited on is retrieved with a single call to
+ * {@link Scheduler#getJobStatuses(String...)} per poll, after which all waiting threads are woken up to inspect the new status of their job, and the
+ * listeners of jobs that changed state are notified. The thread is started when the first job is waited on or listened to, and stops when no jobs are left.
+ *
+ * Jobs that are still pending in a queue are likely to stay there for a while, so the poll delay grows up to <code>PENDING_SLOWDOWN</code> times the
+ * configured delay with the fraction of jobs that are pending. Jobs that are running are polled at the configured delay.
+ */
+class JobStatusPoller implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobStatusPoller.class);
+
+    static final int PENDING_SLOWDOWN = 4;
+
+    private static class Listener {
+        private final JobStateListener listener;
+        private String state;
+
+        Listener(JobStateListener listener, String state) {
+            this.listener = listener;
+            this.state = state;
+        }
+    }
+
+    private static class Watch {
+        private int waiters = 0;
+        private final List<Listener> listeners = new ArrayList<>();
+        private JobStatus status;
+        private XenonException error;
+
+        boolean isEmpty() {
+            return waiters == 0 && listeners.isEmpty();
+        }
+    }
+
+    private static class Notification {
+        private final JobStateListener listener;
+        private final JobStatus status;
+
+        Notification(JobStateListener listener, JobStatus status) {
+            this.listener = listener;
+            this.status = status;
+        }
+    }
+
+    private final Scheduler scheduler;
+    private final long pollDelay;
+    private final DaemonThreadFactory factory;
+
+    private final Map<String, Watch> watches = new HashMap<>();
+
+    private Thread thread;
+    private boolean closed = false;
+    private long round = 0;
+
+    JobStatusPoller(Scheduler scheduler, long pollDelay) {
+        this.scheduler = scheduler;
+        this.pollDelay = pollDelay;
+        this.factory = new DaemonThreadFactory("JobStatusPoller." + scheduler.getAdaptorName());
+    }
+
+    // Must be called while holding the lock.
+    private Watch getWatch(String jobIdentifier) {
+        Watch watch = watches.computeIfAbsent(jobIdentifier, k -> new Watch());
+
+        if (thread == null) {
+            thread = factory.newThread(this);
+            thread.start();
+        }
+
+        return watch;
+    }
+
+    /**
+     * Wait until the status of a job satisfies a condition, or until the deadline expires, whichever comes first.
+     *
+     * @param jobIdentifier
+     *            the job to wait for.
+     * @param status
+     *            the current status of the job.
+     * @param condition
+     *            the condition to wait for.
+     * @param deadline
+     *            the epoch time at which to give up waiting.
+     * @return the last known status of the job.
+     * @throws XenonException
+     *             if the status of the job could not be retrieved.
+     */
+    synchronized JobStatus waitUntil(String jobIdentifier, JobStatus status, Predicate<JobStatus> condition, long deadline) throws XenonException {
+
+        if (condition.test(status) || closed) {
+            return status;
+        }
+
+        Watch watch = getWatch(jobIdentifier);
+        watch.waiters++;
+
+        try {
+            JobStatus current = status;
+            long seen = round;
+
+            while (!condition.test(current)) {
+
+                long now = System.currentTimeMillis();
+
+                if (closed || now >= deadline) {
+                    return current;
+                }
+
+                try {
+                    wait(deadline - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return current;
+                }
+
+                if (round != seen) {
+                    seen = round;
+
+                    if (watch.error != null) {
+                        throw watch.error;
+                    }
+
+                    if (watch.status != null) {
+                        current = watch.status;
+
+                        if (!condition.test(current) && current.hasException()) {
+                            // The job could not be found, or its status could not be retrieved.
+                            throw current.getException();
+                        }
+                    }
+                }
+            }
+
+            return current;
+        } finally {
+            watch.waiters--;
+
+            if (watch.isEmpty()) {
+                watches.remove(jobIdentifier);
+            }
+        }
+    }
+
+    /**
+     * Notify a listener of the current status of a job, and of each change of the state of the job after that, until the job is done or its status can no
+     * longer be retrieved.
+     *
+     * @param jobIdentifier
+     *            the job to listen to.
+     * @param status
+     *            the current status of the job.
+     * @param listener
+     *            the listener to notify.
+     * @throws XenonException
+     *             if the poller is closed.
+     */
+    void addListener(String jobIdentifier, JobStatus status, JobStateListener listener) throws XenonException {
+
+        synchronized (this) {
+            if (closed) {
+                throw new XenonException(scheduler.getAdaptorName(), "Scheduler is closed");
+            }
+        }
+
+        // The current status is delivered before the listener is registered, so it always precedes the status changes found by the poller thread.
+        notifyListener(new Notification(listener, status));
+
+        if (isFinal(status)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (!closed) {
+                getWatch(jobIdentifier).listeners.add(new Listener(listener, status.getState()));
+                return;
+            }
+        }
+
+        XenonException error = new XenonException(scheduler.getAdaptorName(), "Scheduler is closed");
+        notifyListener(new Notification(listener, new JobStatusImplementation(jobIdentifier, null, status.getState(), null, error, false, false, null)));
+    }
+
+    /**
+     * Stop polling, wake up all waiting threads, and notify the listeners that the status of their job can no longer be retrieved.
+     */
+    void close() {
+
+        List<Notification> notifications = new ArrayList<>();
+
+        synchronized (this) {
+            closed = true;
+
+            for (Map.Entry<String, Watch> e : watches.entrySet()) {
+                XenonException error = new XenonException(scheduler.getAdaptorName(), "Scheduler is closed");
+
+                for (Listener l : e.getValue().listeners) {
+                    notifications.add(new Notification(l.listener, new JobStatusImplementation(e.getKey(), null, l.state, null, error, false, false, null)));
+                }
+
+                e.getValue().listeners.clear();
+            }
+
+            notifyAll();
+        }
+
+        notifyListeners(notifications);
+    }
+
+    private static boolean isFinal(JobStatus status) {
+        return status.isDone() || status.hasException();
+    }
+
+    private void notifyListener(Notification n) {
+        try {
+            n.listener.stateChanged(n.status);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Job state listener of job {} failed", n.status.getJobIdentifier(), e);
+        }
+    }
+
+    private void notifyListeners(List<Notification> notifications) {
+        for (Notification n : notifications) {
+            notifyListener(n);
+        }
+    }
+
+    // Returns the jobs to poll, or null if the poller thread should stop.
+    private synchronized String[] getJobs() {
+        if (closed || watches.isEmpty()) {
+            thread = null;
+            return null;
+        }
+
+        return watches.keySet().toArray(new String[0]);
+    }
+
+    // Stores the new status of the jobs, wakes up the waiting threads, and collects the listeners to notify. Returns the delay until the next poll.
+    private synchronized long update(String[] jobs, JobStatus[] result, XenonException error, List<Notification> notifications) {
+
+        int pending = 0;
+
+        for (int i = 0; i < jobs.length; i++) {
+            Watch watch = watches.get(jobs[i]);
+
+            if (watch == null) {
+                continue;
+            }
+
+            watch.error = error;
+            watch.status = result == null ? null : result[i];
+
+            if (watch.status == null) {
+                // A failed poll is retried for listeners, as they have no caller to report the error to.
+                continue;
+            }
+
+            if (!watch.status.isRunning() && !watch.status.isDone()) {
+                pending++;
+            }
+
+            boolean last = isFinal(watch.status);
+
+            Iterator<Listener> it = watch.listeners.iterator();
+
+            while (it.hasNext()) {
+                Listener l = it.next();
+
+                if (last || !Objects.equals(l.state, watch.status.getState())) {
+                    l.state = watch.status.getState();
+                    notifications.add(new Notification(l.listener, watch.status));
+                }
+
+                if (last) {
+                    it.remove();
+                }
+            }
+
+            if (watch.isEmpty()) {
+                watches.remove(jobs[i]);
+            }
+        }
+
+        round++;
+        notifyAll();
+
+        return pollDelay + (pollDelay * (PENDING_SLOWDOWN - 1) * pending) / jobs.length;
+    }
+
+    // Sleeps until the next poll. Returns false if the poller thread was interrupted.
+    private synchronized boolean pause(long delay) {
+
+        long deadline = System.currentTimeMillis() + delay;
+        long now = System.currentTimeMillis();
+
+        while (!closed && now < deadline) {
+            try {
+                wait(deadline - now);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                thread = null;
+                return false;
+            }
+            now = System.currentTimeMillis();
+        }
+
+        return true;
+    }
+
+    @Override
+    public void run() {
+
+        String[] jobs = getJobs();
+
+        while (jobs != null) {
+
+            JobStatus[] result = null;
+            XenonException error = null;
+
+            try {
+                result = scheduler.getJobStatuses(jobs);
+            } catch (XenonException e) {
+                LOGGER.debug("Failed to poll status of {} jobs", jobs.length, e);
+                error = e;
+            }
+
+            List<Notification> notifications = new ArrayList<>();
+
+            long delay = update(jobs, result, error, notifications);
+
+            notifyListeners(notifications);
+
+            if (!pause(delay)) {
+                return;
+            }
+
+            jobs = getJobs();
+        }
+    }
+}
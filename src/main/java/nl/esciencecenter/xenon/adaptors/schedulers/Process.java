@@ -25,4 +25,17 @@ public interface Process {
     int getExitStatus();
 
     void destroy();
+
+    /**
+     * Register a callback that is run once the process has terminated. The callback may be run by an internal thread of the process implementation, or
+     * immediately if the process has already terminated, so it should return quickly.
+     *
+     * @param callback
+     *            the callback to run.
+     * @return <code>true</code> if the callback was registered, or <code>false</code> if this process cannot report its termination, in which case
+     *         {@link #isDone()} must be polled instead.
+     */
+    default boolean onDone(Runnable callback) {
+        return false;
+    }
 }
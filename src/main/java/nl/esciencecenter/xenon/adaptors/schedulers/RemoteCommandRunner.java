@@ -15,6 +15,8 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
+import java.util.stream.Stream;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,19 +26,27 @@ import nl.esciencecenter.xenon.schedulers.JobStatus;
 import nl.esciencecenter.xenon.schedulers.Scheduler;
 import nl.esciencecenter.xenon.schedulers.Streams;
 import nl.esciencecenter.xenon.utils.InputWriter;
+import nl.esciencecenter.xenon.utils.OutputBuffer;
 import nl.esciencecenter.xenon.utils.OutputReader;
 
 /**
  * Runs a command. Constructor waits for command to finish.
  *
+ * Also used to hold the result of a command run on a {@link CommandChannel}.
+ *
+ * Large output on stdout is kept in a temporary file until it is first retrieved as a String. Use {@link #getStdoutLines()} to parse it without loading all
+ * of it into memory, and close the runner afterwards.
  */
-public class RemoteCommandRunner {
+public class RemoteCommandRunner implements AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RemoteCommandRunner.class);
 
     private final int exitCode;
 
-    private final String output;
+    // Holds stdout until it is retrieved with getStdout, or null if the output was given as a String.
+    private OutputBuffer outputBuffer;
+
+    private String output;
 
     private final String error;
 
@@ -85,19 +95,90 @@ public class RemoteCommandRunner {
         }
 
         this.exitCode = status.getExitCode();
-        this.output = out.getResultAsString();
+        this.outputBuffer = out.getBuffer();
         this.error = err.getResultAsString();
 
+        err.close();
+
         long runtime = System.currentTimeMillis() - start;
 
-        LOGGER.debug("CommandRunner took {} ms, executable = {}, arguments = {}, exitcode = {}, stdout:\n{}\nstderr:\n{}", runtime, executable, arguments,
-                exitCode, output, error);
+        LOGGER.debug("CommandRunner took {} ms, executable = {}, arguments = {}, exitcode = {}, stdout: {} bytes\nstderr:\n{}", runtime, executable,
+                arguments, exitCode, out.getSize(), error);
+    }
+
+    /**
+     * Create the result of a command that has already finished, for example on a {@link CommandChannel}.
+     *
+     * @param exitCode
+     *            the exit code of the command
+     * @param output
+     *            the text the command produced on stdout
+     * @param error
+     *            the text the command produced on stderr
+     */
+    public RemoteCommandRunner(int exitCode, String output, String error) {
+        this.exitCode = exitCode;
+        this.output = output;
+        this.error = error;
+    }
+
+    /**
+     * Create the result of a command that has already finished, of which the output was collected in an {@link OutputBuffer}. The runner takes ownership of
+     * the buffer, and discards it when the output is retrieved as a String or when the runner is closed.
+     *
+     * @param exitCode
+     *            the exit code of the command
+     * @param output
+     *            the closed buffer holding the output the command produced on stdout
+     * @param error
+     *            the text the command produced on stderr
+     */
+    public RemoteCommandRunner(int exitCode, OutputBuffer output, String error) {
+        this.exitCode = exitCode;
+        this.outputBuffer = output;
+        this.error = error;
     }
 
-    public String getStdout() {
+    /**
+     * Returns the output of the command. If the output was kept in a temporary file, it is loaded into memory and the file is deleted.
+     *
+     * @return the text the command produced on stdout
+     */
+    public synchronized String getStdout() {
+        if (output == null) {
+            output = outputBuffer.getResultAsString();
+            outputBuffer.discard();
+            outputBuffer = null;
+        }
+
         return output;
     }
 
+    /**
+     * Returns the output of the command line by line, without loading all of it into memory.
+     *
+     * @return the lines of text the command produced on stdout. The stream should be closed after use.
+     */
+    public synchronized Stream<String> getStdoutLines() {
+        if (output == null) {
+            return outputBuffer.lines();
+        }
+
+        return output.lines();
+    }
+
+    /**
+     * Discard the output of the command, deleting its temporary file if one was created. The output can no longer be retrieved afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (outputBuffer != null) {
+            outputBuffer.discard();
+            outputBuffer = null;
+            output = "";
+        }
+    }
+
     public String getStderr() {
         return error;
     }
@@ -115,6 +196,6 @@ public class RemoteCommandRunner {
     }
 
     public String toString() {
-        return "CommandRunner[exitCode=" + exitCode + ",output=" + output + ",error=" + error + "]";
+        return "CommandRunner[exitCode=" + exitCode + ",output=" + getStdout() + ",error=" + error + "]";
     }
 }
@@ -18,8 +18,10 @@ package nl.esciencecenter.xenon.adaptors.schedulers;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import nl.esciencecenter.xenon.XenonException;
 
@@ -309,7 +311,6 @@ public final class ScriptingParser {
      * @throws XenonException
      *             when parsing fails
      */
-    @SuppressWarnings("PMD.NPathComplexity")
     public static Map<String, Map<String, String>> parseTable(String input, String keyField, Pattern fieldSeparatorRegEx, String adaptorName,
             String... valueSuffixes) throws XenonException {
         if (input.isEmpty()) {
@@ -318,40 +319,92 @@ public final class ScriptingParser {
 
         String[] lines = NEWLINE_REGEX.split(input);
 
-        int headerLine = 0;
-        String[] fields;
+        return parseTable(Arrays.asList(lines).iterator(), input, keyField, fieldSeparatorRegEx, adaptorName, valueSuffixes);
+    }
+
+    /**
+     * Parses lines containing multiple values, one line at a time, so the output does not have to be loaded into memory as a whole. The first line of the
+     * output must contain a header with the field names.
+     *
+     * @param lines
+     *            the lines to parse
+     *
+     * @param keyField
+     *            the field to use as the key in the result map. This field is mandatory in the output.
+     *
+     * @param fieldSeparatorRegEx
+     *            a regular expression of the separator between fields. Usually whitespace.
+     *
+     * @param adaptorName
+     *            the adaptor name to report in case parsing failed
+     *
+     * @param valueSuffixes
+     *            suffixes to be removed from values in the table. Useful if the output contains special markers for defaults, disabled queues, broken nodes,
+     *            etc
+     *
+     * @return a map containing key/value maps of all records.
+     * @throws XenonException
+     *             when parsing fails
+     */
+    public static Map<String, Map<String, String>> parseTable(Stream<String> lines, String keyField, Pattern fieldSeparatorRegEx, String adaptorName,
+            String... valueSuffixes) throws XenonException {
+
+        Iterator<String> it = lines.iterator();
+
+        if (!it.hasNext()) {
+            throw new XenonException(adaptorName, "Cannot parse table, Got no input, expected at least a header");
+        }
+
+        return parseTable(it, null, keyField, fieldSeparatorRegEx, adaptorName, valueSuffixes);
+    }
+
+    // The input is only used in error messages, and may be null if it is not available as a whole.
+    @SuppressWarnings("PMD.NPathComplexity")
+    private static Map<String, Map<String, String>> parseTable(Iterator<String> lines, String input, String keyField, Pattern fieldSeparatorRegEx,
+            String adaptorName, String... valueSuffixes) throws XenonException {
+
+        String header = null;
+
         // the first line will contain the fields (unless it is a separator)
-        while (headerLine < lines.length && HORIZONTAL_LINE_REGEX.matcher(lines[headerLine]).find()) {
-            headerLine++;
+        while (header == null && lines.hasNext()) {
+            String line = lines.next();
+
+            if (!HORIZONTAL_LINE_REGEX.matcher(line).find()) {
+                header = line;
+            }
         }
-        if (headerLine == lines.length) {
+
+        if (header == null) {
             throw new XenonException(adaptorName, "No table header encountered");
         }
 
-        fields = fieldSeparatorRegEx.split(lines[headerLine]);
+        String[] fields = fieldSeparatorRegEx.split(header);
 
         for (int i = 0; i < fields.length; i++) {
             fields[i] = fields[i].trim();
 
             if (fields[i].isEmpty()) {
-                throw new XenonException(adaptorName, "Output contains empty field name in line \"" + lines[0] + "\"");
+                throw new XenonException(adaptorName, "Output contains empty field name in line \"" + header + "\"");
             }
         }
 
-        Map<String, Map<String, String>> result = new HashMap<>(lines.length * 4 / 3);
+        Map<String, Map<String, String>> result = new HashMap<>();
         int rowSize = (int) Math.ceil(fields.length / 0.75);
 
-        for (int i = headerLine + 1; i < lines.length; i++) {
-            if (HORIZONTAL_LINE_REGEX.matcher(lines[i]).find()) {
+        while (lines.hasNext()) {
+            String line = lines.next();
+
+            if (HORIZONTAL_LINE_REGEX.matcher(line).find()) {
                 // do not parse separators
                 continue;
             }
 
-            String[] values = mergeTuples(fieldSeparatorRegEx.split(lines[i]));
+            String[] values = mergeTuples(fieldSeparatorRegEx.split(line));
 
             if (fields.length != values.length) {
                 throw new XenonException(adaptorName, "Expected " + fields.length + " fields in output " + Arrays.toString(fields) + ", got line with "
-                        + values.length + " values: " + lines[i] + "parsed to: " + Arrays.toString(values) + " original input\n\n" + input + "\n\n");
+                        + values.length + " values: " + line + "parsed to: " + Arrays.toString(values)
+                        + (input == null ? "" : " original input\n\n" + input + "\n\n"));
             }
 
             Map<String, String> map = new HashMap<>(rowSize);
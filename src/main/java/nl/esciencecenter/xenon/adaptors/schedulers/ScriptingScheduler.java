@@ -15,9 +15,13 @@
  */
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +34,7 @@ import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.InvalidJobDescriptionException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.schedulers.JobStateListener;
 import nl.esciencecenter.xenon.schedulers.JobStatus;
 import nl.esciencecenter.xenon.schedulers.NoSuchQueueException;
 import nl.esciencecenter.xenon.schedulers.QueueStatus;
@@ -49,12 +54,27 @@ public abstract class ScriptingScheduler extends Scheduler {
 
     protected final long pollDelay;
 
+    // Used to run commands directly on the sub scheduler, or null if it does not support this.
+    private final CommandChannel commandChannel;
+
+    private final JobStatusPoller poller;
+
+    // Caches the output of commands that only read the state of the scheduler.
+    private final CommandCache cache;
+
     protected ScriptingScheduler(String uniqueID, String adaptor, String location, Credential credential, Map<String, String> prop,
             XenonPropertyDescription[] validProperties, String pollDelayProperty) throws XenonException {
+        this(uniqueID, adaptor, location, credential, prop, validProperties, pollDelayProperty, null);
+    }
+
+    protected ScriptingScheduler(String uniqueID, String adaptor, String location, Credential credential, Map<String, String> prop,
+            XenonPropertyDescription[] validProperties, String pollDelayProperty, String cacheTimeProperty) throws XenonException {
 
         super(uniqueID, adaptor, location, credential, ScriptingUtils.getProperties(validProperties, location, prop));
 
         this.pollDelay = properties.getLongProperty(pollDelayProperty);
+        this.poller = new JobStatusPoller(this, pollDelay);
+        this.cache = new CommandCache(adaptor, cacheTimeProperty == null ? 0 : properties.getLongProperty(cacheTimeProperty));
 
         String subSchedulerAdaptor;
         // String subFileSystemAdaptor;
@@ -91,6 +111,12 @@ public abstract class ScriptingScheduler extends Scheduler {
         // LOGGER.debug("creating file system for {} adaptor at {}://{}", adaptor, subFileSystemAdaptor, subLocation);
         subFileSystem = subScheduler.getFileSystem();
 
+        if (subScheduler instanceof JobQueueScheduler) {
+            commandChannel = ((JobQueueScheduler) subScheduler).getCommandChannel();
+        } else {
+            commandChannel = null;
+        }
+
         // FileSystem.create(subFileSystemAdaptor, subLocation, credential, null);
     }
 
@@ -125,6 +151,8 @@ public abstract class ScriptingScheduler extends Scheduler {
     /**
      * Run a command on the remote scheduler machine.
      *
+     * If the sub scheduler supports it, the command is run directly on its {@link CommandChannel}. Otherwise it is submitted as an interactive job.
+     *
      * @param stdin
      *            the text to write to the input of the executable.
      * @param executable
@@ -136,7 +164,29 @@ public abstract class ScriptingScheduler extends Scheduler {
      *             if an error occurs
      */
     public RemoteCommandRunner runCommand(String stdin, String executable, String... arguments) throws XenonException {
-        return new RemoteCommandRunner(subScheduler, stdin, executable, arguments);
+
+        if (commandChannel == null) {
+            return new RemoteCommandRunner(subScheduler, stdin, executable, arguments);
+        }
+
+        long start = System.currentTimeMillis();
+
+        CompletableFuture<RemoteCommandRunner> future = commandChannel.execute(getWorkingDirectory().toString(), stdin, executable, arguments);
+
+        RemoteCommandRunner runner;
+
+        try {
+            runner = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XenonException(getAdaptorName(), "Interrupted while running command " + executable, e);
+        } catch (ExecutionException e) {
+            throw new XenonException(getAdaptorName(), "Could not run command remotely", e.getCause());
+        }
+
+        LOGGER.debug("Command took {} ms, executable = {}, arguments = {}, {}", System.currentTimeMillis() - start, executable, arguments, runner);
+
+        return runner;
     }
 
     // Subclasses can override this method to produce more specified exceptions
@@ -161,13 +211,66 @@ public abstract class ScriptingScheduler extends Scheduler {
      *             if an error occurred
      */
     public String runCheckedCommand(String stdin, String executable, String... arguments) throws XenonException {
-        RemoteCommandRunner runner = new RemoteCommandRunner(subScheduler, stdin, executable, arguments);
+        try (RemoteCommandRunner runner = runCheckedCommandRunner(stdin, executable, arguments)) {
+            return runner.getStdout();
+        }
+    }
+
+    /**
+     * Run a command without input until completion, like {@link #runCheckedCommand(String, String, String...)}, but reuse its output if the same command
+     * was run recently, or is still running. Should only be used for commands that do not change the state of the scheduler.
+     *
+     * @param executable
+     *            the executable to run
+     * @param arguments
+     *            the arguments to the executable
+     * @return the text produced by the executable on the stdout stream.
+     * @throws XenonException
+     *             if an error occurred
+     */
+    protected String runCachedCommand(String executable, String... arguments) throws XenonException {
+        List<String> key = new ArrayList<>(arguments.length + 1);
+        key.add(executable);
+        key.addAll(Arrays.asList(arguments));
+
+        return cache.get(key, () -> runCheckedCommand(null, executable, arguments));
+    }
+
+    /**
+     * Forget the output of all cached commands. Should be called after the state of the scheduler was changed, for example by submitting or cancelling a
+     * job.
+     */
+    protected void invalidateCache() {
+        cache.invalidate();
+    }
+
+    /**
+     * Run a command until completion, and throw an exception if it returns a non-zero exit code, or prints to stderr. Unlike
+     * {@link #runCheckedCommand(String, String, String...)}, the output is not loaded into memory, so it can be parsed with
+     * {@link RemoteCommandRunner#getStdoutLines()}. The runner should be closed afterwards.
+     *
+     * @param stdin
+     *            the text to write to the input of the executable.
+     * @param executable
+     *            the executable to run
+     * @param arguments
+     *            the arguments to the executable
+     * @return the runner holding the output of the command.
+     * @throws XenonException
+     *             if an error occurred
+     */
+    public RemoteCommandRunner runCheckedCommandRunner(String stdin, String executable, String... arguments) throws XenonException {
+        RemoteCommandRunner runner = runCommand(stdin, executable, arguments);
 
         if (!runner.success()) {
-            translateError(runner, stdin, executable, arguments);
+            try {
+                translateError(runner, stdin, executable, arguments);
+            } finally {
+                runner.close();
+            }
         }
 
-        return runner.getStdout();
+        return runner;
     }
 
     /**
@@ -214,16 +317,6 @@ public abstract class ScriptingScheduler extends Scheduler {
         }
     }
 
-    protected boolean sleep(long pollDelay) {
-        try {
-            Thread.sleep(pollDelay);
-            return false;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return true;
-        }
-    }
-
     /**
      * Wait until a Job is done, or until the give timeout expires (whichever comes first).
      *
@@ -249,16 +342,7 @@ public abstract class ScriptingScheduler extends Scheduler {
         JobStatus status = getJobStatus(jobIdentifier);
 
         // wait until we are done, or the timeout expires
-        while (!status.isDone() && System.currentTimeMillis() < deadline) {
-
-            if (sleep(pollDelay)) {
-                return status;
-            }
-
-            status = getJobStatus(jobIdentifier);
-        }
-
-        return status;
+        return poller.waitUntil(jobIdentifier, status, JobStatus::isDone, deadline);
     }
 
     /**
@@ -285,17 +369,33 @@ public abstract class ScriptingScheduler extends Scheduler {
 
         JobStatus status = getJobStatus(jobIdentifier);
 
-        // wait until we are done, or the timeout expires
-        while (!(status.isRunning() || status.isDone()) && System.currentTimeMillis() < deadline) {
+        // wait until we are running or done, or the timeout expires
+        return poller.waitUntil(jobIdentifier, status, s -> s.isRunning() || s.isDone(), deadline);
+    }
 
-            if (sleep(pollDelay)) {
-                return status;
-            }
+    /**
+     * Register a listener that is notified of the changes of the state of a job.
+     *
+     * The status of all jobs that are listened to is retrieved with a single call to {@link #getJobStatuses(String...)} per poll, shared with the threads
+     * waiting in {@link #waitUntilDone(String, long)} and {@link #waitUntilRunning(String, long)}. If this call fails as a whole, it is retried at the next
+     * poll.
+     *
+     * @param jobIdentifier
+     *            the job to listen to
+     * @param listener
+     *            the listener to notify
+     * @throws XenonException
+     *             if an error occurs
+     */
+    @Override
+    public void onStateChange(String jobIdentifier, JobStateListener listener) throws XenonException {
 
-            status = getJobStatus(jobIdentifier);
-        }
+        assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
+        assertNonNull(listener, "Listener cannot be null");
+
+        JobStatus status = getJobStatus(jobIdentifier);
 
-        return status;
+        poller.addListener(jobIdentifier, status, listener);
     }
 
     // /**
@@ -360,6 +460,7 @@ public abstract class ScriptingScheduler extends Scheduler {
 
     @Override
     public void close() throws XenonException {
+        poller.close();
         subScheduler.close();
         subFileSystem.close();
     }
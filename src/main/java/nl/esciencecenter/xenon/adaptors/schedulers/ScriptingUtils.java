@@ -304,27 +304,4 @@ public class ScriptingUtils {
 
         return result;
     }
-
-    /**
-     * Escapes and quotes command line arguments to keep shells from expanding/interpreting them.
-     *
-     * @param argument
-     *            the argument to protect.
-     * @return an argument with quotes, and escaped characters where needed.
-     */
-    public static String protectAgainstShellMetas(String argument) {
-        char[] chars = argument.toCharArray();
-        StringBuilder b = new StringBuilder(chars.length + 10);
-        b.append('\'');
-        for (char c : chars) {
-            if (c == '\'') {
-                b.append('\'');
-                b.append('\\');
-                b.append('\'');
-            }
-            b.append(c);
-        }
-        b.append('\'');
-        return b.toString();
-    }
 }
@@ -33,6 +33,7 @@ import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingUtils;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.InvalidJobDescriptionException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.utils.ShellUtils;
 
 public class AtUtils {
 
@@ -240,7 +241,7 @@ public class AtUtils {
         echo(script, "EXEC", description.getExecutable(), tmpFile);
 
         for (String argument : description.getArguments()) {
-            echo(script, "EXEC_PARAM", ScriptingUtils.protectAgainstShellMetas(argument), tmpFile);
+            echo(script, "EXEC_PARAM", ShellUtils.protectAgainstShellMetas(argument), tmpFile);
         }
 
         if (!description.getEnvironment().isEmpty()) {
@@ -253,7 +254,7 @@ public class AtUtils {
         script.format("%s", description.getExecutable());
 
         for (String argument : description.getArguments()) {
-            script.format(" %s", ScriptingUtils.protectAgainstShellMetas(argument));
+            script.format(" %s", ShellUtils.protectAgainstShellMetas(argument));
         }
 
         script.format(" < '%s' > '%s' 2> '%s' &\n", stdin, stdout, stderr);
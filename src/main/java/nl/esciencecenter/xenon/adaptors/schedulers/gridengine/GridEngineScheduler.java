@@ -17,6 +17,7 @@ package nl.esciencecenter.xenon.adaptors.schedulers.gridengine;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.ACCOUNTING_GRACE_TIME_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.ADAPTOR_NAME;
+import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.CACHE_TIME_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.IGNORE_VERSION_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineSchedulerAdaptor.POLL_DELAY_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.gridengine.GridEngineUtils.QACCT_HEADER;
@@ -70,7 +71,7 @@ public class GridEngineScheduler extends ScriptingScheduler {
     protected GridEngineScheduler(String uniqueID, String location, Credential credential, XenonPropertyDescription[] valid, Map<String, String> prop)
             throws XenonException {
 
-        super(uniqueID, ADAPTOR_NAME, location, credential, prop, valid, POLL_DELAY_PROPERTY);
+        super(uniqueID, ADAPTOR_NAME, location, credential, prop, valid, POLL_DELAY_PROPERTY, CACHE_TIME_PROPERTY);
 
         boolean ignoreVersion = properties.getBooleanProperty(IGNORE_VERSION_PROPERTY);
         long accountingGraceTime = properties.getLongProperty(ACCOUNTING_GRACE_TIME_PROPERTY);
@@ -105,7 +106,7 @@ public class GridEngineScheduler extends ScriptingScheduler {
         ArrayList<String> result = new ArrayList<>();
 
         if (queueNames == null || queueNames.length == 0) {
-            String statusOutput = runCheckedCommand(null, "qstat", "-xml");
+            String statusOutput = runCachedCommand("qstat", "-xml");
 
             jobsFromStatus(statusOutput, result);
         } else {
@@ -132,7 +133,7 @@ public class GridEngineScheduler extends ScriptingScheduler {
 
         assertNonNullOrEmpty(queueName, "Queue name cannot be null or empty!");
 
-        String qstatOutput = runCheckedCommand(null, "qstat", "-xml", "-g", "c");
+        String qstatOutput = runCachedCommand("qstat", "-xml", "-g", "c");
 
         Map<String, Map<String, String>> allMap = parser.parseQueueInfos(qstatOutput);
 
@@ -156,7 +157,7 @@ public class GridEngineScheduler extends ScriptingScheduler {
             queueNames = getQueueNames();
         }
 
-        String qstatOutput = runCheckedCommand(null, "qstat", "-xml", "-g", "c");
+        String qstatOutput = runCachedCommand("qstat", "-xml", "-g", "c");
 
         Map<String, Map<String, String>> allMap = parser.parseQueueInfos(qstatOutput);
 
@@ -179,6 +180,8 @@ public class GridEngineScheduler extends ScriptingScheduler {
 
         output = runCheckedCommand(jobScript, "qsub");
 
+        invalidateCache();
+
         String identifier = ScriptingParser.parseJobIDFromLine(output, ADAPTOR_NAME, "Your job");
 
         jobSeenMap.updateRecentlySeen(Collections.singleton(identifier));
@@ -193,6 +196,8 @@ public class GridEngineScheduler extends ScriptingScheduler {
 
         String qdelOutput = runCheckedCommand(null, "qdel", jobIdentifier);
 
+        invalidateCache();
+
         String killedOutput = "has registered the job " + jobIdentifier + " for deletion";
         String deletedOutput = "has deleted job " + jobIdentifier;
 
@@ -42,6 +42,9 @@ public class GridEngineSchedulerAdaptor extends ScriptingSchedulerAdaptor {
     /** Polling delay for jobs started by this adaptor. */
     public static final String POLL_DELAY_PROPERTY = PREFIX + "poll.delay";
 
+    /** Time to reuse the queue status and job listings retrieved from the scheduler. */
+    public static final String CACHE_TIME_PROPERTY = PREFIX + "cache.time";
+
     /** Human readable description of this adaptor */
     public static final String ADAPTOR_DESCRIPTION = "The SGE Adaptor submits jobs to a (Sun/Oracle/Univa) Grid Engine scheduler."
             + " This adaptor uses either the local or the ssh scheduler adaptor to run commands on the machine running Grid Engine, "
@@ -57,7 +60,9 @@ public class GridEngineSchedulerAdaptor extends ScriptingSchedulerAdaptor {
                             + "WARNING: it is not recommended to use this setting in production environments!"),
             new XenonPropertyDescription(ACCOUNTING_GRACE_TIME_PROPERTY, Type.LONG, "60000",
                     "Number of milliseconds a job is allowed to take going from the queue to the qacct output."),
-            new XenonPropertyDescription(POLL_DELAY_PROPERTY, Type.LONG, "1000", "Number of milliseconds between polling the status of a job.") };
+            new XenonPropertyDescription(POLL_DELAY_PROPERTY, Type.LONG, "1000", "Number of milliseconds between polling the status of a job."),
+            new XenonPropertyDescription(CACHE_TIME_PROPERTY, Type.LONG, "0",
+                    "Number of milliseconds to reuse the queue status and job listings retrieved from the scheduler.") };
 
     public GridEngineSchedulerAdaptor() throws XenonException {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
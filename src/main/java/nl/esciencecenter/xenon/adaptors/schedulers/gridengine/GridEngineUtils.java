@@ -33,6 +33,7 @@ import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.InvalidJobDescriptionException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.utils.ShellUtils;
 
 /**
  * Generator for GridEngine job script.
@@ -75,7 +76,7 @@ final class GridEngineUtils {
         script.format("%s", description.getExecutable());
 
         for (String argument : description.getArguments()) {
-            script.format(" %s", ScriptingUtils.protectAgainstShellMetas(argument));
+            script.format(" %s", ShellUtils.protectAgainstShellMetas(argument));
         }
         script.format("\n");
     }
@@ -91,7 +92,7 @@ final class GridEngineUtils {
         script.format("%s", "  ssh -o StrictHostKeyChecking=false $host \"cd `pwd` && ");
         script.format("%s", description.getExecutable());
         for (String argument : description.getArguments()) {
-            script.format(" %s", ScriptingUtils.protectAgainstShellMetas(argument));
+            script.format(" %s", ShellUtils.protectAgainstShellMetas(argument));
         }
         script.format("%c&\n", '"');
         // }
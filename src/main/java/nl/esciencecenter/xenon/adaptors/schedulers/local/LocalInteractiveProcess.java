@@ -90,6 +90,11 @@ class LocalInteractiveProcess implements InteractiveProcess {
         return exitCode;
     }
 
+    public boolean onDone(Runnable callback) {
+        process.onExit().thenRun(callback);
+        return true;
+    }
+
     private boolean destroyProcess(ProcessHandle s, int timeout, TimeUnit unit) {
 
         if (s.isAlive() && s.destroy()) {
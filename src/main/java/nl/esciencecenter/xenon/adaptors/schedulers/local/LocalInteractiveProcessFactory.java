@@ -17,16 +17,42 @@ package nl.esciencecenter.xenon.adaptors.schedulers.local;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.local.LocalSchedulerAdaptor.ADAPTOR_NAME;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.schedulers.CommandChannel;
 import nl.esciencecenter.xenon.adaptors.schedulers.InteractiveProcess;
 import nl.esciencecenter.xenon.adaptors.schedulers.InteractiveProcessFactory;
+import nl.esciencecenter.xenon.adaptors.schedulers.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerClosedException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.utils.OutputBuffer;
+
+public class LocalInteractiveProcessFactory implements InteractiveProcessFactory, CommandChannel {
 
-public class LocalInteractiveProcessFactory implements InteractiveProcessFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalInteractiveProcessFactory.class);
+
+    // Number of bytes of command output loaded into memory. Larger output is kept in its temporary file.
+    private final int outputMemoryLimit;
 
     private boolean open = true;
 
+    public LocalInteractiveProcessFactory() {
+        this(OutputBuffer.DEFAULT_MEMORY_LIMIT);
+    }
+
+    LocalInteractiveProcessFactory(int outputMemoryLimit) {
+        this.outputMemoryLimit = outputMemoryLimit;
+    }
+
     @Override
     public synchronized InteractiveProcess createInteractiveProcess(JobDescription description, String workdir, String jobIdentifier, long timeoutInMillis)
             throws XenonException {
@@ -36,6 +62,97 @@ public class LocalInteractiveProcessFactory implements InteractiveProcessFactory
         return new LocalInteractiveProcess(description, workdir, jobIdentifier);
     }
 
+    /**
+     * Run a local command. The input and output of the command are redirected to temporary files, so no threads are needed to forward them. Large output is
+     * not loaded into memory, but kept in its temporary file until the result is closed.
+     */
+    @Override
+    public CompletableFuture<RemoteCommandRunner> execute(String workdir, String stdin, String executable, String... arguments) throws XenonException {
+
+        if (!isOpen()) {
+            throw new SchedulerClosedException(ADAPTOR_NAME, "Scheduler is closed");
+        }
+
+        ProcessBuilder builder = new ProcessBuilder();
+
+        builder.command().add(executable);
+        builder.command().addAll(Arrays.asList(arguments));
+        builder.directory(new File(workdir == null ? System.getProperty("user.dir") : workdir));
+
+        File in = null;
+        File out = null;
+        File err = null;
+
+        try {
+            out = File.createTempFile("xenon", ".out");
+            err = File.createTempFile("xenon", ".err");
+
+            builder.redirectOutput(out);
+            builder.redirectError(err);
+
+            if (stdin != null) {
+                in = File.createTempFile("xenon", ".in");
+                Files.write(in.toPath(), stdin.getBytes());
+                builder.redirectInput(in);
+            }
+
+            Process process = builder.start();
+
+            if (stdin == null) {
+                process.getOutputStream().close();
+            }
+
+            File input = in;
+            File output = out;
+            File error = err;
+
+            return process.onExit().thenApply(p -> {
+                OutputBuffer stdout = null;
+
+                try {
+                    String stderr = readFile(error);
+                    stdout = readOutput(output, outputMemoryLimit);
+                    return new RemoteCommandRunner(p.exitValue(), stdout, stderr);
+                } finally {
+                    delete(input, error);
+
+                    // Once read, the output file belongs to the buffer.
+                    if (stdout == null) {
+                        delete(output);
+                    }
+                }
+            });
+
+        } catch (IOException e) {
+            delete(in, out, err);
+            throw new XenonException(ADAPTOR_NAME, "Failed to start local process!", e);
+        }
+    }
+
+    private static String readFile(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static OutputBuffer readOutput(File file, int memoryLimit) {
+        try {
+            return OutputBuffer.fromFile(file.toPath(), memoryLimit);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(File... files) {
+        for (File f : files) {
+            if (f != null && !f.delete()) {
+                LOGGER.debug("Failed to delete temporary file {}", f);
+            }
+        }
+    }
+
     @Override
     public synchronized void close() throws XenonException {
         if (!open) {
@@ -78,7 +78,9 @@ public class LocalSchedulerAdaptor extends SchedulerAdaptor {
     /** The properties supported by this adaptor */
     private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
             new XenonPropertyDescription(POLLING_DELAY, Type.LONG, "1000", "The polling delay for monitoring running jobs (in milliseconds)."),
-            new XenonPropertyDescription(MULTIQ_MAX_CONCURRENT, Type.INTEGER, "4", "The maximum number of concurrent jobs in the multiq.") };
+            new XenonPropertyDescription(MULTIQ_MAX_CONCURRENT, Type.INTEGER, "4", "The maximum number of concurrent jobs in the multiq."),
+            new XenonPropertyDescription(MAX_HISTORY, Type.INTEGER, "1000",
+                    "The maximum number of finished jobs to remember, or -1 to remember finished jobs until their final status is retrieved.") };
 
     public LocalSchedulerAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -117,8 +119,9 @@ public class LocalSchedulerAdaptor extends SchedulerAdaptor {
         int processors = Runtime.getRuntime().availableProcessors();
         int multiQThreads = xp.getIntegerProperty(MULTIQ_MAX_CONCURRENT, processors);
         long pollingDelay = xp.getLongProperty(POLLING_DELAY);
+        int historySize = xp.getIntegerProperty(MAX_HISTORY);
 
         return new JobQueueScheduler(getNewUniqueID(), ADAPTOR_NAME, location == null ? "" : location, new DefaultCredential(),
-                new LocalInteractiveProcessFactory(), filesystem, filesystem.getWorkingDirectory(), multiQThreads, pollingDelay, 0L, xp);
+                new LocalInteractiveProcessFactory(), filesystem, filesystem.getWorkingDirectory(), multiQThreads, pollingDelay, 0L, historySize, xp);
     }
 }
@@ -16,12 +16,16 @@
 package nl.esciencecenter.xenon.adaptors.schedulers.slurm;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.ADAPTOR_NAME;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.CACHE_TIME_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.DISABLE_ACCOUNTING_USAGE;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.MAX_ARRAY_SIZE_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.POLL_DELAY_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.SLURM_UPDATE_SLEEP;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAdaptor.SLURM_UPDATE_TIMEOUT;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.generate;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.generateArray;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.generateInteractiveArguments;
+import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.generateSubmitScript;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getJobStatusFromSacctInfo;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getJobStatusFromScontrolInfo;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getJobStatusFromSqueueInfo;
@@ -29,16 +33,26 @@ import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.getQu
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.identifiersAsCSList;
 import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmUtils.verifyJobDescription;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
+import nl.esciencecenter.xenon.adaptors.schedulers.JobStatusImplementation;
 import nl.esciencecenter.xenon.adaptors.schedulers.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingParser;
 import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingScheduler;
@@ -69,13 +83,21 @@ public class SlurmScheduler extends ScriptingScheduler {
 
     private final SlurmSetup setup;
 
+    private final int maxArraySize;
+
     protected SlurmScheduler(String uniqueID, String location, Credential credential, XenonPropertyDescription[] valid, Map<String, String> prop)
             throws XenonException {
 
-        super(uniqueID, ADAPTOR_NAME, location, credential, prop, valid, POLL_DELAY_PROPERTY);
+        super(uniqueID, ADAPTOR_NAME, location, credential, prop, valid, POLL_DELAY_PROPERTY, CACHE_TIME_PROPERTY);
 
         boolean disableAccounting = properties.getBooleanProperty(DISABLE_ACCOUNTING_USAGE);
 
+        maxArraySize = properties.getIntegerProperty(MAX_ARRAY_SIZE_PROPERTY);
+
+        if (maxArraySize < 1) {
+            throw new InvalidPropertyException(ADAPTOR_NAME, "Invalid value for " + MAX_ARRAY_SIZE_PROPERTY + ": " + maxArraySize + " (must be at least 1)");
+        }
+
         // Get some version information from slurm
         String output = runCheckedCommand(null, "scontrol", "show", "config");
 
@@ -143,9 +165,111 @@ public class SlurmScheduler extends ScriptingScheduler {
 
         output = runCheckedCommand(jobScript, "sbatch");
 
+        invalidateCache();
+
         return ScriptingParser.parseJobIDFromLine(output, ADAPTOR_NAME, "Submitted batch job", "Granted job allocation");
     }
 
+    /**
+     * Submit a number of batch jobs with a single remote command.
+     *
+     * Descriptions that only differ in their arguments and environment are combined into a single job array, of which each task runs one description. The
+     * identifiers of these jobs are the identifiers of the array tasks, such as <code>1234_0</code>. Larger groups are split into several job arrays of at
+     * most <code>maxArraySize</code> tasks. All job scripts are submitted by a single shell invocation.
+     */
+    @Override
+    public String[] submitBatchJobs(JobDescription... descriptions) throws XenonException {
+
+        if (descriptions.length == 0) {
+            return new String[0];
+        }
+
+        if (descriptions.length == 1) {
+            return new String[] { submitBatchJob(descriptions[0]) };
+        }
+
+        Path fsEntryPath = getWorkingDirectory();
+
+        // Group the descriptions that only differ in arguments and environment, preserving the order of submission.
+        Map<JobDescription, List<Integer>> groups = new LinkedHashMap<>();
+        Set<String> workingDirectories = new HashSet<>();
+
+        for (int i = 0; i < descriptions.length; i++) {
+            verifyJobDescription(descriptions[i], queueNames, false);
+
+            if (workingDirectories.add(descriptions[i].getWorkingDirectory())) {
+                checkWorkingDirectory(descriptions[i].getWorkingDirectory());
+            }
+
+            JobDescription key = new JobDescription(descriptions[i]);
+            key.setArguments();
+            key.setEnvironment(null);
+
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+
+        // Slurm rejects arrays with more tasks than its MaxArraySize, so split each group into chunks that each become a single job script.
+        List<List<Integer>> chunks = new ArrayList<>();
+
+        for (List<Integer> group : groups.values()) {
+            for (int start = 0; start < group.size(); start += maxArraySize) {
+                chunks.add(group.subList(start, Math.min(start + maxArraySize, group.size())));
+            }
+        }
+
+        List<String> jobScripts = new ArrayList<>(chunks.size());
+
+        for (List<Integer> chunk : chunks) {
+            if (chunk.size() == 1) {
+                jobScripts.add(generate(descriptions[chunk.get(0)], fsEntryPath, getDefaultRuntime()));
+            } else {
+                List<JobDescription> tasks = new ArrayList<>(chunk.size());
+
+                for (int index : chunk) {
+                    tasks.add(descriptions[index]);
+                }
+
+                jobScripts.add(generateArray(tasks, fsEntryPath, getDefaultRuntime()));
+            }
+        }
+
+        RemoteCommandRunner runner = runCommand(generateSubmitScript(jobScripts, UUID.randomUUID()), "sh");
+
+        // Some of the scripts may have been submitted, even if others failed.
+        invalidateCache();
+
+        List<String> submitted = new ArrayList<>();
+
+        for (String line : runner.getStdout().split("\\r?\\n")) {
+            if (line.startsWith("Submitted batch job")) {
+                submitted.add(ScriptingParser.parseJobIDFromLine(line, ADAPTOR_NAME, "Submitted batch job"));
+            }
+        }
+
+        if (!runner.success() || submitted.size() != jobScripts.size()) {
+            throw new XenonException(ADAPTOR_NAME, "Only " + submitted.size() + " of " + jobScripts.size() + " job scripts were submitted " + submitted
+                    + ". Exit code = " + runner.getExitCode() + " Error output: " + runner.getStderr());
+        }
+
+        String[] result = new String[descriptions.length];
+
+        int script = 0;
+
+        for (List<Integer> chunk : chunks) {
+            String jobID = submitted.get(script++);
+
+            if (chunk.size() == 1) {
+                result[chunk.get(0)] = jobID;
+            } else {
+                for (int task = 0; task < chunk.size(); task++) {
+                    result[chunk.get(task)] = jobID + "_" + task;
+                }
+            }
+        }
+
+        return result;
+    }
+
     private String findInteractiveJobInMap(Map<String, Map<String, String>> queueInfo, String tag) {
 
         // find job with "tag" as a job name in the job info. NAME is produced by squeue, JobName by sacct
@@ -199,6 +323,8 @@ public class SlurmScheduler extends ScriptingScheduler {
         // So the job we get back here is the local SSH job that connects to the remote machine running slurm.
         Streams interactiveJob = startInteractiveCommand("salloc", arguments);
 
+        invalidateCache();
+
         // Note that it is hard to check if the salloc failed. If it fails it may return an error code of it's own, but it may also succeed and
         // return an error code because the application fails.....
 
@@ -254,6 +380,7 @@ public class SlurmScheduler extends ScriptingScheduler {
 
         try {
             String output = runCheckedCommand(null, "scancel", jobIdentifier);
+            invalidateCache();
             if (!output.isEmpty()) {
                 throw new XenonException(ADAPTOR_NAME, "Got unexpected output on cancelling job: " + output);
             }
@@ -272,12 +399,12 @@ public class SlurmScheduler extends ScriptingScheduler {
         String output;
 
         if (queueNames == null || queueNames.length == 0) {
-            output = runCheckedCommand(null, "squeue", "--noheader", "--format=%i");
+            output = runCachedCommand("squeue", "--noheader", "--array", "--format=%i");
         } else {
             checkQueueNames(queueNames);
 
             // add a list of all requested queues
-            output = runCheckedCommand(null, "squeue", "--noheader", "--format=%i", "--partitions=" + ScriptingUtils.asCSList(queueNames));
+            output = runCachedCommand("squeue", "--noheader", "--array", "--format=%i", "--partitions=" + ScriptingUtils.asCSList(queueNames));
         }
 
         // Job id's are on separate lines, on their own.
@@ -298,21 +425,26 @@ public class SlurmScheduler extends ScriptingScheduler {
 
     private Map<String, Map<String, String>> getSqueueInfo(String... jobs) throws XenonException {
 
-        String squeueOutput = "";
+        RemoteCommandRunner runner;
 
         if (jobs == null || jobs.length == 0) {
-            squeueOutput = runCheckedCommand(null, "squeue", "--format=%i %P %j %u %T %M %l %D %R %k");
+            runner = runCheckedCommandRunner(null, "squeue", "--array", "--format=%i %P %j %u %T %M %l %D %R %k");
         } else {
-            squeueOutput = runCheckedCommand(null, "squeue", "--format=%i %P %j %u %T %M %l %D %R %k", "--jobs=" + identifiersAsCSList(jobs));
+            runner = runCheckedCommandRunner(null, "squeue", "--array", "--format=%i %P %j %u %T %M %l %D %R %k", "--jobs=" + identifiersAsCSList(jobs));
         }
 
-        LOGGER.info("squeueinfo output is:\n" + squeueOutput);
+        // The output of squeue may be large on a busy cluster, so it is parsed line by line.
+        try (RemoteCommandRunner r = runner; Stream<String> lines = r.getStdoutLines()) {
+            Map<String, Map<String, String>> result = ScriptingParser.parseTable(lines, "JOBID", ScriptingParser.WHITESPACE_REGEX, ADAPTOR_NAME, "*", "~");
+
+            LOGGER.debug("squeue returned {} jobs", result.size());
 
-        return ScriptingParser.parseTable(squeueOutput, "JOBID", ScriptingParser.WHITESPACE_REGEX, ADAPTOR_NAME, "*", "~");
+            return result;
+        }
     }
 
     private Map<String, Map<String, String>> getSinfoInfo(String... partitions) throws XenonException {
-        String output = runCheckedCommand(null, "sinfo", "--format=%P %a %l %F %N %C %D", "--partition=" + ScriptingUtils.asCSList(partitions));
+        String output = runCachedCommand("sinfo", "--format=%P %a %l %F %N %C %D", "--partition=" + ScriptingUtils.asCSList(partitions));
 
         LOGGER.info("sinfo output is:\n" + output);
 
@@ -345,11 +477,14 @@ public class SlurmScheduler extends ScriptingScheduler {
             LOGGER.warn("Sacct produced error output: " + runner.getStderr());
         }
 
-        String output = runner.getStdout();
+        // The output of sacct may be large on a busy cluster, so it is parsed line by line.
+        try (RemoteCommandRunner r = runner; Stream<String> lines = r.getStdoutLines()) {
+            Map<String, Map<String, String>> result = ScriptingParser.parseTable(lines, "JobID", ScriptingParser.BAR_REGEX, ADAPTOR_NAME, "*", "~");
 
-        LOGGER.info("sacct output is:\n" + output);
+            LOGGER.debug("sacct returned {} jobs", result.size());
 
-        return ScriptingParser.parseTable(output, "JobID", ScriptingParser.BAR_REGEX, ADAPTOR_NAME, "*", "~");
+            return result;
+        }
     }
 
     @Override
@@ -413,6 +548,109 @@ public class SlurmScheduler extends ScriptingScheduler {
         return result;
     }
 
+    @Override
+    public JobStatus[] getJobStatuses(String... jobIdentifiers) throws XenonException {
+
+        JobStatus[] result = new JobStatus[jobIdentifiers.length];
+
+        // Collect the unique identifiers, so a single squeue and sacct call can retrieve the status of all jobs.
+        Set<String> remaining = new LinkedHashSet<>();
+
+        for (String job : jobIdentifiers) {
+            if (job != null) {
+                remaining.add(job);
+            }
+        }
+
+        if (remaining.isEmpty()) {
+            return result;
+        }
+
+        Map<String, JobStatus> found = new HashMap<>();
+        int failed = 0;
+
+        // try the queue first
+        try {
+            Map<String, Map<String, String>> sQueueInfo = getSqueueInfo(remaining.toArray(new String[0]));
+            addJobStatuses(found, remaining, job -> getJobStatusFromSqueueInfo(sQueueInfo, job));
+        } catch (Exception e) {
+            // The call to squeue may fail if we request a specific job that no longer exist.
+            LOGGER.warn("Squeue produced error output", e);
+            failed++;
+        }
+
+        // try the accounting (if available) for the jobs that are no longer queued
+        if (!remaining.isEmpty()) {
+            try {
+                Map<String, Map<String, String>> sacctInfo = getSacctInfo(remaining.toArray(new String[0]));
+                addJobStatuses(found, remaining, job -> getJobStatusFromSacctInfo(sacctInfo, job));
+            } catch (Exception e) {
+                LOGGER.warn("Sacct produced error output", e);
+                failed++;
+            }
+        }
+
+        // check scontrol, one job at a time, only for the jobs that could not be found otherwise.
+        Set<String> scontrolFailed = new HashSet<>();
+
+        for (String job : remaining) {
+            try {
+                JobStatus status = getJobStatusFromScontrolInfo(getSControlInfo(job), job);
+
+                if (status != null) {
+                    found.put(job, status);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Scontrol produced error output", e);
+                scontrolFailed.add(job);
+            }
+        }
+
+        for (int i = 0; i < jobIdentifiers.length; i++) {
+            String job = jobIdentifiers[i];
+
+            if (job == null) {
+                continue;
+            }
+
+            result[i] = found.get(job);
+
+            // job not found anywhere, give up
+            if (result[i] == null) {
+                if (failed + (scontrolFailed.contains(job) ? 1 : 0) < 3) {
+                    XenonException e = new NoSuchJobException(ADAPTOR_NAME, "Unknown Job: " + job);
+                    result[i] = new JobStatusImplementation(job, null, "UNKNOWN", null, e, false, false, null);
+                } else {
+                    XenonException e = new XenonException(ADAPTOR_NAME, "Status could not be retrieved of job: " + job);
+                    result[i] = new JobStatusImplementation(job, null, "INTERNAL_ERROR", null, e, false, false, null);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface StatusLookup {
+        JobStatus get(String jobIdentifier) throws XenonException;
+    }
+
+    // Move the jobs for which the lookup returns a status from remaining to found.
+    private static void addJobStatuses(Map<String, JobStatus> found, Set<String> remaining, StatusLookup lookup) throws XenonException {
+
+        Iterator<String> it = remaining.iterator();
+
+        while (it.hasNext()) {
+            String job = it.next();
+            JobStatus status = lookup.get(job);
+
+            if (status != null) {
+                found.put(job, status);
+                it.remove();
+            }
+        }
+    }
+
     @Override
     public QueueStatus getQueueStatus(String queueName) throws XenonException {
 
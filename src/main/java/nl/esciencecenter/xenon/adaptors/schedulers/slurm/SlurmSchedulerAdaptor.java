@@ -42,6 +42,12 @@ public class SlurmSchedulerAdaptor extends ScriptingSchedulerAdaptor {
     /** Polling delay for jobs started by this adaptor. */
     public static final String POLL_DELAY_PROPERTY = PREFIX + "poll.delay";
 
+    /** Time to reuse the queue status and job listings retrieved from the scheduler. */
+    public static final String CACHE_TIME_PROPERTY = PREFIX + "cache.time";
+
+    /** Maximum number of tasks in a job array created when submitting a number of jobs at once. */
+    public static final String MAX_ARRAY_SIZE_PROPERTY = PREFIX + "maxArraySize";
+
     /** Human readable description of this adaptor */
     public static final String ADAPTOR_DESCRIPTION = "The Slurm Adaptor submits jobs to a Slurm scheduler. "
             + " This adaptor uses either the local or the ssh scheduler adaptor to run commands on the machine running Slurm, "
@@ -58,7 +64,11 @@ public class SlurmSchedulerAdaptor extends ScriptingSchedulerAdaptor {
     private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
             new XenonPropertyDescription(DISABLE_ACCOUNTING_USAGE, Type.BOOLEAN, "false",
                     "Do not use accounting info of slurm, even when available. Mostly for testing purposes"),
-            new XenonPropertyDescription(POLL_DELAY_PROPERTY, Type.LONG, "1000", "Number of milliseconds between polling the status of a job.") };
+            new XenonPropertyDescription(POLL_DELAY_PROPERTY, Type.LONG, "1000", "Number of milliseconds between polling the status of a job."),
+            new XenonPropertyDescription(CACHE_TIME_PROPERTY, Type.LONG, "0",
+                    "Number of milliseconds to reuse the queue status and job listings retrieved from the scheduler."),
+            new XenonPropertyDescription(MAX_ARRAY_SIZE_PROPERTY, Type.INTEGER, "1000",
+                    "Maximum number of tasks in a job array created when submitting a number of jobs at once. Must not exceed the MaxArraySize of the Slurm configuration.") };
 
     protected static final String[] SUPPORTED_VERSIONS = { "2.3.", "2.5.", "2.6.", "14.", "15.", "16.", "17." };
 
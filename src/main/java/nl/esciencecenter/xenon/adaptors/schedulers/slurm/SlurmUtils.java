@@ -19,6 +19,7 @@ import static nl.esciencecenter.xenon.adaptors.schedulers.slurm.SlurmSchedulerAd
 
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
@@ -37,6 +38,7 @@ import nl.esciencecenter.xenon.schedulers.JobDescription;
 import nl.esciencecenter.xenon.schedulers.JobStatus;
 import nl.esciencecenter.xenon.schedulers.QueueStatus;
 import nl.esciencecenter.xenon.schedulers.Scheduler;
+import nl.esciencecenter.xenon.utils.ShellUtils;
 
 public final class SlurmUtils {
 
@@ -385,6 +387,57 @@ public final class SlurmUtils {
         StringBuilder stringBuilder = new StringBuilder();
         Formatter script = new Formatter(stringBuilder, Locale.US);
 
+        generateHeader(script, description, fsEntryPath, defaultRuntime);
+        generateCommand(script, description, "");
+
+        script.close();
+
+        LOGGER.debug("Created job script:%n{} from description {}", stringBuilder, description);
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Generate a job script that submits a number of descriptions as the tasks of a single job array.
+     *
+     * The descriptions may only differ in their arguments and environment. The job settings are taken from the first description, and each array task
+     * selects its own environment and arguments using <code>SLURM_ARRAY_TASK_ID</code>.
+     *
+     * @param descriptions
+     *            the descriptions of the array tasks, in task order.
+     * @param fsEntryPath
+     *            the entry path of the filesystem, used to resolve a relative working directory.
+     * @param defaultRuntime
+     *            the runtime to use when the description does not specify one.
+     * @return the job script.
+     */
+    public static String generateArray(List<JobDescription> descriptions, Path fsEntryPath, int defaultRuntime) {
+        StringBuilder stringBuilder = new StringBuilder();
+        Formatter script = new Formatter(stringBuilder, Locale.US);
+
+        generateHeader(script, descriptions.get(0), fsEntryPath, defaultRuntime);
+
+        script.format("#SBATCH --array=0-%d\n", descriptions.size() - 1);
+        script.format("\n");
+        script.format("case \"$SLURM_ARRAY_TASK_ID\" in\n");
+
+        for (int i = 0; i < descriptions.size(); i++) {
+            script.format("%d)\n", i);
+            generateCommand(script, descriptions.get(i), "    ");
+            script.format("    ;;\n");
+        }
+
+        script.format("esac\n");
+
+        script.close();
+
+        LOGGER.debug("Created job array script:%n{} for {} descriptions", stringBuilder, descriptions.size());
+
+        return stringBuilder.toString();
+    }
+
+    private static void generateHeader(Formatter script, JobDescription description, Path fsEntryPath, int defaultRuntime) {
+
         script.format("%s\n", "#!/bin/sh");
 
         String name = description.getName();
@@ -457,12 +510,19 @@ public final class SlurmUtils {
         for (String argument : description.getSchedulerArguments()) {
             script.format("#SBATCH %s\n", argument);
         }
+    }
+
+    private static void generateCommand(Formatter script, JobDescription description, String indent) {
 
         for (Map.Entry<String, String> entry : description.getEnvironment().entrySet()) {
-            script.format("export %s=\"%s\"\n", entry.getKey(), entry.getValue());
+            script.format("%sexport %s=\"%s\"\n", indent, entry.getKey(), entry.getValue());
         }
 
-        script.format("\n");
+        if (indent.isEmpty()) {
+            script.format("\n");
+        }
+
+        script.format("%s", indent);
 
         if (description.isStartPerTask()) {
             // run commands through srun
@@ -472,15 +532,38 @@ public final class SlurmUtils {
         script.format("%s", description.getExecutable());
 
         for (String argument : description.getArguments()) {
-            script.format(" %s", ScriptingUtils.protectAgainstShellMetas(argument));
+            script.format(" %s", ShellUtils.protectAgainstShellMetas(argument));
         }
         script.format("\n");
+    }
 
-        script.close();
+    /**
+     * Generate a shell script that submits a number of job scripts with <code>sbatch</code>, so they can be submitted with a single remote command.
+     *
+     * Each job script is passed to <code>sbatch</code> as a here-document. Submission stops at the first job script that is rejected.
+     *
+     * @param jobScripts
+     *            the job scripts to submit.
+     * @param tag
+     *            a unique tag used to mark the end of each job script.
+     * @return the shell script.
+     */
+    public static String generateSubmitScript(List<String> jobScripts, UUID tag) {
+        StringBuilder stringBuilder = new StringBuilder();
+        Formatter script = new Formatter(stringBuilder, Locale.US);
 
-        LOGGER.debug("Created job script:%n{} from description {}", stringBuilder, description);
+        String marker = "XENON_" + tag.toString().replace('-', '_');
+
+        script.format("%s\n", "set -e");
+
+        for (String jobScript : jobScripts) {
+            script.format("sbatch <<'%s'\n", marker);
+            script.format("%s", jobScript);
+            script.format("%s\n", marker);
+        }
+
+        script.close();
 
         return stringBuilder.toString();
     }
-
 }
@@ -22,16 +22,16 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.sshd.client.channel.ChannelExec;
-import org.apache.sshd.client.session.ClientSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.schedulers.InteractiveProcess;
-import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingUtils;
 import nl.esciencecenter.xenon.adaptors.schedulers.StreamsImplementation;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 import nl.esciencecenter.xenon.schedulers.Streams;
+import nl.esciencecenter.xenon.utils.ShellUtils;
 
 /**
  * LocalBatchProcess implements a {@link InteractiveProcess} for local batch processes.
@@ -40,15 +40,14 @@ class SshInteractiveProcess implements InteractiveProcess {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SshInteractiveProcess.class);
 
-    private final ClientSession session;
     private final ChannelExec channel;
     private final Streams streams;
     private boolean done = false;
 
-    SshInteractiveProcess(ClientSession session, JobDescription description, String jobIdentifier, long timeoutInMillis) throws XenonException {
+    SshInteractiveProcess(SSHConnection connection, JobDescription description, String jobIdentifier, long timeoutInMillis) throws XenonException {
 
-        if (session == null) {
-            throw new IllegalArgumentException("Session is null");
+        if (connection == null) {
+            throw new IllegalArgumentException("Connection is null");
         }
 
         if (description == null) {
@@ -59,10 +58,8 @@ class SshInteractiveProcess implements InteractiveProcess {
             throw new IllegalArgumentException("Job identifier is null");
         }
 
-        this.session = session;
-
         try {
-            this.channel = session.createExecChannel(buildCommand(description));
+            this.channel = connection.createExecChannel(buildCommand(description));
 
             Map<String, String> environment = description.getEnvironment();
 
@@ -83,14 +80,14 @@ class SshInteractiveProcess implements InteractiveProcess {
         }
     }
 
-    private static String buildCommand(JobDescription description) {
+    static String buildCommand(JobDescription description) {
         StringBuilder command = new StringBuilder(200);
 
         String workdir = description.getWorkingDirectory();
 
         if (workdir != null) {
             command.append("cd ");
-            command.append(ScriptingUtils.protectAgainstShellMetas(workdir));
+            command.append(ShellUtils.protectAgainstShellMetas(workdir));
             command.append(" && ");
         }
 
@@ -98,7 +95,7 @@ class SshInteractiveProcess implements InteractiveProcess {
 
         for (String s : description.getArguments()) {
             command.append(" ");
-            command.append(ScriptingUtils.protectAgainstShellMetas(s));
+            command.append(ShellUtils.protectAgainstShellMetas(s));
         }
 
         return command.toString();
@@ -145,6 +142,13 @@ class SshInteractiveProcess implements InteractiveProcess {
         return status.intValue();
     }
 
+    @Override
+    public boolean onDone(Runnable callback) {
+        // The listener is run by an sshd I/O thread, or immediately if the channel is already closed.
+        channel.addCloseFutureListener(future -> callback.run());
+        return true;
+    }
+
     @Override
     public void destroy() {
         if (isDone()) {
@@ -17,24 +17,49 @@ package nl.esciencecenter.xenon.adaptors.schedulers.ssh;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.ssh.SshSchedulerAdaptor.ADAPTOR_NAME;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.sshd.client.channel.ChannelExec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.schedulers.CommandChannel;
 import nl.esciencecenter.xenon.adaptors.schedulers.InteractiveProcess;
 import nl.esciencecenter.xenon.adaptors.schedulers.InteractiveProcessFactory;
+import nl.esciencecenter.xenon.adaptors.schedulers.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerClosedException;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.utils.OutputBuffer;
+
+public class SshInteractiveProcessFactory implements InteractiveProcessFactory, CommandChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshInteractiveProcessFactory.class);
 
-public class SshInteractiveProcessFactory implements InteractiveProcessFactory {
+    /** Timeout for opening the exec channel of a command. */
+    private static final long COMMAND_OPEN_TIMEOUT = 10000L;
 
     private final SSHConnection connection;
 
+    // Number of bytes of command output kept in memory before it is moved to a temporary file.
+    private final int outputMemoryLimit;
+
     protected SshInteractiveProcessFactory(SSHConnection session) {
+        this(session, OutputBuffer.DEFAULT_MEMORY_LIMIT);
+    }
+
+    SshInteractiveProcessFactory(SSHConnection session, int outputMemoryLimit) {
 
         if (session == null) {
             throw new IllegalArgumentException("Session may not be null");
         }
 
         this.connection = session;
+        this.outputMemoryLimit = outputMemoryLimit;
     }
 
     @Override
@@ -45,7 +70,67 @@ public class SshInteractiveProcessFactory implements InteractiveProcessFactory {
             throw new SchedulerClosedException(ADAPTOR_NAME, "Scheduler is closed");
         }
 
-        return new SshInteractiveProcess(connection.getSession(), description, jobIdentifier, timeoutInMillis);
+        return new SshInteractiveProcess(connection, description, jobIdentifier, timeoutInMillis);
+    }
+
+    /**
+     * Run a command on an exec channel of the shared ssh session. The output of the command is collected by the I/O threads of the session, so no threads are
+     * needed to forward it. Large output is moved to a temporary file by the {@link OutputBuffer} it is collected in. Like interactive jobs, the command is
+     * run in the login directory of the user, so the <code>workdir</code> is ignored.
+     */
+    @Override
+    public CompletableFuture<RemoteCommandRunner> execute(String workdir, String stdin, String executable, String... arguments) throws XenonException {
+
+        if (connection.isClosed()) {
+            throw new SchedulerClosedException(ADAPTOR_NAME, "Scheduler is closed");
+        }
+
+        JobDescription description = new JobDescription();
+        description.setExecutable(executable);
+        description.setArguments(arguments);
+
+        OutputBuffer out = new OutputBuffer(outputMemoryLimit);
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        ChannelExec channel = null;
+
+        try {
+            channel = connection.createExecChannel(SshInteractiveProcess.buildCommand(description));
+            channel.setOut(out);
+            channel.setErr(err);
+            channel.open().verify(COMMAND_OPEN_TIMEOUT);
+
+            // Closing the input sends an EOF to the command.
+            try (OutputStream in = channel.getInvertedIn()) {
+                if (stdin != null) {
+                    in.write(stdin.getBytes());
+                }
+            }
+        } catch (IOException e) {
+            if (channel != null) {
+                channel.close(true);
+            }
+            out.discard();
+            throw new XenonException(ADAPTOR_NAME, "Failed to start command", e);
+        }
+
+        CompletableFuture<RemoteCommandRunner> result = new CompletableFuture<>();
+
+        ChannelExec c = channel;
+
+        // Called immediately if the channel has already been closed.
+        channel.addCloseFutureListener(future -> {
+            Integer exit = c.getExitStatus();
+
+            if (exit == null) {
+                LOGGER.debug("No exit status received for command {}", executable);
+            }
+
+            out.close();
+            result.complete(new RemoteCommandRunner(exit == null ? -1 : exit, out, err.toString()));
+        });
+
+        return result;
     }
 
     @Override
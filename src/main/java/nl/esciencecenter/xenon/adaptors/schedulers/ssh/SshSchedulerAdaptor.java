@@ -17,7 +17,6 @@ package nl.esciencecenter.xenon.adaptors.schedulers.ssh;
 
 import java.util.Map;
 
-import org.apache.sshd.client.SshClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +28,7 @@ import nl.esciencecenter.xenon.adaptors.filesystems.sftp.SftpFileAdaptor;
 import nl.esciencecenter.xenon.adaptors.schedulers.JobQueueScheduler;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerAdaptor;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnectionPool;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHUtil;
 import nl.esciencecenter.xenon.credentials.CertificateCredential;
 import nl.esciencecenter.xenon.credentials.Credential;
@@ -120,7 +120,9 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
             new XenonPropertyDescription(AGENT_FORWARDING, Type.BOOLEAN, "false", "Use ssh-agent forwarding"),
             new XenonPropertyDescription(TIMEOUT, Type.LONG, "10000", "The timeout for the connection setup and authetication (in milliseconds)."),
             new XenonPropertyDescription(POLLING_DELAY, Type.LONG, "1000", "The polling delay for monitoring running jobs (in milliseconds)."),
-            new XenonPropertyDescription(MULTIQ_MAX_CONCURRENT, Type.INTEGER, "4", "The maximum number of concurrent jobs in the multiq..") };
+            new XenonPropertyDescription(MULTIQ_MAX_CONCURRENT, Type.INTEGER, "4", "The maximum number of concurrent jobs in the multiq.."),
+            new XenonPropertyDescription(MAX_HISTORY, Type.INTEGER, "1000",
+                    "The maximum number of finished jobs to remember, or -1 to remember finished jobs until their final status is retrieved.") };
 
     public SshSchedulerAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -158,11 +160,11 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
         boolean useSSHAgent = xp.getBooleanProperty(AGENT);
         boolean useAgentForwarding = xp.getBooleanProperty(AGENT_FORWARDING);
 
-        SshClient client = SSHUtil.createSSHClient(loadKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
-
         long timeout = xp.getLongProperty(TIMEOUT);
 
-        SSHConnection connection = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, 0, timeout);
+        // The connection is shared with other schedulers and file systems that connect to the same location, including the file system created below.
+        SSHConnection connection = SSHConnectionPool.getDefault().connect(ADAPTOR_NAME, location, credential, loadKnownHosts, loadSSHConfig,
+                strictHostCheck, useSSHAgent, useAgentForwarding, timeout);
 
         // We must convert the relevant SSH properties to SFTP here.
         Map<String, String> sftpProperties = SSHUtil.translateProperties(properties, SshSchedulerAdaptor.PREFIX,
@@ -174,8 +176,9 @@ public class SshSchedulerAdaptor extends SchedulerAdaptor {
 
         long pollingDelay = xp.getLongProperty(POLLING_DELAY);
         int multiQThreads = xp.getIntegerProperty(MULTIQ_MAX_CONCURRENT);
+        int historySize = xp.getIntegerProperty(MAX_HISTORY);
 
         return new JobQueueScheduler(getNewUniqueID(), ADAPTOR_NAME, location, credential, new SshInteractiveProcessFactory(connection), fs,
-                fs.getWorkingDirectory(), multiQThreads, pollingDelay, timeout, xp);
+                fs.getWorkingDirectory(), multiQThreads, pollingDelay, timeout, historySize, xp);
     }
 }
@@ -17,6 +17,7 @@ package nl.esciencecenter.xenon.adaptors.schedulers.torque;
 
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.ACCOUNTING_GRACE_TIME_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.ADAPTOR_NAME;
+import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.CACHE_TIME_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueSchedulerAdaptor.POLL_DELAY_PROPERTY;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueUtils.QUEUE_INFO_NAME;
 import static nl.esciencecenter.xenon.adaptors.schedulers.torque.TorqueUtils.getJobStatusFromQstatInfo;
@@ -68,7 +69,7 @@ public class TorqueScheduler extends ScriptingScheduler {
 
     TorqueScheduler(String uniqueID, String location, Credential credential, XenonPropertyDescription[] valid, Map<String, String> prop) throws XenonException {
 
-        super(uniqueID, ADAPTOR_NAME, location, credential, prop, valid, POLL_DELAY_PROPERTY);
+        super(uniqueID, ADAPTOR_NAME, location, credential, prop, valid, POLL_DELAY_PROPERTY, CACHE_TIME_PROPERTY);
 
         long accountingGraceTime = properties.getLongProperty(ACCOUNTING_GRACE_TIME_PROPERTY);
 
@@ -105,7 +106,7 @@ public class TorqueScheduler extends ScriptingScheduler {
         List<String> result = new ArrayList<>(1500);
 
         if (queueNames == null || queueNames.length == 0) {
-            String statusOutput = runCheckedCommand(null, "qstat", "-x").trim();
+            String statusOutput = runCachedCommand("qstat", "-x").trim();
 
             jobsFromStatus(statusOutput, result);
         } else {
@@ -167,7 +168,7 @@ public class TorqueScheduler extends ScriptingScheduler {
 
         String output;
         if (queueNames.length == 0) {
-            output = runCheckedCommand(null, "qstat", "-Qf");
+            output = runCachedCommand("qstat", "-Qf");
         } else {
 
             ArrayList<String> args = new ArrayList<>();
@@ -238,6 +239,8 @@ public class TorqueScheduler extends ScriptingScheduler {
 
         output = runCheckedCommand(jobScript, "qsub");
 
+        invalidateCache();
+
         String identifier = ScriptingParser.parseJobIDFromLine(output, ADAPTOR_NAME, "");
 
         jobsSeenMap.updateRecentlySeen(Collections.singleton(identifier));
@@ -265,6 +268,9 @@ public class TorqueScheduler extends ScriptingScheduler {
         assertNonNullOrEmpty(jobIdentifier, "Job identifier cannot be null or empty");
 
         RemoteCommandRunner runner = runCommand(null, "qdel", jobIdentifier);
+
+        invalidateCache();
+
         if (runner.success()) {
             // deleted or already finished
             jobsSeenMap.addDeletedJob(jobIdentifier);
@@ -32,6 +32,7 @@ import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.schedulers.InvalidJobDescriptionException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.utils.ShellUtils;
 
 /**
  * Generator for GridEngine job script.
@@ -98,7 +99,7 @@ final class TorqueUtils {
         script.format("%s", description.getExecutable());
 
         for (String argument : description.getArguments()) {
-            script.format(" %s", ScriptingUtils.protectAgainstShellMetas(argument));
+            script.format(" %s", ShellUtils.protectAgainstShellMetas(argument));
         }
 
         String stdin = description.getStdin();
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.common.channel.IoWriteFutureImpl;
+import org.apache.sshd.common.io.IoHandler;
+import org.apache.sshd.common.io.IoService;
+import org.apache.sshd.common.io.IoSession;
+import org.apache.sshd.common.io.IoWriteFuture;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.common.util.closeable.AbstractCloseable;
+
+/**
+ * An in-memory {@link IoSession} that runs an SSH session on top of a {@link GatewayChannel} of another session, instead of on top of a socket.
+ *
+ * The data received by the channel is passed straight to the {@link IoHandler} of the session, and the packets written by the session are sent as data on the
+ * channel. Since the channel accepts a single pending write at a time, packets are queued here and written in order. Once more than
+ * {@link #MAX_QUEUED_BYTES} are queued, writers wait for the queue to drain, except for the thread that is handing received data to the session: the window
+ * of the channel is opened by that same thread, so it must never wait for it.
+ */
+class ChannelIoSession extends AbstractCloseable implements IoSession {
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(0);
+
+    /** The number of queued bytes above which writers wait for the queue to drain. */
+    static final int MAX_QUEUED_BYTES = 4 * 1024 * 1024;
+
+    /** The maximum time (in ms.) a writer waits for the queue to drain. */
+    static final long MAX_QUEUE_WAIT = 60000L;
+
+    private final long id = NEXT_ID.incrementAndGet();
+
+    private final IoService service;
+    private final IoHandler handler;
+    private final GatewayChannel channel;
+
+    private final Map<Object, Object> attributes = new ConcurrentHashMap<>();
+
+    // Packets waiting to be written to the channel. The head of the queue is being written while writing is true.
+    private final ArrayDeque<IoWriteFutureImpl> queue = new ArrayDeque<>();
+    private boolean writing = false;
+    private long queuedBytes = 0;
+
+    // The thread that is handing received data to the handler, if any.
+    private volatile Thread receiver;
+
+    ChannelIoSession(IoService service, IoHandler handler, GatewayChannel channel) {
+        this.service = service;
+        this.handler = handler;
+        this.channel = channel;
+    }
+
+    // Called by the channel for each block of data it receives.
+    void received(byte[] data, int off, int len) {
+
+        receiver = Thread.currentThread();
+
+        try {
+            handler.messageReceived(this, new ByteArrayBuffer(data, off, len));
+        } catch (Exception e) {
+            try {
+                handler.exceptionCaught(this, e);
+            } catch (Exception e2) {
+                log.debug("Failed to handle exception on session {}", this, e2);
+                close(true);
+            }
+        } finally {
+            receiver = null;
+        }
+    }
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public SocketAddress getAcceptanceAddress() {
+        return null;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return channel.getAddress();
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        return channel.getLocalSocketAddress();
+    }
+
+    @Override
+    public Object getAttribute(Object key) {
+        return attributes.get(key);
+    }
+
+    @Override
+    public Object setAttribute(Object key, Object value) {
+        return attributes.put(key, value);
+    }
+
+    @Override
+    public Object setAttributeIfAbsent(Object key, Object value) {
+        return attributes.putIfAbsent(key, value);
+    }
+
+    @Override
+    public Object removeAttribute(Object key) {
+        return attributes.remove(key);
+    }
+
+    @Override
+    public IoService getService() {
+        return service;
+    }
+
+    @Override
+    public void shudownOutputStream() throws IOException {
+        channel.shutdownOutput();
+    }
+
+    @Override
+    public IoWriteFuture writePacket(Buffer buffer) throws IOException {
+
+        IoWriteFutureImpl future = new IoWriteFutureImpl(this, buffer);
+
+        synchronized (queue) {
+            if (Thread.currentThread() != receiver) {
+                awaitQueueSpace();
+            }
+
+            if (isClosing()) {
+                throw new EOFException("Closed");
+            }
+
+            queue.add(future);
+            queuedBytes += buffer.available();
+
+            if (writing) {
+                return future;
+            }
+
+            writing = true;
+        }
+
+        writeQueued();
+        return future;
+    }
+
+    // Must be called while holding the queue lock.
+    private void awaitQueueSpace() throws IOException {
+
+        long deadline = System.currentTimeMillis() + MAX_QUEUE_WAIT;
+
+        while (queuedBytes >= MAX_QUEUED_BYTES && !isClosing()) {
+
+            long left = deadline - System.currentTimeMillis();
+
+            if (left <= 0) {
+                throw new IOException("Timeout while waiting to write to " + channel);
+            }
+
+            try {
+                queue.wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to write to " + channel);
+            }
+        }
+    }
+
+    // Writes queued packets until the queue is empty or a write has to wait for the channel window to open up. In the latter case, writing resumes from the
+    // listener of that write. Looping (instead of recursing from each listener) keeps the stack shallow when many writes complete immediately.
+    private void writeQueued() {
+
+        while (true) {
+            IoWriteFutureImpl future;
+            int length;
+
+            synchronized (queue) {
+                future = queue.peek();
+
+                if (future == null) {
+                    writing = false;
+                    return;
+                }
+
+                length = future.getBuffer().available();
+            }
+
+            IoWriteFuture written;
+
+            try {
+                written = channel.getAsyncIn().writePacket(future.getBuffer());
+            } catch (IOException e) {
+                failQueued(e);
+                close(true);
+                return;
+            }
+
+            if (!written.isDone()) {
+                written.addListener(f -> {
+                    if (complete(future, length, f)) {
+                        writeQueued();
+                    }
+                });
+                return;
+            }
+
+            if (!complete(future, length, written)) {
+                return;
+            }
+        }
+    }
+
+    // Completes the write at the head of the queue. Returns false if the write failed, in which case the session is closed.
+    private boolean complete(IoWriteFutureImpl future, int length, IoWriteFuture written) {
+
+        synchronized (queue) {
+            queue.poll();
+            queuedBytes -= length;
+            queue.notifyAll();
+        }
+
+        if (written.isWritten()) {
+            future.setValue(Boolean.TRUE);
+            return true;
+        }
+
+        Throwable cause = written.getException();
+        future.setValue(cause != null ? cause : new EOFException("Write failed"));
+
+        failQueued(new EOFException("Closed"));
+        close(true);
+        return false;
+    }
+
+    private void failQueued(Throwable cause) {
+
+        IoWriteFutureImpl[] pending;
+
+        synchronized (queue) {
+            pending = queue.toArray(new IoWriteFutureImpl[0]);
+            queue.clear();
+            queuedBytes = 0;
+            writing = false;
+            queue.notifyAll();
+        }
+
+        for (IoWriteFutureImpl f : pending) {
+            f.setValue(cause);
+        }
+    }
+
+    @Override
+    protected void doCloseImmediately() {
+
+        failQueued(new EOFException("Closed"));
+
+        channel.close(false);
+
+        try {
+            handler.sessionClosed(this);
+        } catch (Exception e) {
+            log.debug("Failed to notify handler of closed session {}", this, e);
+        }
+
+        super.doCloseImmediately();
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelIoSession[" + id + ", " + channel + "]";
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.sshd.client.channel.ChannelDirectTcpip;
+import org.apache.sshd.common.util.net.SshdSocketAddress;
+
+/**
+ * A direct-tcpip channel to the next hop of a connection that is forwarded via one or more gateways.
+ *
+ * Instead of copying the channel data to and from a local socket, the next SSH session runs directly on top of this channel: the data received on the
+ * channel is handed to the session as if it was read from a socket, and the packets written by the session are sent as channel data (see
+ * {@link ChannelIoSession}). Data that arrives before the session is attached is kept until it is. Data is handed to the session without holding the lock
+ * of the channel, as the session may write packets (and wait for them) while handling it.
+ */
+class GatewayChannel extends ChannelDirectTcpip {
+
+    /**
+     * The address used to connect a session to a {@link GatewayChannel}. It carries the channel to the connector, and the host and port of the target to the
+     * session, so the host key of the target is checked against the real host name.
+     */
+    static class Address extends SshdSocketAddress {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient GatewayChannel channel;
+
+        Address(GatewayChannel channel, SshdSocketAddress target) {
+            super(target.getHostName(), target.getPort());
+            this.channel = channel;
+        }
+
+        GatewayChannel getChannel() {
+            return channel;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Address && ((Address) o).channel == channel;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(channel);
+        }
+    }
+
+    private final Address address;
+
+    private ChannelIoSession session;
+
+    private List<byte[]> early = new ArrayList<>();
+
+    GatewayChannel(SshdSocketAddress target) {
+        super(null, target);
+        address = new Address(this, target);
+
+        // Makes doOpen create a non-blocking output stream for the channel, which is what the session writes its packets to.
+        setStreaming(Streaming.Async);
+
+        addCloseFutureListener(f -> closeSession());
+    }
+
+    Address getAddress() {
+        return address;
+    }
+
+    /**
+     * Attach a session to this channel, and hand it any data that was received before.
+     *
+     * @param session
+     *            the session that runs on top of this channel.
+     */
+    void attach(ChannelIoSession session) {
+
+        while (true) {
+            List<byte[]> pending;
+
+            synchronized (this) {
+                if (early.isEmpty()) {
+                    // From now on, data is handed to the session directly.
+                    this.session = session;
+                    early = null;
+                    return;
+                }
+
+                // Data that arrives while this batch is handed over is added to a new batch, so the order is kept.
+                pending = early;
+                early = new ArrayList<>();
+            }
+
+            for (byte[] data : pending) {
+                session.received(data, 0, data.length);
+            }
+        }
+    }
+
+    void shutdownOutput() throws IOException {
+        sendEof();
+    }
+
+    private void closeSession() {
+
+        ChannelIoSession tmp;
+
+        synchronized (this) {
+            tmp = session;
+        }
+
+        if (tmp != null) {
+            tmp.close(true);
+        }
+    }
+
+    @Override
+    protected void doWriteData(byte[] data, int off, long len) throws IOException {
+
+        ChannelIoSession tmp;
+
+        synchronized (this) {
+            tmp = session;
+
+            if (tmp == null) {
+                early.add(Arrays.copyOfRange(data, off, off + (int) len));
+            }
+        }
+
+        if (tmp != null) {
+            tmp.received(data, off, (int) len);
+        }
+
+        getLocalWindow().consumeAndCheck(len);
+    }
+
+    @Override
+    public String toString() {
+        return "GatewayChannel[" + address.getHostName() + ":" + address.getPort() + "]";
+    }
+}
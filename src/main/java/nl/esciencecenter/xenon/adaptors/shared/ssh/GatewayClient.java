@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.Map;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.future.ConnectFuture;
+import org.apache.sshd.common.AttributeRepository;
+import org.apache.sshd.common.future.CloseFuture;
+import org.apache.sshd.common.future.DefaultSshFuture;
+import org.apache.sshd.common.future.SshFutureListener;
+import org.apache.sshd.common.io.IoConnectFuture;
+import org.apache.sshd.common.io.IoConnector;
+import org.apache.sshd.common.io.IoHandler;
+import org.apache.sshd.common.io.IoServiceEventListener;
+import org.apache.sshd.common.io.IoSession;
+
+/**
+ * An {@link SshClient} that, next to connecting to a server over a socket, can also connect to a server via a {@link GatewayChannel} of a session to a
+ * gateway. Such a connection runs entirely in memory on top of the channel (see {@link ChannelIoSession}), so no local socket or forwarding thread is needed
+ * per gateway.
+ */
+class GatewayClient extends SshClient {
+
+    private static class ConnectFutureImpl extends DefaultSshFuture<IoConnectFuture> implements IoConnectFuture {
+
+        ConnectFutureImpl(Object id) {
+            super(id, null);
+        }
+
+        @Override
+        public IoSession getSession() {
+            Object v = getValue();
+            return v instanceof IoSession ? (IoSession) v : null;
+        }
+
+        @Override
+        public Throwable getException() {
+            Object v = getValue();
+            return v instanceof Throwable ? (Throwable) v : null;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return getValue() instanceof IoSession;
+        }
+
+        @Override
+        public void setSession(IoSession session) {
+            setValue(session);
+        }
+
+        @Override
+        public void setException(Throwable exception) {
+            setValue(exception);
+        }
+    }
+
+    /**
+     * Connects sessions to a {@link GatewayChannel.Address} in memory, and all other addresses using the regular connector of the client.
+     */
+    private static class GatewayConnector implements IoConnector {
+
+        private final IoConnector connector;
+        private final IoHandler handler;
+
+        GatewayConnector(IoConnector connector, IoHandler handler) {
+            this.connector = connector;
+            this.handler = handler;
+        }
+
+        @Override
+        public IoConnectFuture connect(SocketAddress targetAddress, AttributeRepository context, SocketAddress localAddress) {
+
+            if (!(targetAddress instanceof GatewayChannel.Address)) {
+                return connector.connect(targetAddress, context, localAddress);
+            }
+
+            GatewayChannel channel = ((GatewayChannel.Address) targetAddress).getChannel();
+
+            ConnectFutureImpl future = new ConnectFutureImpl(targetAddress);
+
+            if (!channel.isOpen() || channel.isClosing()) {
+                future.setException(new EOFException("Channel to " + targetAddress + " is closed"));
+                return future;
+            }
+
+            ChannelIoSession session = new ChannelIoSession(this, handler, channel);
+
+            if (context != null) {
+                session.setAttribute(AttributeRepository.class, context);
+            }
+
+            try {
+                handler.sessionCreated(session);
+            } catch (Exception e) {
+                session.close(true);
+                future.setException(e);
+                return future;
+            }
+
+            future.setSession(session);
+
+            // Only start handing data to the session once it has been fully set up by the client.
+            channel.attach(session);
+
+            return future;
+        }
+
+        @Override
+        public Map<Long, IoSession> getManagedSessions() {
+            return connector.getManagedSessions();
+        }
+
+        @Override
+        public IoServiceEventListener getIoServiceEventListener() {
+            return connector.getIoServiceEventListener();
+        }
+
+        @Override
+        public void setIoServiceEventListener(IoServiceEventListener listener) {
+            connector.setIoServiceEventListener(listener);
+        }
+
+        @Override
+        public CloseFuture close(boolean immediately) {
+            return connector.close(immediately);
+        }
+
+        @Override
+        public void addCloseFutureListener(SshFutureListener<CloseFuture> listener) {
+            connector.addCloseFutureListener(listener);
+        }
+
+        @Override
+        public void removeCloseFutureListener(SshFutureListener<CloseFuture> listener) {
+            connector.removeCloseFutureListener(listener);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return connector.isClosed();
+        }
+
+        @Override
+        public boolean isClosing() {
+            return connector.isClosing();
+        }
+    }
+
+    @Override
+    protected IoConnector createConnector() {
+        return new GatewayConnector(super.createConnector(), getSessionFactory());
+    }
+
+    /**
+     * Connect to the server at the other end of a gateway channel.
+     *
+     * @param username
+     *            the user to log in as.
+     * @param channel
+     *            the open channel to connect through.
+     * @return a future for the new session.
+     * @throws IOException
+     *             if the connection could not be started.
+     */
+    ConnectFuture connect(String username, GatewayChannel channel) throws IOException {
+        // As the address is not an InetSocketAddress, the client passes it on to the connector unchanged instead of resolving it via the ssh config.
+        return connect(username, channel.getAddress(), null, null);
+    }
+}
@@ -18,32 +18,39 @@ package nl.esciencecenter.xenon.adaptors.shared.ssh;
 import java.io.IOException;
 
 import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ChannelDirectTcpip;
 import org.apache.sshd.client.session.ClientSession;
 import org.apache.sshd.client.subsystem.sftp.SftpClient;
 import org.apache.sshd.client.subsystem.sftp.SftpClientFactory;
 
-import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHUtil.Tunnel;
-
 public class SSHConnection implements AutoCloseable {
 
     private final SshClient client;
     private final ClientSession[] sessions;
-    private final Tunnel[] tunnels;
+    private final ChannelDirectTcpip[] channels;
     private final int hops;
+    private final boolean stopClient;
     private boolean closed = false;
 
     private ClientSession session;
 
     protected SSHConnection(SshClient client, int hops) {
+        this(client, hops, true);
+    }
+
+    // A client that is shared with other connections should not be stopped when this connection is closed.
+    SSHConnection(SshClient client, int hops, boolean stopClient) {
         this.client = client;
         this.hops = hops;
+        this.stopClient = stopClient;
         sessions = new ClientSession[hops];
-        tunnels = new Tunnel[hops];
+        channels = new ChannelDirectTcpip[hops];
     }
 
-    protected void addHop(int hop, ClientSession session, Tunnel tunnel) {
+    protected void addHop(int hop, ClientSession session, ChannelDirectTcpip channel) {
         sessions[hop] = session;
-        tunnels[hop] = tunnel;
+        channels[hop] = channel;
     }
 
     protected void setSession(ClientSession session) {
@@ -54,6 +61,10 @@ public class SSHConnection implements AutoCloseable {
         return SftpClientFactory.instance().createSftpClient(session);
     }
 
+    public ChannelExec createExecChannel(String command) throws IOException {
+        return session.createExecChannel(command);
+    }
+
     public ClientSession getSession() {
         return session;
     }
@@ -85,9 +96,9 @@ public class SSHConnection implements AutoCloseable {
             }
 
             for (int i = hops - 1; i >= 0; i--) {
-                if (tunnels[i] != null) {
+                if (channels[i] != null) {
                     try {
-                        tunnels[i].close();
+                        channels[i].close();
                     } catch (Exception e) {
                         // ignored?
                     }
@@ -101,7 +112,9 @@ public class SSHConnection implements AutoCloseable {
                 }
             }
         } finally {
-            client.stop();
+            if (stopClient) {
+                client.stop();
+            }
         }
     }
 }
@@ -0,0 +1,573 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannel;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.apache.sshd.common.util.net.SshdSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * A process-wide pool of SSH connections, shared by all file systems and schedulers that connect to the same server with an equal credential and the same
+ * client options. Locations are compared by the host and port of the server and of any gateways in between, so <code>host</code>, <code>host:22</code> and
+ * <code>host/some/dir</code> share connections. Credentials are compared by value.
+ *
+ * Each call to {@link #connect} returns a lease on a pooled connection, which must be closed when it is no longer used. As a single SSH connection multiplexes
+ * any number of sessions and channels, a connection is shared by up to <code>maxShares</code> leases before a new one is opened. Once
+ * <code>maxConnections</code> connections are open to a server, further leases are spread over the existing connections with the same credential and options
+ * instead. If there are none, an idle connection to the server is closed to make room, or else an extra connection is opened, so a lease is never refused
+ * because of this limit. A connection without leases is closed after it has been idle for <code>idleTimeout</code> milliseconds. All connections that use
+ * the same client options share a single {@link SshClient} and its I/O threads.
+ *
+ * The exec channels and SFTP clients opened through a lease belong to that lease, and are closed when the lease is closed, as closing the lease does not
+ * close the shared connection they were opened on.
+ */
+public class SSHConnectionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SSHConnectionPool.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    public static final int DEFAULT_MAX_SHARES = 8;
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+
+    private static final SSHConnectionPool DEFAULT = new SSHConnectionPool(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_SHARES, DEFAULT_IDLE_TIMEOUT);
+
+    @FunctionalInterface
+    interface ClientFactory {
+        SshClient create(List<Boolean> options);
+    }
+
+    @FunctionalInterface
+    interface Connector {
+        SSHConnection connect(String adaptorName, SshClient client, String location, Credential credential, long timeout) throws XenonException;
+    }
+
+    private static class Client {
+        private final SshClient client;
+        private int users = 0;
+
+        Client(SshClient client) {
+            this.client = client;
+        }
+    }
+
+    private static class Pooled {
+        private final List<Object> key;
+        private final String location;
+        private final String server;
+        private final List<Boolean> options;
+
+        // Null while the connection is being set up.
+        private SSHConnection connection;
+        private XenonException error;
+
+        private int leases = 0;
+        private boolean removed = false;
+        private ScheduledFuture<?> idleTask;
+
+        Pooled(List<Object> key, String location, String server, List<Boolean> options) {
+            this.key = key;
+            this.location = location;
+            this.server = server;
+            this.options = options;
+        }
+    }
+
+    /**
+     * A lease on a pooled connection. Closing the lease closes the channels opened through it, and returns the connection to the pool.
+     */
+    private class Lease extends SSHConnection {
+
+        private final Pooled pooled;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        // The channels opened through this lease that are still open.
+        private final Set<ClientChannel> channels = new HashSet<>();
+
+        Lease(Pooled pooled) {
+            super(null, 0, false);
+            this.pooled = pooled;
+            setSession(pooled.connection.getSession());
+        }
+
+        @Override
+        public boolean isClosed() {
+            return released.get() || !isAlive(pooled.connection);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !isClosed();
+        }
+
+        @Override
+        public ChannelExec createExecChannel(String command) throws IOException {
+            ChannelExec channel = super.createExecChannel(command);
+            track(channel);
+            return channel;
+        }
+
+        @Override
+        public SftpClient createSftpClient() throws IOException {
+            SftpClient client = super.createSftpClient();
+
+            try {
+                track(client.getClientChannel());
+            } catch (IOException e) {
+                client.close();
+                throw e;
+            }
+
+            return client;
+        }
+
+        private void track(ClientChannel channel) throws IOException {
+
+            synchronized (channels) {
+                if (!released.get()) {
+                    channels.add(channel);
+                    // Called immediately if the channel has already been closed.
+                    channel.addCloseFutureListener(future -> untrack(channel));
+                    return;
+                }
+            }
+
+            channel.close(true);
+            throw new IOException("Connection lease is closed");
+        }
+
+        private void untrack(ClientChannel channel) {
+            synchronized (channels) {
+                channels.remove(channel);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+
+                List<ClientChannel> open;
+
+                synchronized (channels) {
+                    open = new ArrayList<>(channels);
+                    channels.clear();
+                }
+
+                for (ClientChannel channel : open) {
+                    LOGGER.debug("Closing channel {} left open by lease on {}", channel, pooled.location);
+                    // A graceful close tells the server to close its side of the channel too.
+                    channel.close(false);
+                }
+
+                release(pooled);
+            }
+        }
+    }
+
+    private final int maxConnections;
+    private final int maxShares;
+    private final long idleTimeout;
+    private final ClientFactory clientFactory;
+    private final Connector connector;
+
+    private final Map<List<Object>, List<Pooled>> pools = new HashMap<>();
+    private final Map<String, Integer> connections = new HashMap<>();
+    private final Map<List<Boolean>, Client> clients = new HashMap<>();
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    public SSHConnectionPool(int maxConnections, int maxShares, long idleTimeout) {
+        this(maxConnections, maxShares, idleTimeout,
+                options -> SSHUtil.createSSHClient(options.get(0), options.get(1), options.get(2), options.get(3), options.get(4)),
+                (adaptorName, client, location, credential, timeout) -> SSHUtil.connect(adaptorName, client, location, credential, timeout, false));
+    }
+
+    SSHConnectionPool(int maxConnections, int maxShares, long idleTimeout, ClientFactory clientFactory, Connector connector) {
+
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of connections: " + maxConnections);
+        }
+
+        if (maxShares <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of shares: " + maxShares);
+        }
+
+        this.maxConnections = maxConnections;
+        this.maxShares = maxShares;
+        this.idleTimeout = idleTimeout;
+        this.clientFactory = clientFactory;
+        this.connector = connector;
+
+        timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("SSHConnectionPool"));
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns the pool shared by all adaptors in this process.
+     *
+     * @return the default pool.
+     */
+    public static SSHConnectionPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Get a lease on a connection to <code>location</code>, authenticated with <code>credential</code>. An existing connection is used if possible,
+     * otherwise a new connection is set up with a client using the given options (see
+     * {@link SSHUtil#createSSHClient(boolean, boolean, boolean, boolean, boolean)}). The <code>timeout</code> applies to both waiting for a connection and
+     * setting up a new one. A lease is only waited for when it shares a connection that is still being set up.
+     *
+     * @param adaptorName
+     *            the adaptor where this method was called from.
+     * @param location
+     *            the server to connect to
+     * @param credential
+     *            the credential to authenticate with.
+     * @param useKnownHosts
+     *            Load the SSH known_hosts file from the default location.
+     * @param loadSSHConfig
+     *            Load the SSH config file from the default location.
+     * @param strictHostCheck
+     *            Perform a strict host key check.
+     * @param useSSHAgent
+     *            Handoff authentication to a separate SSH agent process.
+     * @param useAgentForwarding
+     *            Support agent forwarding.
+     * @param timeout
+     *            the timeout to use in connection setup, or to wait for a connection (in milliseconds).
+     * @return a lease on the connection, which must be closed when no longer used.
+     * @throws XenonException
+     *             if the location could not be parsed, the connection setup or authentication failed, or a shared connection was not set up within the
+     *             timeout.
+     */
+    public SSHConnection connect(String adaptorName, String location, Credential credential, boolean useKnownHosts, boolean loadSSHConfig,
+            boolean strictHostCheck, boolean useSSHAgent, boolean useAgentForwarding, long timeout) throws XenonException {
+
+        if (credential == null) {
+            throw new IllegalArgumentException("Credential may not be null");
+        }
+
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Invalid timeout: " + timeout);
+        }
+
+        if (location == null) {
+            throw new IllegalArgumentException("Location may not be null");
+        }
+
+        String server = getServer(adaptorName, location);
+        List<Boolean> options = Arrays.asList(useKnownHosts, loadSSHConfig, strictHostCheck, useSSHAgent, useAgentForwarding);
+        List<Object> key = Arrays.asList(server, credential, options);
+
+        long deadline = System.currentTimeMillis() + timeout;
+
+        List<Runnable> cleanup = new ArrayList<>();
+
+        Pooled pooled = null;
+        SshClient client = null;
+
+        try {
+            synchronized (this) {
+                removeDead(key, cleanup);
+
+                Pooled best = leastUsed(pools.getOrDefault(key, Collections.emptyList()));
+
+                if (best != null && best.leases < maxShares) {
+                    return lease(adaptorName, best, deadline);
+                }
+
+                boolean full = connections.getOrDefault(server, 0) >= maxConnections && !evictIdle(server, cleanup);
+
+                if (full && best != null) {
+                    LOGGER.debug("Sharing connection to {} by {} leases", location, best.leases + 1);
+                    return lease(adaptorName, best, deadline);
+                }
+
+                if (full) {
+                    // Waiting for connections with other credentials or options to be released could take forever, so the limit is exceeded instead.
+                    LOGGER.debug("Opening extra connection to {}, as none of the {} open connections can be shared", location, connections.get(server));
+                }
+
+                pooled = new Pooled(key, location, server, options);
+                pooled.leases = 1;
+                pools.computeIfAbsent(key, k -> new ArrayList<>()).add(pooled);
+                connections.merge(server, 1, Integer::sum);
+                client = getClient(options);
+            }
+        } finally {
+            runAll(cleanup);
+        }
+
+        LOGGER.debug("Opening new pooled connection to {}", location);
+
+        SSHConnection connection;
+
+        try {
+            connection = connector.connect(adaptorName, client, location, credential, timeout);
+        } catch (XenonException e) {
+            failed(pooled, e);
+            throw e;
+        } catch (RuntimeException e) {
+            failed(pooled, new XenonException(adaptorName, "Failed to connect to " + location, e));
+            throw e;
+        }
+
+        synchronized (this) {
+            pooled.connection = connection;
+            notifyAll();
+            return new Lease(pooled);
+        }
+    }
+
+    // Must be called while holding the lock. Waits for a pending connection if needed.
+    private SSHConnection lease(String adaptorName, Pooled pooled, long deadline) throws XenonException {
+
+        pooled.leases++;
+
+        if (pooled.idleTask != null) {
+            pooled.idleTask.cancel(false);
+            pooled.idleTask = null;
+        }
+
+        try {
+            while (pooled.connection == null && pooled.error == null) {
+                waitUntil(adaptorName, pooled.location, deadline);
+            }
+        } catch (XenonException e) {
+            pooled.leases--;
+            throw e;
+        }
+
+        if (pooled.error != null) {
+            pooled.leases--;
+            throw pooled.error;
+        }
+
+        return new Lease(pooled);
+    }
+
+    // Must be called while holding the lock.
+    private void waitUntil(String adaptorName, String location, long deadline) throws XenonException {
+
+        long now = System.currentTimeMillis();
+
+        if (now >= deadline) {
+            throw new XenonException(adaptorName, "Timeout while waiting for a connection to " + location);
+        }
+
+        try {
+            wait(deadline - now);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XenonException(adaptorName, "Interrupted while waiting for a connection to " + location, e);
+        }
+    }
+
+    private void failed(Pooled pooled, XenonException error) {
+
+        List<Runnable> cleanup = new ArrayList<>();
+
+        synchronized (this) {
+            pooled.error = error;
+            pooled.leases--;
+            remove(pooled, cleanup);
+            notifyAll();
+        }
+
+        runAll(cleanup);
+    }
+
+    private void release(Pooled pooled) {
+
+        List<Runnable> cleanup = new ArrayList<>();
+
+        synchronized (this) {
+            pooled.leases--;
+
+            if (pooled.leases > 0 || pooled.removed) {
+                return;
+            }
+
+            if (idleTimeout <= 0 || !isAlive(pooled.connection)) {
+                remove(pooled, cleanup);
+            } else {
+                pooled.idleTask = timer.schedule(() -> expire(pooled), idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        runAll(cleanup);
+    }
+
+    private void expire(Pooled pooled) {
+
+        List<Runnable> cleanup = new ArrayList<>();
+
+        synchronized (this) {
+            if (pooled.leases > 0 || pooled.removed) {
+                return;
+            }
+
+            LOGGER.debug("Closing idle pooled connection to {}", pooled.location);
+            remove(pooled, cleanup);
+        }
+
+        runAll(cleanup);
+    }
+
+    // Must be called while holding the lock. Removes a connection from the pool, and adds the actions to close it to cleanup.
+    private void remove(Pooled pooled, List<Runnable> cleanup) {
+
+        if (pooled.removed) {
+            return;
+        }
+
+        pooled.removed = true;
+
+        if (pooled.idleTask != null) {
+            pooled.idleTask.cancel(false);
+            pooled.idleTask = null;
+        }
+
+        List<Pooled> list = pools.get(pooled.key);
+
+        if (list != null) {
+            list.remove(pooled);
+
+            if (list.isEmpty()) {
+                pools.remove(pooled.key);
+            }
+        }
+
+        connections.computeIfPresent(pooled.server, (k, v) -> v == 1 ? null : v - 1);
+
+        if (pooled.connection != null) {
+            SSHConnection connection = pooled.connection;
+            cleanup.add(connection::close);
+        }
+
+        Client client = clients.get(pooled.options);
+
+        if (client != null && --client.users == 0) {
+            clients.remove(pooled.options);
+            cleanup.add(client.client::stop);
+        }
+
+        // Someone may be waiting for this connection to be set up.
+        notifyAll();
+    }
+
+    // Must be called while holding the lock.
+    private void removeDead(List<Object> key, List<Runnable> cleanup) {
+        for (Pooled p : new ArrayList<>(pools.getOrDefault(key, Collections.emptyList()))) {
+            if (p.connection != null && !isAlive(p.connection)) {
+                LOGGER.debug("Removing broken pooled connection to {}", p.location);
+                remove(p, cleanup);
+            }
+        }
+    }
+
+    // Must be called while holding the lock. Closes an idle connection to the server with another credential or options, to make room for a new one.
+    private boolean evictIdle(String server, List<Runnable> cleanup) {
+
+        for (List<Pooled> list : pools.values()) {
+            for (Pooled p : list) {
+                if (p.server.equals(server) && p.leases == 0 && p.connection != null) {
+                    // remove() changes the pool maps, so we return immediately.
+                    remove(p, cleanup);
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    // Must be called while holding the lock.
+    private Pooled leastUsed(List<Pooled> list) {
+
+        Pooled best = null;
+
+        for (Pooled p : list) {
+            if (best == null || p.leases < best.leases) {
+                best = p;
+            }
+        }
+
+        return best;
+    }
+
+    // Must be called while holding the lock.
+    private SshClient getClient(List<Boolean> options) {
+        Client client = clients.computeIfAbsent(options, o -> new Client(clientFactory.create(o)));
+        client.users++;
+        return client.client;
+    }
+
+    private static boolean isAlive(SSHConnection connection) {
+
+        if (connection == null || connection.isClosed()) {
+            return false;
+        }
+
+        ClientSession session = connection.getSession();
+
+        return session == null || session.isOpen();
+    }
+
+    private static void runAll(List<Runnable> actions) {
+        for (Runnable r : actions) {
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                LOGGER.debug("Failed to close pooled connection", e);
+            }
+        }
+    }
+
+    // Returns the hosts and ports of the first hop up to the server, which identify the connections that may be shared.
+    static String getServer(String adaptorName, String location) throws XenonException {
+        return Arrays.stream(SSHUtil.extractLocations(adaptorName, location)).map(SshdSocketAddress::toString).collect(Collectors.joining(", "));
+    }
+
+    synchronized int getConnectionCount(String server) {
+        return connections.getOrDefault(server, 0);
+    }
+}
@@ -17,8 +17,6 @@ package nl.esciencecenter.xenon.adaptors.shared.ssh;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.URI;
 import java.nio.file.Files;
@@ -35,9 +33,9 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.sshd.agent.local.ProxyAgentFactory;
+import org.apache.sshd.client.ClientBuilder;
 import org.apache.sshd.client.ClientFactoryManager;
 import org.apache.sshd.client.SshClient;
-import org.apache.sshd.client.channel.ChannelDirectTcpip;
 import org.apache.sshd.client.config.hosts.DefaultConfigFileHostEntryResolver;
 import org.apache.sshd.client.config.hosts.KnownHostEntry;
 import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
@@ -45,6 +43,7 @@ import org.apache.sshd.client.keyverifier.DefaultKnownHostsServerKeyVerifier;
 import org.apache.sshd.client.keyverifier.RejectAllServerKeyVerifier;
 import org.apache.sshd.client.session.ClientSession;
 import org.apache.sshd.common.NamedResource;
+import org.apache.sshd.common.session.ConnectionService;
 import org.apache.sshd.common.config.keys.FilePasswordProvider;
 import org.apache.sshd.common.session.SessionContext;
 import org.apache.sshd.common.util.io.resource.PathResource;
@@ -65,7 +64,6 @@ import nl.esciencecenter.xenon.credentials.CredentialMap;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.credentials.PasswordCredential;
 import nl.esciencecenter.xenon.credentials.UserCredential;
-import nl.esciencecenter.xenon.utils.StreamForwarder;
 
 public class SSHUtil {
 
@@ -89,65 +87,6 @@ public class SSHUtil {
         }
     }
 
-    static class Tunnel extends Thread {
-
-        private final ServerSocket server;
-        private final ChannelDirectTcpip channel;
-
-        private final int bufferSize;
-
-        private Socket socket;
-        private Exception ex;
-
-        Tunnel(ServerSocket ss, ChannelDirectTcpip tmp, int bufferSize) {
-            this.server = ss;
-            this.channel = tmp;
-            this.bufferSize = bufferSize;
-        }
-
-        public synchronized Exception getException() {
-            return ex;
-        }
-
-        public synchronized void close() {
-            try {
-                socket.close();
-            } catch (Exception e) {
-                // ignore
-            }
-        }
-
-        private void closeServer() {
-            try {
-                server.close();
-            } catch (Exception e) {
-                // ignored
-            }
-        }
-
-        @Override
-        public void run() {
-            try {
-                Socket s = server.accept();
-                s.setTcpNoDelay(true);
-
-                closeServer();
-
-                synchronized (this) {
-                    socket = s;
-                }
-
-                new StreamForwarder("LOCAL TO REMOTE", s.getInputStream(), channel.getInvertedIn(), bufferSize);
-                new StreamForwarder("REMOTE TO LOCAL", channel.getInvertedOut(), s.getOutputStream(), bufferSize);
-
-            } catch (IOException e) {
-                synchronized (this) {
-                    ex = e;
-                }
-            }
-        }
-    }
-
     /**
      * This constructor is only needed for testing. Users should use the static methods instead.
      */
@@ -189,7 +128,8 @@ public class SSHUtil {
     public static SshClient createSSHClient(boolean useKnownHosts, boolean loadSSHConfig, boolean stricHostCheck, boolean useSSHAgent,
             boolean useAgentForwarding) {
 
-        SshClient client = SshClient.setUpDefaultClient();
+        // The client can also connect via gateway channels, which is used for locations that contain "via:" hops.
+        SshClient client = ClientBuilder.builder().factory(GatewayClient::new).build();
 
         // This sets the idle time after which the connection is closed automatically. The default is set to 10 minutes.
         // client.getProperties().putIfAbsent(FactoryManager.IDLE_TIMEOUT, TimeUnit.SECONDS.toMillis(120L));
@@ -378,6 +318,17 @@ public class SSHUtil {
         return new SshdSocketAddress(host, port);
     }
 
+    private static String getUsername(String adaptorName, UserCredential credential) throws XenonException {
+
+        String username = credential.getUsername();
+
+        if (username == null) {
+            throw new InvalidCredentialException(adaptorName, "Failed to retrieve username from credential");
+        }
+
+        return username;
+    }
+
     private static ClientSession connectAndAuthenticate(String adaptorName, SshClient client, String host, int port, UserCredential credential, long timeout)
             throws XenonException {
 
@@ -385,11 +336,7 @@ public class SSHUtil {
             throw new IllegalArgumentException("Target host may not be null");
         }
 
-        String username = credential.getUsername();
-
-        if (username == null) {
-            throw new InvalidCredentialException(adaptorName, "Failed to retrieve username from credential");
-        }
+        String username = getUsername(adaptorName, credential);
 
         ClientSession session = null;
 
@@ -399,6 +346,32 @@ public class SSHUtil {
             throw new XenonException(adaptorName, "Connection setup to " + host + ":" + port + " failed!", e);
         }
 
+        authenticate(adaptorName, session, credential, timeout);
+
+        return session;
+    }
+
+    // Connects to the server at the other end of a gateway channel, using a session that runs on top of the channel itself.
+    private static ClientSession connectAndAuthenticate(String adaptorName, GatewayClient client, GatewayChannel channel, UserCredential credential,
+            long timeout) throws XenonException {
+
+        String username = getUsername(adaptorName, credential);
+
+        ClientSession session = null;
+
+        try {
+            session = client.connect(username, channel).verify(timeout).getSession();
+        } catch (IOException e) {
+            throw new XenonException(adaptorName, "Connection setup to " + channel.getAddress() + " via gateway failed!", e);
+        }
+
+        authenticate(adaptorName, session, credential, timeout);
+
+        return session;
+    }
+
+    private static void authenticate(String adaptorName, ClientSession session, UserCredential credential, long timeout) throws XenonException {
+
         // Figure out which type of credential we are using
         if (credential instanceof DefaultCredential) {
             // do nothing
@@ -448,8 +421,28 @@ public class SSHUtil {
         } catch (IOException e) {
             throw new XenonException(adaptorName, "Connection authentication failed", e);
         }
+    }
 
-        return session;
+    /**
+     * Connect an existing {@link SshClient} to the server at <code>location</code> and authenticate using the given <code>credential</code>.
+     *
+     * @param adaptorName
+     *            the adaptor where this method was called from.
+     * @param client
+     *            the client to connect.
+     * @param location
+     *            the server to connect to
+     * @param credential
+     *            the credential to authenticate with.
+     * @param timeout
+     *            the timeout to use in connection setup (in milliseconds).
+     * @return the connected {@link ClientSession}
+     * @throws XenonException
+     *             if the connection setup or authentication failed.
+     */
+    public static SSHConnection connect(String adaptorName, SshClient client, String location, Credential credential, long timeout)
+            throws XenonException {
+        return connect(adaptorName, client, location, credential, timeout, true);
     }
 
     /**
@@ -464,15 +457,24 @@ public class SSHUtil {
      * @param credential
      *            the credential to authenticate with.
      * @param bufferSize
-     *            the buffer size used for the (optional) SSH tunnels.
+     *            ignored.
      * @param timeout
      *            the timeout to use in connection setup (in milliseconds).
      * @return the connected {@link ClientSession}
      * @throws XenonException
      *             if the connection setup or authentication failed.
+     * @deprecated connections via gateways are forwarded in memory without intermediate buffers, so there is no buffer size to set. Use
+     *             {@link #connect(String, SshClient, String, Credential, long)} instead.
      */
+    @Deprecated
     public static SSHConnection connect(String adaptorName, SshClient client, String location, Credential credential, int bufferSize, long timeout)
             throws XenonException {
+        return connect(adaptorName, client, location, credential, timeout);
+    }
+
+    // Connects like connect(...) above, but only stops the client when the connection is closed if stopClient is true.
+    static SSHConnection connect(String adaptorName, SshClient client, String location, Credential credential, long timeout, boolean stopClient)
+            throws XenonException {
 
         if (credential == null) {
             throw new IllegalArgumentException("Credential may not be null");
@@ -489,26 +491,27 @@ public class SSHUtil {
         SshdSocketAddress[] locations = extractLocations(adaptorName, location);
         UserCredential[] creds = extractCredentials(adaptorName, locations, credential);
 
-        SSHConnection connection = new SSHConnection(client, locations.length - 1);
+        if (locations.length > 1 && !(client instanceof GatewayClient)) {
+            throw new XenonException(adaptorName, "Connecting via a gateway requires an SshClient created by SSHUtil.createSSHClient");
+        }
+
+        SSHConnection connection = new SSHConnection(client, locations.length - 1, stopClient);
 
         // Connect to the last location. This is either the destination (without tunneling) or the first hop.
         ClientSession session = connectAndAuthenticate(adaptorName, client, locations[0].getHostName(), locations[0].getPort(), creds[0], timeout);
 
         try {
-            // If we have more that one location we need to tunnel via another location.
+            // If we have more that one location we need to tunnel via another location. The session to the next location runs directly on top of
+            // a direct-tcpip channel of the session to the previous one.
             for (int i = 1; i < locations.length; i++) {
-                ChannelDirectTcpip channel = session.createDirectTcpipChannel(null, locations[i]);
-                channel.open().await(timeout);
-
-                ServerSocket server = new ServerSocket(0);
-                int port = server.getLocalPort();
+                GatewayChannel channel = new GatewayChannel(locations[i]);
+                session.getService(ConnectionService.class).registerChannel(channel);
 
-                Tunnel tunnel = new Tunnel(server, channel, bufferSize);
-                tunnel.start();
+                connection.addHop(i - 1, session, channel);
 
-                connection.addHop(i - 1, session, tunnel);
+                channel.open().verify(timeout);
 
-                session = connectAndAuthenticate(adaptorName, client, "localhost", port, creds[i], timeout);
+                session = connectAndAuthenticate(adaptorName, (GatewayClient) client, channel, creds[i], timeout);
             }
 
         } catch (IOException e) {
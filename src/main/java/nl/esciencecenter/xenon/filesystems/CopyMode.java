@@ -18,7 +18,7 @@ package nl.esciencecenter.xenon.filesystems;
 /**
  * CopyOption is an enumeration containing all possible options for copying a file.
  *
- * Note that the <code>CREATE</code>, <code>REPLACE</code> and <code>IGNORE</code> options are mutually exclusive.
+ * Note that the <code>CREATE</code>, <code>REPLACE</code>, <code>IGNORE</code>, <code>RESUME</code> and <code>SYNCHRONIZE</code> options are mutually exclusive.
  */
 public enum CopyMode {
 
@@ -40,5 +40,22 @@ public enum CopyMode {
     /**
      * Skip the copy if the destination file if it already exists.
      */
-    IGNORE
+    IGNORE,
+
+    /**
+     * If the destination file already exists, append the remaining part of the source file to it. The destination is assumed to contain the start of the
+     * source, for example after an interrupted copy. The last block of the destination is compared with the source before resuming, and an
+     * {@link InvalidResumeTargetException} is thrown if it does not match, or if the destination is larger than the source.
+     *
+     * This mode requires the destination file system to support appending to a file. Directories are merged as with <code>REPLACE</code>.
+     */
+    RESUME,
+
+    /**
+     * Skip the copy if the destination file already exists, has the same size as the source file, and was not modified before the source file. Otherwise the
+     * destination file will be replaced.
+     *
+     * Directories are merged as with <code>REPLACE</code>.
+     */
+    SYNCHRONIZE
 }
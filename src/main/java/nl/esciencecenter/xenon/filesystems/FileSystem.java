@@ -15,22 +15,30 @@
  */
 package nl.esciencecenter.xenon.filesystems;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
@@ -39,10 +47,12 @@ import nl.esciencecenter.xenon.UnknownAdaptorException;
 import nl.esciencecenter.xenon.UnknownPropertyException;
 import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
 import nl.esciencecenter.xenon.adaptors.AdaptorLoader;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
+import nl.esciencecenter.xenon.adaptors.filesystems.RecursiveListIterator;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
@@ -326,7 +336,10 @@ public abstract class FileSystem implements AutoCloseable {
         return create(adaptor, null);
     }
 
-    class CopyCallback {
+    /**
+     * CopyCallback is used to report the progress of a copy operation, and to check if the copy has been cancelled by the user.
+     */
+    protected class CopyCallback {
 
         private long bytesToCopy = 0;
         private long bytesCopied = 0;
@@ -345,15 +358,15 @@ public abstract class FileSystem implements AutoCloseable {
             return started;
         }
 
-        synchronized long getBytesCopied() {
+        public synchronized long getBytesCopied() {
             return bytesCopied;
         }
 
-        synchronized long getBytesToCopy() {
+        public synchronized long getBytesToCopy() {
             return bytesToCopy;
         }
 
-        synchronized void addBytesCopied(long bytes) {
+        public synchronized void addBytesCopied(long bytes) {
             this.bytesCopied += bytes;
         }
 
@@ -361,7 +374,7 @@ public abstract class FileSystem implements AutoCloseable {
             cancelled = true;
         }
 
-        synchronized boolean isCancelled() {
+        public synchronized boolean isCancelled() {
             return cancelled;
         }
     }
@@ -384,6 +397,7 @@ public abstract class FileSystem implements AutoCloseable {
     private final Credential credential;
     private final XenonProperties properties;
     private final ExecutorService pool;
+    private final ExecutorService transferPool;
 
     private Path workingDirectory;
 
@@ -391,10 +405,17 @@ public abstract class FileSystem implements AutoCloseable {
 
     private int bufferSize;
 
+    private final int copyThreads;
+
     private final HashMap<String, PendingCopy> pendingCopies = new HashMap<>();
 
     protected FileSystem(String uniqueID, String adaptor, String location, Credential credential, Path workDirectory, int bufferSize,
             XenonProperties properties) {
+        this(uniqueID, adaptor, location, credential, workDirectory, bufferSize, 1, properties);
+    }
+
+    protected FileSystem(String uniqueID, String adaptor, String location, Credential credential, Path workDirectory, int bufferSize, int copyThreads,
+            XenonProperties properties) {
 
         if (uniqueID == null) {
             throw new IllegalArgumentException("Identifier may not be null!");
@@ -420,6 +441,10 @@ public abstract class FileSystem implements AutoCloseable {
             throw new IllegalArgumentException("Buffer size may not be 0 or smaller!");
         }
 
+        if (copyThreads <= 0) {
+            throw new IllegalArgumentException("Number of copy threads may not be 0 or smaller!");
+        }
+
         this.uniqueID = uniqueID;
         this.adaptor = adaptor;
         this.location = location;
@@ -427,13 +452,29 @@ public abstract class FileSystem implements AutoCloseable {
         this.workingDirectory = workDirectory;
         this.properties = properties;
         this.bufferSize = bufferSize;
+        this.copyThreads = copyThreads;
         this.pool = Executors.newFixedThreadPool(1, new DaemonThreadFactory("CopyThread." + uniqueID));
+
+        if (copyThreads > 1) {
+            this.transferPool = Executors.newFixedThreadPool(copyThreads, new DaemonThreadFactory("TransferThread." + uniqueID));
+        } else {
+            this.transferPool = null;
+        }
     }
 
     protected int getBufferSize() {
         return bufferSize;
     }
 
+    /**
+     * Get the maximum number of files this FileSystem will transfer concurrently during a recursive copy.
+     *
+     * @return the maximum number of concurrent file transfers.
+     */
+    protected int getCopyThreads() {
+        return copyThreads;
+    }
+
     private synchronized String getNextCopyID() {
         return "COPY-" + getAdaptorName() + "-" + nextCopyID++;
     }
@@ -536,6 +577,10 @@ public abstract class FileSystem implements AutoCloseable {
     public void close() throws XenonException {
         try {
             pool.shutdownNow();
+
+            if (transferPool != null) {
+                transferPool.shutdownNow();
+            }
         } catch (Exception e) {
             throw new XenonException(getAdaptorName(), "Failed to cleanly shutdown copy thread pool");
         }
@@ -710,19 +755,29 @@ public abstract class FileSystem implements AutoCloseable {
 
         Path absPath = toAbsolutePath(path);
 
-        assertPathExists(absPath);
+        PathAttributes attributes = statOrNull(absPath);
 
-        if (getAttributes(absPath).isDirectory()) {
+        if (attributes == null) {
+            throw new NoSuchPathException(getAdaptorName(), "Path does not exist: " + absPath);
+        }
+
+        delete(absPath, attributes, recursive);
+    }
 
-            Iterable<PathAttributes> itt = list(absPath, false);
+    // Delete a path of which the attributes are already known.
+    private void delete(Path absPath, PathAttributes attributes, boolean recursive) throws XenonException {
+
+        if (attributes.isDirectory()) {
 
             if (recursive) {
-                for (PathAttributes p : itt) {
-                    delete(p.getPath(), true);
-                }
+                deleteContents(absPath);
             } else {
-                if (itt.iterator().hasNext()) {
-                    throw new DirectoryNotEmptyException(getAdaptorName(), "Directory not empty: " + absPath.toString());
+                try {
+                    if (listIterator(absPath, false).hasNext()) {
+                        throw new DirectoryNotEmptyException(getAdaptorName(), "Directory not empty: " + absPath.toString());
+                    }
+                } catch (XenonRuntimeException e) {
+                    throw listingFailed(e);
                 }
             }
 
@@ -732,6 +787,26 @@ public abstract class FileSystem implements AutoCloseable {
         }
     }
 
+    // Depth-first removal of everything below dir, using the attributes returned by the listing instead of a stat per entry.
+    private void deleteContents(Path dir) throws XenonException {
+        try {
+            Iterator<PathAttributes> itt = listIterator(dir, false);
+
+            while (itt.hasNext()) {
+                PathAttributes p = itt.next();
+
+                if (p.isDirectory()) {
+                    deleteContents(p.getPath());
+                    deleteDirectory(p.getPath());
+                } else {
+                    deleteFile(p.getPath());
+                }
+            }
+        } catch (XenonRuntimeException e) {
+            throw listingFailed(e);
+        }
+    }
+
     /**
      * Tests if a path exists.
      *
@@ -749,6 +824,29 @@ public abstract class FileSystem implements AutoCloseable {
      */
     public abstract boolean exists(Path path) throws XenonException;
 
+    /**
+     * Get the {@link PathAttributes} of an existing path, or <code>null</code> if the path does not exist.
+     *
+     * This combines {@link #exists(Path)} and {@link #getAttributes(Path)} into a single lookup. It is used by the copy, delete and assert operations, so
+     * checking both the existence and type of a path costs a single round trip to the server.
+     *
+     * This default implementation is based on {@link #getAttributes(Path)}. It should be re-implemented by the various implementations of FileSystem if
+     * getAttributes needs more than one lookup.
+     *
+     * @param path
+     *            the absolute path to get the attributes for.
+     * @return the attributes of the path, or <code>null</code> if the path does not exist.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     */
+    protected PathAttributes statOrNull(Path path) throws XenonException {
+        try {
+            return getAttributes(path);
+        } catch (NoSuchPathException e) {
+            return null;
+        }
+    }
+
     /**
      * List all entries in the directory <code>dir</code>.
      *
@@ -786,6 +884,46 @@ public abstract class FileSystem implements AutoCloseable {
         return result;
     }
 
+    /**
+     * Lazily list all entries in the directory <code>dir</code>.
+     *
+     * This returns the same entries as {@link #list(Path, boolean)}, but instead of retrieving the complete listing before returning, the entries are
+     * retrieved while the stream is consumed. When listing recursively, only the listings of the directories on the path to the current entry are kept in
+     * memory, and the first entries become available as soon as the first directory is listed.
+     *
+     * The existence and type of <code>dir</code> are checked when this method is called. Errors that occur later on, while traversing the (sub)directories,
+     * are thrown by the stream as a {@link XenonRuntimeException} with the original {@link XenonException} as cause.
+     *
+     * Symbolic links are not followed.
+     *
+     * @param dir
+     *            the target directory.
+     * @param recursive
+     *            should the list recursively traverse the subdirectories ?
+     *
+     * @return a {@link Stream} of {@link PathAttributes} of all entries in the directory <code>dir</code>.
+     *
+     * @throws NoSuchPathException
+     *             If a directory does not exists.
+     * @throws InvalidPathException
+     *             If <code>dir</code> is not a directory.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null.
+     */
+    public Stream<PathAttributes> listStream(Path dir, boolean recursive) throws XenonException {
+
+        Path absolute = toAbsolutePath(dir);
+
+        assertDirectoryExists(absolute);
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(listIterator(absolute, recursive), Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
+
     /**
      * Open an existing file and return an {@link InputStream} to read from this file.
      *
@@ -1060,9 +1198,11 @@ public abstract class FileSystem implements AutoCloseable {
             throw new InvalidPathException(getAdaptorName(), "Source is not a regular file: " + source);
         }
 
-        destinationFS.assertParentDirectoryExists(destination);
+        PathAttributes existing = destinationFS.statOrNull(destination);
 
-        if (destinationFS.exists(destination)) {
+        if (existing == null) {
+            destinationFS.assertParentDirectoryExists(destination);
+        } else {
             switch (mode) {
             case CREATE:
                 throw new PathAlreadyExistsException(getAdaptorName(), "Destination path already exists: " + destination);
@@ -1071,6 +1211,14 @@ public abstract class FileSystem implements AutoCloseable {
             case REPLACE:
                 // continue
                 break;
+            case RESUME:
+            case SYNCHRONIZE:
+                if (existing.isSymbolicLink() && readSymbolicLink(source).equals(destinationFS.readSymbolicLink(destination))) {
+                    return;
+                }
+
+                destinationFS.delete(destination, existing, true);
+                break;
             }
         }
 
@@ -1106,25 +1254,43 @@ public abstract class FileSystem implements AutoCloseable {
      *             If the file could not be copied.
      */
     protected void copyFile(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback) throws XenonException {
+        copyFile(source, getAttributes(source), destinationFS, destination, mode, callback);
+    }
 
-        PathAttributes attributes = getAttributes(source);
+    // Copy a single file of which the attributes are already known, for example from a directory listing.
+    private void copyFile(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback)
+            throws XenonException {
 
         if (!attributes.isRegular()) {
             throw new InvalidPathException(getAdaptorName(), "Source is not a regular file: " + source);
         }
 
-        destinationFS.assertParentDirectoryExists(destination);
+        // A single lookup of the destination tells if it exists, and if so, implies that its parent directory exists.
+        PathAttributes existing = destinationFS.statOrNull(destination);
 
-        if (destinationFS.exists(destination)) {
+        if (existing == null) {
+            destinationFS.assertParentDirectoryExists(destination);
+        } else {
             switch (mode) {
             case CREATE:
                 throw new PathAlreadyExistsException(getAdaptorName(), "Destination path already exists: " + destination);
             case IGNORE:
                 return;
             case REPLACE:
-                destinationFS.delete(destination, true);
+                destinationFS.delete(destination, existing, true);
                 // continue
                 break;
+            case RESUME:
+                resumeFile(source, attributes, destinationFS, destination, existing, callback);
+                return;
+            case SYNCHRONIZE:
+                if (isSynchronized(attributes, existing)) {
+                    callback.addBytesCopied(attributes.getSize());
+                    return;
+                }
+
+                destinationFS.delete(destination, existing, true);
+                break;
             }
         }
 
@@ -1132,12 +1298,150 @@ public abstract class FileSystem implements AutoCloseable {
             throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
         }
 
+        transferFile(source, attributes, destinationFS, destination, callback);
+    }
+
+    private static boolean isSynchronized(PathAttributes source, PathAttributes destination) {
+        return destination.isRegular() && destination.getSize() == source.getSize() && destination.getLastModifiedTime() >= source.getLastModifiedTime();
+    }
+
+    /**
+     * Resume an interrupted copy of a single file by appending the missing data to the existing destination.
+     *
+     * To detect a destination that does not contain the start of the source, the last block of the destination (up to the buffer size) is compared with the
+     * same block of the source before appending.
+     *
+     * @param source
+     *            the file to copy.
+     * @param attributes
+     *            the attributes of the file to copy.
+     * @param destinationFS
+     *            the destination {@link FileSystem} to copy to.
+     * @param destination
+     *            the existing destination file on the destination file system.
+     * @param target
+     *            the attributes of the existing destination file.
+     * @param callback
+     *            a {@link CopyCallback} used to update the status of the copy, or cancel it while in progress.
+     *
+     * @throws InvalidResumeTargetException
+     *             if the destination is not a regular file, is larger than the source, or its data does not match the source.
+     * @throws XenonException
+     *             If the file could not be copied.
+     */
+    private void resumeFile(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, PathAttributes target,
+            CopyCallback callback) throws XenonException {
+
+        if (!target.isRegular()) {
+            throw new InvalidResumeTargetException(getAdaptorName(), "Resume target is not a regular file: " + destination);
+        }
+
+        long offset = target.getSize();
+
+        if (offset > attributes.getSize()) {
+            throw new InvalidResumeTargetException(getAdaptorName(), "Resume target is larger than source: " + destination);
+        }
+
+        int check = (int) Math.min(bufferSize, offset);
+
+        byte[] expected = new byte[check];
+        byte[] actual = new byte[check];
+
+        try (InputStream in = destinationFS.readFromFile(destination)) {
+            skipFully(in, offset - check);
+            readFully(in, expected);
+        } catch (IOException e) {
+            throw new XenonException(getAdaptorName(), "Failed to read resume target: " + destination, e);
+        }
+
+        try (InputStream in = readFromFile(source)) {
+            skipFully(in, offset - check);
+            readFully(in, actual);
+
+            if (!Arrays.equals(expected, actual)) {
+                throw new InvalidResumeTargetException(getAdaptorName(), "Data in resume target does not match source: " + destination);
+            }
+
+            callback.addBytesCopied(offset);
+
+            if (offset == attributes.getSize()) {
+                return;
+            }
+
+            if (callback.isCancelled()) {
+                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+            }
+
+            try (OutputStream out = destinationFS.appendToFile(destination)) {
+                streamCopy(in, out, bufferSize, callback);
+            }
+        } catch (IOException e) {
+            throw new XenonException(getAdaptorName(), "Failed to resume copy to: " + destination, e);
+        }
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+
+            if (skipped <= 0) {
+                // skip may return 0 without reaching the end of the stream, so use read to tell the two apart.
+                if (in.read() < 0) {
+                    throw new EOFException("Unexpected end of stream");
+                }
+                skipped = 1;
+            }
+
+            n -= skipped;
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int done = 0;
+
+        while (done < buffer.length) {
+            int n = in.read(buffer, done, buffer.length - done);
+
+            if (n < 0) {
+                throw new EOFException("Unexpected end of stream");
+            }
+
+            done += n;
+        }
+    }
+
+    /**
+     * Transfer the data of a single file to another file system.
+     *
+     * This operation is called by {@link #copyFile(Path, FileSystem, Path, CopyMode, CopyCallback)} once the source has been checked and the {@link CopyMode} has
+     * been applied to the destination. That is, <code>source</code> is an existing regular file and <code>destination</code> does not exist.
+     *
+     * This operation may be re-implemented by the various implementations of FileSystem to provide a more efficient transfer, for example by letting the server
+     * copy the data when <code>destinationFS</code> is the same endpoint (see {@link #isSameEndpoint(FileSystem)}). This default implementation is based on a
+     * simple stream based copy.
+     *
+     * @param source
+     *            the file to copy.
+     * @param attributes
+     *            the attributes of the file to copy.
+     * @param destinationFS
+     *            the destination {@link FileSystem} to copy to.
+     * @param destination
+     *            the destination file on the destination file system.
+     * @param callback
+     *            a {@link CopyCallback} used to update the status of the copy, or cancel it while in progress.
+     *
+     * @throws XenonException
+     *             If the file could not be copied.
+     */
+    protected void transferFile(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
         try (InputStream in = readFromFile(source); OutputStream out = destinationFS.writeToFile(destination, attributes.getSize())) {
             streamCopy(in, out, bufferSize, callback);
         } catch (Exception e) {
             throw new XenonException(getAdaptorName(), "Stream copy failed", e);
         }
-
     }
 
     /**
@@ -1161,15 +1465,15 @@ public abstract class FileSystem implements AutoCloseable {
     protected void performCopy(Path source, FileSystem destinationFS, Path destination, CopyMode mode, boolean recursive, CopyCallback callback)
             throws XenonException {
 
-        if (!exists(source)) {
+        PathAttributes attributes = statOrNull(source);
+
+        if (attributes == null) {
             throw new NoSuchPathException(getAdaptorName(), "No such file " + source.toString());
         }
 
-        PathAttributes attributes = getAttributes(source);
-
         // if (attributes.isRegular() || attributes.isSymbolicLink()) {
         if (attributes.isRegular()) {
-            copyFile(source, destinationFS, destination, mode, callback);
+            copyFile(source, attributes, destinationFS, destination, mode, callback);
             return;
         }
 
@@ -1187,7 +1491,9 @@ public abstract class FileSystem implements AutoCloseable {
         }
 
         // From here on we know the source is a directory. We should also check the destination type.
-        if (destinationFS.exists(destination)) {
+        attributes = destinationFS.statOrNull(destination);
+
+        if (attributes != null) {
 
             switch (mode) {
             case CREATE:
@@ -1195,14 +1501,14 @@ public abstract class FileSystem implements AutoCloseable {
             case IGNORE:
                 return;
             case REPLACE:
+            case RESUME:
+            case SYNCHRONIZE:
                 // continue
                 break;
             }
 
-            attributes = destinationFS.getAttributes(destination);
-
             if (attributes.isRegular() || attributes.isSymbolicLink()) {
-                destinationFS.delete(destination, false);
+                destinationFS.delete(destination, attributes, false);
                 destinationFS.createDirectory(destination);
             } else if (!attributes.isDirectory()) {
                 throw new InvalidPathException(getAdaptorName(), "Existing destination is not a file, link or directory: " + source);
@@ -1216,8 +1522,18 @@ public abstract class FileSystem implements AutoCloseable {
     }
 
     private void copyRecursive(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback) throws XenonException {
+        try {
+            copyListing(source, destinationFS, destination, mode, callback);
+        } catch (XenonRuntimeException e) {
+            throw listingFailed(e);
+        }
+    }
+
+    private void copyListing(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback) throws XenonException {
         long bytesToCopy = 0;
-        Iterable<PathAttributes> listing = list(source, true);
+
+        // Each pass over the listing traverses the source again, so the memory use does not depend on the size of the tree.
+        Iterable<PathAttributes> listing = () -> listIterator(source, true);
 
         for (PathAttributes p : listing) {
 
@@ -1229,18 +1545,22 @@ public abstract class FileSystem implements AutoCloseable {
 
                 Path rel = source.relativize(p.getPath());
                 Path dst = destination.resolve(rel);
-                if (destinationFS.exists(dst)) {
-                    if (destinationFS.getAttributes(dst).isDirectory()) {
+                PathAttributes existing = destinationFS.statOrNull(dst);
+
+                if (existing != null) {
+                    if (existing.isDirectory()) {
                         switch (mode) {
                         case CREATE:
                             throw new PathAlreadyExistsException(getAdaptorName(), "Directory already exists: " + dst);
                         case REPLACE:
+                        case RESUME:
+                        case SYNCHRONIZE:
                             break; // leave directory
                         case IGNORE:
                             return; // ignore subdir
                         }
                     } else {
-                        destinationFS.delete(dst, true);
+                        destinationFS.delete(dst, existing, true);
                     }
                 } else {
                     destinationFS.createDirectories(dst);
@@ -1252,6 +1572,14 @@ public abstract class FileSystem implements AutoCloseable {
 
         callback.start(bytesToCopy);
 
+        // The number of concurrent transfers is limited by both sides of the copy, as not every destination can handle parallel writes.
+        int transfers = Math.min(copyThreads, destinationFS.getCopyThreads());
+
+        if (transfers > 1) {
+            copyFilesParallel(listing, source, destinationFS, destination, mode, transfers, callback);
+            return;
+        }
+
         for (PathAttributes p : listing) {
 
             if (callback.isCancelled()) {
@@ -1263,8 +1591,90 @@ public abstract class FileSystem implements AutoCloseable {
                 Path rel = source.relativize(p.getPath());
                 Path dst = destination.resolve(rel);
 
-                copyFile(p.getPath(), destinationFS, dst, mode, callback);
+                copyFile(p.getPath(), p, destinationFS, dst, mode, callback);
+            }
+        }
+    }
+
+    /**
+     * Copy all regular files in <code>listing</code> using up to <code>transfers</code> concurrent file transfers.
+     *
+     * The files are handed to the transfer pool of this FileSystem. At most <code>transfers</code> files are in flight at any time, so the listing is consumed
+     * at the pace of the copy. The first failure (or a cancellation by the user) aborts all transfers that are still pending.
+     *
+     * @param listing
+     *            the listing of the source directory.
+     * @param source
+     *            the source directory on this FileSystem.
+     * @param destinationFS
+     *            the destination FileSystem.
+     * @param destination
+     *            the destination directory.
+     * @param mode
+     *            the copy mode that determines how to react if a destination file already exists.
+     * @param transfers
+     *            the maximum number of concurrent file transfers.
+     * @param callback
+     *            a {@link CopyCallback} used to return status information on the copy.
+     * @throws XenonException
+     *             if an error occurred.
+     */
+    private void copyFilesParallel(Iterable<PathAttributes> listing, Path source, FileSystem destinationFS, Path destination, CopyMode mode, int transfers,
+            CopyCallback callback) throws XenonException {
+
+        ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(transferPool);
+        List<Future<Void>> inFlight = new ArrayList<>(transfers);
+
+        try {
+            for (PathAttributes p : listing) {
+
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                }
+
+                if (p.isRegular()) {
+
+                    if (inFlight.size() >= transfers) {
+                        waitForTransfer(completion.take(), inFlight);
+                    }
+
+                    Path file = p.getPath();
+                    Path dst = destination.resolve(source.relativize(file));
+
+                    inFlight.add(completion.submit(() -> {
+                        copyFile(file, p, destinationFS, dst, mode, callback);
+                        return null;
+                    }));
+                }
+            }
+
+            while (!inFlight.isEmpty()) {
+                waitForTransfer(completion.take(), inFlight);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CopyCancelledException(getAdaptorName(), "Copy interrupted by user");
+        } finally {
+            for (Future<Void> f : inFlight) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private void waitForTransfer(Future<Void> future, List<Future<Void>> inFlight) throws XenonException, InterruptedException {
+
+        inFlight.remove(future);
+
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof XenonException) {
+                throw (XenonException) cause;
             }
+
+            throw new XenonException(getAdaptorName(), "File transfer failed", cause);
         }
     }
 
@@ -1332,23 +1742,66 @@ public abstract class FileSystem implements AutoCloseable {
      *             If the list could not be retrieved.
      */
     protected void list(Path dir, ArrayList<PathAttributes> list, boolean recursive) throws XenonException {
+        try {
+            listIterator(dir, recursive).forEachRemaining(list::add);
+        } catch (XenonRuntimeException e) {
+            throw listingFailed(e);
+        }
+    }
 
-        Iterable<PathAttributes> tmp = listDirectory(dir);
+    /**
+     * Returns an {@link Iterator} that lazily produces an (optionally recursive) listing of the entries in a directory <code>dir</code>.
+     *
+     * This is a generic implementation which relies on <code>listDirectory</code> to provide listings of individual directories. Each directory is only
+     * listed once the iterator reaches it. The "." and ".." entries are not returned.
+     *
+     * This operation may be re-implemented by the various implementations of FileSystem, for example if the file system can produce a recursive listing more
+     * efficiently than one directory at a time.
+     *
+     * @param dir
+     *            the directory to list.
+     * @param recursive
+     *            if the listing should be done recursively.
+     * @return an {@link Iterator} over all entries in <code>dir</code>
+     * @throws XenonRuntimeException
+     *             If (part of) the list could not be retrieved. The cause contains the original {@link XenonException}.
+     */
+    protected Iterator<PathAttributes> listIterator(Path dir, boolean recursive) {
 
-        for (PathAttributes p : tmp) {
-            if (!isDotDot(p.getPath())) {
-                list.add(p);
-            }
+        if (recursive) {
+            return new RecursiveListIterator(this::listDirectoryEntries, dir);
         }
 
-        if (recursive) {
-            for (PathAttributes current : tmp) {
-                // traverse subdirs provided they are not "." or "..".
-                if (current.isDirectory() && !isDotDot(current.getPath())) {
-                    list(dir.resolve(current.getPath().getFileNameAsString()), list, true);
-                }
-            }
+        return listDirectoryEntries(dir);
+    }
+
+    private Iterator<PathAttributes> listDirectoryEntries(Path dir) {
+
+        Iterable<PathAttributes> tmp;
+
+        try {
+            tmp = listDirectory(dir);
+        } catch (XenonException e) {
+            throw new XenonRuntimeException(getAdaptorName(), "Failed to list directory: " + dir, e);
         }
+
+        return StreamSupport.stream(tmp.spliterator(), false).filter(p -> !isDotDot(p.getPath())).iterator();
+    }
+
+    /**
+     * Convert a {@link XenonRuntimeException} thrown during a lazy listing back into the {@link XenonException} that caused it.
+     *
+     * @param e
+     *            the exception thrown by the listing.
+     * @return the original {@link XenonException}
+     */
+    protected XenonException listingFailed(XenonRuntimeException e) {
+
+        if (e.getCause() instanceof XenonException) {
+            return (XenonException) e.getCause();
+        }
+
+        return new XenonException(getAdaptorName(), "Failed to list directory", e);
     }
 
     /**
@@ -1625,46 +2078,44 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertNotNull(path);
 
-        if (exists(path)) {
+        PathAttributes a = statOrNull(path);
 
-            PathAttributes a = getAttributes(path);
-            if (a.isDirectory()) {
-                throw new InvalidPathException(getAdaptorName(), "Was expecting a regular file, but got a directory: " + path.toString());
-            }
+        if (a != null && a.isDirectory()) {
+            throw new InvalidPathException(getAdaptorName(), "Was expecting a regular file, but got a directory: " + path.toString());
         }
     }
 
-    protected void assertPathIsFile(Path path) throws XenonException {
+    // Returns the attributes of a path that must exist, using a single lookup.
+    private PathAttributes getExistingAttributes(Path path) throws XenonException {
 
         assertNotNull(path);
 
-        if (!getAttributes(path).isRegular()) {
-            throw new InvalidPathException(getAdaptorName(), "Path is not a file: " + path);
-        }
-    }
-
-    protected void assertPathIsDirectory(Path path) throws XenonException {
+        PathAttributes a = statOrNull(path);
 
-        assertNotNull(path);
+        if (a == null) {
+            throw new NoSuchPathException(getAdaptorName(), "Path does not exist: " + path);
+        }
 
-        PathAttributes a = getAttributes(path);
+        return a;
+    }
 
-        if (a == null) {
-            throw new InvalidPathException(getAdaptorName(), "Path failed to produce attributes: " + path);
+    protected void assertPathIsFile(Path path) throws XenonException {
+        if (!getExistingAttributes(path).isRegular()) {
+            throw new InvalidPathException(getAdaptorName(), "Path is not a file: " + path);
         }
+    }
 
-        if (!a.isDirectory()) {
+    protected void assertPathIsDirectory(Path path) throws XenonException {
+        if (!getExistingAttributes(path).isDirectory()) {
             throw new InvalidPathException(getAdaptorName(), "Path is not a directory: " + path);
         }
     }
 
     protected void assertFileExists(Path file) throws XenonException {
-        assertPathExists(file);
         assertPathIsFile(file);
     }
 
     protected void assertDirectoryExists(Path dir) throws XenonException {
-        assertPathExists(dir);
         assertPathIsDirectory(dir);
     }
 
@@ -1679,9 +2130,7 @@ public abstract class FileSystem implements AutoCloseable {
     }
 
     protected void assertFileIsSymbolicLink(Path link) throws XenonException {
-        assertNotNull(link);
-        assertPathExists(link);
-        if (!getAttributes(link).isSymbolicLink()) {
+        if (!getExistingAttributes(link).isSymbolicLink()) {
             throw new InvalidPathException(getAdaptorName(), "Not a symbolic link: " + link);
         }
     }
@@ -1697,6 +2146,18 @@ public abstract class FileSystem implements AutoCloseable {
         return source.equals(target);
     }
 
+    /**
+     * Check if another FileSystem accesses the same server as this FileSystem, using the same credential. A copy between two such file systems can be done by
+     * the server itself, instead of streaming the data through this client.
+     *
+     * @param other
+     *            the FileSystem to compare with.
+     * @return if <code>other</code> uses the same adaptor, location and credential as this FileSystem.
+     */
+    protected boolean isSameEndpoint(FileSystem other) {
+        return other == this || (other.getClass() == getClass() && getLocation().equals(other.getLocation()) && getCredential().equals(other.getCredential()));
+    }
+
     protected boolean isDotDot(Path path) {
 
         assertNotNull(path);
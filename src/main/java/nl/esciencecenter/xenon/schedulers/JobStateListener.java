@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.schedulers;
+
+/**
+ * JobStateListener is notified of the changes of the state of a job.
+ *
+ * @see Scheduler#onStateChange(String, JobStateListener)
+ */
+@FunctionalInterface
+public interface JobStateListener {
+
+    /**
+     * Called when the state of a job has changed.
+     * <p>
+     * This method is called from a thread of the scheduler, and should return quickly.
+     * </p>
+     *
+     * @param status
+     *            the new status of the job.
+     */
+    void stateChanged(JobStatus status);
+}
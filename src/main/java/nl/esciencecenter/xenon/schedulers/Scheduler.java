@@ -18,12 +18,14 @@ package nl.esciencecenter.xenon.schedulers;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
 import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.UnknownAdaptorException;
 import nl.esciencecenter.xenon.UnknownPropertyException;
+import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.AdaptorLoader;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
@@ -413,6 +415,42 @@ public abstract class Scheduler implements AutoCloseable {
      */
     public abstract String submitBatchJob(JobDescription description) throws XenonException;
 
+    /**
+     * Submit a number of batch jobs.
+     * <p>
+     * The <code>JobDescription</code>s contain all necessary information on the applications that need to be run. Schedulers may submit the jobs more
+     * efficiently than by a separate call to {@link #submitBatchJob(JobDescription) submitBatchJob} for each description, for example by combining
+     * descriptions that only differ in their arguments or environment into a single job array.
+     * </p>
+     * <p>
+     * The identifiers of the jobs are returned in the same order as the descriptions. These identifiers can be used to retrieve the status of each job.
+     * </p>
+     *
+     * @param descriptions
+     *            the descriptions of the jobs to submit.
+     *
+     * @return the identifiers of the jobs, one for each description.
+     *
+     * @throws IncompleteJobDescriptionException
+     *             If a description did not contain the required information.
+     * @throws InvalidJobDescriptionException
+     *             If a description contains illegal or conflicting values.
+     * @throws UnsupportedJobDescriptionException
+     *             If a description is not legal for this scheduler.
+     * @throws XenonException
+     *             If the Scheduler failed to submit the jobs. Some of the jobs may have been submitted before the failure.
+     */
+    public String[] submitBatchJobs(JobDescription... descriptions) throws XenonException {
+
+        String[] result = new String[descriptions.length];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            result[i] = submitBatchJob(descriptions[i]);
+        }
+
+        return result;
+    }
+
     /**
      * Submit an interactive job (optional operation).
      *
@@ -563,6 +601,62 @@ public abstract class Scheduler implements AutoCloseable {
      */
     public abstract JobStatus waitUntilRunning(String jobIdentifier, long timeout) throws XenonException;
 
+    /**
+     * Register a listener that is notified of the changes of the state of a job.
+     * <p>
+     * The listener is first called with the current status of the job, and after that each time the state of the job changes, until the job is done. If the
+     * status of the job can no longer be retrieved, the listener is called a final time with a status that contains the exception. Unlike
+     * {@link #waitUntilDone(String, long) waitUntilDone}, this method does not block the caller while the job runs.
+     * </p>
+     *
+     * @param jobIdentifier
+     *            the identifier of the job to listen to.
+     * @param listener
+     *            the listener to notify.
+     *
+     * @throws NoSuchJobException
+     *             If the job is not known.
+     * @throws UnsupportedOperationException
+     *             If this scheduler does not support job state listeners.
+     * @throws XenonException
+     *             If the status of the job could not be retrieved.
+     */
+    public void onStateChange(String jobIdentifier, JobStateListener listener) throws XenonException {
+        throw new UnsupportedOperationException(getAdaptorName(), "Job state listeners not supported");
+    }
+
+    /**
+     * Returns a future that is completed when a job is done.
+     * <p>
+     * The future is completed with the final status of the job, or completed exceptionally if the status of the job could no longer be retrieved.
+     * </p>
+     *
+     * @param jobIdentifier
+     *            the identifier of the job to wait for.
+     * @return a future that is completed with the status of the job when it is done.
+     *
+     * @throws NoSuchJobException
+     *             If the job is not known.
+     * @throws UnsupportedOperationException
+     *             If this scheduler does not support job state listeners.
+     * @throws XenonException
+     *             If the status of the job could not be retrieved.
+     */
+    public CompletableFuture<JobStatus> whenDone(String jobIdentifier) throws XenonException {
+
+        CompletableFuture<JobStatus> result = new CompletableFuture<>();
+
+        onStateChange(jobIdentifier, status -> {
+            if (status.isDone()) {
+                result.complete(status);
+            } else if (status.hasException()) {
+                result.completeExceptionally(status.getException());
+            }
+        });
+
+        return result;
+    }
+
     /**
      * Does this <code>Scheduler</code> use a <code>FileSystem</code> internally to access files and directories ?
      *
@@ -593,6 +687,12 @@ public abstract class Scheduler implements AutoCloseable {
         }
     }
 
+    protected void assertNonNull(Object o, String message) {
+        if (o == null) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
     protected void assertPositive(long value, String message) {
         if (value < 0) {
             throw new IllegalArgumentException(message + value);
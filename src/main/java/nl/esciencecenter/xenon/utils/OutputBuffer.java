@@ -0,0 +1,461 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link OutputStream} that keeps the data written to it, for output that may be too large to hold in memory.
+ *
+ * The data is buffered in fixed size chunks that are shared between all buffers, so it is never copied to grow the buffer. Once more than
+ * <code>memoryLimit</code> bytes have been written, the data is moved to a temporary file, and the rest of the data is appended to that file. Once the
+ * buffer is closed, the data is available as a {@link java.lang.String}, a byte array, a stream, or line by line. Large output should be read with
+ * {@link #getResultAsStream()} or {@link #lines()}, as {@link #getResultAsString()} and {@link #getResult()} load all of it into memory. Call
+ * {@link #discard()} to delete the temporary file once the data is no longer needed.
+ */
+public final class OutputBuffer extends OutputStream {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutputBuffer.class);
+
+    /** The default number of bytes kept in memory before the data is moved to a temporary file. */
+    public static final int DEFAULT_MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    /** The maximum number of unused chunks kept for reuse by other buffers. */
+    private static final int MAX_POOLED_CHUNKS = 64;
+
+    private static final ArrayDeque<byte[]> POOL = new ArrayDeque<>();
+
+    private final int memoryLimit;
+
+    // The directory of the temporary file, or null for the default temporary directory.
+    private final Path spillDirectory;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+
+    // Number of bytes used in the last chunk.
+    private int used = CHUNK_SIZE;
+
+    private long size = 0;
+
+    private Path spillFile;
+
+    private OutputStream spill;
+
+    // Set if the temporary file could not be created, in which case all data is kept in memory.
+    private boolean spillFailed = false;
+
+    // Set once the chunks have been handed to a reader, after which they must not be reused by other buffers.
+    private boolean shared = false;
+
+    private boolean discarded = false;
+
+    /**
+     * Create an OutputBuffer that keeps up to {@link #DEFAULT_MEMORY_LIMIT} bytes in memory.
+     */
+    public OutputBuffer() {
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * Create an OutputBuffer that moves the data to a temporary file once more than <code>memoryLimit</code> bytes have been written.
+     *
+     * @param memoryLimit
+     *          the maximum number of bytes to keep in memory.
+     */
+    public OutputBuffer(int memoryLimit) {
+        this(memoryLimit, null);
+    }
+
+    OutputBuffer(int memoryLimit, Path spillDirectory) {
+
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Memory limit may not be negative");
+        }
+
+        this.memoryLimit = memoryLimit;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Create a closed OutputBuffer that holds the content of <code>file</code>, and takes ownership of the file. If the file holds no more than
+     * <code>memoryLimit</code> bytes, its content is loaded into memory and the file is deleted. Otherwise the file is used as the temporary file of the
+     * buffer, so its content is not copied.
+     *
+     * @param file
+     *          the file holding the data.
+     * @param memoryLimit
+     *          the maximum number of bytes to keep in memory.
+     * @return the buffer holding the content of the file.
+     * @throws IOException
+     *          if the file could not be read.
+     */
+    public static OutputBuffer fromFile(Path file, int memoryLimit) throws IOException {
+
+        OutputBuffer result = new OutputBuffer(memoryLimit);
+
+        long length = Files.size(file);
+
+        if (length > memoryLimit) {
+            result.spillFile = file;
+            result.size = length;
+            return result;
+        }
+
+        try (InputStream in = Files.newInputStream(file)) {
+            while (result.readFrom(in) >= 0) {
+                // keep reading
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        return result;
+    }
+
+    private static byte[] acquireChunk() {
+        synchronized (POOL) {
+            byte[] chunk = POOL.pollFirst();
+
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+
+        return new byte[CHUNK_SIZE];
+    }
+
+    private static void releaseChunks(List<byte[]> chunks) {
+        synchronized (POOL) {
+            for (byte[] chunk : chunks) {
+                if (POOL.size() >= MAX_POOLED_CHUNKS) {
+                    return;
+                }
+
+                POOL.addFirst(chunk);
+            }
+        }
+    }
+
+    /*
+     * Moves the data that is in memory to a temporary file. If this fails, the data is kept in memory, and no further attempts are made. The file is not
+     * registered for deletion on exit, as that registration is never removed, while discard deletes the file anyway.
+     */
+    private void spill() {
+        try {
+            if (spillDirectory == null) {
+                spillFile = Files.createTempFile("xenon-output", ".tmp");
+            } else {
+                spillFile = Files.createTempFile(spillDirectory, "xenon-output", ".tmp");
+            }
+
+            spill = new BufferedOutputStream(Files.newOutputStream(spillFile), CHUNK_SIZE);
+
+            for (int i = 0; i < chunks.size(); i++) {
+                spill.write(chunks.get(i), 0, i == chunks.size() - 1 ? used : CHUNK_SIZE);
+            }
+
+            releaseChunks();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to move output to temporary file, keeping it in memory", e);
+            spillFailed = true;
+            closeSpill();
+            deleteSpillFile();
+        }
+    }
+
+    // Returns the chunks to the pool, unless a reader may still be using them.
+    private void releaseChunks() {
+        if (!shared) {
+            releaseChunks(chunks);
+        }
+
+        chunks.clear();
+    }
+
+    private void closeSpill() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close temporary output file", e);
+            }
+            spill = null;
+        }
+    }
+
+    private void deleteSpillFile() {
+        if (spillFile != null) {
+            try {
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                LOGGER.debug("Failed to delete temporary output file {}", spillFile, e);
+            }
+            spillFile = null;
+        }
+    }
+
+    private void checkNotDiscarded() {
+        if (discarded) {
+            throw new IllegalStateException("Output has been discarded");
+        }
+    }
+
+    private void added(int count) {
+        size += count;
+
+        if (size > memoryLimit && spillFile == null && !spillFailed) {
+            spill();
+        }
+    }
+
+    /**
+     * Reads the next block of data from <code>source</code> directly into this buffer, without copying it through an intermediate array.
+     *
+     * @param source
+     *          the stream to read from.
+     * @return the number of bytes read, or -1 at end-of-stream.
+     * @throws IOException
+     *          if reading from <code>source</code> or writing the temporary file failed.
+     */
+    public synchronized int readFrom(InputStream source) throws IOException {
+
+        checkNotDiscarded();
+
+        if (spill != null) {
+            byte[] buffer = acquireChunk();
+
+            try {
+                int readCount = source.read(buffer);
+
+                if (readCount > 0) {
+                    spill.write(buffer, 0, readCount);
+                    size += readCount;
+                }
+
+                return readCount;
+            } finally {
+                releaseChunks(Collections.singletonList(buffer));
+            }
+        }
+
+        if (used == CHUNK_SIZE) {
+            chunks.add(acquireChunk());
+            used = 0;
+        }
+
+        int readCount = source.read(chunks.get(chunks.size() - 1), used, CHUNK_SIZE - used);
+
+        if (readCount > 0) {
+            used += readCount;
+            added(readCount);
+        }
+
+        return readCount;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+
+        checkNotDiscarded();
+
+        if (spill != null) {
+            spill.write(b, off, len);
+            size += len;
+            return;
+        }
+
+        int offset = off;
+        int remaining = len;
+
+        while (remaining > 0) {
+            if (used == CHUNK_SIZE) {
+                chunks.add(acquireChunk());
+                used = 0;
+            }
+
+            int count = Math.min(remaining, CHUNK_SIZE - used);
+            System.arraycopy(b, offset, chunks.get(chunks.size() - 1), used, count);
+            used += count;
+            offset += count;
+            remaining -= count;
+        }
+
+        added(len);
+    }
+
+    /**
+     * Ends writing to the buffer, after which the data can be retrieved. Closing the buffer does not discard the data, use {@link #discard()} for that.
+     */
+    @Override
+    public synchronized void close() {
+        closeSpill();
+    }
+
+    /**
+     * Returns the number of bytes that have been written.
+     *
+     * @return
+     *          the number of bytes that have been written.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the data as a stream. The buffer should be closed first.
+     *
+     * @return
+     *          a stream containing the data.
+     */
+    public synchronized InputStream getResultAsStream() {
+        InputStream result = openResult();
+        shared = true;
+        return result;
+    }
+
+    private InputStream openResult() {
+
+        checkNotDiscarded();
+
+        if (spillFile != null) {
+            try {
+                return Files.newInputStream(spillFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read temporary output file " + spillFile, e);
+            }
+        }
+
+        List<InputStream> streams = new ArrayList<>(chunks.size());
+
+        for (int i = 0; i < chunks.size(); i++) {
+            streams.add(new ByteArrayInputStream(chunks.get(i), 0, i == chunks.size() - 1 ? used : CHUNK_SIZE));
+        }
+
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * Returns the data as a stream of lines, without loading all of it into memory. The buffer should be closed first.
+     *
+     * @return
+     *          the lines of text in the buffer. The stream should be closed after use.
+     */
+    public Stream<String> lines() {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(getResultAsStream(), StandardCharsets.UTF_8));
+
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the data as a {@link java.lang.String}. The buffer should be closed first.
+     *
+     * @return
+     *          the data in the buffer.
+     */
+    public synchronized String getResultAsString() {
+        return new String(getResult(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the data as a byte array. The buffer should be closed first.
+     *
+     * @return
+     *          the data in the buffer.
+     */
+    public synchronized byte[] getResult() {
+
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Output of " + size + " bytes does not fit in an array");
+        }
+
+        byte[] result = new byte[(int) size];
+
+        try (InputStream in = openResult()) {
+            int offset = 0;
+
+            while (offset < result.length) {
+                int readCount = in.read(result, offset, result.length - offset);
+
+                if (readCount < 0) {
+                    break;
+                }
+
+                offset += readCount;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read temporary output file " + spillFile, e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns if the data has been moved to a temporary file.
+     *
+     * @return
+     *          if the data is kept in a temporary file.
+     */
+    public synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Discard the data, deleting the temporary file if one was created. The data can no longer be retrieved afterwards.
+     */
+    public synchronized void discard() {
+
+        if (discarded) {
+            return;
+        }
+
+        closeSpill();
+        discarded = true;
+        releaseChunks();
+        deleteSpillFile();
+    }
+}
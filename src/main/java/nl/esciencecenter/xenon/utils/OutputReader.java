@@ -17,23 +17,25 @@ package nl.esciencecenter.xenon.utils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.util.stream.Stream;
 
 /**
  * A simple output reader that uses a daemon thread to read from an {@link java.io.InputStream} and buffer this data. Once
- * end-of-stream is reached, this data will be made available as a {@link java.lang.String}.
+ * end-of-stream is reached, this data will be made available as a {@link java.lang.String}, a byte array, a stream, or line by line.
  *
- * Note that since the data is buffered in memory, so it is not advisable to use this OutputReader to read large amounts of data.
+ * The data is kept in an {@link OutputBuffer}, which buffers it in fixed size chunks that are shared between all readers, so it is never copied to grow the
+ * buffer. Once more than <code>memoryLimit</code> bytes have been read, the data is moved to a temporary file, and the rest of the data is appended to that
+ * file. Large output should be read with {@link #getResultAsStream()} or {@link #lines()}, as {@link #getResultAsString()} and {@link #getResult()} load all
+ * of it into memory. Call {@link #close()} to delete the temporary file once the data is no longer needed.
  */
-public final class OutputReader extends Thread {
+public final class OutputReader extends Thread implements AutoCloseable {
 
-    private static final int BUFFER_SIZE = 1024;
+    /** The default number of bytes kept in memory before the data is moved to a temporary file. */
+    public static final int DEFAULT_MEMORY_LIMIT = OutputBuffer.DEFAULT_MEMORY_LIMIT;
 
     private final InputStream source;
 
-    private ByteBuffer buffer;
+    private final OutputBuffer buffer;
 
     // Reached End Of File or got exception.
     private boolean finished = false;
@@ -44,16 +46,27 @@ public final class OutputReader extends Thread {
      * @param source
      *          the {#link InputStream} to read from.
      */
-
     public OutputReader(InputStream source) {
+        this(source, DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * Create an OutputReader that reads from <code>source</code>, and moves the data to a temporary file once more than <code>memoryLimit</code> bytes have
+     * been read.
+     *
+     * @param source
+     *          the {#link InputStream} to read from.
+     * @param memoryLimit
+     *          the maximum number of bytes to keep in memory.
+     */
+    public OutputReader(InputStream source, int memoryLimit) {
 
         if (source == null) {
             throw new IllegalArgumentException("Source stream may not be null");
         }
 
         this.source = source;
-
-        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer = new OutputBuffer(memoryLimit);
 
         setDaemon(true);
         setName("Output reader");
@@ -91,37 +104,13 @@ public final class OutputReader extends Thread {
         }
     }
 
-    private synchronized void addToBuffer(byte[] bytes, int length) {
-        while (buffer.remaining() < length) {
-            // create new buffer with double the capacity of the old buffer
-            ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
-
-            // copy data into new buffer
-            buffer.flip();
-            newBuffer.put(buffer);
-
-            // replace old buffer
-            buffer = newBuffer;
-        }
-        buffer.put(bytes, 0, length);
-    }
-
     /**
      * Entry method for daemon thread.
      */
     public void run() {
-        byte[] bytes = new byte[BUFFER_SIZE];
-
         try {
-            while (true) {
-                int readCount = source.read(bytes);
-
-                if (readCount < 0) {
-                    // end-of-stream, we're done
-                    return;
-                }
-
-                addToBuffer(bytes, readCount);
+            while (buffer.readFrom(source) >= 0) {
+                // keep reading
             }
         } catch (Exception e) {
             //setFinished();
@@ -132,10 +121,56 @@ public final class OutputReader extends Thread {
                 // ignore
             }
 
+            buffer.close();
             setFinished();
         }
     }
 
+    /**
+     * Returns the buffer holding the data that has been read. If the OutputReader has not finished reading, this method will block until end-of-stream has
+     * been reached. Closing this reader discards the data in the buffer.
+     *
+     * @return
+     *          the buffer holding the data that has been read.
+     */
+    public OutputBuffer getBuffer() {
+        waitUntilFinished();
+        return buffer;
+    }
+
+    /**
+     * Returns the number of bytes that have been read. If the OutputReader has not finished reading, this method will block until end-of-stream has been
+     * reached.
+     *
+     * @return
+     *          the number of bytes that have been read.
+     */
+    public long getSize() {
+        return getBuffer().getSize();
+    }
+
+    /**
+     * Returns the data that has been read from the {@link java.io.InputStream} as a stream. If the OutputReader has not finished reading, this method will
+     * block until end-of-stream has been reached.
+     *
+     * @return
+     *          a stream containing the data that has been read.
+     */
+    public InputStream getResultAsStream() {
+        return getBuffer().getResultAsStream();
+    }
+
+    /**
+     * Returns the data that has been read from the {@link java.io.InputStream} as a stream of lines, without loading all of it into memory. If the
+     * OutputReader has not finished reading, this method will block until end-of-stream has been reached.
+     *
+     * @return
+     *          the lines of text that have been read. The stream should be closed after use.
+     */
+    public Stream<String> lines() {
+        return getBuffer().lines();
+    }
+
     /**
      * Returns the data that has been read from the {@link java.io.InputStream} as a {@link java.lang.String}. If the
      * OutputReader has not finished reading, this method will block until end-of-stream has been reached.
@@ -143,9 +178,8 @@ public final class OutputReader extends Thread {
      * @return
      *          the data that has been read.
      */
-    public synchronized String getResultAsString() {
-        waitUntilFinished();
-        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    public String getResultAsString() {
+        return getBuffer().getResultAsString();
     }
 
     /**
@@ -155,10 +189,16 @@ public final class OutputReader extends Thread {
      * @return
      *          the data that has been read.
      */
-    public synchronized byte [] getResult() {
-        waitUntilFinished();
-        return Arrays.copyOfRange(buffer.array(), 0, buffer.position());
+    public byte [] getResult() {
+        return getBuffer().getResult();
     }
 
-
+    /**
+     * Discard the data that has been read, deleting the temporary file if one was created. If the OutputReader has not finished reading, this method will
+     * block until end-of-stream has been reached.
+     */
+    @Override
+    public void close() {
+        getBuffer().discard();
+    }
 }
@@ -26,7 +26,11 @@ import org.slf4j.LoggerFactory;
 /**
  * A simple stream forwarder that uses a daemon thread to read from an {@link java.io.InputStream} and write it to a {@link java.io.OutputStream}. A small
  * buffer is used (typically 1 KB) to improve performance. Any exceptions will be ignored.
+ *
+ * @deprecated a thread per stream is expensive when many streams are forwarded at once. Use {@link StreamPump#forward(String, InputStream, OutputStream,
+ *             StreamPump.Source)} instead.
  */
+@Deprecated
 public final class StreamForwarder extends Thread {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StreamForwarder.class);
@@ -0,0 +1,462 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forwards data from {@link InputStream}s to {@link OutputStream}s using a small, fixed pool of daemon threads shared by all forwardings.
+ *
+ * Since the streams are blocking, a thread must not read from a stream that has no data available, as this may block it indefinitely. How a stream is read
+ * therefore depends on its {@link Source}. Streams that have no data available are checked again after a delay that doubles while the stream stays idle,
+ * up to one second. Once a {@link Source#POLLED} forwarding is terminated its remaining reads may block (for example when a child of the process keeps the
+ * pipe open), so these are done on separate threads that are created as needed, which keeps the fixed pool free for the other forwardings. The same goes
+ * for all writes of a {@link Source#BLOCKING_OUTPUT} forwarding.
+ *
+ * The buffer of each forwarding grows while reads fill it, and shrinks again when the stream becomes idle. The output is only flushed when the input has no
+ * more data available, when the input ends, or when a large amount of data has been written since the last flush, so a burst of small reads results in a
+ * single flush.
+ */
+public final class StreamPump {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamPump.class);
+
+    /** The kind of input stream to forward, which determines when it may be read. */
+    public enum Source {
+        /** A stream that never blocks for long, such as a file. It is read whenever the forwarding runs. */
+        BOUNDED,
+        /**
+         * A stream that may block indefinitely, such as the output of a process. It is only read when data is available, or once the forwarding is
+         * terminated, as the end of the stream is then expected soon.
+         */
+        POLLED,
+        /** A socket stream with a (short) read timeout. It is read whenever the forwarding runs, and a timeout means no data is available. */
+        TIMED,
+        /**
+         * A stream that never blocks for long, like {@link #BOUNDED}, forwarded to an output that may block indefinitely, such as the input of a process that
+         * does not read it. It is forwarded on a separate thread, so a blocked write does not hold up the other forwardings.
+         */
+        BLOCKING_OUTPUT
+    }
+
+    private static final int MIN_BUFFER_SIZE = 1024;
+
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    /** Number of bytes after which the output is flushed, even if more data is available. */
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    /** Number of bytes a forwarding may move before giving other forwardings a turn. */
+    private static final int MAX_BYTES_PER_TURN = 256 * 1024;
+
+    /** The maximum delay (in ms.) before an idle stream is checked again. */
+    private static final long MAX_IDLE_DELAY = 1000L;
+
+    private static StreamPump defaultPump;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final ExecutorService drainExecutor;
+
+    /**
+     * Returns the pump shared by all adaptors, which uses a thread per processor, with a minimum of two and a maximum of eight threads.
+     *
+     * @return the shared pump.
+     */
+    public static synchronized StreamPump getDefault() {
+        if (defaultPump == null) {
+            int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+            defaultPump = new StreamPump("StreamPump", threads);
+        }
+
+        return defaultPump;
+    }
+
+    /**
+     * Create a new StreamPump.
+     *
+     * @param name
+     *            the name of the threads.
+     * @param threads
+     *            the number of threads.
+     */
+    public StreamPump(String name, int threads) {
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be > 0");
+        }
+
+        executor = new ScheduledThreadPoolExecutor(threads, new DaemonThreadFactory(name));
+        drainExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory(name + "Drain"));
+    }
+
+    /**
+     * Start forwarding data from <code>in</code> to <code>out</code>. When the end of <code>in</code> is reached, or an error occurs, both streams are
+     * closed.
+     *
+     * @param name
+     *            the name of the forwarding, used in log messages.
+     * @param in
+     *            the {@link java.io.InputStream} to read from.
+     * @param out
+     *            the {@link java.io.OutputStream} to write to, or <code>null</code> to discard the output.
+     * @param source
+     *            the kind of input stream.
+     * @return the forwarding, which can be used to wait for its termination.
+     */
+    public Forwarding forward(String name, InputStream in, OutputStream out, Source source) {
+        return forward(name, in, out, source, 0);
+    }
+
+    /**
+     * Start forwarding data from <code>in</code> to <code>out</code>, using a buffer of at most <code>maxBufferSize</code> bytes. When the end of
+     * <code>in</code> is reached, or an error occurs, both streams are closed.
+     *
+     * @param name
+     *            the name of the forwarding, used in log messages.
+     * @param in
+     *            the {@link java.io.InputStream} to read from.
+     * @param out
+     *            the {@link java.io.OutputStream} to write to, or <code>null</code> to discard the output.
+     * @param source
+     *            the kind of input stream.
+     * @param maxBufferSize
+     *            the maximum buffer size to use, or 0 to use the default.
+     * @return the forwarding, which can be used to wait for its termination.
+     */
+    public Forwarding forward(String name, InputStream in, OutputStream out, Source source, int maxBufferSize) {
+
+        // NOTE: out is allowed to be null
+        if (in == null) {
+            throw new IllegalArgumentException("In stream may not be null");
+        }
+
+        if (source == null) {
+            throw new IllegalArgumentException("Source may not be null");
+        }
+
+        if (maxBufferSize < 0) {
+            throw new IllegalArgumentException("BufferSize must be > 0");
+        }
+
+        Forwarding f = new Forwarding(name, in, out, source, maxBufferSize == 0 ? MAX_BUFFER_SIZE : maxBufferSize);
+        f.schedule(0);
+        return f;
+    }
+
+    /**
+     * Stop all threads of this pump. Forwardings that have not finished are abandoned, without closing their streams.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        drainExecutor.shutdownNow();
+    }
+
+    /**
+     * A single forwarding from an input stream to an output stream.
+     */
+    public final class Forwarding implements Runnable {
+
+        private final String name;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Source source;
+        private final int maxBufferSize;
+
+        private byte[] buffer;
+
+        // Number of bytes written since the last flush.
+        private int unflushed = 0;
+
+        // Number of consecutive turns without data.
+        private int idle = 0;
+
+        private boolean draining = false;
+        private boolean blocking;
+        private ScheduledFuture<?> pending;
+        private boolean closed = false;
+        private boolean done = false;
+
+        private Forwarding(String name, InputStream in, OutputStream out, Source source, int maxBufferSize) {
+            this.name = name;
+            this.in = in;
+            this.out = out;
+            this.source = source;
+            this.maxBufferSize = maxBufferSize;
+            this.buffer = new byte[Math.min(MIN_BUFFER_SIZE, maxBufferSize)];
+            this.blocking = source == Source.BLOCKING_OUTPUT;
+        }
+
+        private void schedule(long delay) {
+            try {
+                if (blocking) {
+                    drainExecutor.execute(this);
+                } else if (delay == 0) {
+                    executor.execute(this);
+                } else {
+                    scheduleIdle(delay);
+                }
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("StreamPump is shut down, abandoning forwarding {}", name);
+            }
+        }
+
+        private synchronized void scheduleIdle(long delay) {
+            // Once terminate has been called there is no point in waiting for the idle delay.
+            pending = executor.schedule(this, draining ? 0 : delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Run the next turn right away if the forwarding is waiting for its idle delay to expire.
+         */
+        private synchronized void wakeUp() {
+            if (pending != null && pending.cancel(false)) {
+                pending = null;
+
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    LOGGER.debug("StreamPump is shut down, abandoning forwarding {}", name);
+                }
+            }
+        }
+
+        private synchronized boolean isDraining() {
+            return draining;
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Tell any threads waiting in terminate that we are done.
+         */
+        private synchronized void done() {
+            done = true;
+            notifyAll();
+        }
+
+        private void close(Closeable c, String error) {
+            try {
+                c.close();
+            } catch (Exception e) {
+                if (error != null) {
+                    LOGGER.error(error, e);
+                }
+            }
+        }
+
+        private void finish() {
+            // NOTE: Streams must be closed before done is called, or we'll have a race condition!
+            close(in, null);
+
+            if (out != null) {
+                close(out, null);
+            }
+
+            done();
+        }
+
+        /**
+         * Returns if the forwarding has finished, because the end of the input was reached, an error occurred, or it was terminated.
+         *
+         * @return if the forwarding has finished.
+         */
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Wait for a given timeout for the forwarding to terminate by reading an end-of-stream on the input. The input is read until its end from now on,
+         * even if it would block. When the timeout expires both input and output streams will be closed, regardless of whether the input has reached
+         * end-of-stream.
+         *
+         * @param timeout
+         *            The number of milliseconds to wait for termination.
+         */
+        public synchronized void terminate(long timeout) {
+
+            if (done) {
+                return;
+            }
+
+            draining = true;
+            wakeUp();
+
+            if (timeout > 0) {
+                long deadline = System.currentTimeMillis() + timeout;
+                long left = timeout;
+
+                while (!done && left > 0) {
+
+                    try {
+                        wait(left);
+                    } catch (InterruptedException e) {
+                        LOGGER.warn("StreamPump.terminate was interrupted!");
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+
+                    left = deadline - System.currentTimeMillis();
+                }
+            }
+
+            if (!done) {
+                closed = true;
+
+                close(in, "InputStream did not close within " + timeout + " ms. Forcing close!");
+
+                if (out != null) {
+                    close(out, null);
+                }
+            }
+        }
+
+        // Returns the number of bytes to read without blocking indefinitely, 0 if no data is available, or -1 at end-of-stream.
+        private int readable() throws IOException {
+            if (source != Source.POLLED || isDraining()) {
+                return buffer.length;
+            }
+
+            int available = in.available();
+
+            if (available < 0) {
+                return -1;
+            }
+
+            return Math.min(available, buffer.length);
+        }
+
+        private void write(int length) throws IOException {
+            if (out != null) {
+                out.write(buffer, 0, length);
+                unflushed += length;
+
+                if (unflushed >= FLUSH_THRESHOLD) {
+                    flush();
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            if (out != null && unflushed > 0) {
+                out.flush();
+                unflushed = 0;
+            }
+        }
+
+        /**
+         * Forward the data that is available, and schedule the next turn.
+         */
+        @Override
+        public void run() {
+
+            if (isClosed()) {
+                // Terminated by force, the streams have been closed already.
+                done();
+                return;
+            }
+
+            if (source == Source.POLLED && !blocking && isDraining()) {
+                // From now on reads may block, so move this forwarding off the shared threads.
+                blocking = true;
+                schedule(0);
+                return;
+            }
+
+            try {
+                int moved = 0;
+
+                while (moved < MAX_BYTES_PER_TURN) {
+
+                    int length = readable();
+
+                    if (length < 0) {
+                        flush();
+                        finish();
+                        return;
+                    }
+
+                    if (length == 0) {
+                        break;
+                    }
+
+                    int read;
+
+                    try {
+                        read = in.read(buffer, 0, length);
+                    } catch (SocketTimeoutException e) {
+                        // No data available on a TIMED source.
+                        break;
+                    }
+
+                    if (read < 0) {
+                        flush();
+                        finish();
+                        return;
+                    }
+
+                    write(read);
+                    moved += read;
+
+                    if (read == buffer.length && buffer.length < maxBufferSize) {
+                        buffer = new byte[Math.min(buffer.length * 2, maxBufferSize)];
+                    }
+                }
+
+                if (moved >= MAX_BYTES_PER_TURN) {
+                    // More data may be available, but give the other forwardings a turn first.
+                    idle = 0;
+                    schedule(0);
+                    return;
+                }
+
+                // The input has no more data available for now.
+                flush();
+
+                if (moved > 0) {
+                    idle = 0;
+                } else {
+                    idle++;
+
+                    if (buffer.length > MIN_BUFFER_SIZE) {
+                        buffer = new byte[buffer.length / 2];
+                    }
+                }
+
+                schedule(Math.min(MAX_IDLE_DELAY, 1L << Math.min(idle, 10)));
+
+            } catch (IOException e) {
+                LOGGER.debug("Forwarding {} failed", name, e);
+                finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
+
+public class ParallelListIteratorTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    private final Map<Path, List<PathAttributes>> tree = new HashMap<>();
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @After
+    public void cleanup() {
+        pool.shutdownNow();
+    }
+
+    private void add(String path, boolean directory) {
+        Path p = new Path(path);
+
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(p);
+        a.setDirectory(directory);
+        a.setRegular(!directory);
+
+        tree.computeIfAbsent(p.getParent(), k -> new ArrayList<>()).add(a);
+
+        if (directory) {
+            tree.computeIfAbsent(p, k -> new ArrayList<>());
+        }
+    }
+
+    private List<PathAttributes> list(Path dir) throws XenonException {
+
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+        }
+
+        List<PathAttributes> result = tree.get(dir);
+
+        if (result == null) {
+            throw new XenonException("test", "No such directory: " + dir);
+        }
+
+        return result;
+    }
+
+    private void createTree() {
+        for (int i = 0; i < 8; i++) {
+            add("/root/dir" + i, true);
+            add("/root/file" + i, false);
+
+            for (int j = 0; j < 4; j++) {
+                add("/root/dir" + i + "/sub" + j, true);
+                add("/root/dir" + i + "/sub" + j + "/file", false);
+            }
+        }
+    }
+
+    @Test
+    public void test_allEntries() {
+        createTree();
+
+        Set<Path> seen = new HashSet<>();
+
+        new ParallelListIterator("test", pool, 4, this::list, new Path("/root")).forEachRemaining(p -> seen.add(p.getPath()));
+
+        assertEquals(8 * 2 + 8 * 4 * 2, seen.size());
+        assertTrue(seen.contains(new Path("/root/dir7/sub3/file")));
+    }
+
+    @Test
+    public void test_directoryBeforeContent() {
+        createTree();
+
+        Set<Path> seen = new HashSet<>();
+
+        new ParallelListIterator("test", pool, 4, this::list, new Path("/root")).forEachRemaining(p -> {
+            Path parent = p.getPath().getParent();
+            assertTrue(parent.equals(new Path("/root")) || seen.contains(parent));
+            seen.add(p.getPath());
+        });
+    }
+
+    @Test
+    public void test_boundedConcurrency() {
+        createTree();
+
+        new ParallelListIterator("test", pool, 2, this::list, new Path("/root")).forEachRemaining(p -> {
+        });
+
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void test_empty() {
+        add("/root", true);
+
+        assertFalse(new ParallelListIterator("test", pool, 4, this::list, new Path("/root")).hasNext());
+    }
+
+    @Test
+    public void test_error() {
+        try {
+            new ParallelListIterator("test", pool, 4, this::list, new Path("/missing")).hasNext();
+            fail("Expected exception");
+        } catch (XenonRuntimeException e) {
+            assertTrue(e.getCause() instanceof XenonException);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+
+public class FtpClientPoolTest {
+
+    class FakeClient extends FTPClient {
+        boolean connected = true;
+        boolean healthy = true;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean sendNoOp() throws IOException {
+            return healthy;
+        }
+
+        @Override
+        public void disconnect() throws IOException {
+            connected = false;
+        }
+    }
+
+    class Factory implements FtpClientPool.ClientFactory {
+        int count = 0;
+
+        @Override
+        public FTPClient connect() throws XenonException {
+            count++;
+            return new FakeClient();
+        }
+    }
+
+    @Test
+    public void test_reuse() throws XenonException {
+        Factory f = new Factory();
+        FtpClientPool pool = new FtpClientPool(f, 2, 60000);
+
+        FTPClient c = pool.acquire();
+        pool.release(c);
+
+        assertSame(c, pool.acquire());
+        assertEquals(1, f.count);
+    }
+
+    @Test
+    public void test_unhealthyNotReused() throws XenonException {
+        Factory f = new Factory();
+        FtpClientPool pool = new FtpClientPool(f, 2, 60000);
+
+        FakeClient c = (FakeClient) pool.acquire();
+        pool.release(c);
+        c.healthy = false;
+
+        assertNotSame(c, pool.acquire());
+        assertFalse(c.connected);
+        assertEquals(2, f.count);
+    }
+
+    @Test
+    public void test_discardNotReused() throws XenonException {
+        Factory f = new Factory();
+        FtpClientPool pool = new FtpClientPool(f, 2, 60000);
+
+        FakeClient c = (FakeClient) pool.acquire();
+        pool.discard(c);
+
+        assertFalse(c.connected);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void test_maxIdle() throws XenonException {
+        Factory f = new Factory();
+        FtpClientPool pool = new FtpClientPool(f, 1, 60000);
+
+        FakeClient c0 = (FakeClient) pool.acquire();
+        FakeClient c1 = (FakeClient) pool.acquire();
+        pool.release(c0);
+        pool.release(c1);
+
+        assertEquals(1, pool.getIdleCount());
+        assertTrue(c0.connected);
+        assertFalse(c1.connected);
+    }
+
+    @Test
+    public void test_idleTimeout() throws XenonException {
+        Factory f = new Factory();
+        FtpClientPool pool = new FtpClientPool(f, 2, 0);
+
+        FakeClient c = (FakeClient) pool.acquire();
+        pool.release(c);
+
+        assertNotSame(c, pool.acquire());
+        assertFalse(c.connected);
+    }
+
+    @Test
+    public void test_close() throws XenonException {
+        Factory f = new Factory();
+        FtpClientPool pool = new FtpClientPool(f, 2, 60000);
+
+        FakeClient c0 = (FakeClient) pool.acquire();
+        FakeClient c1 = (FakeClient) pool.acquire();
+        pool.release(c0);
+        pool.close();
+        pool.release(c1);
+
+        assertFalse(c0.connected);
+        assertFalse(c1.connected);
+        assertEquals(0, pool.getIdleCount());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Calendar;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.filesystems.Path;
+
+public class FtpFileSystemListingCacheTest {
+
+    // Serves a single directory /dir containing files a and b, and counts the LIST commands.
+    class FakeClient extends FTPClient {
+        int lists = 0;
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public String printWorkingDirectory() throws IOException {
+            return "/";
+        }
+
+        @Override
+        public boolean changeWorkingDirectory(String pathname) throws IOException {
+            return true;
+        }
+
+        @Override
+        public FTPFile[] listFiles() throws IOException {
+            lists++;
+            return new FTPFile[] { file("a"), file("b") };
+        }
+
+        @Override
+        public boolean deleteFile(String pathname) throws IOException {
+            return true;
+        }
+
+        @Override
+        public int getReplyCode() {
+            return 250;
+        }
+
+        @Override
+        public void disconnect() throws IOException {
+            // ignored
+        }
+
+        private FTPFile file(String name) {
+            FTPFile f = new FTPFile();
+            f.setName(name);
+            f.setType(FTPFile.FILE_TYPE);
+            f.setTimestamp(Calendar.getInstance());
+            return f;
+        }
+    }
+
+    private FtpFileSystem createFileSystem(FakeClient client, long timeout) {
+        return new FtpFileSystem("0", "ftp", "localhost", new Path("/"), 4096, 0, 0, timeout, client, new DefaultCredential(), new FtpFileAdaptor(), null);
+    }
+
+    @Test
+    public void test_siblingsSingleList() throws XenonException {
+        FakeClient client = new FakeClient();
+        FtpFileSystem fs = createFileSystem(client, 60000);
+
+        assertTrue(fs.exists(new Path("/dir/a")));
+        assertTrue(fs.exists(new Path("/dir/b")));
+        assertFalse(fs.exists(new Path("/dir/c")));
+        assertTrue(fs.getAttributes(new Path("/dir/a")).isRegular());
+
+        assertEquals(1, client.lists);
+    }
+
+    @Test
+    public void test_cacheDisabled() throws XenonException {
+        FakeClient client = new FakeClient();
+        FtpFileSystem fs = createFileSystem(client, 0);
+
+        fs.exists(new Path("/dir/a"));
+        fs.exists(new Path("/dir/b"));
+
+        assertEquals(2, client.lists);
+    }
+
+    @Test
+    public void test_invalidatedByDelete() throws XenonException {
+        FakeClient client = new FakeClient();
+        FtpFileSystem fs = createFileSystem(client, 60000);
+
+        fs.delete(new Path("/dir/a"), false);
+        fs.exists(new Path("/dir/b"));
+
+        // one list for the delete checks, one after the invalidation
+        assertEquals(2, client.lists);
+    }
+}
@@ -15,10 +15,14 @@
  */
 package nl.esciencecenter.xenon.adaptors.filesystems.ftp;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.credentials.CredentialMap;
 import nl.esciencecenter.xenon.credentials.PasswordCredential;
@@ -44,4 +48,30 @@ public class FtpFileSystemSimpleTests {
     public void test_location_empty() throws XenonException {
         new FtpFileAdaptor().createFileSystem("", new PasswordCredential("aap", "noot".toCharArray()), null);
     }
+
+    private static void createWithProperty(String name, String value) throws XenonException {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(name, value);
+        new FtpFileAdaptor().createFileSystem("localhost", new PasswordCredential("aap", "noot".toCharArray()), properties);
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_maxIdleConnections_negative() throws XenonException {
+        createWithProperty(FtpFileAdaptor.MAX_IDLE_CONNECTIONS, "-1");
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_maxIdleConnections_tooLarge() throws XenonException {
+        createWithProperty(FtpFileAdaptor.MAX_IDLE_CONNECTIONS, Long.toString(Integer.MAX_VALUE));
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_poolIdleTimeout_negative() throws XenonException {
+        createWithProperty(FtpFileAdaptor.POOL_IDLE_TIMEOUT, "-1");
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_listingCacheTimeout_negative() throws XenonException {
+        createWithProperty(FtpFileAdaptor.LISTING_CACHE_TIMEOUT, "-1");
+    }
 }
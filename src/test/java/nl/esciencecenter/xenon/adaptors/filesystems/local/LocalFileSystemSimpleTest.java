@@ -15,19 +15,31 @@
  */
 package nl.esciencecenter.xenon.adaptors.filesystems.local;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.HashSet;
+import java.util.Random;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.filesystems.CopyMode;
+import nl.esciencecenter.xenon.filesystems.CopyStatus;
 import nl.esciencecenter.xenon.filesystems.Path;
 
 public class LocalFileSystemSimpleTest {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     // @Test(expected = XenonException.class)
     // public void test_getLocalRoot_fails() throws XenonException {
     // LocalFileSystem f = new LocalFileSystem("test", "/", "/", new Path("/"), null);
@@ -61,4 +73,23 @@ public class LocalFileSystemSimpleTest {
             assertEquals(new HashSet<java.nio.file.attribute.PosixFilePermission>(0), f.javaPermissions(null));
         }
     }
+
+    @Test
+    public void test_copyFile_local() throws Exception {
+        File dir = tempFolder.newFolder();
+
+        byte[] data = new byte[10000];
+        new Random(42).nextBytes(data);
+        Files.write(dir.toPath().resolve("src"), data);
+
+        // Use a small buffer to force the data to be transferred in several chunks.
+        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", new Path(dir.getAbsolutePath()), 4096, null)) {
+            String id = f.copy(new Path("src"), f, new Path("dst"), CopyMode.CREATE, false);
+            CopyStatus status = f.waitUntilDone(id, 10000);
+
+            assertFalse(status.hasException());
+            assertEquals(data.length, status.bytesCopied());
+            assertArrayEquals(data, Files.readAllBytes(dir.toPath().resolve("dst")));
+        }
+    }
 }
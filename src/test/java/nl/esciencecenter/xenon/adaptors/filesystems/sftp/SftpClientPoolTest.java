@@ -0,0 +1,225 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.junit.Test;
+
+public class SftpClientPoolTest {
+
+    class FakeClient extends MockSftpClient {
+        boolean open = true;
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+        }
+    }
+
+    class Factory implements SftpClientPool.ClientFactory {
+        int count = 0;
+        boolean fail = false;
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch block = new CountDownLatch(0);
+
+        @Override
+        public SftpClient create() throws IOException {
+            started.countDown();
+
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (fail) {
+                throw new IOException("Channel refused");
+            }
+            count++;
+            return new FakeClient();
+        }
+    }
+
+    @Test
+    public void test_idleReused() throws IOException {
+        Factory f = new Factory();
+        FakeClient initial = new FakeClient();
+        SftpClientPool pool = new SftpClientPool(f, initial, 4);
+
+        SftpClient c = pool.acquire();
+        pool.release(c);
+
+        assertSame(initial, c);
+        assertSame(initial, pool.acquire());
+        assertEquals(0, f.count);
+    }
+
+    @Test
+    public void test_newChannelWhenBusy() throws IOException {
+        Factory f = new Factory();
+        SftpClientPool pool = new SftpClientPool(f, new FakeClient(), 4);
+
+        SftpClient c0 = pool.acquire();
+        SftpClient c1 = pool.acquire();
+
+        assertNotSame(c0, c1);
+        assertEquals(1, f.count);
+        assertEquals(2, pool.getClientCount());
+    }
+
+    @Test
+    public void test_sharedWhenFull() throws IOException {
+        Factory f = new Factory();
+        SftpClientPool pool = new SftpClientPool(f, new FakeClient(), 2);
+
+        SftpClient c0 = pool.acquire();
+        SftpClient c1 = pool.acquire();
+        SftpClient c2 = pool.acquire();
+        SftpClient c3 = pool.acquire();
+
+        assertEquals(2, pool.getClientCount());
+        assertTrue(c2 == c0 || c2 == c1);
+        assertNotSame(c2, c3);
+    }
+
+    @Test
+    public void test_shrinksWhenChannelRefused() throws IOException {
+        Factory f = new Factory();
+        f.fail = true;
+        FakeClient initial = new FakeClient();
+        SftpClientPool pool = new SftpClientPool(f, initial, 4);
+
+        assertSame(initial, pool.acquire());
+        assertSame(initial, pool.acquire());
+        assertEquals(1, pool.getClientCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_failsWithoutClients() throws IOException {
+        Factory f = new Factory();
+        f.fail = true;
+        FakeClient initial = new FakeClient();
+        SftpClientPool pool = new SftpClientPool(f, initial, 4);
+
+        initial.open = false;
+        pool.acquire();
+    }
+
+    @Test
+    public void test_brokenClientDropped() throws IOException {
+        Factory f = new Factory();
+        FakeClient initial = new FakeClient();
+        SftpClientPool pool = new SftpClientPool(f, initial, 4);
+
+        SftpClient c = pool.acquire();
+        initial.open = false;
+        pool.release(c);
+
+        assertNotSame(initial, pool.acquire());
+        assertEquals(1, pool.getClientCount());
+    }
+
+    @Test(timeout = 10000)
+    public void test_brokenLeasedClientNotCounted() throws IOException {
+        Factory f = new Factory();
+        FakeClient initial = new FakeClient();
+        SftpClientPool pool = new SftpClientPool(f, initial, 1);
+
+        assertSame(initial, pool.acquire());
+        initial.open = false;
+
+        // The broken client is still leased, but must not take the only slot.
+        SftpClient c = pool.acquire();
+
+        assertNotSame(initial, c);
+        assertEquals(1, f.count);
+
+        pool.release(initial);
+
+        assertSame(c, pool.acquire());
+        assertEquals(1, pool.getClientCount());
+    }
+
+    @Test(timeout = 10000)
+    public void test_waitsForPendingClient() throws Exception {
+        Factory f = new Factory();
+        f.block = new CountDownLatch(1);
+        FakeClient initial = new FakeClient();
+        SftpClientPool pool = new SftpClientPool(f, initial, 1);
+
+        pool.acquire();
+        initial.open = false;
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<SftpClient> creating = executor.submit(pool::acquire);
+            assertTrue(f.started.await(5, TimeUnit.SECONDS));
+
+            // The only slot is taken by the client being created, so this one waits for it.
+            Future<SftpClient> waiting = executor.submit(pool::acquire);
+            Thread.sleep(100);
+            assertFalse(waiting.isDone());
+
+            f.block.countDown();
+
+            assertSame(creating.get(), waiting.get());
+            assertEquals(1, f.count);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_close() throws IOException {
+        Factory f = new Factory();
+        FakeClient initial = new FakeClient();
+        SftpClientPool pool = new SftpClientPool(f, initial, 4);
+
+        pool.acquire();
+        FakeClient c1 = (FakeClient) pool.acquire();
+        pool.close();
+
+        assertFalse(pool.isOpen());
+        assertFalse(initial.open);
+        assertFalse(c1.open);
+    }
+
+    @Test(expected = IOException.class)
+    public void test_acquireAfterClose() throws IOException {
+        SftpClientPool pool = new SftpClientPool(new Factory(), new FakeClient(), 4);
+        pool.close();
+        pool.acquire();
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.AbstractCommandSupport;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.esciencecenter.xenon.credentials.PasswordCredential;
+import nl.esciencecenter.xenon.filesystems.CopyCancelledException;
+import nl.esciencecenter.xenon.filesystems.CopyMode;
+import nl.esciencecenter.xenon.filesystems.CopyStatus;
+import nl.esciencecenter.xenon.filesystems.FileSystem;
+import nl.esciencecenter.xenon.filesystems.Path;
+
+public class SftpServerCopyTest {
+
+    private static final Pattern ARGUMENT = Pattern.compile("'([^']*)'");
+
+    private static final int SIZE = 100000;
+
+    // How the fake server handles the commands it is asked to run.
+    enum Mode {
+        // Runs the probe and cp.
+        CP,
+        // Runs the probe, but cp fails after writing part of the destination.
+        CP_FAILS,
+        // Runs the probe, but cp writes part of the destination and then hangs until it is hung up.
+        CP_HANGS,
+        // Runs an SFTP server instead of any command, like ForceCommand internal-sftp. It waits for requests until its input ends.
+        SFTP_ONLY
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SshServer server;
+    private FileSystem fs;
+    private Mode mode = Mode.CP;
+
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch cpStarted = new CountDownLatch(1);
+
+    class FakeCommand extends AbstractCommandSupport {
+
+        private final CountDownLatch hungUp = new CountDownLatch(1);
+
+        FakeCommand(String command) {
+            super(command, null);
+        }
+
+        @Override
+        public void run() {
+            try {
+                commands.add(getCommand());
+                onExit(execute());
+            } catch (Exception e) {
+                onExit(1, e.toString());
+            }
+        }
+
+        private int execute() throws Exception {
+
+            if (mode == Mode.SFTP_ONLY) {
+                InputStream in = getInputStream();
+
+                while (in.read() >= 0) {
+                    // wait for the end of the input
+                }
+
+                return 0;
+            }
+
+            if (getCommand().equals("command -v cp")) {
+                getOutputStream().write("/bin/cp\n".getBytes(StandardCharsets.UTF_8));
+                getOutputStream().flush();
+                return 0;
+            }
+
+            List<String> args = new ArrayList<>();
+            Matcher m = ARGUMENT.matcher(getCommand());
+
+            while (m.find()) {
+                args.add(m.group(1));
+            }
+
+            if (!getCommand().startsWith("cp ") || args.size() != 2) {
+                return 127;
+            }
+
+            java.nio.file.Path source = Paths.get(args.get(0));
+            java.nio.file.Path target = Paths.get(args.get(1));
+
+            switch (mode) {
+            case CP:
+                Files.copy(source, target);
+                return 0;
+            case CP_FAILS:
+                Files.write(target, Arrays.copyOf(Files.readAllBytes(source), 10));
+                return 1;
+            default:
+                Files.write(target, Arrays.copyOf(Files.readAllBytes(source), 10));
+                cpStarted.countDown();
+                hungUp.await(30, TimeUnit.SECONDS);
+                return 129;
+            }
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) throws Exception {
+            hungUp.countDown();
+            super.destroy(channel);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = SshServer.setUpDefaultServer();
+        server.setHost("localhost");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(folder.newFile("hostkey").toPath()));
+        server.setPasswordAuthenticator((user, password, session) -> "secret".equals(password));
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        server.setCommandFactory((channel, command) -> new FakeCommand(command));
+        server.start();
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(SftpFileAdaptor.STRICT_HOST_KEY_CHECKING, "false");
+        properties.put(SftpFileAdaptor.LOAD_STANDARD_KNOWN_HOSTS, "false");
+        properties.put(SftpFileAdaptor.LOAD_SSH_CONFIG, "false");
+
+        fs = FileSystem.create("sftp", "localhost:" + server.getPort(), new PasswordCredential("user", "secret".toCharArray()), properties);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fs.close();
+        server.stop(true);
+    }
+
+    private byte[] createSource(String name) throws IOException {
+        byte[] data = new byte[SIZE];
+        new Random(name.hashCode()).nextBytes(data);
+        Files.write(folder.getRoot().toPath().resolve(name), data);
+        return data;
+    }
+
+    private Path path(String name) {
+        return new Path(folder.getRoot().toPath().resolve(name).toString());
+    }
+
+    private CopyStatus copy(String source, String destination) throws Exception {
+        String id = fs.copy(path(source), fs, path(destination), CopyMode.CREATE, false);
+        return fs.waitUntilDone(id, 60000);
+    }
+
+    private long count(String prefix) {
+        synchronized (commands) {
+            return commands.stream().filter(c -> c.startsWith(prefix)).count();
+        }
+    }
+
+    private void assertCopied(byte[] data, String destination, CopyStatus status) throws Exception {
+        status.maybeThrowException();
+        assertTrue(status.isDone());
+        assertEquals(data.length, status.bytesCopied());
+        assertArrayEquals(data, Files.readAllBytes(folder.getRoot().toPath().resolve(destination)));
+    }
+
+    @Test(timeout = 60000)
+    public void test_copyOnServer() throws Exception {
+        byte[] data = createSource("src");
+
+        assertCopied(data, "dst0", copy("src", "dst0"));
+        assertCopied(data, "dst1", copy("src", "dst1"));
+
+        // The server is probed once, and each copy runs cp.
+        assertEquals(1, count("command -v cp"));
+        assertEquals(2, count("cp "));
+    }
+
+    @Test(timeout = 60000)
+    public void test_sftpOnlyServer_probedOnce() throws Exception {
+        mode = Mode.SFTP_ONLY;
+        byte[] data = createSource("src");
+
+        assertCopied(data, "dst0", copy("src", "dst0"));
+        assertCopied(data, "dst1", copy("src", "dst1"));
+
+        // The probe ended because its input was closed, and cp was never tried.
+        assertEquals(1, commands.size());
+    }
+
+    @Test(timeout = 60000)
+    public void test_noCommands_fallsBack() throws Exception {
+        server.setCommandFactory(null);
+        byte[] data = createSource("src");
+
+        assertCopied(data, "dst", copy("src", "dst"));
+        assertTrue(commands.isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void test_cpFails_fallsBack() throws Exception {
+        mode = Mode.CP_FAILS;
+        byte[] data = createSource("src");
+
+        assertCopied(data, "dst0", copy("src", "dst0"));
+        assertCopied(data, "dst1", copy("src", "dst1"));
+
+        // A failing cp does not mean cp cannot be used for other files.
+        assertEquals(2, count("cp "));
+    }
+
+    @Test(timeout = 60000)
+    public void test_cpStalls_fallsBack() throws Exception {
+        mode = Mode.CP_HANGS;
+        ((SftpFileSystem) fs).setRemoteCopyStallTimeout(1500);
+        byte[] data = createSource("src");
+
+        assertCopied(data, "dst0", copy("src", "dst0"));
+        assertCopied(data, "dst1", copy("src", "dst1"));
+
+        // After a stalled copy, cp is no longer used.
+        assertEquals(1, count("cp "));
+    }
+
+    @Test(timeout = 60000)
+    public void test_cancel_removesDestination() throws Exception {
+        mode = Mode.CP_HANGS;
+        createSource("src");
+
+        String id = fs.copy(path("src"), fs, path("dst"), CopyMode.CREATE, false);
+
+        assertTrue(cpStarted.await(30, TimeUnit.SECONDS));
+
+        CopyStatus status = fs.cancel(id);
+
+        assertTrue(status.getException() instanceof CopyCancelledException);
+
+        // The copy thread removes the partial destination after the cancellation.
+        java.nio.file.Path destination = folder.getRoot().toPath().resolve("dst");
+
+        while (Files.exists(destination)) {
+            Thread.sleep(100);
+        }
+
+        assertFalse(Files.exists(destination));
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.webdav;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.filesystems.CopyMode;
+import nl.esciencecenter.xenon.filesystems.CopyStatus;
+import nl.esciencecenter.xenon.filesystems.Path;
+
+public class WebdavCopyTest {
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private WebdavFileSystem fs;
+
+    // The files served by the fake server, all in its root directory.
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+    // The status the fake server returns for a COPY request. Only 201 actually copies the file.
+    private volatile int copyStatus = 201;
+
+    private final AtomicInteger copies = new AtomicInteger();
+    private final AtomicInteger puts = new AtomicInteger();
+
+    // If set, the first PUT counts down putStarted, and waits for this latch before it is completed.
+    private volatile CountDownLatch putBlock;
+    private final CountDownLatch putStarted = new CountDownLatch(1);
+
+    private static String response(String href, long size) {
+        boolean dir = href.endsWith("/");
+
+        return "<D:response><D:href>" + href + "</D:href><D:propstat><D:prop>" + "<D:resourcetype>" + (dir ? "<D:collection/>" : "")
+                + "</D:resourcetype><D:creationdate>2018-01-01T00:00:00Z</D:creationdate>"
+                + "<D:getlastmodified>Mon, 01 Jan 2018 00:00:00 GMT</D:getlastmodified><D:getcontentlength>" + size
+                + "</D:getcontentlength></D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+            }
+        }
+
+        String path = exchange.getRequestURI().getPath();
+
+        switch (exchange.getRequestMethod()) {
+        case "PROPFIND":
+            if (path.equals("/")) {
+                send(exchange, 207, multistatus(response("/", 0)));
+            } else if (files.containsKey(path)) {
+                send(exchange, 207, multistatus(response(path, files.get(path).length)));
+            } else {
+                send(exchange, 404, null);
+            }
+            break;
+        case "GET":
+            send(exchange, files.containsKey(path) ? 200 : 404, files.get(path));
+            break;
+        case "PUT":
+            if (puts.incrementAndGet() == 1 && putBlock != null) {
+                putStarted.countDown();
+                await(putBlock);
+            }
+            files.put(path, body.toByteArray());
+            send(exchange, 201, null);
+            break;
+        case "COPY":
+            copies.incrementAndGet();
+
+            if (copyStatus == 201) {
+                files.put(URI.create(exchange.getRequestHeaders().getFirst("Destination")).getPath(), files.get(path));
+            }
+
+            send(exchange, copyStatus, null);
+            break;
+        default:
+            send(exchange, 405, null);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] multistatus(String responses) {
+        return ("<?xml version=\"1.0\" encoding=\"utf-8\"?><D:multistatus xmlns:D=\"DAV:\">" + responses + "</D:multistatus>")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] data) throws IOException {
+        if (data == null) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.getResponseHeaders().add("Content-Type", status == 207 ? "application/xml; charset=utf-8" : "application/octet-stream");
+            exchange.sendResponseHeaders(status, data.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data);
+            }
+        }
+
+        exchange.close();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        // Handle requests concurrently, so a blocked upload does not hold up the others.
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.start();
+
+        fs = createFileSystem(1, 2);
+
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+        files.put("/src", data);
+    }
+
+    private WebdavFileSystem createFileSystem(int copyThreads, int uploadThreads) {
+        String base = "http://localhost:" + server.getAddress().getPort();
+        return new WebdavFileSystem("copytest", "webdav", base, new DefaultCredential(), base, new Path("/"), 4096, copyThreads, uploadThreads, 2,
+                new WebdavClient(), null);
+    }
+
+    @After
+    public void tearDown() throws XenonException {
+        fs.close();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void copy(String destination) throws Exception {
+        String id = fs.copy(new Path("/src"), fs, new Path(destination), CopyMode.CREATE, false);
+        assertCopied(destination, fs.waitUntilDone(id, 10000));
+    }
+
+    private void assertCopied(String destination, CopyStatus status) throws Exception {
+        status.maybeThrowException();
+        assertTrue(status.isDone());
+        assertEquals(files.get("/src").length, status.bytesCopied());
+        assertArrayEquals(files.get("/src"), files.get(destination));
+    }
+
+    @Test(timeout = 20000)
+    public void test_copyOnServer() throws Exception {
+        copy("/dst");
+
+        assertEquals(1, copies.get());
+        assertEquals(0, puts.get());
+    }
+
+    @Test(timeout = 20000)
+    public void test_copyNotAllowed_fallsBack() throws Exception {
+        copyStatus = 405;
+
+        copy("/dst0");
+        copy("/dst1");
+
+        // A server that does not support COPY is not asked again.
+        assertEquals(1, copies.get());
+        assertEquals(2, puts.get());
+    }
+
+    @Test(timeout = 20000)
+    public void test_copyFails_fallsBack() throws Exception {
+        copyStatus = 500;
+
+        copy("/dst0");
+        copy("/dst1");
+
+        // A failed COPY may work for other files, so it is tried again.
+        assertEquals(2, copies.get());
+        assertEquals(2, puts.get());
+    }
+
+    @Test(timeout = 20000)
+    public void test_streamedCopy_uploadsOnCopyThread() throws Exception {
+        copyStatus = 405;
+
+        copy("/dst");
+
+        // No thread was started to run the upload request.
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            assertFalse(t.getName(), t.getName().startsWith("WebdavRequest.copytest"));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void test_streamedCopy_moreCopiesThanUploads() throws Exception {
+        copyStatus = 405;
+        putBlock = new CountDownLatch(1);
+
+        WebdavFileSystem limited = createFileSystem(2, 1);
+
+        try {
+            String first = limited.copy(new Path("/src"), limited, new Path("/dst0"), CopyMode.CREATE, false);
+
+            assertTrue(putStarted.await(10, TimeUnit.SECONDS));
+
+            String second = limited.copy(new Path("/src"), limited, new Path("/dst1"), CopyMode.CREATE, false);
+
+            // The second copy waits for the upload of the first one, instead of failing.
+            assertFalse(limited.waitUntilDone(second, 200).isDone());
+
+            putBlock.countDown();
+
+            assertCopied("/dst0", limited.waitUntilDone(first, 10000));
+            assertCopied("/dst1", limited.waitUntilDone(second, 10000));
+        } finally {
+            limited.close();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.webdav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
+
+public class WebdavListTest {
+
+    // A small tree served by the fake server. Directories end with a slash.
+    private static final String[] TREE = { "/root/", "/root/a", "/root/sub/", "/root/sub/b", "/root/sub/deep/", "/root/sub/deep/c", "/root/other/" };
+
+    private HttpServer server;
+    private WebdavFileSystem fs;
+
+    private boolean allowInfinity;
+
+    // If set, a depth infinity response stops after the first three entries until this latch is released.
+    private CountDownLatch stall;
+
+    // If set, a stalled response ends without sending the remaining entries.
+    private boolean truncate;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private static String response(String href) {
+        boolean dir = href.endsWith("/");
+
+        return "<D:response><D:href>" + href + "</D:href><D:propstat><D:prop>" + "<D:resourcetype>" + (dir ? "<D:collection/>" : "")
+                + "</D:resourcetype><D:creationdate>2018-01-01T00:00:00Z</D:creationdate>"
+                + "<D:getlastmodified>Mon, 01 Jan 2018 00:00:00 GMT</D:getlastmodified><D:getcontentlength>" + (dir ? 0 : 1)
+                + "</D:getcontentlength></D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>";
+    }
+
+    private static int depth(String href) {
+        String tmp = href.endsWith("/") ? href.substring(0, href.length() - 1) : href;
+        return tmp.split("/").length;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() >= 0) {
+                // skip request body
+            }
+        }
+
+        String dir = exchange.getRequestURI().getPath();
+        String depth = exchange.getRequestHeaders().getFirst("Depth");
+
+        if ("infinity".equals(depth) && !allowInfinity) {
+            exchange.sendResponseHeaders(403, -1);
+            exchange.close();
+            return;
+        }
+
+        StringBuilder body = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?><D:multistatus xmlns:D=\"DAV:\">");
+
+        if ("infinity".equals(depth) && stall != null) {
+            sendStalled(exchange, body);
+            return;
+        }
+
+        for (String href : TREE) {
+            boolean below = href.startsWith(dir);
+
+            if (below && ("infinity".equals(depth) || depth(href) <= depth(dir) + 1)) {
+                body.append(response(href));
+            }
+        }
+
+        body.append("</D:multistatus>");
+
+        byte[] data = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml; charset=utf-8");
+        exchange.sendResponseHeaders(207, data.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+    }
+
+    private void sendStalled(HttpExchange exchange, StringBuilder body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/xml; charset=utf-8");
+        exchange.sendResponseHeaders(207, 0);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            // The parser reads one event ahead, so the third entry releases the second.
+            body.append(response(TREE[0])).append(response(TREE[1])).append(response(TREE[2]));
+            out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            try {
+                stall.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (truncate) {
+                return;
+            }
+
+            body.setLength(0);
+
+            for (int i = 3; i < TREE.length; i++) {
+                body.append(response(TREE[i]));
+            }
+
+            body.append("</D:multistatus>");
+            out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void start(boolean allowInfinity) throws IOException {
+        this.allowInfinity = allowInfinity;
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        String base = "http://localhost:" + server.getAddress().getPort();
+        fs = new WebdavFileSystem("0", "webdav", base, new DefaultCredential(), base, new Path("/root"), 4096, 1, 1, 2, new WebdavClient(), null);
+    }
+
+    @After
+    public void tearDown() throws XenonException {
+        fs.close();
+        server.stop(0);
+    }
+
+    private Set<String> listRecursive() {
+        Set<String> result = new TreeSet<>();
+        fs.listIterator(new Path("/root"), true).forEachRemaining(p -> result.add(p.getPath().toString()));
+        return result;
+    }
+
+    private static Set<String> expected() {
+        return new TreeSet<>(Arrays.asList("/root/a", "/root/sub", "/root/sub/b", "/root/sub/deep", "/root/sub/deep/c", "/root/other"));
+    }
+
+    @Test
+    public void test_listDepthInfinity() throws Exception {
+        start(true);
+
+        assertEquals(expected(), listRecursive());
+        assertEquals(1, requests.get());
+    }
+
+    @Test(timeout = 5000)
+    public void test_listDepthInfinity_streams() throws Exception {
+        stall = new CountDownLatch(1);
+        start(true);
+
+        Iterator<PathAttributes> it = fs.listIterator(new Path("/root"), true);
+
+        // The first entry is returned while the server is still holding back the rest of the response.
+        assertEquals("/root/a", it.next().getPath().toString());
+
+        stall.countDown();
+
+        Set<String> result = new TreeSet<>();
+        result.add("/root/a");
+        it.forEachRemaining(p -> result.add(p.getPath().toString()));
+
+        assertEquals(expected(), result);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void test_listDepthInfinity_failsAfterStart() throws Exception {
+        stall = new CountDownLatch(1);
+        truncate = true;
+        start(true);
+
+        Iterator<PathAttributes> it = fs.listIterator(new Path("/root"), true);
+        assertEquals("/root/a", it.next().getPath().toString());
+
+        // A response that ends halfway is reported by the iterator.
+        stall.countDown();
+
+        try {
+            while (it.hasNext()) {
+                it.next();
+            }
+            fail("Expected an exception for a truncated response");
+        } catch (XenonRuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void test_listFallbackDepthOne() throws Exception {
+        start(false);
+
+        assertEquals(expected(), listRecursive());
+
+        // one refused depth infinity request, and one request per directory
+        assertEquals(5, requests.get());
+
+        requests.set(0);
+        assertEquals(expected(), listRecursive());
+
+        // depth infinity is not tried again
+        assertEquals(4, requests.get());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.webdav;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.filesystems.Path;
+
+public class WebdavUploadTest {
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private WebdavFileSystem fs;
+    private String base;
+
+    // Stores the body of each PUT, except for paths starting with /fail, which are rejected after reading the body.
+    private final Map<String, byte[]> uploads = new ConcurrentHashMap<>();
+
+    private void handle(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+            }
+        }
+
+        String path = exchange.getRequestURI().getPath();
+
+        if (path.startsWith("/fail")) {
+            exchange.sendResponseHeaders(500, -1);
+        } else {
+            uploads.put(path, body.toByteArray());
+            exchange.sendResponseHeaders(201, -1);
+        }
+
+        exchange.close();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        // Handle uploads concurrently, so several upload streams can be open at once.
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.start();
+
+        base = "http://localhost:" + server.getAddress().getPort();
+        fs = createFileSystem(2);
+    }
+
+    private WebdavFileSystem createFileSystem(int maxUploads) {
+        return new WebdavFileSystem("0", "webdav", base, new DefaultCredential(), base, new Path("/"), 4096, 1, maxUploads, 2, new WebdavClient(), null);
+    }
+
+    @After
+    public void tearDown() throws XenonException {
+        fs.close();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void upload(String path, byte[] data, long size) throws XenonException, IOException {
+        try (OutputStream out = fs.upload(base + path, size)) {
+            out.write(data);
+        }
+    }
+
+    @Test
+    public void test_upload() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+
+        upload("/data", data, data.length);
+
+        assertArrayEquals(data, uploads.get("/data"));
+    }
+
+    @Test
+    public void test_upload_unknownSize() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(2).nextBytes(data);
+
+        upload("/chunked", data, -1);
+
+        assertArrayEquals(data, uploads.get("/chunked"));
+    }
+
+    @Test
+    public void test_upload_empty() throws Exception {
+        upload("/empty", new byte[0], 0);
+
+        assertEquals(0, uploads.get("/empty").length);
+    }
+
+    @Test
+    public void test_upload_many() throws Exception {
+        // More uploads than upload threads, which must be reused.
+        for (int i = 0; i < 10; i++) {
+            upload("/file" + i, new byte[] { (byte) i }, 1);
+        }
+
+        assertEquals(10, uploads.size());
+    }
+
+    @Test
+    public void test_upload_unlimited_concurrent() throws Exception {
+        WebdavFileSystem unlimited = createFileSystem(0);
+
+        try {
+            // More streams open at once than the fixed pool used to have threads.
+            OutputStream[] out = new OutputStream[6];
+
+            for (int i = 0; i < out.length; i++) {
+                out[i] = unlimited.upload(base + "/open" + i, 1);
+                out[i].write(i);
+            }
+
+            for (OutputStream o : out) {
+                o.close();
+            }
+
+            assertEquals(out.length, uploads.size());
+        } finally {
+            unlimited.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void test_upload_limit_waits() throws Exception {
+        OutputStream out0 = fs.upload(base + "/limit0", 1);
+        OutputStream out1 = fs.upload(base + "/limit1", 1);
+
+        CompletableFuture<Void> third = CompletableFuture.runAsync(() -> {
+            try (OutputStream out2 = fs.upload(base + "/limit2", 1)) {
+                out2.write(2);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+
+        // The third upload waits until one of the others is done.
+        Thread.sleep(200);
+        assertFalse(third.isDone());
+
+        out0.write(0);
+        out0.close();
+
+        third.get();
+
+        out1.write(1);
+        out1.close();
+
+        assertEquals(3, uploads.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_upload_failsInClose() throws Exception {
+        upload("/fail", new byte[] { 1, 2, 3 }, 3);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+
+public class CommandCacheTest {
+
+    private static final List<String> KEY = Arrays.asList("qstat", "-x");
+
+    @Test
+    public void test_reusedWithinCacheTime() throws XenonException {
+        CommandCache cache = new CommandCache("test", 60000);
+        AtomicInteger count = new AtomicInteger();
+
+        assertEquals("0", cache.get(KEY, () -> "" + count.getAndIncrement()));
+        assertEquals("0", cache.get(KEY, () -> "" + count.getAndIncrement()));
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void test_differentCommandsNotShared() throws XenonException {
+        CommandCache cache = new CommandCache("test", 60000);
+
+        assertEquals("a", cache.get(KEY, () -> "a"));
+        assertEquals("b", cache.get(Collections.singletonList("qstat"), () -> "b"));
+    }
+
+    @Test
+    public void test_notReusedWithoutCacheTime() throws XenonException {
+        CommandCache cache = new CommandCache("test", 0);
+        AtomicInteger count = new AtomicInteger();
+
+        assertEquals("0", cache.get(KEY, () -> "" + count.getAndIncrement()));
+        assertEquals("1", cache.get(KEY, () -> "" + count.getAndIncrement()));
+    }
+
+    @Test
+    public void test_invalidate() throws XenonException {
+        CommandCache cache = new CommandCache("test", 60000);
+        AtomicInteger count = new AtomicInteger();
+
+        cache.get(KEY, () -> "" + count.getAndIncrement());
+        cache.invalidate();
+
+        assertEquals("1", cache.get(KEY, () -> "" + count.getAndIncrement()));
+    }
+
+    @Test
+    public void test_errorNotCached() throws XenonException {
+        CommandCache cache = new CommandCache("test", 60000);
+
+        try {
+            cache.get(KEY, () -> {
+                throw new XenonException("test", "failed");
+            });
+            fail("Expected exception");
+        } catch (XenonException e) {
+            assertEquals("test adaptor: failed", e.getMessage());
+        }
+
+        assertEquals("ok", cache.get(KEY, () -> "ok"));
+    }
+
+    @Test
+    public void test_concurrentCallsCoalesced() throws Exception {
+        CommandCache cache = new CommandCache("test", 0);
+        AtomicInteger count = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> first = executor.submit(() -> cache.get(KEY, () -> {
+                count.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "first";
+            }));
+
+            started.await();
+
+            Thread t = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                release.countDown();
+            });
+            t.start();
+
+            // Waits for the running command instead of running a new one.
+            assertEquals("first", cache.get(KEY, () -> "" + count.incrementAndGet()));
+            assertEquals("first", first.get());
+            assertEquals(1, count.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.filesystems.MockFileSystem;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+
+public class JobExecutorTest {
+
+    @Test
+    public void test_run_timerClosed_killsJob() throws Exception {
+
+        MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+
+        List<MockInteractiveProcess> processes = new ArrayList<>();
+
+        MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory() {
+            @Override
+            public InteractiveProcess createInteractiveProcess(JobDescription description, String workdir, String jobIdentifier, long timeoutInMillis)
+                    throws XenonException {
+                MockInteractiveProcess p = new MockInteractiveProcess(description, jobIdentifier, 60000, 0);
+                processes.add(p);
+                return p;
+            }
+        };
+
+        // The scheduler was closed while the job was being started.
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        timer.shutdownNow();
+
+        List<JobExecutor> finished = new ArrayList<>();
+        List<String> states = new ArrayList<>();
+
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/aap");
+
+        JobExecutor job = new JobExecutor("MockS", fs, new Path("/home/xenon"), factory, description, "MockS-0", true, 100, 10000L, timer, Runnable::run,
+                finished::add);
+
+        job.addStateListener(status -> states.add(status.getState()));
+
+        job.run();
+
+        JobStatus status = job.getStatus();
+
+        assertTrue(status.isDone());
+        assertTrue(status.getException() instanceof JobCanceledException);
+        assertTrue(processes.get(0).destroyed);
+        assertEquals(1, finished.size());
+        assertEquals("KILLED", states.get(states.size() - 1));
+    }
+}
@@ -22,8 +22,15 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 
+import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.filesystems.MockFileSystem;
 import nl.esciencecenter.xenon.filesystems.Path;
@@ -578,6 +585,77 @@ public class JobQueueSchedulerTest {
         }
     }
 
+    @Test
+    public void test_onStateChange() throws Exception {
+
+        MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+
+        MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(100);
+
+        try (JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", new DefaultCredential(), factory, fs, new Path("/home/xenon"), 2, 100,
+                10000L, null)) {
+
+            JobDescription job = new JobDescription();
+            job.setExecutable("/bin/aap");
+            job.setQueueName("single");
+
+            // The second job stays pending until the first one is done.
+            s.submitBatchJob(job);
+            String jobID = s.submitBatchJob(job);
+
+            List<String> states = new CopyOnWriteArrayList<>();
+
+            s.onStateChange(jobID, status -> states.add(status.getState()));
+
+            JobStatus status = s.whenDone(jobID).get(1000, TimeUnit.MILLISECONDS);
+
+            assertTrue(status.isDone());
+            assertEquals(Arrays.asList("PENDING", "RUNNING", "DONE"), states);
+        }
+    }
+
+    @Test
+    public void test_whenDone_afterCancel() throws Exception {
+
+        MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+
+        MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(100);
+
+        try (JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", new DefaultCredential(), factory, fs, new Path("/home/xenon"), 2, 100,
+                10000L, null)) {
+
+            JobDescription job = new JobDescription();
+            job.setExecutable("/bin/aap");
+            job.setQueueName("single");
+
+            s.submitBatchJob(job);
+            String jobID = s.submitBatchJob(job);
+
+            CompletableFuture<JobStatus> future = s.whenDone(jobID);
+
+            s.cancelJob(jobID);
+
+            JobStatus status = future.get(1000, TimeUnit.MILLISECONDS);
+
+            assertTrue(status.isDone());
+            assertTrue(status.getException() instanceof JobCanceledException);
+        }
+    }
+
+    @Test(expected = NoSuchJobException.class)
+    public void test_onStateChange_unknownJob() throws Exception {
+
+        MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+
+        MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(100);
+
+        try (JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", new DefaultCredential(), factory, fs, new Path("/home/xenon"), 2, 100,
+                10000L, null)) {
+            s.onStateChange("foo", status -> {
+            });
+        }
+    }
+
     @Test
     public void test_cancel_immediately() throws Exception {
 
@@ -813,4 +891,113 @@ public class JobQueueSchedulerTest {
         }
     }
 
+    @Test
+    public void test_completionCallback() throws Exception {
+
+        MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+
+        CompletableFuture<Void> exit = new CompletableFuture<>();
+
+        // A process that never completes on its own, but reports its completion through a callback.
+        MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(Long.MAX_VALUE / 2) {
+            @Override
+            public InteractiveProcess createInteractiveProcess(JobDescription description, String workdir, String jobIdentifier, long timeoutInMillis)
+                    throws XenonException {
+                return new MockInteractiveProcess(description, jobIdentifier, Long.MAX_VALUE / 2, 0) {
+                    @Override
+                    public synchronized boolean isDone() {
+                        return exit.isDone();
+                    }
+
+                    @Override
+                    public boolean onDone(Runnable callback) {
+                        exit.thenRun(callback);
+                        return true;
+                    }
+                };
+            }
+        };
+
+        // Use the maximum polling delay, so the job can only be seen to complete in time through the callback.
+        try (JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", new DefaultCredential(), factory, fs, new Path("/home/xenon"), 2,
+                JobQueueScheduler.MAX_POLLING_DELAY, 10000L, null)) {
+
+            JobDescription job = new JobDescription();
+            job.setExecutable("/bin/aap");
+
+            String jobID = s.submitInteractiveJob(job).getJobIdentifier();
+
+            CompletableFuture<JobStatus> done = s.whenDone(jobID);
+
+            assertFalse(done.isDone());
+
+            exit.complete(null);
+
+            JobStatus status = done.get(5, TimeUnit.SECONDS);
+
+            assertTrue(status.isDone());
+            assertEquals(Integer.valueOf(0), status.getExitCode());
+        }
+    }
+
+    @Test
+    public void test_close_finishesJobs() throws Exception {
+
+        MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+
+        MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(60000);
+
+        JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", new DefaultCredential(), factory, fs, new Path("/home/xenon"), 2, 100,
+                10000L, null);
+
+        JobDescription job = new JobDescription();
+        job.setExecutable("/bin/aap");
+
+        // The second job waits for the first one in the single queue.
+        String running = s.submitBatchJob(job);
+        String pending = s.submitBatchJob(job);
+
+        assertTrue(s.waitUntilRunning(running, 5000).isRunning());
+
+        CompletableFuture<JobStatus> runningDone = s.whenDone(running);
+        CompletableFuture<JobStatus> pendingDone = s.whenDone(pending);
+
+        s.close();
+
+        JobStatus status = runningDone.get(5, TimeUnit.SECONDS);
+        assertTrue(status.isDone());
+        assertTrue(status.getException() instanceof JobCanceledException);
+
+        status = pendingDone.get(5, TimeUnit.SECONDS);
+        assertTrue(status.isDone());
+        assertTrue(status.getException() instanceof JobCanceledException);
+    }
+
+    @Test
+    public void test_singleQueueStartsNextWhenDone() throws Exception {
+
+        MockFileSystem fs = new MockFileSystem("FID", "MockFS", "local://", new Path("/home/xenon"));
+
+        MockInteractiveProcessFactory factory = new MockInteractiveProcessFactory(500);
+
+        try (JobQueueScheduler s = new JobQueueScheduler("SID", "MockS", "location", new DefaultCredential(), factory, fs, new Path("/home/xenon"), 2, 100,
+                10000L, null)) {
+
+            JobDescription job = new JobDescription();
+            job.setExecutable("/bin/aap");
+
+            String first = s.submitBatchJob(job);
+            String second = s.submitBatchJob(job);
+
+            assertTrue(s.waitUntilRunning(first, 5000).isRunning());
+
+            JobStatus status = s.getJobStatus(second);
+            assertFalse(status.isRunning());
+            assertFalse(status.isDone());
+
+            assertTrue(s.waitUntilDone(first, 5000).isDone());
+            assertTrue(s.waitUntilDone(second, 5000).isDone());
+        }
+    }
+
 }
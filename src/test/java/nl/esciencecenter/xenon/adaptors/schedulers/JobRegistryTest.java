@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+
+public class JobRegistryTest {
+
+    private JobExecutor job(String id) {
+        return new JobExecutor("MockS", null, null, null, new JobDescription(), id, false, 100, 0, null, null, null);
+    }
+
+    @Test
+    public void test_addGet() {
+        JobRegistry r = new JobRegistry(10, "q");
+        JobExecutor j = job("j0");
+        r.add("q", 0, j);
+
+        assertSame(j, r.get("j0"));
+        assertNull(r.get("j1"));
+    }
+
+    @Test
+    public void test_getJobsInSubmissionOrder() {
+        JobRegistry r = new JobRegistry(10, "a", "b");
+        r.add("a", 2, job("j2"));
+        r.add("b", 1, job("j1"));
+        r.add("a", 0, job("j0"));
+
+        assertEquals(Arrays.asList("j0", "j2"), r.getJobs("a"));
+        assertEquals(Collections.singletonList("j1"), r.getJobs("b"));
+    }
+
+    @Test
+    public void test_hasQueue() {
+        JobRegistry r = new JobRegistry(10, "a");
+        assertTrue(r.hasQueue("a"));
+        assertFalse(r.hasQueue("b"));
+        assertFalse(r.hasQueue(null));
+    }
+
+    @Test
+    public void test_remove() {
+        JobRegistry r = new JobRegistry(10, "q");
+        r.add("q", 0, job("j0"));
+
+        assertTrue(r.remove("j0"));
+        assertFalse(r.remove("j0"));
+        assertNull(r.get("j0"));
+        assertTrue(r.getJobs("q").isEmpty());
+    }
+
+    @Test
+    public void test_finishedEvictsOldest() {
+        JobRegistry r = new JobRegistry(2, "q");
+
+        for (int i = 0; i < 4; i++) {
+            r.add("q", i, job("j" + i));
+        }
+
+        r.finished("j2");
+        r.finished("j0");
+        r.finished("j1");
+
+        // j2 finished first, so it is evicted. j3 is still running, so it is kept.
+        assertEquals(Arrays.asList("j0", "j1", "j3"), r.getJobs("q"));
+    }
+
+    @Test
+    public void test_removedJobsDoNotCountAsHistory() {
+        JobRegistry r = new JobRegistry(1, "q");
+        r.add("q", 0, job("j0"));
+        r.add("q", 1, job("j1"));
+
+        r.finished("j0");
+        r.remove("j0");
+        r.finished("j1");
+
+        assertEquals(Collections.singletonList("j1"), r.getJobs("q"));
+    }
+
+    @Test
+    public void test_unlimitedHistory() {
+        JobRegistry r = new JobRegistry(-1, "q");
+
+        for (int i = 0; i < 3; i++) {
+            r.add("q", i, job("j" + i));
+            r.finished("j" + i);
+        }
+
+        assertEquals(Arrays.asList("j0", "j1", "j2"), r.getJobs("q"));
+    }
+}
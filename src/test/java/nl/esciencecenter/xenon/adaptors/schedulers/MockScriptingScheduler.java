@@ -16,6 +16,7 @@
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
@@ -43,16 +44,24 @@ public class MockScriptingScheduler extends ScriptingScheduler {
     /** Property for the maximum number of concurrent jobs in the multi queue. */
     public static final String MULTIQ_MAX_CONCURRENT = MULTIQ + "maxConcurrentJobs";
 
+    /** Polling delay of the scripting scheduler itself, which is not passed on to the local scheduler. */
+    public static final String SCRIPTING_POLLING_DELAY = SchedulerAdaptor.ADAPTORS_PREFIX + "test.pollingDelay";
+
     /** The properties supported by this adaptor */
     private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
             new XenonPropertyDescription(POLLING_DELAY, Type.LONG, "1000", "The polling delay for monitoring running jobs (in milliseconds)."),
-            new XenonPropertyDescription(MULTIQ_MAX_CONCURRENT, Type.INTEGER, "4", "The maximum number of concurrent jobs in the multiq.") };
+            new XenonPropertyDescription(MULTIQ_MAX_CONCURRENT, Type.INTEGER, "4", "The maximum number of concurrent jobs in the multiq."),
+            new XenonPropertyDescription(SCRIPTING_POLLING_DELAY, Type.LONG, "1000", "The polling delay for monitoring jobs (in milliseconds).") };
 
     MockScriptingScheduler() throws XenonException {
         super("test1", "TEST", "", new DefaultCredential(), new HashMap<String, String>(), VALID_PROPERTIES,
                 "xenon.adaptors.schedulers.local.queue.pollingDelay");
     }
 
+    MockScriptingScheduler(Map<String, String> properties) throws XenonException {
+        super("test1", "TEST", "", new DefaultCredential(), properties, VALID_PROPERTIES, SCRIPTING_POLLING_DELAY);
+    }
+
     @Override
     public String[] getQueueNames() throws XenonException {
         return new String[] { "queue" };
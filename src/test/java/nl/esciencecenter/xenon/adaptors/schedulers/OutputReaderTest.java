@@ -18,10 +18,16 @@ package nl.esciencecenter.xenon.adaptors.schedulers;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 
@@ -118,5 +124,79 @@ public class OutputReaderTest {
         assertEquals(2000, r.getResult().length);
     }
 
+    @Test
+    public void test_spillToFile() throws IOException {
+
+        byte [] tmp = new byte[100000];
+
+        for (int i=0;i<tmp.length;i++) {
+            tmp[i] = (byte) (i & 0xff);
+        }
+
+        OutputReader r = new OutputReader(new ByteArrayInputStream(tmp), 1000);
+
+        assertEquals(tmp.length, r.getSize());
+        assertArrayEquals(tmp, r.getResult());
+
+        try (InputStream in = r.getResultAsStream()) {
+            assertArrayEquals(tmp, in.readAllBytes());
+        }
+
+        r.close();
+    }
+
+    @Test
+    public void test_lines() {
+
+        OutputReader r = new OutputReader(new ByteArrayInputStream("a b\nc d\n\ne f".getBytes(StandardCharsets.UTF_8)));
+
+        try (Stream<String> lines = r.lines()) {
+            assertEquals(Arrays.asList("a b", "c d", "", "e f"), lines.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void test_linesSpilled() {
 
+        StringBuilder sb = new StringBuilder();
+
+        for (int i=0;i<10000;i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+
+        OutputReader r = new OutputReader(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)), 100);
+
+        try (Stream<String> lines = r.lines()) {
+            List<String> result = lines.collect(Collectors.toList());
+            assertEquals(10000, result.size());
+            assertEquals("line 9999", result.get(9999));
+        }
+
+        r.close();
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void test_closed() {
+
+        OutputReader r = new OutputReader(new ByteArrayInputStream("Hello World".getBytes()));
+        r.close();
+        r.getResultAsStream();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void test_create_negativeLimit() {
+        new OutputReader(new ByteArrayInputStream(new byte[0]), -1);
+    }
+
+    @Test
+    public void test_empty() {
+
+        OutputReader r = new OutputReader(new ByteArrayInputStream(new byte[0]));
+
+        assertEquals("", r.getResultAsString());
+
+        try (Stream<String> lines = r.lines()) {
+            assertFalse(lines.findAny().isPresent());
+        }
+    }
 }
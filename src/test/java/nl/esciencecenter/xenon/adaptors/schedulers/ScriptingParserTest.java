@@ -23,6 +23,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import org.junit.FixMethodOrder;
 import org.junit.Test;
@@ -301,6 +302,32 @@ public class ScriptingParserTest {
         assertEquals(expected, result);
     }
 
+    @Test
+    public void test06b_parseTable_Lines_ResultMap() throws Exception {
+        Map<String, Map<String, String>> expected = new HashMap<>();
+
+        Map<String, String> expectedRecord = new HashMap<>();
+        expectedRecord.put("key1", "value1");
+        expectedRecord.put("key2", "value2");
+        expected.put("value1", expectedRecord);
+
+        Map<String, String> expectedRecord2 = new HashMap<>();
+        expectedRecord2.put("key1", "value5");
+        expectedRecord2.put("key2", "value6");
+        expected.put("value5", expectedRecord2);
+
+        Stream<String> input = Stream.of("-----------", "key1 key2", "value1 value2", "-----------", "value5 value6");
+
+        Map<String, Map<String, String>> result = ScriptingParser.parseTable(input, "key1", ScriptingParser.WHITESPACE_REGEX, "fake", "$");
+
+        assertEquals(expected, result);
+    }
+
+    @Test(expected = XenonException.class)
+    public void test06b_parseTable_NoLines_Exception() throws Exception {
+        ScriptingParser.parseTable(Stream.empty(), "key1", ScriptingParser.WHITESPACE_REGEX, "fake");
+    }
+
     @Test
     public void test06c_parseTable_InputWithSuffixes_SuffixesRemoved() throws Exception {
         Map<String, Map<String, String>> expected = new HashMap<>();
@@ -16,19 +16,65 @@
 package nl.esciencecenter.xenon.adaptors.schedulers;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.schedulers.JobStatus;
+import nl.esciencecenter.xenon.schedulers.NoSuchJobException;
 import nl.esciencecenter.xenon.schedulers.NoSuchQueueException;
 import nl.esciencecenter.xenon.schedulers.QueueStatus;
 
 public class ScriptingSchedulerTest {
 
+    class PollingScheduler extends MockScriptingScheduler {
+
+        final Map<String, String> states = new ConcurrentHashMap<>();
+        final AtomicInteger bulkCalls = new AtomicInteger();
+
+        PollingScheduler() throws XenonException {
+            super(createProperties());
+        }
+
+        @Override
+        public JobStatus getJobStatus(String jobIdentifier) throws XenonException {
+            String state = states.get(jobIdentifier);
+
+            if (state == null) {
+                throw new NoSuchJobException("TEST", "Unknown job " + jobIdentifier);
+            }
+
+            return new JobStatusImplementation(jobIdentifier, null, state, null, null, "RUNNING".equals(state), "DONE".equals(state), null);
+        }
+
+        @Override
+        public JobStatus[] getJobStatuses(String... jobIdentifiers) throws XenonException {
+            bulkCalls.incrementAndGet();
+            return super.getJobStatuses(jobIdentifiers);
+        }
+    }
+
+    private static Map<String, String> createProperties() {
+        Map<String, String> p = new HashMap<>();
+        p.put(MockScriptingScheduler.SCRIPTING_POLLING_DELAY, "20");
+        return p;
+    }
+
     @Test
     public void test_translateError() throws XenonException {
 
@@ -45,6 +91,32 @@ public class ScriptingSchedulerTest {
         }
     }
 
+    @Test
+    public void test_runCommand_direct() throws XenonException {
+
+        MockScriptingScheduler ss = new MockScriptingScheduler();
+
+        RemoteCommandRunner r = ss.runCommand("some input", "cat");
+
+        assertTrue(r.success());
+        assertEquals("some input", r.getStdout());
+
+        // the command was not submitted as a job to the local scheduler
+        assertEquals(0, ss.subScheduler.getJobs().length);
+    }
+
+    @Test
+    public void test_runCommand_directExitCode() throws XenonException {
+
+        MockScriptingScheduler ss = new MockScriptingScheduler();
+
+        RemoteCommandRunner r = ss.runCommand(null, "sh", "-c", "echo error >&2; exit 3");
+
+        assertFalse(r.success());
+        assertEquals(3, r.getExitCode());
+        assertEquals("error\n", r.getStderr());
+    }
+
     @Test
     public void test_getQueueStatuses_noSuchQueue() throws XenonException {
 
@@ -59,4 +131,161 @@ public class ScriptingSchedulerTest {
 
     }
 
+    @Test
+    public void test_waitUntilDone_sharedPoller() throws Exception {
+
+        PollingScheduler ss = new PollingScheduler();
+
+        int jobs = 10;
+
+        List<Thread> threads = new ArrayList<>();
+        JobStatus[] result = new JobStatus[jobs];
+
+        for (int i = 0; i < jobs; i++) {
+            String id = "job" + i;
+            ss.states.put(id, "PENDING");
+
+            int index = i;
+
+            Thread t = new Thread(() -> {
+                try {
+                    result[index] = ss.waitUntilDone(id, 10000);
+                } catch (XenonException e) {
+                    // result remains null
+                }
+            });
+
+            threads.add(t);
+            t.start();
+        }
+
+        Thread.sleep(200);
+
+        for (int i = 0; i < jobs; i++) {
+            ss.states.put("job" + i, "DONE");
+        }
+
+        for (Thread t : threads) {
+            t.join(10000);
+        }
+
+        for (JobStatus status : result) {
+            assertTrue(status.isDone());
+        }
+
+        // All waiters share a single bulk poll, so far fewer polls are needed than one per waiter per delay.
+        assertTrue(ss.bulkCalls.get() < 30);
+        ss.close();
+    }
+
+    @Test
+    public void test_waitUntilRunning_timeout() throws XenonException {
+
+        PollingScheduler ss = new PollingScheduler();
+        ss.states.put("job", "PENDING");
+
+        JobStatus status = ss.waitUntilRunning("job", 100);
+
+        assertFalse(status.isRunning());
+        assertEquals("PENDING", status.getState());
+        ss.close();
+    }
+
+    @Test
+    public void test_waitUntilRunning_running() throws XenonException {
+
+        PollingScheduler ss = new PollingScheduler();
+        ss.states.put("job", "PENDING");
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // ignored
+            }
+            ss.states.put("job", "RUNNING");
+        }).start();
+
+        JobStatus status = ss.waitUntilRunning("job", 10000);
+
+        assertTrue(status.isRunning());
+        ss.close();
+    }
+
+    @Test(expected = NoSuchJobException.class)
+    public void test_waitUntilDone_jobDisappears() throws XenonException {
+
+        PollingScheduler ss = new PollingScheduler();
+        ss.states.put("job", "RUNNING");
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // ignored
+            }
+            ss.states.remove("job");
+        }).start();
+
+        ss.waitUntilDone("job", 10000);
+    }
+
+    @Test
+    public void test_onStateChange() throws Exception {
+
+        PollingScheduler ss = new PollingScheduler();
+        ss.states.put("job", "PENDING");
+
+        List<String> states = new CopyOnWriteArrayList<>();
+
+        ss.onStateChange("job", status -> states.add(status.getState()));
+
+        CompletableFuture<JobStatus> future = ss.whenDone("job");
+
+        Thread.sleep(100);
+        ss.states.put("job", "RUNNING");
+        Thread.sleep(100);
+        ss.states.put("job", "DONE");
+
+        JobStatus status = future.get(10000, TimeUnit.MILLISECONDS);
+
+        assertTrue(status.isDone());
+
+        // the listener is notified before the future completes, as it was registered first
+        assertEquals(Arrays.asList("PENDING", "RUNNING", "DONE"), states);
+        ss.close();
+    }
+
+    @Test
+    public void test_whenDone_jobDisappears() throws Exception {
+
+        PollingScheduler ss = new PollingScheduler();
+        ss.states.put("job", "RUNNING");
+
+        CompletableFuture<JobStatus> future = ss.whenDone("job");
+
+        ss.states.remove("job");
+
+        try {
+            future.get(10000, TimeUnit.MILLISECONDS);
+            fail("Expected an exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NoSuchJobException);
+        }
+
+        ss.close();
+    }
+
+    @Test
+    public void test_whenDone_close() throws Exception {
+
+        PollingScheduler ss = new PollingScheduler();
+        ss.states.put("job", "RUNNING");
+
+        CompletableFuture<JobStatus> future = ss.whenDone("job");
+
+        ss.close();
+
+        assertTrue(future.isCompletedExceptionally());
+    }
 }
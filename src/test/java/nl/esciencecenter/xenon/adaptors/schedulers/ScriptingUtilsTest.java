@@ -486,18 +486,4 @@ public class ScriptingUtilsTest {
         assertEquals("Hello,World", result);
     }
 
-    @Test
-    public void test_protectAgainstShell() throws XenonException {
-        String result = ScriptingUtils.protectAgainstShellMetas("hello");
-        assertNotNull(result);
-        assertEquals("'hello'", result);
-    }
-
-    @Test
-    public void test_protectAgainstShellWithMeta() throws XenonException {
-        String result = ScriptingUtils.protectAgainstShellMetas("hello's");
-        assertNotNull(result);
-        assertEquals("'hello'\\''s'", result);
-    }
-
 }
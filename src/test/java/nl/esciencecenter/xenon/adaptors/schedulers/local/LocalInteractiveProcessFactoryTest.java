@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers.local;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.adaptors.schedulers.RemoteCommandRunner;
+
+public class LocalInteractiveProcessFactoryTest {
+
+    @Test
+    public void test_execute() throws Exception {
+        LocalInteractiveProcessFactory f = new LocalInteractiveProcessFactory();
+
+        try (RemoteCommandRunner r = f.execute(null, null, "echo", "hello").get()) {
+            assertEquals(0, r.getExitCode());
+            assertEquals("hello\n", r.getStdout());
+            assertEquals("", r.getStderr());
+        }
+    }
+
+    @Test
+    public void test_execute_outputPastMemoryLimit() throws Exception {
+        LocalInteractiveProcessFactory f = new LocalInteractiveProcessFactory(1000);
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 10000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+
+        try (RemoteCommandRunner r = f.execute(null, sb.toString(), "cat").get()) {
+            assertEquals(0, r.getExitCode());
+
+            try (Stream<String> lines = r.getStdoutLines()) {
+                List<String> result = lines.collect(Collectors.toList());
+                assertEquals(10000, result.size());
+                assertEquals("line 9999", result.get(9999));
+            }
+
+            assertEquals(sb.toString(), r.getStdout());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.schedulers.slurm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.InvalidPropertyException;
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.schedulers.RemoteCommandRunner;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.schedulers.JobDescription;
+
+public class SlurmSchedulerTest {
+
+    // Answers the commands of a Slurm scheduler without running them, and numbers each submitted job script starting at 100.
+    static class FakeSlurmScheduler extends SlurmScheduler {
+
+        // Not initialized in a field initializer, as runCommand is already called by the super constructor.
+        private List<String> submitScripts;
+        private int nextJobID;
+
+        FakeSlurmScheduler(Map<String, String> properties) throws XenonException {
+            super("0", "local://", new DefaultCredential(), new SlurmSchedulerAdaptor().getSupportedProperties(), properties);
+        }
+
+        @Override
+        public RemoteCommandRunner runCommand(String stdin, String executable, String... arguments) throws XenonException {
+
+            if ("scontrol".equals(executable)) {
+                return new RemoteCommandRunner(0, "SLURM_VERSION = 17.02.1\nAccountingStorageType = accounting_storage/none\n", "");
+            }
+
+            if ("sinfo".equals(executable)) {
+                return new RemoteCommandRunner(0, "batch*\n", "");
+            }
+
+            if (submitScripts == null) {
+                submitScripts = new ArrayList<>();
+                nextJobID = 100;
+            }
+
+            submitScripts.add(stdin);
+
+            StringBuilder out = new StringBuilder();
+
+            for (String line : stdin.split("\n")) {
+                if (line.startsWith("sbatch ")) {
+                    out.append("Submitted batch job ").append(nextJobID++).append('\n');
+                }
+            }
+
+            return new RemoteCommandRunner(0, out.toString(), "");
+        }
+    }
+
+    private static JobDescription description(String executable, String argument) {
+        JobDescription d = new JobDescription();
+        d.setExecutable(executable);
+        d.setArguments(argument);
+        return d;
+    }
+
+    private static int count(String text, String pattern) {
+        int result = 0;
+
+        for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) {
+            result++;
+        }
+
+        return result;
+    }
+
+    @Test
+    public void test_submitBatchJobs_empty_runsNothing() throws XenonException {
+        try (FakeSlurmScheduler s = new FakeSlurmScheduler(new HashMap<>())) {
+            assertEquals(0, s.submitBatchJobs().length);
+            assertEquals(null, s.submitScripts);
+        }
+    }
+
+    @Test
+    public void test_submitBatchJobs_splitsArrays() throws XenonException {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(SlurmSchedulerAdaptor.MAX_ARRAY_SIZE_PROPERTY, "3");
+
+        try (FakeSlurmScheduler s = new FakeSlurmScheduler(properties)) {
+
+            // Seven descriptions that only differ in their arguments, with another one in between.
+            JobDescription[] descriptions = new JobDescription[] { description("a", "0"), description("a", "1"), description("b", "0"),
+                    description("a", "2"), description("a", "3"), description("a", "4"), description("a", "5"), description("a", "6") };
+
+            String[] result = s.submitBatchJobs(descriptions);
+
+            // The group of seven becomes two arrays of three and a single job, followed by the other job.
+            assertArrayEquals(new String[] { "100_0", "100_1", "103", "100_2", "101_0", "101_1", "101_2", "102" }, result);
+
+            assertEquals(1, s.submitScripts.size());
+
+            String script = s.submitScripts.get(0);
+
+            assertEquals(4, count(script, "sbatch <<"));
+            assertEquals(2, count(script, "#SBATCH --array=0-2\n"));
+            assertFalse(script.contains("--array=0-6"));
+
+            // The tasks of each array are numbered from 0.
+            assertFalse(script.contains("3)\n"));
+        }
+    }
+
+    @Test
+    public void test_submitBatchJobs_defaultArraySize() throws XenonException {
+        try (FakeSlurmScheduler s = new FakeSlurmScheduler(new HashMap<>())) {
+
+            JobDescription[] descriptions = new JobDescription[1001];
+
+            for (int i = 0; i < descriptions.length; i++) {
+                descriptions[i] = description("a", Integer.toString(i));
+            }
+
+            String[] result = s.submitBatchJobs(descriptions);
+
+            assertEquals("100_0", result[0]);
+            assertEquals("100_999", result[999]);
+            assertEquals("101", result[1000]);
+            assertEquals(1, count(s.submitScripts.get(0), "#SBATCH --array=0-999\n"));
+        }
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_maxArraySize_invalid() throws XenonException {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(SlurmSchedulerAdaptor.MAX_ARRAY_SIZE_PROPERTY, "0");
+        new FakeSlurmScheduler(properties);
+    }
+}
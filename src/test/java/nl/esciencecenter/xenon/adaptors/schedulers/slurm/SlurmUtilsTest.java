@@ -22,6 +22,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -894,4 +895,37 @@ public class SlurmUtilsTest {
 
         assertEquals("AAP,NOOT", result);
     }
+
+    @Test
+    public void test_generateArray() {
+        Path entry = new Path("/entry");
+
+        JobDescription d0 = new JobDescription();
+        d0.setExecutable("exec");
+        d0.setArguments("a");
+
+        JobDescription d1 = new JobDescription(d0);
+        d1.setArguments("b");
+        d1.addEnvironment("KEY", "value");
+
+        String expected = "#!/bin/sh\n" + "#SBATCH --job-name='xenon'\n" + "#SBATCH --ntasks=1\n" + "#SBATCH --cpus-per-task=1\n" + "#SBATCH --time=15\n"
+                + "#SBATCH --output=/dev/null\n" + "#SBATCH --error=/dev/null\n" + "#SBATCH --array=0-1\n" + "\n" + "case \"$SLURM_ARRAY_TASK_ID\" in\n"
+                + "0)\n" + "    exec 'a'\n" + "    ;;\n" + "1)\n" + "    export KEY=\"value\"\n" + "    exec 'b'\n" + "    ;;\n" + "esac\n";
+
+        String result = SlurmUtils.generateArray(Arrays.asList(d0, d1), entry, 15);
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void test_generateSubmitScript() {
+        UUID tag = new UUID(0, 42);
+
+        String expected = "set -e\n" + "sbatch <<'XENON_00000000_0000_0000_0000_00000000002a'\n" + "script0\n" + "XENON_00000000_0000_0000_0000_00000000002a\n"
+                + "sbatch <<'XENON_00000000_0000_0000_0000_00000000002a'\n" + "script1\n" + "XENON_00000000_0000_0000_0000_00000000002a\n";
+
+        String result = SlurmUtils.generateSubmitScript(Arrays.asList("script0\n", "script1\n"), tag);
+
+        assertEquals(expected, result);
+    }
 }
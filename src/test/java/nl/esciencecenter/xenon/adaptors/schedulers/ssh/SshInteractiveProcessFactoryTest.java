@@ -20,11 +20,18 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.schedulers.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.schedulers.SchedulerClosedException;
 import nl.esciencecenter.xenon.schedulers.JobDescription;
 
@@ -84,6 +91,49 @@ public class SshInteractiveProcessFactoryTest {
         p.createInteractiveProcess(desc, "workdir", "JOB-42", 10000L);
     }
 
+    @Test(expected = SchedulerClosedException.class)
+    public void test_executeFailsClosed() throws XenonException {
+
+        MockSSHConnection conn = new MockSSHConnection();
+        conn.setSession(new MockClientSession(false));
+        SshInteractiveProcessFactory p = new SshInteractiveProcessFactory(conn);
+        p.close();
+
+        p.execute(null, null, "exec");
+    }
+
+    @Test
+    public void test_execute_outputPastMemoryLimit() throws Exception {
+        MockSSHConnection conn = new MockSSHConnection();
+        conn.setSession(new MockClientSession(false));
+        SshInteractiveProcessFactory p = new SshInteractiveProcessFactory(conn, 1000);
+
+        CompletableFuture<RemoteCommandRunner> future = p.execute(null, null, "exec");
+
+        MockChannelExec e = (MockChannelExec) ((MockClientSession) conn.getSession()).exec;
+
+        // Output as delivered by the I/O threads of the session, in many small writes.
+        OutputStream out = e.getOut();
+
+        for (int i = 0; i < 10000; i++) {
+            out.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertFalse(future.isDone());
+
+        e.close(true);
+
+        try (RemoteCommandRunner r = future.get()) {
+            assertEquals(42, r.getExitCode());
+
+            try (Stream<String> lines = r.getStdoutLines()) {
+                List<String> result = lines.collect(Collectors.toList());
+                assertEquals(10000, result.size());
+                assertEquals("line 9999", result.get(9999));
+            }
+        }
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void test_createProcessFailsNullDescription() throws XenonException {
         MockSSHConnection conn = new MockSSHConnection();
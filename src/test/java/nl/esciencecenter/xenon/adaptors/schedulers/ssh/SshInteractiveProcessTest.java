@@ -30,8 +30,14 @@ import nl.esciencecenter.xenon.schedulers.JobDescription;
 
 public class SshInteractiveProcessTest {
 
+    private static MockSSHConnection connect(MockClientSession session) {
+        MockSSHConnection connection = new MockSSHConnection();
+        connection.setSession(session);
+        return connection;
+    }
+
     @Test(expected = IllegalArgumentException.class)
-    public void test_createFailsSessionNull() throws XenonException {
+    public void test_createFailsConnectionNull() throws XenonException {
 
         JobDescription desc = new JobDescription();
         desc.setWorkingDirectory("workdir");
@@ -49,7 +55,7 @@ public class SshInteractiveProcessTest {
     @Test(expected = IllegalArgumentException.class)
     public void test_createFailsJobNull() throws XenonException {
         MockClientSession session = new MockClientSession(false);
-        new SshInteractiveProcess(session, null, "JOB-42", 10000L);
+        new SshInteractiveProcess(connect(session), null, "JOB-42", 10000L);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -82,7 +88,7 @@ public class SshInteractiveProcessTest {
         desc.setArguments(new String[] { "a", "b", "c" });
 
         MockClientSession session = new MockClientSession(false, true);
-        new SshInteractiveProcess(session, desc, "JOB-42", 10000L);
+        new SshInteractiveProcess(connect(session), desc, "JOB-42", 10000L);
     }
 
     @Test
@@ -98,7 +104,7 @@ public class SshInteractiveProcessTest {
         desc.setArguments(new String[] { "a", "b", "c" });
 
         MockClientSession session = new MockClientSession(false);
-        SshInteractiveProcess p = new SshInteractiveProcess(session, desc, "JOB-42", 10000L);
+        SshInteractiveProcess p = new SshInteractiveProcess(connect(session), desc, "JOB-42", 10000L);
 
         MockChannelExec e = (MockChannelExec) session.exec;
 
@@ -121,7 +127,7 @@ public class SshInteractiveProcessTest {
         desc.setArguments(new String[] { "a", "b", "c" });
 
         MockClientSession session = new MockClientSession(false);
-        new SshInteractiveProcess(session, desc, "JOB-42", 10000L);
+        new SshInteractiveProcess(connect(session), desc, "JOB-42", 10000L);
 
         MockChannelExec e = (MockChannelExec) session.exec;
 
@@ -143,7 +149,7 @@ public class SshInteractiveProcessTest {
         desc.setArguments(new String[] { "a", "b", "c" });
 
         MockClientSession session = new MockClientSession(false);
-        SshInteractiveProcess p = new SshInteractiveProcess(session, desc, "JOB-42", 10000L);
+        SshInteractiveProcess p = new SshInteractiveProcess(connect(session), desc, "JOB-42", 10000L);
 
         assertFalse(p.isDone());
     }
@@ -160,7 +166,7 @@ public class SshInteractiveProcessTest {
         desc.setArguments(new String[] { "a", "b", "c" });
 
         MockClientSession session = new MockClientSession(false);
-        SshInteractiveProcess p = new SshInteractiveProcess(session, desc, "JOB-42", 10000L);
+        SshInteractiveProcess p = new SshInteractiveProcess(connect(session), desc, "JOB-42", 10000L);
 
         session.exec.close();
 
@@ -179,7 +185,7 @@ public class SshInteractiveProcessTest {
         desc.setArguments(new String[] { "a", "b", "c" });
 
         MockClientSession session = new MockClientSession(false);
-        SshInteractiveProcess p = new SshInteractiveProcess(session, desc, "JOB-42", 10000L);
+        SshInteractiveProcess p = new SshInteractiveProcess(connect(session), desc, "JOB-42", 10000L);
 
         assertNotNull(session.exec);
 
@@ -203,7 +209,7 @@ public class SshInteractiveProcessTest {
         desc.setArguments(new String[] { "a", "b", "c" });
 
         MockClientSession session = new MockClientSession(false);
-        SshInteractiveProcess p = new SshInteractiveProcess(session, desc, "JOB-42", 10000L);
+        SshInteractiveProcess p = new SshInteractiveProcess(connect(session), desc, "JOB-42", 10000L);
         assertFalse(p.isDone());
 
         p.destroy();
@@ -223,7 +229,7 @@ public class SshInteractiveProcessTest {
         desc.setArguments(new String[] { "a", "b", "c" });
 
         MockClientSession session = new MockClientSession(false);
-        SshInteractiveProcess p = new SshInteractiveProcess(session, desc, "JOB-42", 10000L);
+        SshInteractiveProcess p = new SshInteractiveProcess(connect(session), desc, "JOB-42", 10000L);
 
         assertNotNull(session.exec);
         MockChannelExec e = (MockChannelExec) session.exec;
@@ -248,7 +254,7 @@ public class SshInteractiveProcessTest {
         desc.setArguments(new String[] { "a", "b", "c" });
 
         MockClientSession session = new MockClientSession(false);
-        SshInteractiveProcess p = new SshInteractiveProcess(session, desc, "JOB-42", 10000L);
+        SshInteractiveProcess p = new SshInteractiveProcess(connect(session), desc, "JOB-42", 10000L);
 
         assertNotNull(session.exec);
         MockChannelExec e = (MockChannelExec) session.exec;
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.common.PropertyResolver;
+import org.apache.sshd.common.channel.IoWriteFutureImpl;
+import org.apache.sshd.common.io.IoHandler;
+import org.apache.sshd.common.io.IoOutputStream;
+import org.apache.sshd.common.io.IoSession;
+import org.apache.sshd.common.io.IoWriteFuture;
+import org.apache.sshd.common.util.Readable;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.common.util.closeable.AbstractCloseable;
+import org.apache.sshd.common.util.net.SshdSocketAddress;
+import org.junit.Test;
+
+public class ChannelIoSessionTest {
+
+    // Records the packets written to the channel. Writes complete immediately, unless hold is set.
+    static class FakeOutput extends AbstractCloseable implements IoOutputStream {
+        final List<byte[]> written = Collections.synchronizedList(new ArrayList<>());
+        final List<IoWriteFutureImpl> pending = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean hold = false;
+        volatile boolean fail = false;
+        volatile int concurrent = 0;
+        volatile int maxConcurrent = 0;
+
+        @Override
+        public synchronized IoWriteFuture writePacket(Buffer buffer) throws IOException {
+            byte[] data = new byte[buffer.available()];
+            buffer.getRawBytes(data);
+            written.add(data);
+
+            IoWriteFutureImpl f = new IoWriteFutureImpl(this, buffer);
+
+            if (fail) {
+                f.setValue(new IOException("Write failed"));
+            } else if (hold) {
+                concurrent++;
+                maxConcurrent = Math.max(maxConcurrent, concurrent);
+                pending.add(f);
+            } else {
+                f.setValue(Boolean.TRUE);
+            }
+
+            return f;
+        }
+
+        // Completes the oldest pending write.
+        void completeNext() {
+            IoWriteFutureImpl f;
+
+            synchronized (this) {
+                f = pending.remove(0);
+                concurrent--;
+            }
+
+            f.setValue(Boolean.TRUE);
+        }
+    }
+
+    static class FakeChannel extends GatewayChannel {
+        final FakeOutput out = new FakeOutput();
+
+        FakeChannel() {
+            super(new SshdSocketAddress("target", 22));
+            getLocalWindow().init(1024 * 1024, 32 * 1024, PropertyResolver.EMPTY);
+        }
+
+        @Override
+        public IoOutputStream getAsyncIn() {
+            return out;
+        }
+    }
+
+    static class FakeHandler implements IoHandler {
+        final List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean closed = false;
+        volatile boolean lockHeld = false;
+        GatewayChannel channel;
+
+        @Override
+        public void sessionCreated(IoSession session) {
+            // nothing to do
+        }
+
+        @Override
+        public void sessionClosed(IoSession session) {
+            closed = true;
+        }
+
+        @Override
+        public void exceptionCaught(IoSession session, Throwable cause) {
+            // nothing to do
+        }
+
+        @Override
+        public void messageReceived(IoSession session, Readable message) {
+            if (channel != null && Thread.holdsLock(channel)) {
+                lockHeld = true;
+            }
+
+            byte[] data = new byte[message.available()];
+            message.getRawBytes(data, 0, data.length);
+            received.add(data);
+        }
+    }
+
+    private static Buffer packet(int value) {
+        return new ByteArrayBuffer(new byte[] { (byte) value });
+    }
+
+    @Test
+    public void test_writesInOrder() throws Exception {
+        FakeChannel channel = new FakeChannel();
+        ChannelIoSession session = new ChannelIoSession(null, new FakeHandler(), channel);
+
+        channel.out.hold = true;
+
+        IoWriteFuture f0 = session.writePacket(packet(0));
+        IoWriteFuture f1 = session.writePacket(packet(1));
+        IoWriteFuture f2 = session.writePacket(packet(2));
+
+        // Only one write is handed to the channel at a time.
+        assertEquals(1, channel.out.written.size());
+        assertFalse(f0.isDone());
+
+        channel.out.completeNext();
+        assertTrue(f0.isWritten());
+        assertFalse(f1.isDone());
+
+        channel.out.hold = false;
+        channel.out.completeNext();
+
+        assertTrue(f1.isWritten());
+        assertTrue(f2.isWritten());
+        assertEquals(1, channel.out.maxConcurrent);
+        assertEquals(3, channel.out.written.size());
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(new byte[] { (byte) i }, channel.out.written.get(i));
+        }
+    }
+
+    @Test
+    public void test_writeFailureFailsQueuedAndCloses() throws Exception {
+        FakeChannel channel = new FakeChannel();
+        FakeHandler handler = new FakeHandler();
+        ChannelIoSession session = new ChannelIoSession(null, handler, channel);
+
+        channel.out.hold = true;
+
+        IoWriteFuture f0 = session.writePacket(packet(0));
+        IoWriteFuture f1 = session.writePacket(packet(1));
+
+        IoWriteFutureImpl first = channel.out.pending.remove(0);
+        first.setValue(new IOException("Bang"));
+
+        assertFalse(f0.isWritten());
+        assertNotNull(f0.getException());
+        assertFalse(f1.isWritten());
+        assertNotNull(f1.getException());
+        assertTrue(session.isClosing());
+        assertTrue(handler.closed);
+        assertEquals(1, channel.out.written.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_writeAfterClose() throws Exception {
+        FakeChannel channel = new FakeChannel();
+        ChannelIoSession session = new ChannelIoSession(null, new FakeHandler(), channel);
+
+        session.close(true);
+        session.writePacket(packet(0));
+    }
+
+    @Test
+    public void test_sessionCloseClosesChannel() {
+        FakeChannel channel = new FakeChannel();
+        FakeHandler handler = new FakeHandler();
+        ChannelIoSession session = new ChannelIoSession(null, handler, channel);
+        channel.attach(session);
+
+        session.close(true);
+
+        assertTrue(channel.isClosing());
+        assertTrue(handler.closed);
+    }
+
+    @Test
+    public void test_channelCloseClosesSession() {
+        FakeChannel channel = new FakeChannel();
+        FakeHandler handler = new FakeHandler();
+        ChannelIoSession session = new ChannelIoSession(null, handler, channel);
+        channel.attach(session);
+
+        channel.close(true);
+
+        assertTrue(session.isClosing());
+        assertTrue(handler.closed);
+    }
+
+    @Test
+    public void test_receivedInOrderWithoutLock() throws Exception {
+        FakeChannel channel = new FakeChannel();
+        FakeHandler handler = new FakeHandler();
+        handler.channel = channel;
+        ChannelIoSession session = new ChannelIoSession(null, handler, channel);
+
+        // Data that arrives before the session is attached is kept.
+        channel.doWriteData(new byte[] { 0 }, 0, 1);
+        channel.doWriteData(new byte[] { 1 }, 0, 1);
+
+        assertTrue(handler.received.isEmpty());
+
+        channel.attach(session);
+        channel.doWriteData(new byte[] { 9, 2, 9 }, 1, 1);
+
+        assertEquals(3, handler.received.size());
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(new byte[] { (byte) i }, handler.received.get(i));
+        }
+
+        assertFalse(handler.lockHeld);
+    }
+
+    @Test(timeout = 10000)
+    public void test_writerWaitsWhenQueueFull() throws Exception {
+        FakeChannel channel = new FakeChannel();
+        ChannelIoSession session = new ChannelIoSession(null, new FakeHandler(), channel);
+
+        channel.out.hold = true;
+
+        IoWriteFuture big = session.writePacket(new ByteArrayBuffer(new byte[ChannelIoSession.MAX_QUEUED_BYTES]));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<IoWriteFuture> next = executor.submit(() -> session.writePacket(packet(1)));
+
+            Thread.sleep(100);
+            assertFalse(next.isDone());
+
+            channel.out.completeNext();
+
+            assertTrue(big.isWritten());
+            assertNotNull(next.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void test_receiverDoesNotWaitWhenQueueFull() throws Exception {
+        FakeChannel channel = new FakeChannel();
+        List<IoWriteFuture> replies = new ArrayList<>();
+
+        ChannelIoSession[] session = new ChannelIoSession[1];
+
+        // A handler that writes a reply for each message it receives, like a session does during key exchange.
+        FakeHandler handler = new FakeHandler() {
+            @Override
+            public void messageReceived(IoSession s, Readable message) {
+                try {
+                    replies.add(session[0].writePacket(packet(1)));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        session[0] = new ChannelIoSession(null, handler, channel);
+        channel.attach(session[0]);
+
+        channel.out.hold = true;
+        session[0].writePacket(new ByteArrayBuffer(new byte[ChannelIoSession.MAX_QUEUED_BYTES]));
+
+        channel.doWriteData(new byte[] { 0 }, 0, 1);
+
+        assertEquals(1, replies.size());
+        assertFalse(replies.get(0).isDone());
+    }
+}
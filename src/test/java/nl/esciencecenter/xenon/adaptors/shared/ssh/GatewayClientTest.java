@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.command.AbstractCommandSupport;
+import org.apache.sshd.server.forward.AcceptAllForwardingFilter;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.esciencecenter.xenon.credentials.PasswordCredential;
+
+public class GatewayClientTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SshServer server;
+
+    // A command that writes its own command line to its output.
+    static class EchoCommand extends AbstractCommandSupport {
+        EchoCommand(String command) {
+            super(command, null);
+        }
+
+        @Override
+        public void run() {
+            try {
+                getOutputStream().write(getCommand().getBytes(StandardCharsets.UTF_8));
+                getOutputStream().flush();
+                onExit(0);
+            } catch (Exception e) {
+                onExit(1, e.getMessage());
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = SshServer.setUpDefaultServer();
+        server.setHost("localhost");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(folder.newFile("hostkey").toPath()));
+        server.setPasswordAuthenticator((user, password, session) -> "secret".equals(password));
+        server.setForwardingFilter(AcceptAllForwardingFilter.INSTANCE);
+        server.setCommandFactory((channel, command) -> new EchoCommand(command));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(true);
+    }
+
+    private String run(SSHConnection connection, String command) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ChannelExec channel = connection.createExecChannel(command)) {
+            channel.setOut(out);
+            channel.open().verify(10000);
+            channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), 10000);
+        }
+
+        return out.toString(StandardCharsets.UTF_8.name());
+    }
+
+    @Test(timeout = 60000)
+    public void test_connectTwoHops() throws Exception {
+        String hop = "localhost:" + server.getPort();
+
+        SshClient client = SSHUtil.createSSHClient(false, false, false, false, false);
+
+        // Both gateways and the destination are the same server, which forwards to itself.
+        SSHConnection connection = SSHUtil.connect("test", client, hop + " via:" + hop + " via:" + hop, new PasswordCredential("user", "secret".toCharArray()),
+                10000);
+
+        try {
+            assertTrue(connection.isOpen());
+            assertEquals("hello", run(connection, "hello"));
+            assertEquals(3, server.getActiveSessions().size());
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.shared.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.session.ClientSession;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.credentials.PasswordCredential;
+
+public class SSHConnectionPoolTest {
+
+    private static final String LOCATION = "host";
+    private static final String SERVER = "host:22";
+
+    class FakeClient extends SshClient {
+        boolean stopped = false;
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+
+    // A session that is always open, and creates exec channels without opening them.
+    private static ClientSession createSession() {
+        return (ClientSession) Proxy.newProxyInstance(ClientSession.class.getClassLoader(), new Class<?>[] { ClientSession.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "isOpen":
+                        return true;
+                    case "createExecChannel":
+                        return new ChannelExec((String) args[0], null, Collections.emptyMap());
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "FakeSession";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    class Factory implements SSHConnectionPool.ClientFactory, SSHConnectionPool.Connector {
+        List<FakeClient> clients = new ArrayList<>();
+        List<SSHConnection> connections = new ArrayList<>();
+        int failures = 0;
+        boolean withSession = false;
+
+        @Override
+        public SshClient create(List<Boolean> options) {
+            FakeClient c = new FakeClient();
+            clients.add(c);
+            return c;
+        }
+
+        @Override
+        public SSHConnection connect(String adaptorName, SshClient client, String location, Credential credential, long timeout) throws XenonException {
+            if (failures > 0) {
+                failures--;
+                throw new XenonException(adaptorName, "Connection failed");
+            }
+
+            SSHConnection c = new SSHConnection(client, 0, false);
+
+            if (withSession) {
+                c.setSession(createSession());
+            }
+
+            connections.add(c);
+            return c;
+        }
+    }
+
+    private SSHConnectionPool createPool(Factory f, int maxConnections, int maxShares, long idleTimeout) {
+        return new SSHConnectionPool(maxConnections, maxShares, idleTimeout, f, f);
+    }
+
+    private SSHConnection connect(SSHConnectionPool pool, String location, Credential credential, long timeout) throws XenonException {
+        return pool.connect("test", location, credential, true, true, true, false, false, timeout);
+    }
+
+    private SSHConnection connect(SSHConnectionPool pool, Credential credential, long timeout) throws XenonException {
+        return connect(pool, LOCATION, credential, timeout);
+    }
+
+    private SSHConnection connect(SSHConnectionPool pool) throws XenonException {
+        return connect(pool, new DefaultCredential("user"), 1000);
+    }
+
+    @Test
+    public void test_shared() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 4, 8, 60000);
+
+        SSHConnection c0 = connect(pool);
+        SSHConnection c1 = connect(pool);
+
+        assertEquals(1, f.connections.size());
+        assertEquals(1, f.clients.size());
+        assertTrue(c0.isOpen());
+        assertTrue(c1.isOpen());
+    }
+
+    @Test
+    public void test_leaseClose() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 4, 8, 60000);
+
+        SSHConnection c0 = connect(pool);
+        SSHConnection c1 = connect(pool);
+
+        c0.close();
+        c0.close();
+
+        assertTrue(c0.isClosed());
+        assertTrue(c1.isOpen());
+        assertTrue(f.connections.get(0).isOpen());
+    }
+
+    @Test
+    public void test_leaseCloseClosesItsChannels() throws Exception {
+        Factory f = new Factory();
+        f.withSession = true;
+        SSHConnectionPool pool = createPool(f, 4, 8, 60000);
+
+        SSHConnection c0 = connect(pool);
+        SSHConnection c1 = connect(pool);
+
+        ChannelExec e0 = c0.createExecChannel("ls");
+        ChannelExec e1 = c1.createExecChannel("ls");
+
+        c0.close();
+
+        assertTrue(e0.isClosing() || e0.isClosed());
+        assertFalse(e1.isClosing() || e1.isClosed());
+        assertTrue(c1.isOpen());
+        assertTrue(f.connections.get(0).isOpen());
+
+        c1.close();
+
+        assertTrue(e1.isClosing() || e1.isClosed());
+        // Kept in the pool until the idle timeout.
+        assertTrue(f.connections.get(0).isOpen());
+    }
+
+    @Test
+    public void test_closedChannelNotTracked() throws Exception {
+        Factory f = new Factory();
+        f.withSession = true;
+        SSHConnectionPool pool = createPool(f, 4, 8, 60000);
+
+        SSHConnection c0 = connect(pool);
+
+        ChannelExec e0 = c0.createExecChannel("ls");
+        e0.close(true);
+
+        c0.close();
+
+        assertTrue(e0.isClosed());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_channelAfterLeaseClose() throws Exception {
+        Factory f = new Factory();
+        f.withSession = true;
+        SSHConnectionPool pool = createPool(f, 4, 8, 60000);
+
+        SSHConnection c0 = connect(pool);
+        c0.close();
+        c0.createExecChannel("ls");
+    }
+
+    @Test
+    public void test_keptWhileIdle() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 4, 8, 60000);
+
+        connect(pool).close();
+        connect(pool).close();
+
+        assertEquals(1, f.connections.size());
+        assertTrue(f.connections.get(0).isOpen());
+        assertEquals(1, pool.getConnectionCount(SERVER));
+    }
+
+    @Test
+    public void test_closedWithoutIdleTimeout() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 4, 8, 0);
+
+        connect(pool).close();
+
+        assertTrue(f.connections.get(0).isClosed());
+        assertTrue(f.clients.get(0).stopped);
+        assertEquals(0, pool.getConnectionCount(SERVER));
+    }
+
+    @Test
+    public void test_closedAfterIdleTimeout() throws Exception {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 4, 8, 50);
+
+        connect(pool).close();
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (f.connections.get(0).isOpen() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(f.connections.get(0).isClosed());
+        assertEquals(0, pool.getConnectionCount(SERVER));
+    }
+
+    @Test
+    public void test_newConnectionWhenShared() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 2, 1, 60000);
+
+        connect(pool);
+        connect(pool);
+
+        assertEquals(2, f.connections.size());
+        assertEquals(1, f.clients.size());
+    }
+
+    @Test
+    public void test_maxConnections() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 2, 1, 60000);
+
+        connect(pool);
+        connect(pool);
+        SSHConnection c = connect(pool);
+
+        assertTrue(c.isOpen());
+        assertEquals(2, f.connections.size());
+        assertEquals(2, pool.getConnectionCount(SERVER));
+    }
+
+    @Test
+    public void test_credentialsNotShared() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 4, 8, 60000);
+
+        connect(pool, new DefaultCredential("user"), 1000);
+        connect(pool, new DefaultCredential("other"), 1000);
+
+        assertEquals(2, f.connections.size());
+    }
+
+    @Test
+    public void test_idleEvictedForOtherCredential() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 1, 8, 60000);
+
+        connect(pool, new DefaultCredential("user"), 1000).close();
+        SSHConnection c = connect(pool, new DefaultCredential("other"), 1000);
+
+        assertTrue(c.isOpen());
+        assertTrue(f.connections.get(0).isClosed());
+        assertEquals(1, pool.getConnectionCount(SERVER));
+    }
+
+    @Test
+    public void test_extraConnectionWhenNoneShareable() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 1, 8, 60000);
+
+        connect(pool, new DefaultCredential("user"), 1000);
+
+        // The connection in use cannot be shared with another credential, so the limit is exceeded rather than waiting for it.
+        SSHConnection c = connect(pool, new DefaultCredential("other"), 50);
+
+        assertTrue(c.isOpen());
+        assertEquals(2, f.connections.size());
+        assertEquals(2, pool.getConnectionCount(SERVER));
+
+        // Another lease with the first credential shares its connection again.
+        connect(pool, new DefaultCredential("user"), 1000);
+
+        assertEquals(2, f.connections.size());
+    }
+
+    @Test
+    public void test_equalCredentialsShared() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 1, 8, 60000);
+
+        connect(pool, new PasswordCredential("user", "secret".toCharArray()), 1000);
+        connect(pool, new PasswordCredential("user", "secret".toCharArray()), 1000);
+        connect(pool, new DefaultCredential(), 1000);
+        connect(pool, new DefaultCredential(), 1000);
+
+        assertEquals(2, f.connections.size());
+    }
+
+    @Test
+    public void test_equivalentLocationsShared() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 4, 8, 60000);
+
+        connect(pool, "host", new DefaultCredential("user"), 1000);
+        connect(pool, "host:22", new DefaultCredential("user"), 1000);
+        connect(pool, "host/some/dir", new DefaultCredential("user"), 1000);
+
+        assertEquals(1, f.connections.size());
+        assertEquals(1, pool.getConnectionCount(SERVER));
+
+        // Other ports and gateways lead to other servers.
+        connect(pool, "host:2222", new DefaultCredential("user"), 1000);
+        connect(pool, "host via:gateway", new DefaultCredential("user"), 1000);
+
+        assertEquals(3, f.connections.size());
+        assertEquals(1, pool.getConnectionCount("host:2222"));
+        assertEquals(1, pool.getConnectionCount("gateway:22, host:22"));
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_invalidLocation() throws XenonException {
+        connect(createPool(new Factory(), 4, 8, 60000), " via:host", new DefaultCredential("user"), 1000);
+    }
+
+    @Test
+    public void test_failureNotPooled() throws XenonException {
+        Factory f = new Factory();
+        f.failures = 1;
+        SSHConnectionPool pool = createPool(f, 1, 8, 60000);
+
+        try {
+            connect(pool);
+            fail("Expected exception");
+        } catch (XenonException e) {
+            assertEquals(0, pool.getConnectionCount(SERVER));
+            assertTrue(f.clients.get(0).stopped);
+        }
+
+        assertTrue(connect(pool).isOpen());
+    }
+
+    @Test
+    public void test_brokenConnectionReplaced() throws XenonException {
+        Factory f = new Factory();
+        SSHConnectionPool pool = createPool(f, 1, 8, 60000);
+
+        SSHConnection c0 = connect(pool);
+        f.connections.get(0).close();
+
+        assertFalse(c0.isOpen());
+
+        SSHConnection c1 = connect(pool);
+
+        assertTrue(c1.isOpen());
+        assertEquals(2, f.connections.size());
+
+        // Releasing the broken lease does not affect the new connection.
+        c0.close();
+        assertEquals(1, pool.getConnectionCount(SERVER));
+    }
+}
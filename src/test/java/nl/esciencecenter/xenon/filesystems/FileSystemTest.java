@@ -29,6 +29,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
@@ -447,6 +448,51 @@ public class FileSystemTest {
         assertTrue(list.isEmpty());
     }
 
+    @Test
+    public void test_listStreamWithDotDot() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry);
+
+        f.forceCreateDirectory(new Path("/test/."));
+        f.forceCreateDirectory(new Path("/test/.."));
+        f.forceCreateDirectory(new Path("/test/aap"));
+        f.forceCreateDirectory(new Path("/test/aap/."));
+        f.forceCreateDirectory(new Path("/test/aap/.."));
+        f.forceCreateDirectory(new Path("/test/aap/noot"));
+
+        f.createFile(new Path("/test/aap/noot/file0"));
+
+        List<PathAttributes> list = f.listStream(new Path("/test"), true).collect(Collectors.toList());
+
+        // Dot and DotDot should be removed here!
+        assertTrue(remove(list, "/test/aap/noot/file0"));
+        assertTrue(remove(list, "/test/aap/noot"));
+        assertTrue(remove(list, "/test/aap"));
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void test_listStreamNotRecursive() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry);
+
+        f.createDirectories(new Path("/test/aap/noot"));
+        f.createFile(new Path("/test/aap/file0"));
+
+        List<PathAttributes> list = f.listStream(new Path("/test/aap"), false).collect(Collectors.toList());
+
+        assertTrue(remove(list, "/test/aap/noot"));
+        assertTrue(remove(list, "/test/aap/file0"));
+        assertTrue(list.isEmpty());
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_listStreamFailsNotExists() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry);
+        f.listStream(new Path("/test/aap"), true);
+    }
+
     // assertPathExists
 
     @Test
@@ -842,6 +888,166 @@ public class FileSystemTest {
         assertTrue(Arrays.equals(data1, f1.getData(f)));
     }
 
+    @Test
+    public void test_copyFileReplaceSingleLookup() throws XenonException {
+        Path entry = new Path("/test");
+
+        int[] lookups = new int[1];
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry) {
+            @Override
+            public synchronized boolean exists(Path path) throws XenonException {
+                lookups[0]++;
+                return super.exists(path);
+            }
+
+            @Override
+            public synchronized PathAttributes getAttributes(Path path) throws XenonException {
+                lookups[0]++;
+                return super.getAttributes(path);
+            }
+
+            @Override
+            public synchronized OutputStream writeToFile(Path file, long size) throws XenonException {
+                // the mock looks up the file itself when writing, which is not part of the copy
+                int tmp = lookups[0];
+                OutputStream out = super.writeToFile(file, size);
+                lookups[0] = tmp;
+                return out;
+            }
+        };
+
+        Path f = new Path("/test/aap");
+
+        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 };
+
+        f0.createFile(f);
+        f0.addData(f, data);
+
+        f1.createFile(f);
+        f1.addData(f, new byte[] { 42, 42 });
+
+        lookups[0] = 0;
+
+        // the existing destination is looked up once, and implies that its parent exists
+        f0.copyFile(f, f1, f, CopyMode.REPLACE, f0.createCallback(1024));
+
+        assertTrue(Arrays.equals(data, f1.getData(f)));
+        assertEquals(1, lookups[0]);
+    }
+
+    @Test
+    public void test_copyFileResumeOK() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+
+        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 };
+
+        f0.createFile(f);
+        f0.addData(f, data);
+
+        f1.createFile(f);
+        f1.addData(f, new byte[] { 0, 1, 2 });
+
+        MockFileSystem.Callback c = f0.createCallback(1024);
+
+        // should append the missing part
+        f0.copyFile(f, f1, f, CopyMode.RESUME, c);
+
+        assertTrue(Arrays.equals(data, f1.getData(f)));
+        assertEquals(data.length, c.getBytesCopied());
+    }
+
+    @Test(expected = InvalidResumeTargetException.class)
+    public void test_copyFileResumeFailsMismatch() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+
+        f0.createFile(f);
+        f0.addData(f, new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 });
+
+        f1.createFile(f);
+        f1.addData(f, new byte[] { 42, 42 });
+
+        f0.copyFile(f, f1, f, CopyMode.RESUME, f0.createCallback(1024));
+    }
+
+    @Test(expected = InvalidResumeTargetException.class)
+    public void test_copyFileResumeFailsTargetLarger() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+
+        f0.createFile(f);
+        f0.addData(f, new byte[] { 0, 1 });
+
+        f1.createFile(f);
+        f1.addData(f, new byte[] { 0, 1, 2 });
+
+        f0.copyFile(f, f1, f, CopyMode.RESUME, f0.createCallback(1024));
+    }
+
+    @Test
+    public void test_copyFileSynchronizeSkip() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+
+        f0.createFile(f);
+        f0.addData(f, new byte[] { 0, 1, 2, 3 });
+        f0.setLastModifiedTime(f, 1000);
+
+        f1.createFile(f);
+        byte[] data1 = new byte[] { 42, 42, 42, 42 };
+        f1.addData(f, data1);
+        f1.setLastModifiedTime(f, 2000);
+
+        // same size and newer, so should skip
+        f0.copyFile(f, f1, f, CopyMode.SYNCHRONIZE, f0.createCallback(1024));
+
+        assertTrue(Arrays.equals(data1, f1.getData(f)));
+    }
+
+    @Test
+    public void test_copyFileSynchronizeReplaceOlder() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+
+        byte[] data = new byte[] { 0, 1, 2, 3 };
+
+        f0.createFile(f);
+        f0.addData(f, data);
+        f0.setLastModifiedTime(f, 2000);
+
+        f1.createFile(f);
+        f1.addData(f, new byte[] { 42, 42, 42, 42 });
+        f1.setLastModifiedTime(f, 1000);
+
+        // same size but older, so should replace
+        f0.copyFile(f, f1, f, CopyMode.SYNCHRONIZE, f0.createCallback(1024));
+
+        assertTrue(Arrays.equals(data, f1.getData(f)));
+    }
+
     @Test(expected = XenonException.class)
     public void test_copyFileCancelOK() throws XenonException {
         Path entry = new Path("/test");
@@ -1150,6 +1356,60 @@ public class FileSystemTest {
         assertTrue(Arrays.equals(data1, f1.getData(new Path("/test/aap/noot/file1"))));
     }
 
+    @Test
+    public void test_copyDirParallelOK() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, 4, null);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry, 4, null);
+
+        f0.createDirectory(new Path("/test/aap"));
+        f0.createDirectory(new Path("/test/aap/noot"));
+
+        for (int i = 0; i < 16; i++) {
+            Path file = new Path("/test/aap/noot/file" + i);
+            f0.createFile(file);
+            f0.addData(file, new byte[] { (byte) i, 42 });
+        }
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+
+        for (int i = 0; i < 16; i++) {
+            assertTrue(Arrays.equals(new byte[] { (byte) i, 42 }, f1.getData(new Path("/test/aap/noot/file" + i))));
+        }
+    }
+
+    @Test
+    public void test_copyDirParallelFailsFileTransfer() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, 4, null);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry, 4, null);
+
+        f0.createDirectory(new Path("/test/aap"));
+
+        for (int i = 0; i < 8; i++) {
+            f0.createFile(new Path("/test/aap/file" + i));
+        }
+
+        // file3 has no content, so its transfer will fail
+        for (int i = 0; i < 8; i++) {
+            if (i != 3) {
+                f0.addData(new Path("/test/aap/file" + i), new byte[] { (byte) i });
+            }
+        }
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+    }
+
     @Test
     public void test_copyDirReplace() throws XenonException {
         Path entry = new Path("/test");
@@ -1413,6 +1673,20 @@ public class FileSystemTest {
         assertFalse(f.equals("hello"));
     }
 
+    @Test
+    public void test_isSameEndpoint_sameLocation() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST0", "MEM", new Path("/other"));
+        assertTrue(f0.isSameEndpoint(f1));
+    }
+
+    @Test
+    public void test_isSameEndpoint_otherLocation() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST0", "MEM2", new Path("/test"));
+        assertFalse(f0.isSameEndpoint(f1));
+    }
+
     @Test
     public void test_autoclose() throws Exception {
         try (MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"))) {
@@ -85,6 +85,11 @@ public class MockFileSystem extends FileSystem {
             this.out = new ByteArrayOutputStream();
         }
 
+        FileEntryOutputStream(FileEntry entry, byte[] data) {
+            this(entry);
+            out.write(data, 0, data.length);
+        }
+
         @Override
         public void write(int b) throws IOException {
             out.write(b);
@@ -160,6 +165,10 @@ public class MockFileSystem extends FileSystem {
 
         void setData(byte[] data) {
             this.data = data;
+
+            if (data != null && attributes instanceof PathAttributesImplementation) {
+                ((PathAttributesImplementation) attributes).setSize(data.length);
+            }
         }
 
         byte[] getData() {
@@ -299,12 +308,16 @@ public class MockFileSystem extends FileSystem {
 
     private DirEntry root;
 
-    public MockFileSystem(String uniqueID, String name, String location, Path entryPath, XenonProperties p) throws XenonException {
-        super(uniqueID, name, location, new DefaultCredential(), entryPath, 4096, p);
+    public MockFileSystem(String uniqueID, String name, String location, Path entryPath, int copyThreads, XenonProperties p) throws XenonException {
+        super(uniqueID, name, location, new DefaultCredential(), entryPath, 4096, copyThreads, p);
         root = new DirEntry("", getDirAttributes(new Path("/")));
         ensureDirectories(entryPath);
     }
 
+    public MockFileSystem(String uniqueID, String name, String location, Path entryPath, XenonProperties p) throws XenonException {
+        this(uniqueID, name, location, entryPath, 1, p);
+    }
+
     public MockFileSystem(String uniqueID, String name, String location, Path entryPath) throws XenonException {
         this(uniqueID, name, location, entryPath, null);
     }
@@ -442,6 +455,10 @@ public class MockFileSystem extends FileSystem {
         getFileEntry(toAbsolutePath(path)).setData(data);
     }
 
+    public synchronized void setLastModifiedTime(Path path, long time) throws XenonException {
+        ((PathAttributesImplementation) getEntry(toAbsolutePath(path)).getAttributes()).setLastModifiedTime(time);
+    }
+
     public synchronized byte[] getData(Path path) throws XenonException {
         return getFileEntry(toAbsolutePath(path)).getData();
     }
@@ -524,8 +541,9 @@ public class MockFileSystem extends FileSystem {
     }
 
     @Override
-    public OutputStream appendToFile(Path file) throws XenonException {
-        throw new XenonException("TEST", "Not implemented");
+    public synchronized OutputStream appendToFile(Path file) throws XenonException {
+        FileEntry e = getFileEntry(toAbsolutePath(file));
+        return new FileEntryOutputStream(e, e.getData() == null ? new byte[0] : e.getData());
     }
 
     @Override
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class OutputBufferTest {
+
+    private static byte[] data(int size) {
+        byte[] result = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) ('a' + (i % 26));
+        }
+
+        return result;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_create_negativeLimit() {
+        new OutputBuffer(-1);
+    }
+
+    @Test
+    public void test_write_belowLimit() throws IOException {
+        byte[] data = data(1000);
+
+        OutputBuffer b = new OutputBuffer(1000);
+        b.write(data);
+        b.close();
+
+        assertFalse(b.isSpilled());
+        assertEquals(1000, b.getSize());
+        assertArrayEquals(data, b.getResult());
+    }
+
+    @Test
+    public void test_write_pastLimit_spills() throws IOException {
+        byte[] data = data(3 * OutputBuffer.CHUNK_SIZE + 17);
+
+        OutputBuffer b = new OutputBuffer(OutputBuffer.CHUNK_SIZE);
+        b.write(data, 0, 100);
+        b.write(data, 100, data.length - 100);
+        b.close();
+
+        assertTrue(b.isSpilled());
+        assertEquals(data.length, b.getSize());
+        assertArrayEquals(data, b.getResult());
+        b.discard();
+    }
+
+    @Test
+    public void test_readFrom_lines() throws IOException {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+
+        OutputBuffer b = new OutputBuffer(100);
+
+        try (ByteArrayInputStream in = new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8))) {
+            while (b.readFrom(in) >= 0) {
+                // keep reading
+            }
+        }
+
+        b.close();
+
+        assertTrue(b.isSpilled());
+
+        try (Stream<String> lines = b.lines()) {
+            assertEquals(1000, lines.count());
+        }
+
+        assertEquals(sb.toString(), b.getResultAsString());
+        b.discard();
+    }
+
+    @Test
+    public void test_fromFile_small_isLoaded() throws IOException {
+        Path tmp = Files.createTempFile("xenon-test", ".out");
+        Files.write(tmp, data(100));
+
+        OutputBuffer b = OutputBuffer.fromFile(tmp, 1000);
+
+        assertFalse(b.isSpilled());
+        assertFalse(Files.exists(tmp));
+        assertArrayEquals(data(100), b.getResult());
+    }
+
+    @Test
+    public void test_fromFile_large_isAdopted() throws IOException {
+        Path tmp = Files.createTempFile("xenon-test", ".out");
+        Files.write(tmp, data(5000));
+
+        OutputBuffer b = OutputBuffer.fromFile(tmp, 1000);
+
+        assertTrue(b.isSpilled());
+        assertTrue(Files.exists(tmp));
+        assertArrayEquals(data(5000), b.getResult());
+
+        b.discard();
+        assertFalse(Files.exists(tmp));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_discard_noLongerReadable() throws IOException {
+        OutputBuffer b = new OutputBuffer();
+        b.write(data(10));
+        b.discard();
+        b.getResult();
+    }
+
+    @Test
+    public void test_spillFailure_notRetried() throws IOException {
+        Path dir = Files.createTempDirectory("xenon-test").resolve("missing");
+
+        byte[] data = data(3 * OutputBuffer.CHUNK_SIZE);
+
+        OutputBuffer b = new OutputBuffer(OutputBuffer.CHUNK_SIZE, dir);
+
+        try {
+            b.write(data, 0, 2 * OutputBuffer.CHUNK_SIZE);
+
+            assertFalse(b.isSpilled());
+
+            // Once the first attempt failed, the data stays in memory even if the file could be created now.
+            Files.createDirectory(dir);
+            b.write(data, 2 * OutputBuffer.CHUNK_SIZE, OutputBuffer.CHUNK_SIZE);
+            b.close();
+
+            assertFalse(b.isSpilled());
+            assertArrayEquals(data, b.getResult());
+        } finally {
+            Files.delete(dir);
+            Files.delete(dir.getParent());
+        }
+    }
+
+    @Test
+    public void test_discard_keepsDataOfReader() throws IOException {
+        byte[] data = data(2 * OutputBuffer.CHUNK_SIZE);
+
+        OutputBuffer b = new OutputBuffer();
+        b.write(data);
+        b.close();
+
+        try (InputStream in = b.getResultAsStream()) {
+            b.discard();
+
+            // Another buffer that may reuse the chunks of the discarded one.
+            OutputBuffer other = new OutputBuffer();
+            other.write(new byte[2 * OutputBuffer.CHUNK_SIZE]);
+
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+
+            while ((n = in.read(buffer)) > 0) {
+                result.write(buffer, 0, n);
+            }
+
+            assertArrayEquals(data, result.toByteArray());
+        }
+    }
+}
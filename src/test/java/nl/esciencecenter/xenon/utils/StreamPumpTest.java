@@ -0,0 +1,320 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.utils.StreamPump.Forwarding;
+import nl.esciencecenter.xenon.utils.StreamPump.Source;
+
+public class StreamPumpTest {
+
+    private static StreamPump pump;
+
+    @BeforeClass
+    public static void setUp() {
+        pump = new StreamPump("TestPump", 2);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pump.shutdown();
+    }
+
+    class CountingOutputStream extends ByteArrayOutputStream {
+        int flushes = 0;
+        boolean closed = false;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    // A stream that reports no data as available, like the output of a process that has not written anything yet.
+    class SilentInputStream extends ByteArrayInputStream {
+        SilentInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int available() {
+            return 0;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_create_invalidThreads() {
+        new StreamPump("TestPump", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_forward_nullIn() {
+        pump.forward("test", null, new ByteArrayOutputStream(), Source.BOUNDED);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_forward_nullSource() {
+        pump.forward("test", new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), null);
+    }
+
+    @Test
+    public void test_bounded() {
+        String input = "Some content to forward";
+        CountingOutputStream out = new CountingOutputStream();
+
+        Forwarding f = pump.forward("test", new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out, Source.BOUNDED);
+        f.terminate(1000);
+
+        assertTrue(f.isDone());
+        assertTrue(out.closed);
+        assertEquals(input, out.toString());
+    }
+
+    @Test
+    public void test_largeInputGrowsBufferAndCoalescesFlushes() {
+        byte[] data = new byte[1024 * 1024];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        CountingOutputStream out = new CountingOutputStream();
+
+        Forwarding f = pump.forward("test", new ByteArrayInputStream(data), out, Source.BOUNDED);
+        f.terminate(5000);
+
+        assertArrayEquals(data, out.toByteArray());
+        // One flush per 64 KB instead of one per 1 KB read.
+        assertTrue("Too many flushes: " + out.flushes, out.flushes <= 17);
+    }
+
+    @Test
+    public void test_polledIsNotReadWithoutAvailableData() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+
+        Forwarding f = pump.forward("test", new SilentInputStream("hidden".getBytes(StandardCharsets.UTF_8)), out, Source.POLLED);
+
+        Thread.sleep(100);
+
+        assertFalse(f.isDone());
+        assertEquals(0, out.size());
+
+        // Once terminated, the stream is read until its end.
+        f.terminate(1000);
+
+        assertTrue(f.isDone());
+        assertEquals("hidden", out.toString());
+    }
+
+    @Test
+    public void test_polledForwardsAvailableData() throws Exception {
+        PipedOutputStream writer = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(writer);
+        CountingOutputStream out = new CountingOutputStream();
+
+        Forwarding f = pump.forward("test", in, out, Source.POLLED);
+
+        writer.write("Hello".getBytes(StandardCharsets.UTF_8));
+        writer.flush();
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (out.size() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals("Hello", out.toString());
+        assertFalse(f.isDone());
+
+        writer.close();
+        f.terminate(1000);
+        assertTrue(f.isDone());
+    }
+
+    @Test
+    public void test_idlePolledBacksOff() throws Exception {
+        AtomicInteger polls = new AtomicInteger();
+
+        InputStream in = new SilentInputStream(new byte[0]) {
+            @Override
+            public synchronized int available() {
+                polls.incrementAndGet();
+                return 0;
+            }
+        };
+
+        Forwarding f = pump.forward("test", in, null, Source.POLLED);
+
+        Thread.sleep(1500);
+
+        // Polling every 20 ms would result in about 75 polls.
+        assertTrue("Too many polls: " + polls.get(), polls.get() < 20);
+
+        f.terminate(1000);
+        assertTrue(f.isDone());
+    }
+
+    @Test
+    public void test_blockedOutputDoesNotStallPump() throws Exception {
+        StreamPump single = new StreamPump("TestPumpSingle", 1);
+
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+
+            // Like the input of a process that does not read it, writes block once the pipe is full.
+            OutputStream blocked = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+
+            Forwarding f1 = single.forward("blocked", new ByteArrayInputStream(new byte[100]), blocked, Source.BLOCKING_OUTPUT);
+
+            Thread.sleep(100);
+
+            CountingOutputStream out = new CountingOutputStream();
+            Forwarding f2 = single.forward("other", new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), out, Source.BOUNDED);
+            f2.terminate(1000);
+
+            assertTrue(f2.isDone());
+            assertEquals("data", out.toString());
+            assertFalse(f1.isDone());
+
+            release.countDown();
+            f1.terminate(5000);
+
+            assertTrue(f1.isDone());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void test_blockedDrainDoesNotStallPump() throws Exception {
+        StreamPump single = new StreamPump("TestPumpSingle", 1);
+
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+
+            // Like the output of a process whose pipe is kept open by a child, reads block once the forwarding is terminated.
+            InputStream blocked = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return -1;
+                }
+
+                @Override
+                public int available() {
+                    return 0;
+                }
+            };
+
+            Forwarding f1 = single.forward("blocked", blocked, null, Source.POLLED);
+
+            Thread t = new Thread(() -> f1.terminate(10000));
+            t.start();
+
+            Thread.sleep(100);
+
+            CountingOutputStream out = new CountingOutputStream();
+            Forwarding f2 = single.forward("other", new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), out, Source.BOUNDED);
+            f2.terminate(1000);
+
+            assertTrue(f2.isDone());
+            assertEquals("data", out.toString());
+            assertFalse(f1.isDone());
+
+            release.countDown();
+            t.join(TimeUnit.SECONDS.toMillis(5));
+
+            assertTrue(f1.isDone());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void test_terminateForcesClose() {
+        CountingOutputStream out = new CountingOutputStream();
+
+        InputStream in = new InputStream() {
+            boolean closed = false;
+
+            @Override
+            public int read() throws IOException {
+                return closed ? -1 : 0;
+            }
+
+            @Override
+            public int available() {
+                return 0;
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+        };
+
+        Forwarding f = pump.forward("test", in, out, Source.POLLED);
+        f.terminate(0);
+
+        assertTrue(out.closed);
+    }
+
+    @Test
+    public void test_discardOutput() {
+        OutputStream out = null;
+        Forwarding f = pump.forward("test", new ByteArrayInputStream(new byte[5000]), out, Source.BOUNDED);
+        f.terminate(1000);
+        assertTrue(f.isDone());
+    }
+}